@@ -23,9 +23,69 @@ import java.io.IOException;
 
 public final class BenchmarkUtils {
 
+    /**
+     * The number of audiences in {@link #generateSyntheticDatafile(int) synthetic datafiles}.
+     */
+    public static final int SYNTHETIC_AUDIENCES = 10;
+
     private BenchmarkUtils() {}
 
     public static String getProfilingDatafile(String datafilePath) throws IOException {
         return Resources.toString(Resources.getResource(datafilePath), Charsets.UTF_8);
     }
+
+    /**
+     * Generates a datafile with the given number of experiments, for measuring how costs grow with project size.
+     * <p>
+     * Every tenth experiment is paused, and three in four target one of {@value #SYNTHETIC_AUDIENCES} audiences on
+     * the {@code browser_type} attribute, with values {@code browser0}, {@code browser1} and so on. The
+     * {@code all_experiments} event applies to every experiment, and the {@code few_experiments} event to every
+     * fiftieth.
+     *
+     * @param numExperiments the number of experiments
+     * @return the datafile json
+     */
+    public static String generateSyntheticDatafile(int numExperiments) {
+        StringBuilder experiments = new StringBuilder();
+        StringBuilder allExperimentIds = new StringBuilder();
+        StringBuilder fewExperimentIds = new StringBuilder();
+        for (int i = 0; i < numExperiments; i++) {
+            String experimentId = String.valueOf(100000 + i);
+            String separator = (i == 0) ? "" : ",";
+            experiments.append(separator)
+                .append("{\"id\":\"").append(experimentId).append("\",")
+                .append("\"key\":\"experiment").append(i).append("\",")
+                .append("\"status\":\"").append((i % 10 == 9) ? "Paused" : "Running").append("\",")
+                .append("\"audienceIds\":[")
+                .append((i % 4 == 0) ? "" : "\"" + (i % SYNTHETIC_AUDIENCES) + "\"").append("],")
+                .append("\"variations\":[{\"id\":\"").append(200000 + 2 * i).append("\",\"key\":\"control\"},")
+                .append("{\"id\":\"").append(200001 + 2 * i).append("\",\"key\":\"variation\"}],")
+                .append("\"forcedVariations\":{},")
+                .append("\"trafficAllocation\":[{\"entityId\":\"").append(200000 + 2 * i)
+                .append("\",\"endOfRange\":5000},{\"entityId\":\"").append(200001 + 2 * i)
+                .append("\",\"endOfRange\":10000}]}");
+            allExperimentIds.append(separator).append('"').append(experimentId).append('"');
+            if (i % 50 == 0) {
+                fewExperimentIds.append((i == 0) ? "" : ",").append('"').append(experimentId).append('"');
+            }
+        }
+
+        StringBuilder audiences = new StringBuilder();
+        for (int i = 0; i < SYNTHETIC_AUDIENCES; i++) {
+            audiences.append((i == 0) ? "" : ",")
+                .append("{\"id\":\"").append(i).append("\",\"name\":\"browser").append(i).append(" users\",")
+                .append("\"conditions\":\"[\\\"and\\\", [\\\"or\\\", [\\\"or\\\", ")
+                .append("{\\\"name\\\": \\\"browser_type\\\", \\\"type\\\": \\\"custom_dimension\\\", ")
+                .append("\\\"value\\\": \\\"browser").append(i).append("\\\"}]]]\"}");
+        }
+
+        return "{\"accountId\":\"789\",\"projectId\":\"1234\",\"version\":\"2\",\"revision\":\"1\","
+               + "\"groups\":[],"
+               + "\"experiments\":[" + experiments + "],"
+               + "\"dimensions\":[{\"id\":\"134\",\"key\":\"browser_type\",\"segmentId\":\"185\"}],"
+               + "\"events\":[{\"id\":\"971\",\"key\":\"all_experiments\",\"experimentIds\":["
+               + allExperimentIds + "]},"
+               + "{\"id\":\"972\",\"key\":\"few_experiments\",\"experimentIds\":[" + fewExperimentIds + "]}],"
+               + "\"audiences\":[" + audiences + "]}";
+    }
 }
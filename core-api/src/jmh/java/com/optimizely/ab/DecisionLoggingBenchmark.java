@@ -0,0 +1,113 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.event.NoopEventHandler;
+import com.optimizely.ab.internal.DecisionLogging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for decision logging on the {@link Optimizely#activate} and {@link Optimizely#getVariation} paths,
+ * with the SDK's loggers at INFO and at WARN, under each {@link DecisionLogging} mode.
+ * <p>
+ * No appender is attached, so at INFO this measures building the log events but not writing them; run with
+ * {@code -prof gc} to see the allocation rate of each combination.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class DecisionLoggingBenchmark {
+
+    private static final int NUM_USER_IDS = 1024;
+
+    @Param({"INFO", "WARN"})
+    private String logLevel;
+
+    @Param({"PER_CALL", "PER_CONFIG", "DISABLED"})
+    private DecisionLogging decisionLogging;
+
+    private Logger sdkLogger;
+    private Level previousLevel;
+
+    private Optimizely optimizely;
+
+    private String[] userIds;
+    private int userIdIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        // the level has to be set before the Optimizely instance is built, for PER_CONFIG to pick it up
+        sdkLogger = (Logger)LoggerFactory.getLogger("com.optimizely.ab");
+        previousLevel = sdkLogger.getLevel();
+        sdkLogger.setLevel(Level.toLevel(logLevel));
+
+        String datafile = BenchmarkUtils.getProfilingDatafile("config/profiling-test-data-50-experiments.json");
+        optimizely = Optimizely.builder(datafile, new NoopEventHandler())
+            .withDecisionLogging(decisionLogging)
+            .build();
+
+        Random random = new Random(42);
+        userIds = new String[NUM_USER_IDS];
+        for (int i = 0; i < NUM_USER_IDS; i++) {
+            userIds[i] = "optimizely_user" + random.nextInt();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sdkLogger.setLevel(previousLevel);
+    }
+
+    private String nextUserId() {
+        userIdIndex = (userIdIndex + 1) & (NUM_USER_IDS - 1);
+        return userIds[userIdIndex];
+    }
+
+    @Benchmark
+    public Variation measureActivate() {
+        return optimizely.activate("testExperiment2", nextUserId());
+    }
+
+    @Benchmark
+    public Variation measureGetVariationForGroupExperiment() {
+        return optimizely.getVariation("mutex_exp2", nextUserId());
+    }
+}
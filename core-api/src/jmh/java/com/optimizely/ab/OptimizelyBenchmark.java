@@ -16,6 +16,7 @@
  */
 package com.optimizely.ab;
 
+import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Variation;
 import com.optimizely.ab.event.NoopEventHandler;
 
@@ -32,11 +33,15 @@ import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.String;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -60,6 +65,8 @@ public class OptimizelyBenchmark {
     private String trackGroupExperimentUserId;
     private String trackGroupExperimentAttributesUserId;
 
+    private List<String> experimentKeys;
+
     @Param({"10", "25", "50"})
     private int numExperiments;
 
@@ -94,6 +101,11 @@ public class OptimizelyBenchmark {
 
         optimizely = Optimizely.builder(BenchmarkUtils.getProfilingDatafile(datafilePath),
                                         new NoopEventHandler()).build();
+
+        experimentKeys = new ArrayList<String>();
+        for (Experiment experiment : optimizely.getProjectConfig().getExperiments()) {
+            experimentKeys.add(experiment.getKey());
+        }
     }
 
     @Benchmark
@@ -123,6 +135,34 @@ public class OptimizelyBenchmark {
                                        Collections.singletonMap("browser_type", "chrome"));
     }
 
+    @Benchmark
+    public void measureGetVariationForAllExperimentsWithNoAttributes(Blackhole blackhole) {
+        String userId = "optimizely_user" + random.nextInt();
+        for (String experimentKey : experimentKeys) {
+            blackhole.consume(optimizely.getVariation(experimentKey, userId));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Variation> measureGetVariationsWithNoAttributes() {
+        return optimizely.getVariations("optimizely_user" + random.nextInt());
+    }
+
+    @Benchmark
+    public void measureGetVariationForAllExperimentsWithAttributes(Blackhole blackhole) {
+        String userId = "optimizely_user" + random.nextInt();
+        Map<String, String> attributes = Collections.singletonMap("browser_type", "firefox");
+        for (String experimentKey : experimentKeys) {
+            blackhole.consume(optimizely.getVariation(experimentKey, userId, attributes));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Variation> measureGetVariationsWithAttributes() {
+        return optimizely.getVariations("optimizely_user" + random.nextInt(),
+                                        Collections.singletonMap("browser_type", "firefox"));
+    }
+
     @Benchmark
     public Variation measureActivateWithNoAttributes() {
         return optimizely.activate("testExperiment2", "optimizely_user" + random.nextInt());
@@ -16,6 +16,8 @@
  */
 package com.optimizely.ab;
 
+import com.optimizely.ab.config.parser.BenchmarkConfigParsers;
+import com.optimizely.ab.config.parser.ConfigParser;
 import com.optimizely.ab.event.EventHandler;
 import com.optimizely.ab.event.NoopEventHandler;
 
@@ -23,6 +25,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
@@ -38,7 +41,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.Properties;
 
 /**
- * JMH benchmark for {@link Optimizely.Builder}.
+ * JMH benchmarks for {@link Optimizely.Builder}, with each of the {@link ConfigParser} implementations.
+ * <p>
+ * {@link #measureFirstOptimizelyCreation()} creates the parser along with the first client of a fresh JVM, so that it
+ * includes the class loading and initialization a short-lived process pays for. The other benchmark measures the
+ * steady state, with a parser that's already in use.
  */
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.NANOSECONDS)
@@ -52,6 +59,9 @@ public class OptimizelyBuilderBenchmark {
     @Param({"10", "25", "50"})
     private int numExperiments;
 
+    @Param({"jackson", "gson", "json-simple", "json", "built-in"})
+    private String parserName;
+
     private String datafile;
 
     @Setup
@@ -68,7 +78,34 @@ public class OptimizelyBuilderBenchmark {
     }
 
     @Benchmark
-    public Optimizely measureOptimizelyCreation() throws IOException {
-        return Optimizely.builder(datafile, eventHandler).build();
+    public Optimizely measureOptimizelyCreation(ParserState parserState) throws IOException {
+        return Optimizely.builder(datafile, eventHandler).withConfigParser(parserState.configParser).build();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Fork(20)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public Optimizely measureFirstOptimizelyCreation() throws IOException {
+        return Optimizely.builder(datafile, eventHandler)
+            .withConfigParser(BenchmarkConfigParsers.create(parserName))
+            .build();
+    }
+
+    /**
+     * The parser used across iterations, which is kept apart from the benchmark state so that the first creation
+     * benchmark doesn't load it ahead of time.
+     */
+    @State(Scope.Benchmark)
+    public static class ParserState {
+
+        private ConfigParser configParser;
+
+        @Setup
+        public void setup(OptimizelyBuilderBenchmark benchmark) {
+            configParser = BenchmarkConfigParsers.create(benchmark.parserName);
+        }
     }
 }
@@ -0,0 +1,128 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.BenchmarkUtils;
+import com.optimizely.ab.bucketing.internal.MurmurHash3;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the {@link Bucketer} hot path.
+ * <p>
+ * User ids are generated up front so that the measured methods don't allocate on their own; run with
+ * {@code -prof gc} to see the allocation rate of each path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class BucketerBenchmark {
+
+    private static final int MURMUR_HASH_SEED = 1;
+    private static final int NUM_USER_IDS = 1024;
+
+    private Bucketer bucketer;
+    private Experiment experiment;
+    private Experiment groupExperiment;
+
+    private String[] userIds;
+    private int userIdIndex;
+
+    private int hashCode;
+
+    @Setup
+    public void setup() throws IOException {
+        String datafile = BenchmarkUtils.getProfilingDatafile("config/profiling-test-data-50-experiments.json");
+        ProjectConfig projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+
+        bucketer = new Bucketer(projectConfig);
+        experiment = projectConfig.getExperimentKeyMapping().get("testExperiment2");
+        groupExperiment = projectConfig.getExperimentKeyMapping().get("mutex_exp2");
+
+        Random random = new Random(42);
+        userIds = new String[NUM_USER_IDS];
+        for (int i = 0; i < NUM_USER_IDS; i++) {
+            userIds[i] = "optimizely_user" + random.nextInt();
+        }
+    }
+
+    private String nextUserId() {
+        userIdIndex = (userIdIndex + 1) & (NUM_USER_IDS - 1);
+        return userIds[userIdIndex];
+    }
+
+    private int nextHashCode() {
+        // step through the hash space with the golden ratio increment, so consecutive inputs aren't correlated
+        hashCode += 0x9E3779B9;
+        return hashCode;
+    }
+
+    /**
+     * Baseline for {@link #measureBucketValue()}: the floating point mapping that {@link Bucketer} used to use.
+     */
+    @Benchmark
+    public int measureFloatingPointBucketValue() {
+        double ratio = (double)(nextHashCode() & 0xFFFFFFFFL) / Math.pow(2, 32);
+        return (int)Math.floor(Bucketer.MAX_TRAFFIC_VALUE * ratio);
+    }
+
+    @Benchmark
+    public int measureBucketValue() {
+        return bucketer.generateBucketValue(nextHashCode());
+    }
+
+    @Benchmark
+    public int measureConcatenatedBucketIdHash() {
+        String bucketId = nextUserId() + experiment.getId();
+        return MurmurHash3.murmurhash3_x86_32(bucketId, 0, bucketId.length(), MURMUR_HASH_SEED);
+    }
+
+    @Benchmark
+    public int measureSegmentedBucketIdHash() {
+        return MurmurHash3.murmurhash3_x86_32(nextUserId(), experiment.getId(), MURMUR_HASH_SEED);
+    }
+
+    @Benchmark
+    public Variation measureBucket() {
+        return bucketer.bucket(experiment, nextUserId());
+    }
+
+    @Benchmark
+    public Variation measureBucketForGroupExperiment() {
+        return bucketer.bucket(groupExperiment, nextUserId());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.BenchmarkUtils;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH throughput benchmarks for {@link BulkBucketer}, reported in users bucketed into every experiment of the
+ * 50 experiment profiling datafile per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class BulkBucketerBenchmark {
+
+    private static final int NUM_USER_IDS = 100000;
+
+    /**
+     * The number of threads users are bucketed on, where 1 buckets on the calling thread.
+     */
+    @Param({"1", "4"})
+    private int threads;
+
+    private ExecutorService executor;
+    private BulkBucketer bulkBucketer;
+    private Bucketer bucketer;
+    private List<Experiment> experiments;
+
+    private String[] userIds;
+
+    @Setup
+    public void setup() throws IOException {
+        String datafile = BenchmarkUtils.getProfilingDatafile("config/profiling-test-data-50-experiments.json");
+        ProjectConfig projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        bulkBucketer = new BulkBucketer(projectConfig, executor, threads);
+        bucketer = new Bucketer(projectConfig);
+        experiments = projectConfig.getExperiments();
+
+        Random random = new Random(42);
+        userIds = new String[NUM_USER_IDS];
+        for (int i = 0; i < NUM_USER_IDS; i++) {
+            userIds[i] = "optimizely_user" + random.nextInt();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Baseline for {@link #measureBulkBucket()}: bucketing one user at a time with {@link Bucketer}.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_USER_IDS)
+    public void measureBucketPerUser(Blackhole blackhole) {
+        for (String userId : userIds) {
+            for (Experiment experiment : experiments) {
+                Variation variation = bucketer.bucket(experiment, userId);
+                blackhole.consume(variation);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_USER_IDS)
+    public int[][] measureBulkBucket() {
+        return bulkBucketer.bucket(userIds);
+    }
+}
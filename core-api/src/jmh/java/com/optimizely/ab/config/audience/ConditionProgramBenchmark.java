@@ -0,0 +1,172 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.OptimizelyUserAttributes;
+import com.optimizely.ab.config.ProjectConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing {@link ConditionProgram} with evaluating the {@link Condition} tree it's compiled from.
+ * The bound program is evaluated against {@link OptimizelyUserAttributes}, reading the attributes by index.
+ * <p>
+ * All shapes are evaluated in the same fork, so the tree's {@code evaluate} call sites see every condition type, as
+ * they do when a datafile has a mix of audiences.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ConditionProgramBenchmark {
+
+    private static final int SIZE = 32;
+
+    /**
+     * <ul>
+     *   <li>{@code deep}: {@value #SIZE} levels of alternating 'and', 'or' and 'not' conditions</li>
+     *   <li>{@code wide}: an 'or' of {@value #SIZE} values of one attribute, matching the last</li>
+     *   <li>{@code mixed}: an 'and' of {@value #SIZE} attributes, all of which match</li>
+     * </ul>
+     */
+    @Param({"deep", "wide", "mixed"})
+    private String shape;
+
+    private Condition condition;
+    private ConditionProgram program;
+    private Map<String, String> attributes;
+    private ConditionProgram boundProgram;
+    private OptimizelyUserAttributes userAttributes;
+
+    @Setup
+    public void setup() {
+        Map<String, Condition> conditions = new HashMap<String, Condition>();
+        conditions.put("deep", deepCondition(SIZE));
+        conditions.put("wide", wideCondition());
+        conditions.put("mixed", mixedCondition());
+
+        attributes = new HashMap<String, String>();
+        attributes.put("browser_type", "browser" + (SIZE - 1));
+        for (int i = 0; i < SIZE; i++) {
+            attributes.put("attribute" + i, "value" + i);
+        }
+
+        // warm the tree's call sites up with every shape, then measure the selected one
+        for (int i = 0; i < 10000; i++) {
+            for (Condition warmup : conditions.values()) {
+                warmup.evaluate(attributes);
+                ConditionProgram.compile(warmup).evaluate(attributes);
+            }
+        }
+
+        condition = conditions.get(shape);
+        program = ConditionProgram.compile(condition);
+
+        List<Attribute> projectAttributes = new ArrayList<Attribute>();
+        for (String attributeKey : attributes.keySet()) {
+            projectAttributes.add(new Attribute(String.valueOf(projectAttributes.size()), attributeKey,
+                                                "10" + projectAttributes.size()));
+        }
+        ProjectConfig projectConfig = new ProjectConfig("789", "1234", "2", "42", Collections.<Group>emptyList(),
+                                                        Collections.<Experiment>emptyList(), projectAttributes,
+                                                        Collections.<EventType>emptyList(),
+                                                        Collections.<Audience>emptyList());
+        boundProgram = program.bind(projectConfig.getAttributeIndexMapping());
+        userAttributes = new OptimizelyUserAttributes(projectConfig, attributes);
+    }
+
+    @Benchmark
+    public boolean measureConditionTree() {
+        return condition.evaluate(attributes);
+    }
+
+    @Benchmark
+    public boolean measureConditionProgram() {
+        return program.evaluate(attributes);
+    }
+
+    @Benchmark
+    public boolean measureBoundConditionProgram() {
+        return boundProgram.evaluate(userAttributes);
+    }
+
+    //======== Helper methods ========//
+
+    private static Condition deepCondition(int depth) {
+        Condition leaf = new UserAttribute("attribute" + depth % SIZE, "custom_dimension", "value" + depth % SIZE);
+        if (depth == 0) {
+            return leaf;
+        }
+
+        Condition child = deepCondition(depth - 1);
+        switch (depth % 3) {
+            case 0:
+                List<Condition> andConditions = new ArrayList<Condition>();
+                andConditions.add(leaf);
+                andConditions.add(child);
+                return new AndCondition(andConditions);
+            case 1:
+                List<Condition> orConditions = new ArrayList<Condition>();
+                orConditions.add(new NotCondition(leaf));
+                orConditions.add(child);
+                return new OrCondition(orConditions);
+            default:
+                return new NotCondition(new NotCondition(child));
+        }
+    }
+
+    private static Condition wideCondition() {
+        List<Condition> conditions = new ArrayList<Condition>();
+        for (int i = 0; i < SIZE; i++) {
+            conditions.add(new UserAttribute("browser_type", "custom_dimension", "browser" + i));
+        }
+
+        return new OrCondition(conditions);
+    }
+
+    private static Condition mixedCondition() {
+        List<Condition> conditions = new ArrayList<Condition>();
+        for (int i = 0; i < SIZE; i++) {
+            conditions.add(new UserAttribute("attribute" + i, "custom_dimension", "value" + i));
+        }
+
+        return new AndCondition(Collections.unmodifiableList(conditions));
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+/**
+ * Creates each of the {@link StreamingConfigParser} implementations by name, for benchmarks outside of this package.
+ */
+public final class BenchmarkConfigParsers {
+
+    private BenchmarkConfigParsers() {}
+
+    /**
+     * @param parserName one of {@code jackson}, {@code gson}, {@code json-simple}, {@code json} or {@code built-in}
+     * @return a new parser of that name
+     */
+    public static StreamingConfigParser create(String parserName) {
+        if (parserName.equals("jackson")) {
+            return new JacksonConfigParser();
+        } else if (parserName.equals("gson")) {
+            return new GsonConfigParser();
+        } else if (parserName.equals("json-simple")) {
+            return new JsonSimpleConfigParser();
+        } else if (parserName.equals("json")) {
+            return new JsonConfigParser();
+        } else if (parserName.equals("built-in")) {
+            return new BuiltInConfigParser();
+        }
+
+        throw new IllegalArgumentException("unknown parser: " + parserName);
+    }
+}
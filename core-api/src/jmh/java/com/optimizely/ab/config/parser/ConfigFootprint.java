@@ -0,0 +1,85 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.BenchmarkUtils;
+import com.optimizely.ab.config.ProjectConfig;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Reports the heap retained by the configs each {@link ConfigParser} parses from the 50 experiment profiling datafile
+ * and from a 10,000 experiment {@link BenchmarkUtils#generateSyntheticDatafile(int) synthetic datafile}.
+ * <p>
+ * This isn't a JMH benchmark, as it measures live heap rather than time. Several copies of each config are kept
+ * reachable and the heap is compared before and after they're parsed, so run it with a heap large enough to hold
+ * them and a collector that compacts on {@code System.gc()}:
+ * <pre>
+ *     java -Xmx1g -XX:+UseSerialGC -cp &lt;jmh classpath&gt; com.optimizely.ab.config.parser.ConfigFootprint
+ * </pre>
+ */
+public final class ConfigFootprint {
+
+    private static final String[] PARSER_NAMES = { "jackson", "gson", "json-simple", "json", "built-in" };
+
+    private ConfigFootprint() {}
+
+    public static void main(String[] args) throws Exception {
+        String profilingDatafile =
+            BenchmarkUtils.getProfilingDatafile("config/profiling-test-data-50-experiments.json");
+        String syntheticDatafile = BenchmarkUtils.generateSyntheticDatafile(10000);
+
+        System.out.printf("%-12s %20s %20s%n", "parser", "50 experiments", "10000 experiments");
+        for (String parserName : PARSER_NAMES) {
+            ConfigParser parser = BenchmarkConfigParsers.create(parserName);
+            System.out.printf("%-12s %18d B %18d B%n", parserName,
+                              measureRetainedBytes(parser, profilingDatafile, 200),
+                              measureRetainedBytes(parser, syntheticDatafile, 5));
+        }
+    }
+
+    /**
+     * @return the heap retained by each config parsed from the datafile, averaged over {@code copies} configs
+     */
+    private static long measureRetainedBytes(ConfigParser parser, String datafile, int copies) throws Exception {
+        // warm up, so that the classes and caches the parser loads on first use aren't counted
+        parser.parseProjectConfig(datafile);
+
+        ProjectConfig[] configs = new ProjectConfig[copies];
+        long before = usedHeap();
+        for (int i = 0; i < copies; i++) {
+            configs[i] = parser.parseProjectConfig(datafile);
+        }
+        long after = usedHeap();
+
+        if (configs[copies - 1] == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / copies;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.BenchmarkUtils;
+import com.optimizely.ab.config.ProjectConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for parsing multi-megabyte {@link BenchmarkUtils#generateSyntheticDatafile(int) synthetic
+ * datafiles} with each {@link ConfigParser}, from a string, a stream and a buffer of the encoded json.
+ * <p>
+ * Run with {@code -prof gc} to also report the bytes allocated by each parse, as {@code gc.alloc.rate.norm}. The
+ * string benchmarks don't include decoding the datafile into a string, which the other inputs avoid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ConfigParserBenchmark {
+
+    /**
+     * About 2.3MB and 4.6MB of json.
+     */
+    @Param({"5000", "10000"})
+    private int numExperiments;
+
+    @Param({"jackson", "gson", "json-simple", "json", "built-in"})
+    private String parserName;
+
+    private StreamingConfigParser parser;
+    private String json;
+    private byte[] jsonBytes;
+    private ByteBuffer jsonBuffer;
+
+    @Setup
+    public void setup() throws Exception {
+        parser = BenchmarkConfigParsers.create(parserName);
+
+        json = BenchmarkUtils.generateSyntheticDatafile(numExperiments);
+        jsonBytes = json.getBytes("UTF-8");
+        jsonBuffer = ByteBuffer.allocateDirect(jsonBytes.length);
+        jsonBuffer.put(jsonBytes).flip();
+    }
+
+    @Benchmark
+    public ProjectConfig measureParseString() throws Exception {
+        return parser.parseProjectConfig(json);
+    }
+
+    @Benchmark
+    public ProjectConfig measureParseInputStream() throws Exception {
+        return parser.parseProjectConfig(new ByteArrayInputStream(jsonBytes));
+    }
+
+    @Benchmark
+    public ProjectConfig measureParseByteBuffer() throws Exception {
+        return parser.parseProjectConfig(jsonBuffer);
+    }
+}
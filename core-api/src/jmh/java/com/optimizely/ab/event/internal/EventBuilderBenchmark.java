@@ -0,0 +1,88 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event.internal;
+
+import com.optimizely.ab.BenchmarkUtils;
+import com.optimizely.ab.bucketing.Bucketer;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+import com.optimizely.ab.event.LogEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for building conversion events from {@link BenchmarkUtils#generateSyntheticDatafile(int) synthetic
+ * datafiles}, to show how their cost grows with the number of experiments in the project and in the goal.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class EventBuilderBenchmark {
+
+    @Param({"50", "500"})
+    private int numExperiments;
+
+    /**
+     * <ul>
+     *   <li>{@code few_experiments}: a goal of every fiftieth experiment</li>
+     *   <li>{@code all_experiments}: a goal of every experiment</li>
+     * </ul>
+     */
+    @Param({"few_experiments", "all_experiments"})
+    private String goalKey;
+
+    private EventBuilder eventBuilder;
+    private ProjectConfig projectConfig;
+    private Bucketer bucketer;
+    private EventType eventType;
+    private Map<String, String> attributes;
+
+    @Setup
+    public void setup() {
+        String datafile = BenchmarkUtils.generateSyntheticDatafile(numExperiments);
+        projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+
+        eventBuilder = new EventBuilderV1();
+        bucketer = new Bucketer(projectConfig);
+        eventType = projectConfig.getEventNameMapping().get(goalKey);
+        attributes = Collections.singletonMap("browser_type", "browser3");
+    }
+
+    @Benchmark
+    public LogEvent measureCreateConversionEvent() {
+        return eventBuilder.createConversionEvent(projectConfig, bucketer, "optimizely_user", eventType.getId(),
+                                                  eventType.getKey(), attributes);
+    }
+}
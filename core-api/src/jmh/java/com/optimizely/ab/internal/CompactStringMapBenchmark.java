@@ -0,0 +1,104 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing lookups in a {@link CompactStringMap} with lookups in the unmodifiable {@code HashMap}s of
+ * the eagerly built config mappings.
+ * <p>
+ * Keys are looked up through copies of the mapped keys, as with keys passed in by callers, in a shuffled order so
+ * that the lookups of large maps miss the cache as they would in a large config.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class CompactStringMapBenchmark {
+
+    /**
+     * The size of an experiment's variation mappings, of a mid-sized project's experiment mappings, and of a large
+     * project's.
+     */
+    @Param({"3", "50", "10000"})
+    private int size;
+
+    @Param({"hash-map", "compact"})
+    private String mapType;
+
+    private Map<String, Integer> map;
+    private String[] hitKeys;
+    private String[] missKeys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Map<String, Integer> entries = new HashMap<String, Integer>();
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            String key = "experiment_" + (100000 + i);
+            entries.put(key, i);
+            keys.add(new String(key));
+        }
+        Collections.shuffle(keys, new Random(42));
+
+        if (mapType.equals("hash-map")) {
+            map = Collections.unmodifiableMap(entries);
+        } else {
+            map = CompactStringMap.copyOf(entries);
+        }
+
+        hitKeys = keys.toArray(new String[size]);
+        missKeys = new String[size];
+        for (int i = 0; i < size; i++) {
+            missKeys[i] = "missing_" + hitKeys[i];
+        }
+    }
+
+    @Benchmark
+    public Integer measureHit() {
+        index = (index + 1 == size) ? 0 : index + 1;
+        return map.get(hitKeys[index]);
+    }
+
+    @Benchmark
+    public Integer measureMiss() {
+        index = (index + 1 == size) ? 0 : index + 1;
+        return map.get(missKeys[index]);
+    }
+}
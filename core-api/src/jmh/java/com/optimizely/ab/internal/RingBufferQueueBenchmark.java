@@ -0,0 +1,150 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of producer threads offering events to a {@link RingBufferQueue}, compared with the
+ * {@code ArrayBlockingQueue} the event handler used to queue events in, while a consumer thread drains the queue in
+ * batches as the event dispatch workers do.
+ * <p>
+ * Each benchmark offers from a different number of threads, as with request threads calling {@code activate} and
+ * {@code track}. Offers that fail because the queue is full are counted as operations too, as the event handler
+ * drops those events, so the accepted and dropped offers are also reported separately.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RingBufferQueueBenchmark {
+
+    private static final Object EVENT = new Object();
+
+    @Param({"array-blocking-queue", "ring-buffer"})
+    private String queueType;
+
+    private BlockingQueue<Object> queue;
+    private Thread consumer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (queueType.equals("array-blocking-queue")) {
+            queue = new ArrayBlockingQueue<Object>(8192);
+        } else {
+            queue = new RingBufferQueue<Object>(8192);
+        }
+
+        consumer = new Thread("benchmark-consumer") {
+            @Override
+            public void run() {
+                List<Object> batch = new ArrayList<Object>(100);
+                try {
+                    while (true) {
+                        batch.add(queue.take());
+                        queue.drainTo(batch, 99);
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        };
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        consumer.interrupt();
+        consumer.join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean offer1Producer(Offers offers) {
+        return offer(offers);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean offer8Producers(Offers offers) {
+        return offer(offers);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean offer32Producers(Offers offers) {
+        return offer(offers);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean offer64Producers(Offers offers) {
+        return offer(offers);
+    }
+
+    private boolean offer(Offers offers) {
+        boolean accepted = queue.offer(EVENT);
+        if (accepted) {
+            offers.accepted++;
+        } else {
+            offers.dropped++;
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Counts the offers of a producer thread by outcome.
+     */
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Offers {
+
+        public long accepted;
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            accepted = 0;
+            dropped = 0;
+        }
+    }
+}
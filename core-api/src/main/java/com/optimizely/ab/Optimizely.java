@@ -19,11 +19,12 @@ package com.optimizely.ab;
 import com.optimizely.ab.annotations.VisibleForTesting;
 import com.optimizely.ab.bucketing.Bucketer;
 import com.optimizely.ab.bucketing.UserExperimentRecord;
-import com.optimizely.ab.config.Attribute;
 import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.OptimizelyUserAttributes;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.parser.ConfigParser;
 import com.optimizely.ab.config.parser.DefaultConfigParser;
 import com.optimizely.ab.error.ErrorHandler;
 import com.optimizely.ab.error.NoOpErrorHandler;
@@ -32,6 +33,8 @@ import com.optimizely.ab.event.EventHandler;
 import com.optimizely.ab.event.LogEvent;
 import com.optimizely.ab.event.internal.EventBuilder;
 import com.optimizely.ab.event.internal.EventBuilderV1;
+import com.optimizely.ab.internal.DecisionLogging;
+import com.optimizely.ab.internal.LogGuard;
 import com.optimizely.ab.internal.ProjectValidationUtils;
 
 import org.slf4j.Logger;
@@ -69,6 +72,11 @@ import javax.annotation.concurrent.ThreadSafe;
  *     }
  * </pre>
  *
+ * To pick up a newer datafile without rebuilding the client:
+ * <pre>
+ *     optimizely.getProjectConfigManager().update(datafile);
+ * </pre>
+ *
  * <b>NOTE:</b> by default, all exceptions originating from {@code Optimizely} calls are suppressed.
  * For example, attempting to activate an experiment that does not exist in the project config will cause an error
  * to be logged, and for the "control" variation to be returned.
@@ -78,19 +86,16 @@ public class Optimizely {
 
     private static final Logger logger = LoggerFactory.getLogger(Optimizely.class);
 
-    @VisibleForTesting final Bucketer bucketer;
+    @VisibleForTesting final ProjectConfigManager configManager;
     @VisibleForTesting final EventBuilder eventBuilder;
-    @VisibleForTesting final ProjectConfig projectConfig;
     @VisibleForTesting final EventHandler eventHandler;
     @VisibleForTesting final ErrorHandler errorHandler;
 
-    private Optimizely(@Nonnull ProjectConfig projectConfig,
-                       @Nonnull Bucketer bucketer,
+    private Optimizely(@Nonnull ProjectConfigManager configManager,
                        @Nonnull EventHandler eventHandler,
                        @Nonnull EventBuilder eventBuilder,
                        @Nonnull ErrorHandler errorHandler) {
-        this.projectConfig = projectConfig;
-        this.bucketer = bucketer;
+        this.configManager = configManager;
         this.eventHandler = eventHandler;
         this.eventBuilder = eventBuilder;
         this.errorHandler = errorHandler;
@@ -98,7 +103,7 @@ public class Optimizely {
 
     // Do work here that should be done once per Optimizely lifecycle
     @VisibleForTesting void initialize() {
-        bucketer.cleanUserExperimentRecords();
+        configManager.getSnapshot().getBucketer().cleanUserExperimentRecords();
     }
 
     //======== activate calls ========//
@@ -111,22 +116,45 @@ public class Optimizely {
     public @Nullable Variation activate(@Nonnull String experimentKey,
                                         @Nonnull String userId,
                                         @Nonnull Map<String, String> attributes) throws UnknownExperimentException {
+        return activate(experimentKey, userId, attributes, null);
+    }
 
+    /**
+     * Activates a user in an experiment, reusing the audience evaluations made for the user's context by earlier
+     * calls.
+     */
+    public @Nullable Variation activate(@Nonnull String experimentKey,
+                                        @Nonnull String userId,
+                                        @Nonnull UserEvaluationContext context) throws UnknownExperimentException {
+        return activate(experimentKey, userId, context.getAttributes(), context);
+    }
+
+    private @Nullable Variation activate(@Nonnull String experimentKey,
+                                         @Nonnull String userId,
+                                         @Nonnull Map<String, String> attributes,
+                                         @Nullable UserEvaluationContext context) throws UnknownExperimentException {
+
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        LogGuard logGuard = snapshot.getLogGuard();
         if (!validateUserId(userId)) {
-            logger.info("Not activating user for experiment \"{}\".", experimentKey);
+            if (logGuard.isInfoEnabled()) {
+                logger.info("Not activating user for experiment \"{}\".", experimentKey);
+            }
             return null;
         }
 
-        ProjectConfig currentConfig = getProjectConfig();
+        ProjectConfig currentConfig = snapshot.getProjectConfig();
 
         Experiment experiment = getExperimentOrThrow(currentConfig, experimentKey);
         if (experiment == null) {
             // if we're unable to retrieve the associated experiment, return null
-            logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experimentKey);
+            if (logGuard.isInfoEnabled()) {
+                logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experimentKey);
+            }
             return null;
         }
 
-        return activate(currentConfig, experiment, userId, attributes);
+        return activate(snapshot, experiment, userId, attributes, context);
     }
 
     public @Nullable Variation activate(@Nonnull Experiment experiment,
@@ -138,36 +166,54 @@ public class Optimizely {
                                         @Nonnull String userId,
                                         @Nonnull Map<String, String> attributes) {
 
-        ProjectConfig currentConfig = getProjectConfig();
-
-        return activate(currentConfig, experiment, userId, attributes);
+        return activate(configManager.getSnapshot(), experiment, userId, attributes, null);
     }
 
-    private @Nullable Variation activate(@Nonnull ProjectConfig projectConfig,
+    private @Nullable Variation activate(@Nonnull ProjectConfigManager.Snapshot snapshot,
                                          @Nonnull Experiment experiment,
                                          @Nonnull String userId,
-                                         @Nonnull Map<String, String> attributes) {
+                                         @Nonnull Map<String, String> attributes,
+                                         @Nullable UserEvaluationContext context) {
+        ProjectConfig projectConfig = snapshot.getProjectConfig();
+        Bucketer bucketer = snapshot.getBucketer();
+        LogGuard logGuard = snapshot.getLogGuard();
+
         // determine whether all the given attributes are present in the project config. If not, filter out the unknown
         // attributes.
-        attributes = filterAttributes(projectConfig, attributes);
+        Map<String, Boolean> audienceEvaluations = null;
+        if (context == null) {
+            attributes = filterAttributes(projectConfig, attributes);
+        } else {
+            attributes = filterAttributes(projectConfig, context);
+            audienceEvaluations = context.getAudienceEvaluations(projectConfig);
+        }
 
-        if (!ProjectValidationUtils.validatePreconditions(projectConfig, experiment, userId, attributes)) {
-            logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experiment.getKey());
+        if (!ProjectValidationUtils.validatePreconditions(projectConfig, experiment, userId, attributes,
+                                                          audienceEvaluations, snapshot.getValidationLogGuard())) {
+            if (logGuard.isInfoEnabled()) {
+                logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experiment.getKey());
+            }
             return null;
         }
 
         // bucket the user to the given experiment and dispatch an impression event
         Variation variation = bucketer.bucket(experiment, userId);
         if (variation == null) {
-            logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experiment.getKey());
+            if (logGuard.isInfoEnabled()) {
+                logger.info("Not activating user \"{}\" for experiment \"{}\".", userId, experiment.getKey());
+            }
             return null;
         }
 
         LogEvent impressionEvent =
                 eventBuilder.createImpressionEvent(projectConfig, experiment, variation, userId, attributes);
-        logger.info("Activating user \"{}\" in experiment \"{}\".", userId, experiment.getKey());
-        logger.debug("Dispatching impression event to URL {} with params {}.", impressionEvent.getEndpointUrl(),
-                     impressionEvent.getRequestParams());
+        if (logGuard.isInfoEnabled()) {
+            logger.info("Activating user \"{}\" in experiment \"{}\".", userId, experiment.getKey());
+        }
+        if (logGuard.isDebugEnabled()) {
+            logger.debug("Dispatching impression event to URL {} with params {}.", impressionEvent.getEndpointUrl(),
+                         impressionEvent.getRequestParams());
+        }
         eventHandler.dispatchEvent(impressionEvent);
 
         return variation;
@@ -177,13 +223,22 @@ public class Optimizely {
 
     public void track(@Nonnull String eventName,
                       @Nonnull String userId) throws UnknownEventTypeException {
-        track(eventName, userId, Collections.<String, String>emptyMap(), null);
+        track(eventName, userId, Collections.<String, String>emptyMap(), null, null);
     }
 
     public void track(@Nonnull String eventName,
                       @Nonnull String userId,
                       @Nonnull Map<String, String> attributes) throws UnknownEventTypeException {
-        track(eventName, userId, attributes, null);
+        track(eventName, userId, attributes, null, null);
+    }
+
+    /**
+     * Tracks a conversion event, reusing the audience evaluations made for the user's context by earlier calls.
+     */
+    public void track(@Nonnull String eventName,
+                      @Nonnull String userId,
+                      @Nonnull UserEvaluationContext context) throws UnknownEventTypeException {
+        track(eventName, userId, context.getAttributes(), null, context);
     }
 
     public void track(@Nonnull String eventName,
@@ -196,48 +251,64 @@ public class Optimizely {
                       @Nonnull String userId,
                       @Nonnull Map<String, String> attributes,
                       long eventValue) throws UnknownEventTypeException {
-        track(eventName, userId, attributes, (Long)eventValue);
+        track(eventName, userId, attributes, (Long)eventValue, null);
+    }
+
+    public void track(@Nonnull String eventName,
+                      @Nonnull String userId,
+                      @Nonnull UserEvaluationContext context,
+                      long eventValue) throws UnknownEventTypeException {
+        track(eventName, userId, context.getAttributes(), (Long)eventValue, context);
     }
 
     private void track(@Nonnull String eventName,
                        @Nonnull String userId,
                        @Nonnull Map<String, String> attributes,
-                       @CheckForNull Long eventValue) throws UnknownEventTypeException {
+                       @CheckForNull Long eventValue,
+                       @Nullable UserEvaluationContext context) throws UnknownEventTypeException {
 
-        ProjectConfig currentConfig = getProjectConfig();
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        ProjectConfig currentConfig = snapshot.getProjectConfig();
+        Bucketer bucketer = snapshot.getBucketer();
+        LogGuard logGuard = snapshot.getLogGuard();
 
         EventType eventType = getEventTypeOrThrow(currentConfig, eventName);
         if (eventType == null) {
             // if no matching event type could be found, do not dispatch an event
-            logger.info("Not tracking event \"{}\" for user \"{}\".", eventName, userId);
+            if (logGuard.isInfoEnabled()) {
+                logger.info("Not tracking event \"{}\" for user \"{}\".", eventName, userId);
+            }
             return;
         }
 
         // determine whether all the given attributes are present in the project config. If not, filter out the unknown
         // attributes.
-        attributes = filterAttributes(currentConfig, attributes);
+        attributes = (context == null) ? filterAttributes(currentConfig, attributes)
+                                       : filterAttributes(currentConfig, context);
 
         // create the conversion event request parameters, then dispatch
-        LogEvent conversionEvent;
-        if (eventValue == null) {
-            conversionEvent = eventBuilder.createConversionEvent(currentConfig, bucketer, userId,
-                                                                 eventType.getId(), eventType.getKey(),
-                                                                 attributes);
-        } else {
-            conversionEvent = eventBuilder.createConversionEvent(currentConfig, bucketer, userId,
-                                                                 eventType.getId(), eventType.getKey(), attributes,
-                                                                 eventValue);
-        }
+        Map<String, Boolean> audienceEvaluations =
+                (context == null) ? null : context.getAudienceEvaluations(currentConfig);
+        LogEvent conversionEvent = eventBuilder.createConversionEvent(currentConfig, bucketer, userId,
+                                                                      eventType.getId(), eventType.getKey(),
+                                                                      attributes, eventValue, audienceEvaluations,
+                                                                      snapshot.getValidationLogGuard());
 
         if (conversionEvent == null) {
-            logger.info("There are no valid experiments for event \"{}\" to track.", eventName);
-            logger.info("Not tracking event \"{}\" for user \"{}\".", eventName, userId);
+            if (logGuard.isInfoEnabled()) {
+                logger.info("There are no valid experiments for event \"{}\" to track.", eventName);
+                logger.info("Not tracking event \"{}\" for user \"{}\".", eventName, userId);
+            }
             return;
         }
 
-        logger.info("Tracking event \"{}\" for user \"{}\".", eventName, userId);
-        logger.debug("Dispatching conversion event to URL {} with params {}.", conversionEvent.getEndpointUrl(),
-                     conversionEvent.getRequestParams());
+        if (logGuard.isInfoEnabled()) {
+            logger.info("Tracking event \"{}\" for user \"{}\".", eventName, userId);
+        }
+        if (logGuard.isDebugEnabled()) {
+            logger.debug("Dispatching conversion event to URL {} with params {}.", conversionEvent.getEndpointUrl(),
+                         conversionEvent.getRequestParams());
+        }
         eventHandler.dispatchEvent(conversionEvent);
     }
 
@@ -245,7 +316,7 @@ public class Optimizely {
 
     public @Nullable Variation getVariation(@Nonnull Experiment experiment,
                                             @Nonnull String userId) throws UnknownExperimentException {
-        return bucketer.bucket(experiment, userId);
+        return configManager.getSnapshot().getBucketer().bucket(experiment, userId);
     }
 
     public @Nullable Variation getVariation(@Nonnull String experimentKey,
@@ -262,7 +333,8 @@ public class Optimizely {
             return null;
         }
 
-        ProjectConfig currentConfig = getProjectConfig();
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        ProjectConfig currentConfig = snapshot.getProjectConfig();
 
         Experiment experiment = getExperimentOrThrow(currentConfig, experimentKey);
         if (experiment == null) {
@@ -270,34 +342,128 @@ public class Optimizely {
             return null;
         }
 
-        return getVariation(currentConfig, experiment, attributes, userId);
+        return getVariation(snapshot, currentConfig, experiment, attributes, userId);
+    }
+
+    /**
+     * Gets the variation a user would be activated in, reusing the audience evaluations made for the user's context
+     * by earlier calls. Unlike {@link #getVariation(String, String, Map)}, attributes that aren't in the datafile are
+     * dropped before audiences are evaluated, as they are by {@code activate}.
+     */
+    public @Nullable Variation getVariation(@Nonnull String experimentKey,
+                                            @Nonnull String userId,
+                                            @Nonnull UserEvaluationContext context) {
+
+        if (!validateUserId(userId)) {
+            return null;
+        }
+
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        ProjectConfig currentConfig = snapshot.getProjectConfig();
+
+        Experiment experiment = getExperimentOrThrow(currentConfig, experimentKey);
+        if (experiment == null) {
+            // if we're unable to retrieve the associated experiment, return null
+            return null;
+        }
+
+        Map<String, String> attributes = filterAttributes(currentConfig, context);
+        if (!ProjectValidationUtils.validatePreconditions(currentConfig, experiment, userId, attributes,
+                                                          context.getAudienceEvaluations(currentConfig),
+                                                          snapshot.getValidationLogGuard())) {
+            return null;
+        }
+
+        return snapshot.getBucketer().bucket(experiment, userId);
     }
 
     public @Nullable Variation getVariation(@Nonnull ProjectConfig projectConfig,
                                             @Nonnull Experiment experiment,
                                             @Nonnull Map<String, String> attributes,
                                             @Nonnull String userId) {
+        return getVariation(configManager.getSnapshot(), projectConfig, experiment, attributes, userId);
+    }
 
-        if (!ProjectValidationUtils.validatePreconditions(projectConfig, experiment, userId, attributes)) {
+    /**
+     * @param projectConfig the config to validate the experiment against, which may not be the snapshot's
+     */
+    private @Nullable Variation getVariation(@Nonnull ProjectConfigManager.Snapshot snapshot,
+                                             @Nonnull ProjectConfig projectConfig,
+                                             @Nonnull Experiment experiment,
+                                             @Nonnull Map<String, String> attributes,
+                                             @Nonnull String userId) {
+
+        if (!ProjectValidationUtils.validatePreconditions(projectConfig, experiment, userId, attributes, null,
+                                                          snapshot.getValidationLogGuard())) {
             return null;
         }
 
-        return bucketer.bucket(experiment, userId);
+        return snapshot.getBucketer().bucket(experiment, userId);
+    }
+
+    //======== getVariations calls ========//
+
+    public @Nonnull Map<String, Variation> getVariations(@Nonnull String userId) {
+        return getVariations(userId, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Gets the variation of every experiment in the project that the user is bucketed into, in a single pass.
+     * <p>
+     * This is equivalent to calling {@link #getVariation(String, String, Map)} for each experiment, but the user id
+     * is only validated once and mixed into the bucketing hash once, each audience is only evaluated once and
+     * mutually exclusive groups are only bucketed once per group. Only the experiments that the
+     * {@link com.optimizely.ab.config.audience.AudienceIndex} finds for the user's attributes are considered.
+     *
+     * @param userId the ID of the user
+     * @param attributes the attributes of the user
+     * @return the {@code experimentKey -> variation} mapping for the experiments the user is bucketed into
+     */
+    public @Nonnull Map<String, Variation> getVariations(@Nonnull String userId,
+                                                         @Nonnull Map<String, String> attributes) {
+
+        if (!validateUserId(userId)) {
+            return Collections.emptyMap();
+        }
+
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        ProjectConfig currentConfig = snapshot.getProjectConfig();
+
+        // only validate the experiments the user's attributes may make them eligible for
+        Map<String, Boolean> audienceEvaluations = new HashMap<String, Boolean>();
+        List<Experiment> experiments = currentConfig.getAudienceIndex().getCandidateExperiments(attributes);
+        List<Experiment> validExperiments = new ArrayList<Experiment>(experiments.size());
+        LogGuard validationLogGuard = snapshot.getValidationLogGuard();
+        for (Experiment experiment : experiments) {
+            if (ProjectValidationUtils.validatePreconditions(currentConfig, experiment, userId, attributes,
+                                                             audienceEvaluations, validationLogGuard)) {
+                validExperiments.add(experiment);
+            }
+        }
+
+        return snapshot.getBucketer().bucket(validExperiments, userId);
     }
 
     /**
      * @return the current {@link ProjectConfig} instance.
      */
     public @Nonnull ProjectConfig getProjectConfig() {
-        return projectConfig;
+        return configManager.getProjectConfig();
+    }
+
+    /**
+     * @return the manager of the current {@link ProjectConfig}, through which newer datafiles can be swapped in
+     */
+    public @Nonnull ProjectConfigManager getProjectConfigManager() {
+        return configManager;
     }
 
     /**
      * @return a {@link ProjectConfig} instance given a json string
      */
-    private static ProjectConfig getProjectConfig(String datafile) {
+    private static ProjectConfig getProjectConfig(String datafile, ConfigParser configParser) {
         //TODO(vignesh): add validation logic here
-        return DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+        return configParser.parseProjectConfig(datafile);
     }
 
     //======== Helper methods ========//
@@ -362,36 +528,61 @@ public class Optimizely {
 
     /**
      * Helper method to verify that the given attributes map contains only keys that are present in the
-     * {@link ProjectConfig}.
+     * {@link ProjectConfig}, and that have values.
      *
      * @param projectConfig the current project config
      * @param attributes the attributes map to validate and potentially filter
-     * @return the filtered attributes map (containing only attributes that are present in the project config)
+     * @return the filtered attributes (containing only attributes that are present in the project config, and whose
+     *         values aren't {@code null})
      *
      */
     private Map<String, String> filterAttributes(ProjectConfig projectConfig, Map<String, String> attributes) {
+        if (attributes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
         List<String> unknownAttributes = null;
+        List<String> nullAttributes = null;
 
-        Map<String, Attribute> attributeKeyMapping = projectConfig.getAttributeKeyMapping();
+        Map<String, Integer> attributeIndexMapping = projectConfig.getAttributeIndexMapping();
         for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-            if (!attributeKeyMapping.containsKey(attribute.getKey())) {
+            if (!attributeIndexMapping.containsKey(attribute.getKey())) {
                 if (unknownAttributes == null) {
                     unknownAttributes = new ArrayList<String>();
                 }
                 unknownAttributes.add(attribute.getKey());
+            } else if (attribute.getValue() == null) {
+                if (nullAttributes == null) {
+                    nullAttributes = new ArrayList<String>();
+                }
+                nullAttributes.add(attribute.getKey());
             }
         }
 
         if (unknownAttributes != null) {
             logger.warn("Attribute(s) {} not in the datafile.", unknownAttributes);
-            // make a copy of the passed through attributes, then remove the unknown list
-            attributes = new HashMap<String, String>(attributes);
-            for (String unknownAttribute : unknownAttributes) {
-                attributes.remove(unknownAttribute);
-            }
+        }
+        if (nullAttributes != null) {
+            logger.warn("Attribute(s) {} have null values and are ignored.", nullAttributes);
         }
 
-        return attributes;
+        // resolve the attributes against the config once, dropping the unknown ones, so that audience evaluation and
+        // event building can read them by index
+        return new OptimizelyUserAttributes(projectConfig, attributes);
+    }
+
+    /**
+     * Helper method to filter the attributes of a user's context, reusing the result of an earlier call made against
+     * the same project config.
+     */
+    private Map<String, String> filterAttributes(ProjectConfig projectConfig, UserEvaluationContext context) {
+        Map<String, String> filteredAttributes = context.getFilteredAttributes(projectConfig);
+        if (filteredAttributes == null) {
+            filteredAttributes = filterAttributes(projectConfig, context.getAttributes());
+            context.setFilteredAttributes(projectConfig, filteredAttributes);
+        }
+
+        return filteredAttributes;
     }
 
     /**
@@ -408,6 +599,15 @@ public class Optimizely {
 
         return true;
     }
+
+    /**
+     * @param decisionLogging how the decisions made by activate, track and getVariation calls are logged
+     * @return the guard to check before logging those decisions, which is built for each project config
+     */
+    static @Nonnull LogGuard getLogGuard(@Nonnull DecisionLogging decisionLogging) {
+        return decisionLogging.guard(logger);
+    }
+
     //======== Builder ========//
 
     public static Builder builder(@Nonnull String datafile,
@@ -415,6 +615,16 @@ public class Optimizely {
         return new Builder(datafile, eventHandler);
     }
 
+    /**
+     * Creates a builder for a config that's already been built, such as one
+     * {@link com.optimizely.ab.config.parser.BinaryConfigFormat#load(java.io.File) loaded} from a compiled datafile,
+     * so that no datafile is parsed.
+     */
+    public static Builder builder(@Nonnull ProjectConfig projectConfig,
+                                  @Nonnull EventHandler eventHandler) {
+        return new Builder(projectConfig, eventHandler);
+    }
+
     /**
      * {@link Optimizely} instance builder.
      * <p>
@@ -432,6 +642,8 @@ public class Optimizely {
         private EventHandler eventHandler;
         private EventBuilder eventBuilder;
         private ProjectConfig projectConfig;
+        private DecisionLogging decisionLogging = DecisionLogging.PER_CALL;
+        private ConfigParser configParser;
 
         public Builder(@Nonnull String datafile,
                        @Nonnull EventHandler eventHandler) {
@@ -439,6 +651,12 @@ public class Optimizely {
             this.eventHandler = eventHandler;
         }
 
+        public Builder(@Nonnull ProjectConfig projectConfig,
+                       @Nonnull EventHandler eventHandler) {
+            this.projectConfig = projectConfig;
+            this.eventHandler = eventHandler;
+        }
+
         public Builder withErrorHandler(ErrorHandler errorHandler) {
             this.errorHandler = errorHandler;
             return this;
@@ -449,6 +667,27 @@ public class Optimizely {
             return this;
         }
 
+        /**
+         * Sets how the debug and info logging of bucketing and activation decisions is guarded. Defaults to
+         * {@link DecisionLogging#PER_CALL}.
+         */
+        public Builder withDecisionLogging(DecisionLogging decisionLogging) {
+            this.decisionLogging = decisionLogging;
+            return this;
+        }
+
+        /**
+         * Sets the parser for the datafile, and for the datafiles the {@link ProjectConfigManager} is later updated
+         * with. Defaults to {@link DefaultConfigParser#getInstance()}.
+         * <p>
+         * {@link DefaultConfigParser#getBuiltInInstance()} parses a first datafile quickest, as it needs no json
+         * library.
+         */
+        public Builder withConfigParser(ConfigParser configParser) {
+            this.configParser = configParser;
+            return this;
+        }
+
         protected Builder withBucketing(Bucketer bucketer) {
             this.bucketer = bucketer;
             return this;
@@ -466,13 +705,21 @@ public class Optimizely {
         }
 
         public Optimizely build() {
+            if (configParser == null) {
+                configParser = DefaultConfigParser.getInstance();
+            }
+
             if (projectConfig == null) {
-                projectConfig = Optimizely.getProjectConfig(datafile);
+                projectConfig = Optimizely.getProjectConfig(datafile, configParser);
             }
 
             // use the default bucketer and event builder, if no overrides were provided
+            ProjectConfigManager configManager;
             if (bucketer == null) {
-                bucketer = new Bucketer(projectConfig, userExperimentRecord);
+                configManager = new ProjectConfigManager(projectConfig, userExperimentRecord, decisionLogging,
+                                                         configParser);
+            } else {
+                configManager = new ProjectConfigManager(bucketer, projectConfig, decisionLogging, configParser);
             }
 
             if (eventBuilder == null) {
@@ -483,7 +730,7 @@ public class Optimizely {
                 errorHandler = new NoOpErrorHandler();
             }
 
-            Optimizely optimizely = new Optimizely(projectConfig, bucketer, eventHandler, eventBuilder, errorHandler);
+            Optimizely optimizely = new Optimizely(configManager, eventHandler, eventBuilder, errorHandler);
             optimizely.initialize();
             return optimizely;
         }
@@ -0,0 +1,254 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import com.optimizely.ab.bucketing.Bucketer;
+import com.optimizely.ab.bucketing.UserExperimentRecord;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.config.parser.ConfigParser;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+import com.optimizely.ab.config.parser.ReconcilingConfigParser;
+import com.optimizely.ab.config.parser.StreamingConfigParser;
+import com.optimizely.ab.internal.DecisionLogging;
+import com.optimizely.ab.internal.LogGuard;
+import com.optimizely.ab.internal.ProjectValidationUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Holds the {@link ProjectConfig} an {@link Optimizely} instance makes decisions with, and swaps it for newer
+ * revisions of the datafile without rebuilding the client.
+ * <p>
+ * The config, and the {@link Bucketer} and decision log guards built for it, are published together as an immutable
+ * {@link Snapshot}, so that {@link DecisionLogging#PER_CONFIG} levels are looked up again for each config. Each
+ * {@code Optimizely} call reads the current snapshot once and uses it throughout, so calls in flight during an update
+ * see either the old config or the new one, never a mix. Reading the snapshot takes no locks; updates are serialized
+ * with each other.
+ * <p>
+ * New configs are reconciled against the current one with {@link ProjectConfigDiff}, so the experiments, groups and
+ * audiences a datafile revision didn't touch, and the programs and indexes compiled for them, are shared with the
+ * current snapshot rather than rebuilt. Datafiles are parsed against the current config when the parser is a
+ * {@link ReconcilingConfigParser}, as the default parsers are, so that the new config is only built once. Datafiles
+ * with the revision of the current config are parsed but not swapped in, so the current snapshot stays in use.
+ */
+@ThreadSafe
+public final class ProjectConfigManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectConfigManager.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Nullable private final UserExperimentRecord userExperimentRecord;
+    private final DecisionLogging decisionLogging;
+    private final ConfigParser configParser;
+
+    private final AtomicReference<Snapshot> snapshot;
+
+    public ProjectConfigManager(@Nonnull ProjectConfig projectConfig,
+                                @Nullable UserExperimentRecord userExperimentRecord,
+                                @Nonnull DecisionLogging decisionLogging) {
+        this(projectConfig, userExperimentRecord, decisionLogging, DefaultConfigParser.getInstance());
+    }
+
+    /**
+     * @param configParser the parser for the datafiles the manager is updated with
+     */
+    public ProjectConfigManager(@Nonnull ProjectConfig projectConfig,
+                                @Nullable UserExperimentRecord userExperimentRecord,
+                                @Nonnull DecisionLogging decisionLogging,
+                                @Nonnull ConfigParser configParser) {
+        this(new Bucketer(projectConfig, userExperimentRecord, decisionLogging), projectConfig, decisionLogging,
+             configParser);
+    }
+
+    /**
+     * Creates a manager whose first snapshot uses the given bucketer. Bucketers for later configs are built with
+     * the bucketer's user experiment record.
+     */
+    ProjectConfigManager(@Nonnull Bucketer bucketer,
+                         @Nonnull ProjectConfig projectConfig,
+                         @Nonnull DecisionLogging decisionLogging,
+                         @Nonnull ConfigParser configParser) {
+        this.userExperimentRecord = bucketer.getUserExperimentRecord();
+        this.decisionLogging = decisionLogging;
+        this.configParser = configParser;
+        this.snapshot = new AtomicReference<Snapshot>(newSnapshot(projectConfig, bucketer));
+    }
+
+    /**
+     * @return the current snapshot, to be used for the whole of a decision
+     */
+    public @Nonnull Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public @Nonnull ProjectConfig getProjectConfig() {
+        return snapshot.get().getProjectConfig();
+    }
+
+    /**
+     * Parses the datafile and, if its revision differs from the current config's, makes it the current config.
+     *
+     * @param datafile the datafile json
+     * @return whether the config was replaced
+     * @throws ConfigParseException when the datafile can't be parsed, in which case the current config is kept
+     */
+    public boolean update(@Nonnull String datafile) throws ConfigParseException {
+        if (configParser instanceof ReconcilingConfigParser) {
+            ProjectConfig currentConfig = getProjectConfig();
+            return replace(((ReconcilingConfigParser)configParser).parseProjectConfig(datafile, currentConfig), false);
+        }
+
+        return update(configParser.parseProjectConfig(datafile));
+    }
+
+    /**
+     * Parses the datafile as it's read and, if its revision differs from the current config's, makes it the current
+     * config.
+     * <p>
+     * Parsers that aren't a {@link StreamingConfigParser} are given the datafile once the whole of it has been read.
+     *
+     * @param datafile the UTF-8 encoded datafile json, which isn't closed
+     * @return whether the config was replaced
+     * @throws ConfigParseException when the datafile can't be read or parsed, in which case the current config is
+     *                              kept
+     */
+    public boolean update(@Nonnull InputStream datafile) throws ConfigParseException {
+        if (configParser instanceof ReconcilingConfigParser) {
+            ProjectConfig currentConfig = getProjectConfig();
+            return replace(((ReconcilingConfigParser)configParser).parseProjectConfig(datafile, currentConfig), false);
+        }
+        if (configParser instanceof StreamingConfigParser) {
+            return update(((StreamingConfigParser)configParser).parseProjectConfig(datafile));
+        }
+
+        return update(configParser.parseProjectConfig(read(datafile)));
+    }
+
+    /**
+     * Makes the given config the current config, unless it has the revision of the current config. The entities
+     * that are unchanged from the current config are carried over, so the current config may be a copy of the
+     * given one.
+     *
+     * @param projectConfig the new config
+     * @return whether the config was replaced
+     */
+    public boolean update(@Nonnull ProjectConfig projectConfig) {
+        return replace(projectConfig, true);
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * @param rebuild whether the config was built without reference to the current config, and so is rebuilt to
+     *                share its unchanged entities
+     */
+    private synchronized boolean replace(@Nonnull ProjectConfig projectConfig, boolean rebuild) {
+        ProjectConfig currentConfig = snapshot.get().getProjectConfig();
+        if (projectConfig.getRevision() != null && projectConfig.getRevision().equals(currentConfig.getRevision())) {
+            logger.debug("Project config is already at revision {}.", projectConfig.getRevision());
+            return false;
+        }
+
+        ProjectConfig newConfig = rebuild ? ProjectConfigDiff.rebuild(currentConfig, projectConfig) : projectConfig;
+        Bucketer bucketer = new Bucketer(newConfig, userExperimentRecord, decisionLogging);
+        snapshot.set(newSnapshot(newConfig, bucketer));
+        logger.info("Updated project config from revision {} to {}.", currentConfig.getRevision(),
+                    projectConfig.getRevision());
+        return true;
+    }
+
+    private Snapshot newSnapshot(@Nonnull ProjectConfig projectConfig, @Nonnull Bucketer bucketer) {
+        return new Snapshot(projectConfig, bucketer, Optimizely.getLogGuard(decisionLogging),
+                            ProjectValidationUtils.getLogGuard(decisionLogging));
+    }
+
+    private static String read(InputStream datafile) throws ConfigParseException {
+        try {
+            Reader reader = new InputStreamReader(datafile, UTF_8);
+            StringBuilder json = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                json.append(buffer, 0, read);
+            }
+            return json.toString();
+        } catch (IOException e) {
+            throw new ConfigParseException("unable to read project config", e);
+        }
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * A project config along with the bucketer and decision log guards built for it.
+     */
+    @Immutable
+    public static final class Snapshot {
+
+        private final ProjectConfig projectConfig;
+        private final Bucketer bucketer;
+        private final LogGuard logGuard;
+        private final LogGuard validationLogGuard;
+
+        Snapshot(@Nonnull ProjectConfig projectConfig,
+                 @Nonnull Bucketer bucketer,
+                 @Nonnull LogGuard logGuard,
+                 @Nonnull LogGuard validationLogGuard) {
+            this.projectConfig = projectConfig;
+            this.bucketer = bucketer;
+            this.logGuard = logGuard;
+            this.validationLogGuard = validationLogGuard;
+        }
+
+        public @Nonnull ProjectConfig getProjectConfig() {
+            return projectConfig;
+        }
+
+        public @Nonnull Bucketer getBucketer() {
+            return bucketer;
+        }
+
+        /**
+         * @return the guard for the decisions {@link Optimizely} logs
+         */
+        public @Nonnull LogGuard getLogGuard() {
+            return logGuard;
+        }
+
+        /**
+         * @return the guard for the decisions logged while validating experiment pre-conditions
+         */
+        public @Nonnull LogGuard getValidationLogGuard() {
+            return validationLogGuard;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import com.optimizely.ab.config.ProjectConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * The attributes of a user along with the audience evaluations made for them, to be passed to consecutive
+ * {@link Optimizely} calls made for the same user request.
+ * <p>
+ * Each audience is evaluated at most once per context, no matter how many experiments share it, or how many
+ * {@code activate}, {@code track} and {@code getVariation} calls the context is passed to. Attributes that aren't in
+ * the datafile are dropped once, as {@code activate} does, and the result is reused by later calls.
+ * <p>
+ * Results are tied to the project config they were made against, and are discarded if the context is used with a
+ * different one.
+ */
+@NotThreadSafe
+public final class UserEvaluationContext {
+
+    private final Map<String, String> attributes;
+
+    private ProjectConfig projectConfig;
+    private Map<String, String> filteredAttributes;
+    private final Map<String, Boolean> audienceEvaluations = new HashMap<String, Boolean>();
+
+    public UserEvaluationContext() {
+        this(Collections.<String, String>emptyMap());
+    }
+
+    public UserEvaluationContext(@Nonnull Map<String, String> attributes) {
+        this.attributes = attributes;
+    }
+
+    public @Nonnull Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the attributes filtered against the project config, or {@code null} if they haven't been yet
+     */
+    @CheckForNull Map<String, String> getFilteredAttributes(@Nonnull ProjectConfig projectConfig) {
+        bind(projectConfig);
+        return filteredAttributes;
+    }
+
+    void setFilteredAttributes(@Nonnull ProjectConfig projectConfig, @Nonnull Map<String, String> filteredAttributes) {
+        bind(projectConfig);
+        this.filteredAttributes = filteredAttributes;
+    }
+
+    /**
+     * @return the {@code audienceId -> result} evaluations made against the project config, to be added to
+     */
+    @Nonnull Map<String, Boolean> getAudienceEvaluations(@Nonnull ProjectConfig projectConfig) {
+        bind(projectConfig);
+        return audienceEvaluations;
+    }
+
+    private void bind(ProjectConfig projectConfig) {
+        if (this.projectConfig != projectConfig) {
+            this.projectConfig = projectConfig;
+            filteredAttributes = null;
+            audienceEvaluations.clear();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.bucketing.internal.MurmurHash3;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Hashes the bucket ids of one user, which all start with the user id, mixing the encoded user id into the hash
+ * state once rather than once per experiment or group.
+ */
+@NotThreadSafe
+final class BucketIdHasher {
+
+    /**
+     * The longest encoded experiment or group id appended to a user id in the hash buffer; longer ids are hashed as
+     * characters.
+     */
+    static final int MAX_SALT_BYTES = 64;
+
+    private byte[] buffer = new byte[64];
+
+    private String userId;
+    private boolean mixable;
+    private int userIdLength;
+    private int mixedLength;
+    private int mixedState;
+
+    void reset(@Nonnull String userId) {
+        this.userId = userId;
+
+        // a user id ending in a surrogate would be encoded together with the first character of the salt, so
+        // those are hashed as characters
+        int length = userId.length();
+        char last = (length == 0) ? 0 : userId.charAt(length - 1);
+        mixable = last < Character.MIN_SURROGATE || last > Character.MAX_SURROGATE;
+        if (!mixable) {
+            return;
+        }
+
+        if (buffer.length < length * 3 + MAX_SALT_BYTES) {
+            buffer = new byte[length * 3 + MAX_SALT_BYTES];
+        }
+        userIdLength = MurmurHash3.encodeUtf8(userId, buffer, 0);
+        mixedLength = userIdLength & 0xfffffffc;
+        mixedState = MurmurHash3.mixBlocks(Bucketer.MURMUR_HASH_SEED, buffer, 0, userIdLength);
+    }
+
+    /**
+     * @param salt the experiment or group id
+     * @param saltBytes the UTF-8 encoding of the salt
+     * @return the hash of the bucket id of the user for the salt
+     */
+    int hash(@Nonnull String salt, @Nonnull byte[] saltBytes) {
+        if (!mixable || saltBytes.length > MAX_SALT_BYTES) {
+            return MurmurHash3.murmurhash3_x86_32(userId, salt, Bucketer.MURMUR_HASH_SEED);
+        }
+
+        System.arraycopy(saltBytes, 0, buffer, userIdLength, saltBytes.length);
+        return MurmurHash3.murmurhash3_x86_32(mixedState, mixedLength, buffer, 0, userIdLength + saltBytes.length);
+    }
+
+    /**
+     * Same as {@link #hash(String, byte[])}, but encodes the salt into the hash buffer itself.
+     */
+    int hash(@Nonnull String salt) {
+        if (!mixable || salt.length() * 3 > MAX_SALT_BYTES) {
+            return MurmurHash3.murmurhash3_x86_32(userId, salt, Bucketer.MURMUR_HASH_SEED);
+        }
+
+        int saltLength = MurmurHash3.encodeUtf8(salt, buffer, userIdLength);
+        return MurmurHash3.murmurhash3_x86_32(mixedState, mixedLength, buffer, 0, userIdLength + saltLength);
+    }
+}
@@ -21,11 +21,14 @@ import com.optimizely.ab.bucketing.internal.MurmurHash3;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.ProjectConfig;
-import com.optimizely.ab.config.TrafficAllocation;
 import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.internal.DecisionLogging;
+import com.optimizely.ab.internal.LogGuard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -49,9 +52,11 @@ public class Bucketer {
 
     @Nullable private final UserExperimentRecord userExperimentRecord;
 
+    private final LogGuard logGuard;
+
     private static final Logger logger = LoggerFactory.getLogger(Bucketer.class);
 
-    private static final int MURMUR_HASH_SEED = 1;
+    static final int MURMUR_HASH_SEED = 1;
 
     /**
      * The maximum bucket value (represents 100 Basis Points).
@@ -64,93 +69,86 @@ public class Bucketer {
     }
 
     public Bucketer(ProjectConfig projectConfig, @Nullable UserExperimentRecord userExperimentRecord) {
-        this.projectConfig = projectConfig;
-        this.userExperimentRecord = userExperimentRecord;
+        this(projectConfig, userExperimentRecord, DecisionLogging.PER_CALL);
     }
 
-    private String bucketToEntity(int bucketValue, List<TrafficAllocation> trafficAllocations) {
-        int currentEndOfRange;
-        for (TrafficAllocation currAllocation : trafficAllocations) {
-            currentEndOfRange = currAllocation.getEndOfRange();
-            if (bucketValue < currentEndOfRange) {
-                // for mutually exclusive bucketing, de-allocated space is represented by an empty string
-                if (currAllocation.getEntityId().isEmpty()) {
-                    return null;
-                }
-                return currAllocation.getEntityId();
-            }
-        }
-
-        return null;
+    public Bucketer(ProjectConfig projectConfig, @Nullable UserExperimentRecord userExperimentRecord,
+                    DecisionLogging decisionLogging) {
+        this.projectConfig = projectConfig;
+        this.userExperimentRecord = userExperimentRecord;
+        this.logGuard = decisionLogging.guard(logger);
     }
 
     private Experiment bucketToExperiment(@Nonnull Group group,
-                                          @Nonnull String userId) {
+                                          @Nonnull String userId,
+                                          @Nullable BucketIdHasher hasher) {
         // "salt" the bucket id using the group id
-        String bucketId = userId + group.getId();
-
-        List<TrafficAllocation> trafficAllocations = group.getTrafficAllocation();
-
-        int hashCode = MurmurHash3.murmurhash3_x86_32(bucketId, 0, bucketId.length(), MURMUR_HASH_SEED);
+        int hashCode = (hasher != null) ? hasher.hash(group.getId())
+                                        : MurmurHash3.murmurhash3_x86_32(userId, group.getId(), MURMUR_HASH_SEED);
         int bucketValue = generateBucketValue(hashCode);
-        logger.debug("Assigned bucket {} to user \"{}\" during experiment bucketing.", bucketValue, userId);
+        if (logGuard.isDebugEnabled()) {
+            logger.debug("Assigned bucket {} to user \"{}\" during experiment bucketing.", bucketValue, userId);
+        }
 
-        String bucketedExperimentId = bucketToEntity(bucketValue, trafficAllocations);
-        if (bucketedExperimentId != null) {
-            return projectConfig.getExperimentIdMapping().get(bucketedExperimentId);
+        Experiment bucketedExperiment = group.getBucketingPlan().bucket(bucketValue);
+        if (bucketedExperiment != null) {
+            return bucketedExperiment;
         }
 
         // user was not bucketed to an experiment in the group
-        logger.info("User \"{}\" is not in any experiment of group {}.", userId, group.getId());
+        if (logGuard.isInfoEnabled()) {
+            logger.info("User \"{}\" is not in any experiment of group {}.", userId, group.getId());
+        }
         return null;
     }
 
     private Variation bucketToVariation(@Nonnull Experiment experiment,
-                                        @Nonnull String userId) {
-        // "salt" the bucket id using the experiment id
-        String experimentId = experiment.getId();
+                                        @Nonnull String userId,
+                                        @Nullable BucketIdHasher hasher) {
         String experimentKey = experiment.getKey();
-        String combinedBucketId = userId + experimentId;
 
         // If a user experiment record instance is present then check it for a saved variation
         if (userExperimentRecord != null) {
             String variationKey = userExperimentRecord.lookup(userId, experimentKey);
             if (variationKey != null) {
-                logger.info("Returning previously activated variation \"{}\" of experiment \"{}\" "
-                            + "for user \"{}\" from user experiment record.",
-                            variationKey, experimentKey, userId);
+                if (logGuard.isInfoEnabled()) {
+                    logger.info("Returning previously activated variation \"{}\" of experiment \"{}\" "
+                                + "for user \"{}\" from user experiment record.",
+                                variationKey, experimentKey, userId);
+                }
                 // A variation is stored for this combined bucket id
-                return projectConfig
-                    .getExperimentIdMapping()
-                    .get(experimentId)
-                    .getVariationKeyToVariationMap()
-                    .get(variationKey);
-            } else {
+                return experiment.getVariationKeyToVariationMap().get(variationKey);
+            } else if (logGuard.isInfoEnabled()) {
                 logger.info("No previously activated variation of experiment \"{}\" "
                             + "for user \"{}\" found in user experiment record.",
                             experimentKey, userId);
             }
         }
 
-        List<TrafficAllocation> trafficAllocations = experiment.getTrafficAllocation();
-
-        int hashCode = MurmurHash3.murmurhash3_x86_32(combinedBucketId, 0, combinedBucketId.length(), MURMUR_HASH_SEED);
+        // "salt" the bucket id using the experiment id
+        int hashCode = (hasher != null) ? hasher.hash(experiment.getId())
+                                        : MurmurHash3.murmurhash3_x86_32(userId, experiment.getId(), MURMUR_HASH_SEED);
         int bucketValue = generateBucketValue(hashCode);
-        logger.debug("Assigned bucket {} to user \"{}\" during variation bucketing.", bucketValue, userId);
+        if (logGuard.isDebugEnabled()) {
+            logger.debug("Assigned bucket {} to user \"{}\" during variation bucketing.", bucketValue, userId);
+        }
 
-        String bucketedVariationId = bucketToEntity(bucketValue, trafficAllocations);
-        if (bucketedVariationId != null) {
-            Variation bucketedVariation = experiment.getVariationIdToVariationMap().get(bucketedVariationId);
+        Variation bucketedVariation = experiment.getBucketingPlan().bucket(bucketValue);
+        if (bucketedVariation != null) {
             String variationKey = bucketedVariation.getKey();
+            if (logGuard.isInfoEnabled()) {
                 logger.info("User \"{}\" is in variation \"{}\" of experiment \"{}\".", userId, variationKey,
-                        experimentKey);
+                            experimentKey);
+            }
 
             // If a user experiment record is present give it a variation to store
             if (userExperimentRecord != null) {
                 boolean saved = userExperimentRecord.save(userId, experiment.getKey(), variationKey);
                 if (saved) {
-                    logger.info("Saved variation \"{}\" of experiment \"{}\" for user \"{}\".",
-                                variationKey, experimentKey, userId);
+                    if (logGuard.isInfoEnabled()) {
+                        logger.info("Saved variation \"{}\" of experiment \"{}\" for user \"{}\".",
+                                    variationKey, experimentKey, userId);
+                    }
                 } else {
                     logger.warn("Failed to save variation \"{}\" of experiment \"{}\" for user \"{}\".",
                                 variationKey, experimentKey, userId);
@@ -161,12 +159,54 @@ public class Bucketer {
         }
 
         // user was not bucketed to a variation
-        logger.info("User \"{}\" is not in any variation of experiment \"{}\".", userId, experimentKey);
+        if (logGuard.isInfoEnabled()) {
+            logger.info("User \"{}\" is not in any variation of experiment \"{}\".", userId, experimentKey);
+        }
         return null;
     }
 
     public @Nullable Variation bucket(@Nonnull Experiment experiment,
                                       @Nonnull String userId) {
+        return bucket(experiment, userId, null, null);
+    }
+
+    /**
+     * Buckets a user into each of the given experiments in a single pass.
+     * <p>
+     * This is equivalent to calling {@link #bucket(Experiment, String)} for each experiment, except that the user is
+     * only bucketed into an experiment of a mutually exclusive group once per group, and the user id is only encoded
+     * and mixed into the bucketing hash once.
+     *
+     * @param experiments the experiments to bucket the user into
+     * @param userId the ID of the user
+     * @return the {@code experimentKey -> variation} mapping for the experiments the user was bucketed into, in the
+     * order of the given experiments
+     */
+    public @Nonnull Map<String, Variation> bucket(@Nonnull List<Experiment> experiments,
+                                                  @Nonnull String userId) {
+        Map<Group, Experiment> groupBucketingResults = new HashMap<Group, Experiment>();
+        Map<String, Variation> variations = new LinkedHashMap<String, Variation>(experiments.size() * 2);
+        BucketIdHasher hasher = new BucketIdHasher();
+        hasher.reset(userId);
+        for (Experiment experiment : experiments) {
+            Variation variation = bucket(experiment, userId, groupBucketingResults, hasher);
+            if (variation != null) {
+                variations.put(experiment.getKey(), variation);
+            }
+        }
+
+        return variations;
+    }
+
+    /**
+     * @param groupBucketingResults the {@code group -> experiment} bucketing results made so far for the user, which
+     *                              will be added to, or {@code null} to not reuse group bucketing results
+     * @param hasher the hasher reset for the user, or {@code null} to hash each bucket id in full
+     */
+    private @Nullable Variation bucket(@Nonnull Experiment experiment,
+                                       @Nonnull String userId,
+                                       @Nullable Map<Group, Experiment> groupBucketingResults,
+                                       @Nullable BucketIdHasher hasher) {
 
         // if a user has a forced variation mapping, return the respective variation
         Map<String, String> userIdToVariationKeyMap = experiment.getUserIdToVariationKeyMap();
@@ -174,7 +214,9 @@ public class Bucketer {
             String forcedVariationKey = userIdToVariationKeyMap.get(userId);
             Variation forcedVariation = experiment.getVariationKeyToVariationMap().get(forcedVariationKey);
             if (forcedVariation != null) {
-                logger.info("User \"{}\" is forced in variation \"{}\".", userId, forcedVariationKey);
+                if (logGuard.isInfoEnabled()) {
+                    logger.info("User \"{}\" is forced in variation \"{}\".", userId, forcedVariationKey);
+                }
             } else {
                 logger.error("Variation \"{}\" is not in the datafile. Not activating user \"{}\".", forcedVariationKey,
                              userId);
@@ -189,24 +231,36 @@ public class Bucketer {
             Group experimentGroup = projectConfig.getGroupIdMapping().get(groupId);
             // bucket to an experiment only if group entities are to be mutually exclusive
             if (experimentGroup.getPolicy().equals(Group.RANDOM_POLICY)) {
-                Experiment bucketedExperiment = bucketToExperiment(experimentGroup, userId);
+                Experiment bucketedExperiment;
+                if (groupBucketingResults != null && groupBucketingResults.containsKey(experimentGroup)) {
+                    bucketedExperiment = groupBucketingResults.get(experimentGroup);
+                } else {
+                    bucketedExperiment = bucketToExperiment(experimentGroup, userId, hasher);
+                    if (groupBucketingResults != null) {
+                        groupBucketingResults.put(experimentGroup, bucketedExperiment);
+                    }
+                }
                 if (bucketedExperiment == null) {
                     return null;
                 }
                 // if the experiment a user is bucketed in within a group isn't the same as the experiment provided,
                 // don't perform further bucketing within the experiment
                 if (!bucketedExperiment.getId().equals(experiment.getId())) {
-                    logger.info("User \"{}\" is not in experiment \"{}\" of group {}.", userId, experiment.getKey(),
-                                experimentGroup.getId());
+                    if (logGuard.isInfoEnabled()) {
+                        logger.info("User \"{}\" is not in experiment \"{}\" of group {}.", userId,
+                                    experiment.getKey(), experimentGroup.getId());
+                    }
                     return null;
                 }
 
-                logger.info("User \"{}\" is in experiment \"{}\" of group {}.", userId, experiment.getKey(),
-                            experimentGroup.getId());
+                if (logGuard.isInfoEnabled()) {
+                    logger.info("User \"{}\" is in experiment \"{}\" of group {}.", userId, experiment.getKey(),
+                                experimentGroup.getId());
+                }
             }
         }
 
-        return bucketToVariation(experiment, userId);
+        return bucketToVariation(experiment, userId, hasher);
     }
 
     //======== Helper methods ========//
@@ -218,9 +272,14 @@ public class Bucketer {
      */
     @VisibleForTesting
     int generateBucketValue(int hashCode) {
-        // map the hashCode into the range [0, BucketAlgorithm.MAX_TRAFFIC_VALUE)
-        double ratio = (double)(hashCode & 0xFFFFFFFFL) / Math.pow(2, 32);
-        return (int)Math.floor(MAX_TRAFFIC_VALUE * ratio);
+        return toBucketValue(hashCode);
+    }
+
+    static int toBucketValue(int hashCode) {
+        // map the hashCode into the range [0, BucketAlgorithm.MAX_TRAFFIC_VALUE). This is floor(value * ratio) in
+        // 32.32 fixed point, which is exact as the product of an unsigned 32-bit hash and MAX_TRAFFIC_VALUE fits in
+        // a long.
+        return (int)(((hashCode & 0xFFFFFFFFL) * MAX_TRAFFIC_VALUE) >>> 32);
     }
 
     @Nullable
@@ -0,0 +1,328 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.bucketing.internal.MurmurHash3;
+import com.optimizely.ab.config.BucketingPlan;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Variation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Buckets many users at once for offline workloads, such as re-deriving the assignments of historical users when
+ * auditing an experiment.
+ * <p>
+ * Assignments match those of {@link Bucketer#bucket(Experiment, String)}, including forced variations and mutually
+ * exclusive groups, but aren't logged and don't consult or update a {@link UserExperimentRecord}. Results are
+ * returned as {@code int[]} columns holding, for each user, the index of the assigned variation in
+ * {@link Experiment#getVariations()}, or {@link #NOT_BUCKETED}.
+ * <p>
+ * If an {@link ExecutorService} is provided, large batches are split into contiguous ranges of users that are
+ * bucketed concurrently. The executor is owned by the caller and isn't shut down by this class.
+ */
+@Immutable
+public class BulkBucketer {
+
+    /**
+     * The variation index assigned to a user that isn't bucketed into any variation of an experiment.
+     */
+    public static final int NOT_BUCKETED = -1;
+
+    /**
+     * The smallest number of users worth handing to a separate task.
+     */
+    private static final int MIN_USERS_PER_TASK = 4096;
+
+    private final ProjectConfig projectConfig;
+
+    @Nullable private final ExecutorService executor;
+    private final int parallelism;
+
+    /**
+     * Creates a bulk bucketer that buckets users on the calling thread.
+     */
+    public BulkBucketer(@Nonnull ProjectConfig projectConfig) {
+        this(projectConfig, null, 1);
+    }
+
+    /**
+     * @param projectConfig the project config that experiment groups are resolved against
+     * @param executor the executor to bucket ranges of users on, or {@code null} to bucket on the calling thread
+     * @param parallelism the maximum number of ranges a batch of users is split into
+     */
+    public BulkBucketer(@Nonnull ProjectConfig projectConfig,
+                        @Nullable ExecutorService executor,
+                        int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive, was " + parallelism);
+        }
+
+        this.projectConfig = projectConfig;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Buckets each of the given users into an experiment.
+     *
+     * @param experiment the experiment to bucket the users into
+     * @param userIds the IDs of the users
+     * @return the variation index assigned to each user, in the order of the given users
+     */
+    public @Nonnull int[] bucket(@Nonnull Experiment experiment,
+                                 @Nonnull String[] userIds) {
+        return bucket(Collections.singletonList(experiment), userIds)[0];
+    }
+
+    /**
+     * Buckets each of the given users into every experiment of the project config.
+     *
+     * @param userIds the IDs of the users
+     * @return one column of variation indices per experiment, in the order of {@link ProjectConfig#getExperiments()}
+     */
+    public @Nonnull int[][] bucket(@Nonnull String[] userIds) {
+        return bucket(projectConfig.getExperiments(), userIds);
+    }
+
+    /**
+     * Buckets each of the given users into each of the given experiments.
+     *
+     * @param experiments the experiments to bucket the users into
+     * @param userIds the IDs of the users
+     * @return one column of variation indices per experiment, in the order of the given experiments
+     */
+    public @Nonnull int[][] bucket(@Nonnull List<Experiment> experiments,
+                                   @Nonnull String[] userIds) {
+        final BucketingJob job = new BucketingJob(experiments, userIds);
+
+        int taskCount = Math.min(parallelism, userIds.length / MIN_USERS_PER_TASK);
+        if (executor == null || taskCount < 2) {
+            job.run(0, userIds.length);
+            return job.results;
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(taskCount);
+        try {
+            for (int task = 0; task < taskCount; task++) {
+                final int from = (int)((long)userIds.length * task / taskCount);
+                final int to = (int)((long)userIds.length * (task + 1) / taskCount);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        job.run(from, to);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while bucketing users", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IllegalStateException("unable to bucket users", cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return job.results;
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * The experiments of a single call compiled to work on variation indices, along with the result columns that
+     * ranges of users are written to.
+     */
+    private final class BucketingJob {
+
+        private final String[] userIds;
+        private final int[][] results;
+
+        private final String[] experimentIds;
+        private final byte[][] experimentIdBytes;
+        private final List<BucketingPlan<Integer>> variationPlans;
+        private final List<Map<String, Integer>> forcedVariations;
+        // index into groupIds for experiments of mutually exclusive groups, otherwise -1
+        private final int[] groupIndices;
+
+        private final String[] groupIds;
+        private final byte[][] groupIdBytes;
+        private final List<BucketingPlan<Experiment>> groupPlans;
+
+        BucketingJob(List<Experiment> experiments, String[] userIds) {
+            this.userIds = userIds;
+            this.results = new int[experiments.size()][userIds.length];
+
+            int experimentCount = experiments.size();
+            experimentIds = new String[experimentCount];
+            experimentIdBytes = new byte[experimentCount][];
+            variationPlans = new ArrayList<BucketingPlan<Integer>>(experimentCount);
+            forcedVariations = new ArrayList<Map<String, Integer>>(experimentCount);
+            groupIndices = new int[experimentCount];
+
+            List<Group> groups = new ArrayList<Group>();
+            for (int i = 0; i < experimentCount; i++) {
+                Experiment experiment = experiments.get(i);
+                Map<String, Integer> variationIndices = new HashMap<String, Integer>();
+                Map<String, Integer> variationKeyIndices = new HashMap<String, Integer>();
+                List<Variation> variations = experiment.getVariations();
+                for (int index = 0; index < variations.size(); index++) {
+                    variationIndices.put(variations.get(index).getId(), index);
+                    variationKeyIndices.put(variations.get(index).getKey(), index);
+                }
+
+                experimentIds[i] = experiment.getId();
+                experimentIdBytes[i] = encodeUtf8(experiment.getId());
+                variationPlans.add(BucketingPlan.compile(experiment.getTrafficAllocation(), variationIndices));
+                forcedVariations.add(compileForcedVariations(experiment, variationKeyIndices));
+
+                Group group = getExclusiveGroup(experiment);
+                if (group == null) {
+                    groupIndices[i] = -1;
+                } else {
+                    int groupIndex = groups.indexOf(group);
+                    if (groupIndex < 0) {
+                        groupIndex = groups.size();
+                        groups.add(group);
+                    }
+                    groupIndices[i] = groupIndex;
+                }
+            }
+
+            groupIds = new String[groups.size()];
+            groupIdBytes = new byte[groups.size()][];
+            groupPlans = new ArrayList<BucketingPlan<Experiment>>(groups.size());
+            for (int i = 0; i < groups.size(); i++) {
+                groupIds[i] = groups.get(i).getId();
+                groupIdBytes[i] = encodeUtf8(groups.get(i).getId());
+                groupPlans.add(groups.get(i).getBucketingPlan());
+            }
+        }
+
+        /**
+         * Buckets the users in the range {@code [from, to)} into every experiment.
+         */
+        void run(int from, int to) {
+            BucketIdHasher hasher = new BucketIdHasher();
+            Experiment[] groupExperiments = new Experiment[groupIds.length];
+            for (int user = from; user < to; user++) {
+                String userId = userIds[user];
+                hasher.reset(userId);
+                for (int group = 0; group < groupIds.length; group++) {
+                    int hashCode = hasher.hash(groupIds[group], groupIdBytes[group]);
+                    groupExperiments[group] = groupPlans.get(group).bucket(Bucketer.toBucketValue(hashCode));
+                }
+
+                for (int experiment = 0; experiment < experimentIds.length; experiment++) {
+                    results[experiment][user] = bucket(experiment, userId, hasher, groupExperiments);
+                }
+            }
+        }
+
+        private int bucket(int experiment, String userId, BucketIdHasher hasher, Experiment[] groupExperiments) {
+            Map<String, Integer> forced = forcedVariations.get(experiment);
+            if (!forced.isEmpty() && forced.containsKey(userId)) {
+                return forced.get(userId);
+            }
+
+            int group = groupIndices[experiment];
+            if (group >= 0) {
+                Experiment groupExperiment = groupExperiments[group];
+                if (groupExperiment == null || !groupExperiment.getId().equals(experimentIds[experiment])) {
+                    return NOT_BUCKETED;
+                }
+            }
+
+            int hashCode = hasher.hash(experimentIds[experiment], experimentIdBytes[experiment]);
+            Integer variation = variationPlans.get(experiment).bucket(Bucketer.toBucketValue(hashCode));
+            return (variation == null) ? NOT_BUCKETED : variation;
+        }
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * @return the {@code userId -> variationIndex} mapping of the experiment's forced variations, where a variation
+     * missing from the experiment is mapped to {@link #NOT_BUCKETED}
+     */
+    private static Map<String, Integer> compileForcedVariations(Experiment experiment,
+                                                                Map<String, Integer> variationKeyIndices) {
+        Map<String, String> userIdToVariationKeyMap = experiment.getUserIdToVariationKeyMap();
+        if (userIdToVariationKeyMap.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> forcedVariations = new HashMap<String, Integer>();
+        for (Map.Entry<String, String> entry : userIdToVariationKeyMap.entrySet()) {
+            Integer variationIndex = variationKeyIndices.get(entry.getValue());
+            forcedVariations.put(entry.getKey(), (variationIndex == null) ? NOT_BUCKETED : variationIndex);
+        }
+
+        return forcedVariations;
+    }
+
+    private static byte[] encodeUtf8(String id) {
+        byte[] buffer = new byte[id.length() * 3];
+        return Arrays.copyOf(buffer, MurmurHash3.encodeUtf8(id, buffer, 0));
+    }
+
+    /**
+     * @return the group the experiment belongs to if its experiments are mutually exclusive, otherwise {@code null}
+     */
+    private @CheckForNull Group getExclusiveGroup(Experiment experiment) {
+        String groupId = experiment.getGroupId();
+        if (groupId.isEmpty()) {
+            return null;
+        }
+
+        Group group = projectConfig.getGroupIdMapping().get(groupId);
+        if (!group.getPolicy().equals(Group.RANDOM_POLICY)) {
+            return null;
+        }
+
+        return group;
+    }
+}
@@ -41,6 +41,8 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  *    <li>removed 128-bit implementation, as we don't need it</li>
  *    <li>findbugs fixes</li>
  *    <li>added private constructor</li>
+ *    <li>added a two-segment {@code CharSequence} variant</li>
+ *    <li>added a {@code byte[]} variant that resumes from a mixed prefix, and the matching UTF-8 encoder</li>
  *  </ul>
  */
 public final class MurmurHash3 {
@@ -239,4 +241,231 @@ public final class MurmurHash3 {
 
         return h1;
     }
-}
\ No newline at end of file
+
+    /**
+     * Hashes the concatenation of two character sequences without materializing it, producing the same value as
+     * {@code murmurhash3_x86_32(data1.toString() + data2, 0, data1.length() + data2.length(), seed)}.
+     * <p>
+     * A surrogate pair split across the two sequences is encoded as a single code point, as it would be in the
+     * concatenated string.
+     *
+     * @param data1 the leading data
+     * @param data2 the trailing data
+     * @param seed the murmur hash seed
+     * @return the MurmurHash3_x86_32 hash of the UTF-8 bytes of {@code data1} followed by {@code data2}
+     */
+    public static int murmurhash3_x86_32(CharSequence data1, CharSequence data2, int seed) {
+
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+
+        int h1 = seed;
+
+        int len1 = data1.length();
+        int pos = 0;
+        int end = len1 + data2.length();
+        int k1 = 0;
+        int k2;
+        int shift = 0;
+        int bits;
+        int nBytes = 0;   // length in UTF8 bytes
+
+        while (pos < end) {
+            int code = charAt(data1, data2, len1, pos++);
+            if (code < 0x80) {
+                k2 = code;
+                bits = 8;
+            }
+            else if (code < 0x800) {
+                k2 = (0xC0 | (code >> 6))
+                     | ((0x80 | (code & 0x3F)) << 8);
+                bits = 16;
+            }
+            else if (code < 0xD800 || code > 0xDFFF || pos>=end) {
+                // we check for pos>=end to encode an unpaired surrogate as 3 bytes.
+                k2 = (0xE0 | (code >> 12))
+                     | ((0x80 | ((code >> 6) & 0x3F)) << 8)
+                     | ((0x80 | (code & 0x3F)) << 16);
+                bits = 24;
+            } else {
+                // surrogate pair
+                int utf32 = charAt(data1, data2, len1, pos++);
+                utf32 = ((code - 0xD7C0) << 10) + (utf32 & 0x3FF);
+                k2 = (0xff & (0xF0 | (utf32 >> 18)))
+                     | ((0x80 | ((utf32 >> 12) & 0x3F))) << 8
+                     | ((0x80 | ((utf32 >> 6) & 0x3F))) << 16
+                     |  (0x80 | (utf32 & 0x3F)) << 24;
+                bits = 32;
+            }
+
+            k1 |= k2 << shift;
+
+            shift += bits;
+            if (shift >= 32) {
+                // mix after we have a complete word
+
+                k1 *= c1;
+                k1 = (k1 << 15) | (k1 >>> 17);  // ROTL32(k1,15);
+                k1 *= c2;
+
+                h1 ^= k1;
+                h1 = (h1 << 13) | (h1 >>> 19);  // ROTL32(h1,13);
+                h1 = h1*5+0xe6546b64;
+
+                shift -= 32;
+                // unfortunately, java won't let you shift 32 bits off, so we need to check for 0
+                if (shift != 0) {
+                    k1 = k2 >>> (bits-shift);   // bits used == bits - newshift
+                } else {
+                    k1 = 0;
+                }
+                nBytes += 4;
+            }
+
+        } // inner
+
+        // handle tail
+        if (shift > 0) {
+            nBytes += shift >> 3;
+            k1 *= c1;
+            k1 = (k1 << 15) | (k1 >>> 17);  // ROTL32(k1,15);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        // finalization
+        h1 ^= nBytes;
+
+        // fmix(h1);
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+
+        return h1;
+    }
+
+    /**
+     * Encodes a character sequence as the UTF-8 bytes that the {@code CharSequence} variants hash, including their
+     * handling of unpaired surrogates.
+     *
+     * @param data the origin data
+     * @param dest the buffer to encode into, which must have room for 3 bytes per character
+     * @param offset the offset into the buffer
+     * @return the number of bytes written
+     */
+    public static int encodeUtf8(CharSequence data, byte[] dest, int offset) {
+        int pos = 0;
+        int end = data.length();
+        int out = offset;
+        while (pos < end) {
+            int code = data.charAt(pos++);
+            if (code < 0x80) {
+                dest[out++] = (byte) code;
+            }
+            else if (code < 0x800) {
+                dest[out++] = (byte) (0xC0 | (code >> 6));
+                dest[out++] = (byte) (0x80 | (code & 0x3F));
+            }
+            else if (code < 0xD800 || code > 0xDFFF || pos>=end) {
+                // we check for pos>=end to encode an unpaired surrogate as 3 bytes.
+                dest[out++] = (byte) (0xE0 | (code >> 12));
+                dest[out++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                dest[out++] = (byte) (0x80 | (code & 0x3F));
+            } else {
+                // surrogate pair
+                int utf32 = (int) data.charAt(pos++);
+                utf32 = ((code - 0xD7C0) << 10) + (utf32 & 0x3FF);
+                dest[out++] = (byte) (0xF0 | (utf32 >> 18));
+                dest[out++] = (byte) (0x80 | ((utf32 >> 12) & 0x3F));
+                dest[out++] = (byte) (0x80 | ((utf32 >> 6) & 0x3F));
+                dest[out++] = (byte) (0x80 | (utf32 & 0x3F));
+            }
+        }
+
+        return out - offset;
+    }
+
+    /**
+     * Mixes the whole 4 byte blocks of the data into the hash state, so that a prefix shared by several inputs is
+     * only mixed once. The returned state is passed to {@link #murmurhash3_x86_32(int, int, byte[], int, int)}
+     * along with the number of bytes mixed, {@code len & 0xfffffffc}.
+     *
+     * @param h1 the hash state, initially the murmur hash seed
+     * @param data the origin data
+     * @param offset the offset into the data array
+     * @param len the length of the data array to use
+     * @return the hash state after mixing the whole blocks of the data
+     */
+    public static int mixBlocks(int h1, byte[] data, int offset, int len) {
+
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+
+        int roundedEnd = offset + (len & 0xfffffffc);  // round down to 4 byte block
+
+        for (int i=offset; i<roundedEnd; i+=4) {
+            // little endian load order
+            int k1 = (data[i] & 0xff) | ((data[i+1] & 0xff) << 8) | ((data[i+2] & 0xff) << 16) | (data[i+3] << 24);
+            k1 *= c1;
+            k1 = (k1 << 15) | (k1 >>> 17);  // ROTL32(k1,15);
+            k1 *= c2;
+
+            h1 ^= k1;
+            h1 = (h1 << 13) | (h1 >>> 19);  // ROTL32(h1,13);
+            h1 = h1*5+0xe6546b64;
+        }
+
+        return h1;
+    }
+
+    /**
+     * Hashes data whose leading bytes have already been mixed by {@link #mixBlocks(int, byte[], int, int)},
+     * producing the same value as {@link #murmurhash3_x86_32(byte[], int, int, int)} over the whole data.
+     *
+     * @param h1 the hash state returned by {@code mixBlocks}
+     * @param mixedLen the number of leading bytes already mixed into the hash state, a multiple of 4
+     * @param data the origin data
+     * @param offset the offset into the data array
+     * @param len the length of the data array to use, including the mixed bytes
+     * @return the MurmurHash3_x86_32 hash
+     */
+    public static int murmurhash3_x86_32(int h1, int mixedLen, byte[] data, int offset, int len) {
+
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+
+        h1 = mixBlocks(h1, data, offset + mixedLen, len - mixedLen);
+        int roundedEnd = offset + (len & 0xfffffffc);  // round down to 4 byte block
+
+        // tail, loaded little endian as in the switch of the other overloads, without falling through cases
+        int tailLen = len & 0x03;
+        if (tailLen > 0) {
+            int k1 = 0;
+            for (int i = tailLen - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (data[roundedEnd + i] & 0xff);
+            }
+            k1 *= c1;
+            k1 = (k1 << 15) | (k1 >>> 17);  // ROTL32(k1,15);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        // finalization
+        h1 ^= len;
+
+        // fmix(h1);
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+
+        return h1;
+    }
+
+    private static char charAt(CharSequence data1, CharSequence data2, int len1, int pos) {
+        return (pos < len1) ? data1.charAt(pos) : data2.charAt(pos - len1);
+    }
+}
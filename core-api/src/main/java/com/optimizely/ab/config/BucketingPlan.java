@@ -0,0 +1,105 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Compiled form of a {@link TrafficAllocation} list, built once when the owning {@link Experiment} or {@link Group}
+ * is created.
+ * <p>
+ * The range boundaries are held in a sorted {@code int[]} that's binary searched, and each range points directly at
+ * the entity it's allocated to, so bucketing doesn't need to resolve entity ids through a map.
+ *
+ * @param <T> the type of entity that traffic is allocated to
+ */
+@Immutable
+public final class BucketingPlan<T> {
+
+    private final int[] endOfRanges;
+    private final Object[] entities;
+
+    private BucketingPlan(int[] endOfRanges, Object[] entities) {
+        this.endOfRanges = endOfRanges;
+        this.entities = entities;
+    }
+
+    /**
+     * Compiles the given traffic allocations into a plan.
+     * <p>
+     * Allocations are matched in order, so an allocation whose end of range isn't greater than that of an earlier
+     * allocation can never be selected and is dropped. De-allocated space (an empty entity id) and entity ids that
+     * can't be resolved are compiled to a {@code null} entity.
+     *
+     * @param trafficAllocations the traffic allocations, in datafile order
+     * @param entityIdMapping the mapping used to resolve allocation entity ids
+     * @param <T> the type of entity that traffic is allocated to
+     * @return the compiled plan
+     */
+    public static <T> BucketingPlan<T> compile(@Nonnull List<TrafficAllocation> trafficAllocations,
+                                               @Nonnull Map<String, T> entityIdMapping) {
+        int[] endOfRanges = new int[trafficAllocations.size()];
+        Object[] entities = new Object[trafficAllocations.size()];
+
+        int size = 0;
+        for (TrafficAllocation trafficAllocation : trafficAllocations) {
+            int endOfRange = trafficAllocation.getEndOfRange();
+            if (size > 0 && endOfRange <= endOfRanges[size - 1]) {
+                continue;
+            }
+
+            // for mutually exclusive bucketing, de-allocated space is represented by an empty string
+            String entityId = trafficAllocation.getEntityId();
+            endOfRanges[size] = endOfRange;
+            entities[size] = entityId.isEmpty() ? null : entityIdMapping.get(entityId);
+            size++;
+        }
+
+        return new BucketingPlan<T>(Arrays.copyOf(endOfRanges, size), Arrays.copyOf(entities, size));
+    }
+
+    /**
+     * @param bucketValue the bucket value assigned to a user
+     * @return the entity whose range contains the bucket value, or {@code null} if the value falls in de-allocated
+     * or unallocated space
+     */
+    @SuppressWarnings("unchecked")
+    public @CheckForNull T bucket(int bucketValue) {
+        int index = Arrays.binarySearch(endOfRanges, bucketValue);
+        // ranges are end-exclusive, so an exact match on a boundary belongs to the following range
+        index = (index >= 0) ? index + 1 : -(index + 1);
+        if (index >= entities.length) {
+            return null;
+        }
+
+        return (T)entities[index];
+    }
+
+    @Override
+    public String toString() {
+        return "BucketingPlan{" +
+               "endOfRanges=" + Arrays.toString(endOfRanges) +
+               ", entities=" + Arrays.toString(entities) +
+               '}';
+    }
+}
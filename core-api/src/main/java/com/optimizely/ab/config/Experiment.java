@@ -48,6 +48,8 @@ public class Experiment implements IdKeyMapped {
     private final Map<String, Variation> variationIdToVariationMap;
     private final Map<String, String> userIdToVariationKeyMap;
 
+    private final BucketingPlan<Variation> bucketingPlan;
+
     // constant storing the status of a running experiment. Other possible statuses for an experiment
     // include 'Not started', 'Paused', and 'Archived'
     private static final String STATUS_RUNNING = "Running";
@@ -76,6 +78,7 @@ public class Experiment implements IdKeyMapped {
         this.userIdToVariationKeyMap = userIdToVariationKeyMap;
         this.variationKeyToVariationMap = ProjectConfigUtils.generateNameMapping(variations);
         this.variationIdToVariationMap = ProjectConfigUtils.generateIdMapping(variations);
+        this.bucketingPlan = BucketingPlan.compile(this.trafficAllocation, variationIdToVariationMap);
     }
 
     public String getId() {
@@ -114,6 +117,13 @@ public class Experiment implements IdKeyMapped {
         return trafficAllocation;
     }
 
+    /**
+     * @return the compiled {@link #getTrafficAllocation() traffic allocation}, used to bucket users into variations
+     */
+    public BucketingPlan<Variation> getBucketingPlan() {
+        return bucketingPlan;
+    }
+
     public String getGroupId() {
         return groupId;
     }
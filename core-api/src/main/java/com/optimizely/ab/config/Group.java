@@ -37,6 +37,7 @@ public class Group implements IdMapped {
     private final String policy;
     private final List<TrafficAllocation> trafficAllocation;
     private final List<Experiment> experiments;
+    private final BucketingPlan<Experiment> bucketingPlan;
 
     public static final String RANDOM_POLICY = "random";
 
@@ -49,6 +50,8 @@ public class Group implements IdMapped {
         this.policy = policy;
         this.trafficAllocation = trafficAllocation;
         this.experiments = experiments;
+        this.bucketingPlan = BucketingPlan.compile(trafficAllocation,
+                                                   ProjectConfigUtils.generateIdMapping(experiments));
     }
 
     public String getId() {
@@ -67,6 +70,13 @@ public class Group implements IdMapped {
         return experiments;
     }
 
+    /**
+     * @return the compiled {@link #getTrafficAllocation() traffic allocation}, used to bucket users into experiments
+     */
+    public BucketingPlan<Experiment> getBucketingPlan() {
+        return bucketingPlan;
+    }
+
     @Override
     public String toString() {
         return "Group{" +
@@ -0,0 +1,89 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * List of config entities that are each decoded from a compact representation the first time they're read, and then
+ * cached, for {@link ProjectConfig#createLazy lazy configs}.
+ * <p>
+ * The id and key of each entity must be available without decoding it, so that the config can index the entities
+ * without materializing them. An entity read by several threads at once may be decoded more than once, but only one
+ * of the decoded instances is ever returned, so the entities of a list have a stable identity.
+ *
+ * @param <T> the type of the entities
+ */
+@ThreadSafe
+public abstract class LazyEntityList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final AtomicReferenceArray<T> entities;
+
+    protected LazyEntityList(int size) {
+        this.entities = new AtomicReferenceArray<T>(size);
+    }
+
+    @Override
+    public final T get(int index) {
+        T entity = entities.get(index);
+        if (entity == null) {
+            T decoded = decode(index);
+            entity = entities.compareAndSet(index, null, decoded) ? decoded : entities.get(index);
+        }
+
+        return entity;
+    }
+
+    @Override
+    public final int size() {
+        return entities.length();
+    }
+
+    /**
+     * @return the number of entities that have been decoded
+     */
+    public int getDecodedCount() {
+        int decoded = 0;
+        for (int i = 0; i < entities.length(); i++) {
+            if (entities.get(i) != null) {
+                decoded++;
+            }
+        }
+
+        return decoded;
+    }
+
+    /**
+     * @return the id of the entity at the index, without decoding it
+     */
+    public abstract @Nonnull String getId(int index);
+
+    /**
+     * @return the key of the entity at the index, without decoding it
+     */
+    public abstract @Nonnull String getKey(int index);
+
+    /**
+     * Decodes the entity at the index. Called at most once per index, other than by threads racing to read it.
+     */
+    protected abstract @Nonnull T decode(int index);
+}
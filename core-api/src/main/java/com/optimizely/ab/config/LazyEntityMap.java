@@ -0,0 +1,125 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.internal.CompactStringMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Read-only {@code id -> entity} (or {@code key -> entity}) view of a {@link LazyEntityList}, which only decodes the
+ * entities that are looked up.
+ */
+@Immutable
+final class LazyEntityMap<T> extends AbstractMap<String, T> {
+
+    private final Map<String, Integer> indexes;
+    private final List<T> entities;
+
+    private LazyEntityMap(Map<String, Integer> indexes, List<T> entities) {
+        this.indexes = indexes;
+        this.entities = entities;
+    }
+
+    static <T> LazyEntityMap<T> byId(LazyEntityList<T> entities) {
+        CompactStringMap.Builder<Integer> indexes = CompactStringMap.builder(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            indexes.put(entities.getId(i), i);
+        }
+
+        return new LazyEntityMap<T>(indexes.build(), entities);
+    }
+
+    static <T> LazyEntityMap<T> byKey(LazyEntityList<T> entities) {
+        CompactStringMap.Builder<Integer> indexes = CompactStringMap.builder(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            indexes.put(entities.getKey(i), i);
+        }
+
+        return new LazyEntityMap<T>(indexes.build(), entities);
+    }
+
+    /**
+     * @return a view of the given entities, indexed the same way as this map's
+     */
+    <U> LazyEntityMap<U> withEntities(List<U> entities) {
+        return new LazyEntityMap<U>(indexes, entities);
+    }
+
+    /**
+     * @return the index of the entity in the list, or {@code null} if it isn't in the map
+     */
+    @CheckForNull Integer indexOf(Object key) {
+        return indexes.get(key);
+    }
+
+    @Override
+    public T get(Object key) {
+        Integer index = indexes.get(key);
+        return (index != null) ? entities.get(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexes.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return indexes.size();
+    }
+
+    @Override
+    public Set<Entry<String, T>> entrySet() {
+        return new AbstractSet<Entry<String, T>>() {
+            @Override
+            public Iterator<Entry<String, T>> iterator() {
+                final Iterator<Entry<String, Integer>> indexIterator = indexes.entrySet().iterator();
+                return new Iterator<Entry<String, T>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return indexIterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, T> next() {
+                        Entry<String, Integer> index = indexIterator.next();
+                        return new SimpleImmutableEntry<String, T>(index.getKey(), entities.get(index.getValue()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return indexes.size();
+            }
+        };
+    }
+}
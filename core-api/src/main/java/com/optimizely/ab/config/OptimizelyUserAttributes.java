@@ -0,0 +1,147 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The attributes of a user, resolved once against a {@link ProjectConfig}.
+ * <p>
+ * Values are held in an array indexed by the position of their {@link Attribute} in
+ * {@link ProjectConfig#getAttributes()}, so that audience conditions compiled against the same config, and the
+ * segments of events built from it, read them by index rather than by hashing attribute keys. Attributes that aren't
+ * in the datafile, and attributes with {@code null} values, are dropped on construction.
+ * <p>
+ * Instances are read-only {@code Map}s of the remaining attributes, so they can be passed wherever attributes are.
+ */
+@Immutable
+public final class OptimizelyUserAttributes extends AbstractMap<String, String> {
+
+    private final ProjectConfig projectConfig;
+    private final String[] values;
+    private final int size;
+
+    public OptimizelyUserAttributes(@Nonnull ProjectConfig projectConfig, @Nonnull Map<String, String> attributes) {
+        Map<String, Integer> attributeIndexMapping = projectConfig.getAttributeIndexMapping();
+        String[] values = new String[projectConfig.getAttributes().size()];
+        int size = 0;
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            Integer index = attributeIndexMapping.get(attribute.getKey());
+            if (index != null && attribute.getValue() != null) {
+                if (values[index] == null) {
+                    size++;
+                }
+                values[index] = attribute.getValue();
+            }
+        }
+
+        this.projectConfig = projectConfig;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * @return the project config the attributes were resolved against
+     */
+    public @Nonnull ProjectConfig getProjectConfig() {
+        return projectConfig;
+    }
+
+    /**
+     * @param attributeIndex the index of the attribute in {@link ProjectConfig#getAttributes()}
+     * @return the user's value for the attribute, or {@code null} if they don't have one
+     */
+    public @CheckForNull String getValue(int attributeIndex) {
+        return values[attributeIndex];
+    }
+
+    @Override
+    public String get(Object key) {
+        Integer index = projectConfig.getAttributeIndexMapping().get(key);
+        return (index != null) ? values[index] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //======== Helper classes ========//
+
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+
+        private int next = advance(0);
+
+        private int advance(int index) {
+            while (index < values.length && values[index] == null) {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int index = next;
+            next = advance(index + 1);
+            return new SimpleImmutableEntry<String, String>(projectConfig.getAttributes().get(index).getKey(),
+                                                            values[index]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
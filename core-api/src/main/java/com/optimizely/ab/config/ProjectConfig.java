@@ -21,21 +21,32 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.AudienceIndex;
 import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.ConditionProgram;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * Represents the Optimizely Project configuration.
+ * <p>
+ * The configuration itself doesn't change once built, but lazily decoded configs fill in their audience index and
+ * goal experiments on first use, so it's thread-safe rather than immutable.
  *
  * @see <a href="http://developers.optimizely.com/server/reference/index.html#json">Project JSON</a>
  */
-@Immutable
+@ThreadSafe
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ProjectConfig {
 
@@ -57,6 +68,17 @@ public class ProjectConfig {
     private final Map<String, Experiment> experimentIdMapping;
     private final Map<String, Group> groupIdMapping;
 
+    // the index of each attribute in the attributes list, which user attributes and condition programs are keyed by
+    private final Map<String, Integer> attributeIndexMapping;
+    private final Map<String, ConditionProgram> audienceIdToConditionProgram;
+    // built on first use for lazy configs, which is idempotent, so racing threads may each build it
+    private volatile AudienceIndex audienceIndex;
+    private final Map<String, List<Experiment>> goalKeyToRunningExperiments;
+
+    // the experiments by id for lazy configs, whose goal experiments are resolved on first use and cached in
+    // goalKeyToRunningExperiments
+    @Nullable private final LazyEntityMap<Experiment> lazyExperimentIdMapping;
+
     @JsonCreator
     public ProjectConfig(@JsonProperty("accountId") String accountId,
                          @JsonProperty("projectId") String projectId,
@@ -67,11 +89,30 @@ public class ProjectConfig {
                          @JsonProperty("dimensions") List<Attribute> attributes,
                          @JsonProperty("events") List<EventType> eventType,
                          @JsonProperty("audiences") List<Audience> audiences) {
+        this(null, accountId, projectId, version, revision, groups, experiments, attributes, eventType, audiences);
+    }
+
+    /**
+     * Creates a config that shares the derived mappings, condition programs and indexes of {@code previous} wherever
+     * they're built from the same entity instances, as arranged by {@link ProjectConfigDiff}. The previous config
+     * isn't referenced once constructed.
+     */
+    ProjectConfig(@Nullable ProjectConfig previous,
+                  String accountId,
+                  String projectId,
+                  String version,
+                  String revision,
+                  List<Group> groups,
+                  List<Experiment> experiments,
+                  List<Attribute> attributes,
+                  List<EventType> eventType,
+                  List<Audience> audiences) {
 
         this.accountId = accountId;
         this.projectId = projectId;
         this.version = version;
         this.revision = revision;
+        this.lazyExperimentIdMapping = null;
 
         this.groups = Collections.unmodifiableList(groups);
         List<Experiment> allExperiments = new ArrayList<Experiment>();
@@ -91,6 +132,157 @@ public class ProjectConfig {
         this.audienceIdMapping = ProjectConfigUtils.generateIdMapping(audiences);
         this.experimentIdMapping = ProjectConfigUtils.generateIdMapping(this.experiments);
         this.groupIdMapping = ProjectConfigUtils.generateIdMapping(groups);
+
+        if (previous != null && sameInstances(previous.attributes, this.attributes)) {
+            this.attributeIndexMapping = previous.attributeIndexMapping;
+        } else {
+            this.attributeIndexMapping = generateAttributeIndexMapping(this.attributes);
+        }
+        // programs are bound to the attribute index mapping, so they can only be shared along with it
+        this.audienceIdToConditionProgram = bindConditionPrograms(
+            this.audiences, this.attributeIndexMapping,
+            (previous != null && previous.attributeIndexMapping == this.attributeIndexMapping) ? previous : null);
+
+        boolean sameExperiments = previous != null && sameInstances(previous.experiments, this.experiments);
+        if (sameExperiments && sameInstances(previous.audiences, this.audiences)) {
+            this.audienceIndex = previous.audienceIndex;
+        } else {
+            this.audienceIndex = new AudienceIndex(this.experiments, this.audienceIdMapping);
+        }
+        if (sameExperiments && sameInstances(previous.events, this.events)) {
+            this.goalKeyToRunningExperiments = previous.goalKeyToRunningExperiments;
+        } else {
+            this.goalKeyToRunningExperiments = generateGoalRunningExperiments(this.events, this.experiments);
+        }
+    }
+
+    /**
+     * Creates a config whose experiments, groups and audiences are decoded from a compact representation as they're
+     * first looked up, rather than up front. Clients that only ever activate a few experiments of a large project then
+     * never materialize the rest.
+     * <p>
+     * Decoding is deferred past construction and the mapping lookups, which only need the entities' ids and keys. Any
+     * access that visits every experiment, such as iterating {@link #getExperiments()} or the first call to
+     * {@link #getAudienceIndex()}, decodes them all.
+     *
+     * @param experiments all of the project's experiments, followed by those of its groups in group order
+     * @param groups the project's groups, whose experiments must be the instances in {@code experiments}
+     */
+    public static ProjectConfig createLazy(String accountId,
+                                           String projectId,
+                                           String version,
+                                           String revision,
+                                           @Nonnull LazyEntityList<Group> groups,
+                                           @Nonnull LazyEntityList<Experiment> experiments,
+                                           @Nonnull List<Attribute> attributes,
+                                           @Nonnull List<EventType> eventType,
+                                           @Nonnull LazyEntityList<Audience> audiences) {
+        return new ProjectConfig(accountId, projectId, version, revision, groups, experiments, attributes, eventType,
+                                 audiences);
+    }
+
+    private ProjectConfig(String accountId,
+                          String projectId,
+                          String version,
+                          String revision,
+                          LazyEntityList<Group> groups,
+                          LazyEntityList<Experiment> experiments,
+                          List<Attribute> attributes,
+                          List<EventType> eventType,
+                          LazyEntityList<Audience> audiences) {
+
+        this.accountId = accountId;
+        this.projectId = projectId;
+        this.version = version;
+        this.revision = revision;
+
+        this.groups = Collections.unmodifiableList(groups);
+        this.experiments = Collections.unmodifiableList(experiments);
+        this.attributes = Collections.unmodifiableList(attributes);
+        this.events = Collections.unmodifiableList(eventType);
+        this.audiences = Collections.unmodifiableList(audiences);
+
+        this.experimentKeyMapping = LazyEntityMap.byKey(experiments);
+        this.attributeKeyMapping = ProjectConfigUtils.generateNameMapping(attributes);
+        this.eventNameMapping = ProjectConfigUtils.generateNameMapping(events);
+
+        LazyEntityMap<Audience> audienceIdMapping = LazyEntityMap.byId(audiences);
+        this.audienceIdMapping = audienceIdMapping;
+        this.lazyExperimentIdMapping = LazyEntityMap.byId(experiments);
+        this.experimentIdMapping = lazyExperimentIdMapping;
+        this.groupIdMapping = LazyEntityMap.byId(groups);
+
+        this.attributeIndexMapping = generateAttributeIndexMapping(this.attributes);
+        this.audienceIdToConditionProgram =
+            audienceIdMapping.withEntities(new LazyConditionPrograms(audiences, this.attributeIndexMapping));
+        this.goalKeyToRunningExperiments = new ConcurrentHashMap<String, List<Experiment>>();
+    }
+
+    /**
+     * @return whether the config's entities are decoded on first use, as created by {@link #createLazy}
+     */
+    boolean isLazy() {
+        return lazyExperimentIdMapping != null;
+    }
+
+    private static boolean sameInstances(List<?> previous, List<?> current) {
+        if (previous.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            if (previous.get(i) != current.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Map<String, Integer> generateAttributeIndexMapping(List<Attribute> attributes) {
+        Map<String, Integer> attributeIndexMapping = new HashMap<String, Integer>();
+        for (int i = 0; i < attributes.size(); i++) {
+            attributeIndexMapping.put(attributes.get(i).getKey(), i);
+        }
+
+        return Collections.unmodifiableMap(attributeIndexMapping);
+    }
+
+    private static Map<String, List<Experiment>> generateGoalRunningExperiments(List<EventType> events,
+                                                                               List<Experiment> experiments) {
+        Map<String, List<Experiment>> goalExperiments = new HashMap<String, List<Experiment>>();
+        for (EventType event : events) {
+            // keep the experiments in project order, which is the order they're added to conversion events in
+            Set<String> experimentIds = new HashSet<String>(event.getExperimentIds());
+            List<Experiment> runningExperiments = new ArrayList<Experiment>();
+            for (Experiment experiment : experiments) {
+                if (experiment.isRunning() && experimentIds.contains(experiment.getId())) {
+                    runningExperiments.add(experiment);
+                }
+            }
+            goalExperiments.put(event.getKey(), Collections.unmodifiableList(runningExperiments));
+        }
+
+        return Collections.unmodifiableMap(goalExperiments);
+    }
+
+    /**
+     * @param previous a config whose programs are bound to the same attribute index mapping, and are shared for the
+     *                 audiences it has the same instances of
+     */
+    private static Map<String, ConditionProgram> bindConditionPrograms(List<Audience> audiences,
+                                                                       Map<String, Integer> attributeIndexMapping,
+                                                                       @Nullable ProjectConfig previous) {
+        Map<String, ConditionProgram> conditionPrograms = new HashMap<String, ConditionProgram>();
+        for (Audience audience : audiences) {
+            String audienceId = audience.getId();
+            if (previous != null && previous.audienceIdMapping.get(audienceId) == audience) {
+                conditionPrograms.put(audienceId, previous.audienceIdToConditionProgram.get(audienceId));
+            } else {
+                conditionPrograms.put(audienceId, audience.getConditionProgram().bind(attributeIndexMapping));
+            }
+        }
+
+        return Collections.unmodifiableMap(conditionPrograms);
     }
 
     private List<Experiment> aggregateGroupExperiments(List<Group> groups) {
@@ -135,6 +327,20 @@ public class ProjectConfig {
         return Collections.emptyList();
     }
 
+    /**
+     * @return the running experiments that the goal applies to, in project order
+     */
+    public List<Experiment> getRunningExperimentsForGoal(String goalKey) {
+        List<Experiment> runningExperiments = goalKeyToRunningExperiments.get(goalKey);
+        if (runningExperiments == null && lazyExperimentIdMapping != null && eventNameMapping.containsKey(goalKey)) {
+            runningExperiments = resolveRunningExperiments(eventNameMapping.get(goalKey));
+            // racing threads resolve the same experiments, so it doesn't matter whose list is kept
+            goalKeyToRunningExperiments.put(goalKey, runningExperiments);
+        }
+
+        return runningExperiments != null ? runningExperiments : Collections.<Experiment>emptyList();
+    }
+
     public List<Attribute> getAttributes() {
         return attributes;
     }
@@ -153,6 +359,27 @@ public class ProjectConfig {
         return audience != null ? audience.getConditions() : null;
     }
 
+    /**
+     * @return the compiled conditions of the audience, bound to this config's attributes so that they read
+     * {@link OptimizelyUserAttributes} built against it by index
+     */
+    public ConditionProgram getAudienceConditionProgramFromId(String audienceId) {
+        return audienceIdToConditionProgram.get(audienceId);
+    }
+
+    /**
+     * @return the index of the running experiments by the attribute values their audiences match on
+     */
+    public AudienceIndex getAudienceIndex() {
+        AudienceIndex index = audienceIndex;
+        if (index == null) {
+            index = new AudienceIndex(experiments, audienceIdMapping);
+            audienceIndex = index;
+        }
+
+        return index;
+    }
+
     public Map<String, Experiment> getExperimentKeyMapping() {
         return experimentKeyMapping;
     }
@@ -161,6 +388,13 @@ public class ProjectConfig {
         return attributeKeyMapping;
     }
 
+    /**
+     * @return the {@code attributeKey -> index} mapping of the attributes in {@link #getAttributes()}
+     */
+    public Map<String, Integer> getAttributeIndexMapping() {
+        return attributeIndexMapping;
+    }
+
     public Map<String, EventType> getEventNameMapping() {
         return eventNameMapping;
     }
@@ -177,6 +411,68 @@ public class ProjectConfig {
         return groupIdMapping;
     }
 
+    //======== Lazy config helpers ========//
+
+    /**
+     * Decodes only the experiments the event applies to, keeping them in project order as
+     * {@link #generateGoalRunningExperiments} does.
+     */
+    private List<Experiment> resolveRunningExperiments(EventType event) {
+        List<Integer> experimentIndexes = new ArrayList<Integer>(event.getExperimentIds().size());
+        for (String experimentId : event.getExperimentIds()) {
+            Integer index = lazyExperimentIdMapping.indexOf(experimentId);
+            if (index != null) {
+                experimentIndexes.add(index);
+            }
+        }
+        Collections.sort(experimentIndexes);
+
+        List<Experiment> runningExperiments = new ArrayList<Experiment>(experimentIndexes.size());
+        Integer previousIndex = null;
+        for (Integer index : experimentIndexes) {
+            if (index.equals(previousIndex)) {
+                continue;
+            }
+            Experiment experiment = experiments.get(index);
+            if (experiment.isRunning()) {
+                runningExperiments.add(experiment);
+            }
+            previousIndex = index;
+        }
+
+        return Collections.unmodifiableList(runningExperiments);
+    }
+
+    /**
+     * Binds each audience's condition program as it's first looked up.
+     */
+    private static final class LazyConditionPrograms extends LazyEntityList<ConditionProgram> {
+
+        private final LazyEntityList<Audience> audiences;
+        private final Map<String, Integer> attributeIndexMapping;
+
+        LazyConditionPrograms(LazyEntityList<Audience> audiences, Map<String, Integer> attributeIndexMapping) {
+            super(audiences.size());
+            this.audiences = audiences;
+            this.attributeIndexMapping = attributeIndexMapping;
+        }
+
+        @Override
+        public @Nonnull String getId(int index) {
+            return audiences.getId(index);
+        }
+
+        @Override
+        public @Nonnull String getKey(int index) {
+            return audiences.getKey(index);
+        }
+
+        @Override
+        protected @Nonnull ConditionProgram decode(int index) {
+            return audiences.get(index).getConditionProgram().bind(attributeIndexMapping);
+        }
+    }
+
     @Override
     public String toString() {
         return "ProjectConfig{" +
@@ -0,0 +1,252 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.config.audience.Audience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Structurally compares the entities of a newly parsed datafile with the {@link ProjectConfig} it replaces, so that
+ * the entities that didn't change between the two datafiles carry over by identity.
+ * <p>
+ * Unchanged audiences, attributes, events, experiments and groups are replaced by their previous instances, along with
+ * the condition programs and bucketing plans compiled for them. Entities that did change are kept as parsed, and a
+ * group is only carried over when its experiments are too. Long-lived clients of large projects then keep the same
+ * objects across most reloads, rather than promoting a full copy of the config on each one.
+ */
+public final class ProjectConfigDiff {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectConfigDiff.class);
+
+    private ProjectConfigDiff() { }
+
+    /**
+     * Builds the config for a newly parsed datafile, sharing the unchanged parts of the config it replaces. Parsers
+     * call it in place of the config's constructor, so that the new config is only built once.
+     *
+     * @param previous the config being replaced, if any
+     * @param experiments the experiments outside of groups
+     * @return the new config
+     */
+    public static @Nonnull ProjectConfig build(@Nullable ProjectConfig previous,
+                                               String accountId,
+                                               String projectId,
+                                               String version,
+                                               String revision,
+                                               @Nonnull List<Group> groups,
+                                               @Nonnull List<Experiment> experiments,
+                                               @Nonnull List<Attribute> attributes,
+                                               @Nonnull List<EventType> events,
+                                               @Nonnull List<Audience> audiences) {
+        // comparing would decode every entity of a lazy config, which is what it's built to avoid
+        if (previous == null || previous.isLazy()) {
+            return new ProjectConfig(accountId, projectId, version, revision, groups, experiments, attributes, events,
+                                     audiences);
+        }
+
+        List<Audience> reconciledAudiences = new ArrayList<Audience>(audiences.size());
+        Map<String, Audience> previousAudiences = previous.getAudienceIdMapping();
+        for (Audience audience : audiences) {
+            Audience previousAudience = previousAudiences.get(audience.getId());
+            reconciledAudiences.add(sameAudience(previousAudience, audience) ? previousAudience : audience);
+        }
+
+        List<Attribute> reconciledAttributes = new ArrayList<Attribute>(attributes.size());
+        Map<String, Attribute> previousAttributes = previous.getAttributeKeyMapping();
+        for (Attribute attribute : attributes) {
+            Attribute previousAttribute = previousAttributes.get(attribute.getKey());
+            reconciledAttributes.add(sameAttribute(previousAttribute, attribute) ? previousAttribute : attribute);
+        }
+
+        List<EventType> reconciledEvents = new ArrayList<EventType>(events.size());
+        Map<String, EventType> previousEvents = previous.getEventNameMapping();
+        for (EventType event : events) {
+            EventType previousEvent = previousEvents.get(event.getKey());
+            reconciledEvents.add(sameEvent(previousEvent, event) ? previousEvent : event);
+        }
+
+        Map<String, Experiment> previousExperiments = previous.getExperimentIdMapping();
+        List<Group> reconciledGroups = new ArrayList<Group>(groups.size());
+        for (Group group : groups) {
+            reconciledGroups.add(reconcileGroup(previous.getGroupIdMapping().get(group.getId()), group,
+                                                previousExperiments));
+        }
+
+        List<Experiment> reconciledExperiments = new ArrayList<Experiment>(experiments.size());
+        for (Experiment experiment : experiments) {
+            reconciledExperiments.add(reconcileExperiment(previousExperiments, experiment));
+        }
+
+        ProjectConfig projectConfig = new ProjectConfig(previous, accountId, projectId, version, revision,
+                                                        reconciledGroups, reconciledExperiments, reconciledAttributes,
+                                                        reconciledEvents, reconciledAudiences);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Reused {} of {} experiments and {} of {} audiences from revision {}.",
+                         countShared(previous.getExperiments(), projectConfig.getExperiments()),
+                         projectConfig.getExperiments().size(),
+                         countShared(previous.getAudiences(), projectConfig.getAudiences()),
+                         projectConfig.getAudiences().size(), previous.getRevision());
+        }
+
+        return projectConfig;
+    }
+
+    /**
+     * Rebuilds a config that was parsed without reference to the one it replaces. Where the datafile is at hand,
+     * parsing it with a {@link com.optimizely.ab.config.parser.ReconcilingConfigParser} avoids building it twice.
+     *
+     * @param previous the config being replaced
+     * @param next the newly parsed config
+     * @return a config equivalent to {@code next}, sharing the unchanged parts of {@code previous}
+     */
+    public static @Nonnull ProjectConfig rebuild(@Nonnull ProjectConfig previous, @Nonnull ProjectConfig next) {
+        if (previous.isLazy() || next.isLazy()) {
+            return next;
+        }
+
+        // the config's experiments include those of its groups, which are passed in with the groups
+        Set<Experiment> groupExperiments = Collections.newSetFromMap(new IdentityHashMap<Experiment, Boolean>());
+        for (Group group : next.getGroups()) {
+            groupExperiments.addAll(group.getExperiments());
+        }
+        List<Experiment> experiments = new ArrayList<Experiment>(next.getExperiments().size());
+        for (Experiment experiment : next.getExperiments()) {
+            if (!groupExperiments.contains(experiment)) {
+                experiments.add(experiment);
+            }
+        }
+
+        return build(previous, next.getAccountId(), next.getProjectId(), next.getVersion(), next.getRevision(),
+                     next.getGroups(), experiments, next.getAttributes(), next.getEventTypes(), next.getAudiences());
+    }
+
+    //======== Helper methods ========//
+
+    private static Group reconcileGroup(@Nullable Group previous, @Nonnull Group group,
+                                        @Nonnull Map<String, Experiment> previousExperiments) {
+        List<Experiment> experiments = new ArrayList<Experiment>(group.getExperiments().size());
+        boolean sameExperiments = previous != null
+                                  && previous.getExperiments().size() == group.getExperiments().size();
+        for (int i = 0; i < group.getExperiments().size(); i++) {
+            Experiment experiment = reconcileExperiment(previousExperiments, group.getExperiments().get(i));
+            experiments.add(experiment);
+            sameExperiments = sameExperiments && previous.getExperiments().get(i) == experiment;
+        }
+
+        if (sameExperiments
+            && equal(previous.getPolicy(), group.getPolicy())
+            && sameTrafficAllocation(previous.getTrafficAllocation(), group.getTrafficAllocation())) {
+            return previous;
+        }
+
+        return new Group(group.getId(), group.getPolicy(), experiments, group.getTrafficAllocation());
+    }
+
+    private static Experiment reconcileExperiment(@Nonnull Map<String, Experiment> previousExperiments,
+                                                  @Nonnull Experiment experiment) {
+        Experiment previous = previousExperiments.get(experiment.getId());
+        return sameExperiment(previous, experiment) ? previous : experiment;
+    }
+
+    private static boolean sameExperiment(@Nullable Experiment previous, @Nonnull Experiment experiment) {
+        if (previous == null
+            || !equal(previous.getKey(), experiment.getKey())
+            || !equal(previous.getStatus(), experiment.getStatus())
+            || !equal(previous.getGroupId(), experiment.getGroupId())
+            || !equal(previous.getAudienceIds(), experiment.getAudienceIds())
+            || !equal(previous.getUserIdToVariationKeyMap(), experiment.getUserIdToVariationKeyMap())
+            || !sameTrafficAllocation(previous.getTrafficAllocation(), experiment.getTrafficAllocation())) {
+            return false;
+        }
+
+        List<Variation> previousVariations = previous.getVariations();
+        List<Variation> variations = experiment.getVariations();
+        if (previousVariations.size() != variations.size()) {
+            return false;
+        }
+        for (int i = 0; i < variations.size(); i++) {
+            if (!equal(previousVariations.get(i).getId(), variations.get(i).getId())
+                || !equal(previousVariations.get(i).getKey(), variations.get(i).getKey())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean sameTrafficAllocation(@Nonnull List<TrafficAllocation> previous,
+                                                 @Nonnull List<TrafficAllocation> trafficAllocation) {
+        if (previous.size() != trafficAllocation.size()) {
+            return false;
+        }
+        for (int i = 0; i < trafficAllocation.size(); i++) {
+            if (previous.get(i).getEndOfRange() != trafficAllocation.get(i).getEndOfRange()
+                || !equal(previous.get(i).getEntityId(), trafficAllocation.get(i).getEntityId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean sameAudience(@Nullable Audience previous, @Nonnull Audience audience) {
+        return previous != null
+               && equal(previous.getName(), audience.getName())
+               && equal(previous.getConditions(), audience.getConditions());
+    }
+
+    private static boolean sameAttribute(@Nullable Attribute previous, @Nonnull Attribute attribute) {
+        return previous != null
+               && equal(previous.getId(), attribute.getId())
+               && equal(previous.getSegmentId(), attribute.getSegmentId());
+    }
+
+    private static boolean sameEvent(@Nullable EventType previous, @Nonnull EventType event) {
+        return previous != null
+               && equal(previous.getId(), event.getId())
+               && equal(previous.getExperimentIds(), event.getExperimentIds());
+    }
+
+    private static boolean equal(@Nullable Object previous, @Nullable Object current) {
+        return previous == null ? current == null : previous.equals(current);
+    }
+
+    private static int countShared(@Nonnull List<?> previous, @Nonnull List<?> current) {
+        Set<Object> previousEntities = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        previousEntities.addAll(previous);
+        int shared = 0;
+        for (Object entity : current) {
+            if (previousEntities.contains(entity)) {
+                shared++;
+            }
+        }
+
+        return shared;
+    }
+}
@@ -36,6 +36,7 @@ public class Audience implements IdKeyMapped {
     private final String id;
     private final String name;
     private final Condition conditions;
+    private final ConditionProgram conditionProgram;
 
     @JsonCreator
     public Audience(@JsonProperty("id") String id,
@@ -44,6 +45,7 @@ public class Audience implements IdKeyMapped {
         this.id = id;
         this.name = name;
         this.conditions = conditions;
+        this.conditionProgram = ConditionProgram.compile(conditions);
     }
 
     public String getId() {
@@ -62,6 +64,10 @@ public class Audience implements IdKeyMapped {
         return conditions;
     }
 
+    public ConditionProgram getConditionProgram() {
+        return conditionProgram;
+    }
+
     @Override
     public String toString() {
         return "Audience{" +
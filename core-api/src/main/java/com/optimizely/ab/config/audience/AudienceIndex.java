@@ -0,0 +1,239 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Experiment;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Inverted index from the {@code (attribute, value)} pairs that audiences match on to the running experiments
+ * targeting them, built once per project config.
+ * <p>
+ * Each audience is reduced to a set of pairs, at least one of which a user must have to satisfy it. An {@code or}
+ * needs one of its operands' pairs, and an {@code and} needs the pairs of any one of its operands, so only the
+ * {@link UserAttribute} leaves of the {@link Audience}'s conditions are indexed. Audiences that can't be reduced this
+ * way, such as ones with {@code not} conditions, make their experiments candidates for every user with attributes.
+ * <p>
+ * Queries return a superset of the experiments a user is eligible for, touching only the experiments indexed under
+ * the user's attributes. Candidates still need their audiences evaluated.
+ */
+@Immutable
+public final class AudienceIndex {
+
+    private final List<Experiment> experiments;
+    // the positions in experiments of the experiments under each attribute and value
+    private final Map<String, Map<String, int[]>> attributeValueExperiments;
+    // experiments without audiences, which every user is eligible for
+    private final int[] unconditionalExperiments;
+    // experiments with audiences that couldn't be indexed, which users with attributes may be eligible for
+    private final int[] unindexedExperiments;
+
+    /**
+     * @param experiments all of the project's experiments, including those in groups
+     * @param audienceIdMapping the project's {@code audienceId -> audience} mapping
+     */
+    public AudienceIndex(@Nonnull List<Experiment> experiments, @Nonnull Map<String, Audience> audienceIdMapping) {
+        Map<String, Map<String, List<Integer>>> index = new HashMap<String, Map<String, List<Integer>>>();
+        List<Integer> unconditionalExperiments = new ArrayList<Integer>();
+        List<Integer> unindexedExperiments = new ArrayList<Integer>();
+
+        for (int i = 0; i < experiments.size(); i++) {
+            Experiment experiment = experiments.get(i);
+            if (!experiment.isRunning()) {
+                continue;
+            }
+
+            List<String> audienceIds = experiment.getAudienceIds();
+            if (audienceIds.isEmpty()) {
+                unconditionalExperiments.add(i);
+                continue;
+            }
+
+            Map<String, Set<String>> matches = new HashMap<String, Set<String>>();
+            boolean indexed = true;
+            for (String audienceId : audienceIds) {
+                Audience audience = audienceIdMapping.get(audienceId);
+                if (audience == null || !collectRequiredMatches(audience.getConditions(), matches)) {
+                    indexed = false;
+                    break;
+                }
+            }
+
+            if (!indexed) {
+                unindexedExperiments.add(i);
+                continue;
+            }
+
+            for (Map.Entry<String, Set<String>> match : matches.entrySet()) {
+                Map<String, List<Integer>> valueExperiments = index.get(match.getKey());
+                if (valueExperiments == null) {
+                    valueExperiments = new HashMap<String, List<Integer>>();
+                    index.put(match.getKey(), valueExperiments);
+                }
+                for (String value : match.getValue()) {
+                    List<Integer> experimentPositions = valueExperiments.get(value);
+                    if (experimentPositions == null) {
+                        experimentPositions = new ArrayList<Integer>();
+                        valueExperiments.put(value, experimentPositions);
+                    }
+                    experimentPositions.add(i);
+                }
+            }
+        }
+
+        Map<String, Map<String, int[]>> attributeValueExperiments = new HashMap<String, Map<String, int[]>>();
+        for (Map.Entry<String, Map<String, List<Integer>>> attribute : index.entrySet()) {
+            Map<String, int[]> valueExperiments = new HashMap<String, int[]>();
+            for (Map.Entry<String, List<Integer>> value : attribute.getValue().entrySet()) {
+                valueExperiments.put(value.getKey(), toArray(value.getValue()));
+            }
+            attributeValueExperiments.put(attribute.getKey(), valueExperiments);
+        }
+
+        this.experiments = experiments;
+        this.attributeValueExperiments = Collections.unmodifiableMap(attributeValueExperiments);
+        this.unconditionalExperiments = toArray(unconditionalExperiments);
+        this.unindexedExperiments = toArray(unindexedExperiments);
+    }
+
+    /**
+     * @param attributes the attributes of the user
+     * @return the running experiments the user may be eligible for, in project order. Experiments that aren't
+     * returned are either not running, or have audiences that the user doesn't satisfy
+     */
+    public @Nonnull List<Experiment> getCandidateExperiments(@Nonnull Map<String, String> attributes) {
+        BitSet candidates = new BitSet(experiments.size());
+        set(candidates, unconditionalExperiments);
+        // experiments with audiences aren't available to users without attributes
+        if (!attributes.isEmpty()) {
+            set(candidates, unindexedExperiments);
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                Map<String, int[]> valueExperiments = attributeValueExperiments.get(attribute.getKey());
+                if (valueExperiments != null) {
+                    int[] experimentPositions = valueExperiments.get(attribute.getValue());
+                    if (experimentPositions != null) {
+                        set(candidates, experimentPositions);
+                    }
+                }
+            }
+        }
+
+        List<Experiment> candidateExperiments = new ArrayList<Experiment>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            candidateExperiments.add(experiments.get(i));
+        }
+
+        return candidateExperiments;
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * Adds the {@code (attribute, value)} pairs that a user must have one of to satisfy the condition.
+     *
+     * @return whether the condition could be reduced to such pairs
+     */
+    private static boolean collectRequiredMatches(Condition condition, Map<String, Set<String>> matches) {
+        Class<?> conditionClass = (condition != null) ? condition.getClass() : null;
+        if (conditionClass == UserAttribute.class) {
+            UserAttribute userAttribute = (UserAttribute)condition;
+            if (userAttribute.getName() == null || userAttribute.getValue() == null) {
+                return false;
+            }
+
+            Set<String> values = matches.get(userAttribute.getName());
+            if (values == null) {
+                values = new HashSet<String>();
+                matches.put(userAttribute.getName(), values);
+            }
+            values.add(userAttribute.getValue());
+            return true;
+        }
+
+        if (conditionClass == OrCondition.class) {
+            // every operand needs to be reduced. An empty 'or' is never satisfied, so needs no pairs
+            for (Condition operand : ((OrCondition)condition).getConditions()) {
+                if (!collectRequiredMatches(operand, matches)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (conditionClass == AndCondition.class) {
+            // any single operand will do, so use the one with the fewest pairs
+            Map<String, Set<String>> fewestMatches = null;
+            int fewestMatchCount = Integer.MAX_VALUE;
+            for (Condition operand : ((AndCondition)condition).getConditions()) {
+                Map<String, Set<String>> operandMatches = new HashMap<String, Set<String>>();
+                if (collectRequiredMatches(operand, operandMatches)) {
+                    int matchCount = 0;
+                    for (Set<String> values : operandMatches.values()) {
+                        matchCount += values.size();
+                    }
+                    if (matchCount < fewestMatchCount) {
+                        fewestMatches = operandMatches;
+                        fewestMatchCount = matchCount;
+                    }
+                }
+            }
+
+            if (fewestMatches == null) {
+                return false;
+            }
+
+            for (Map.Entry<String, Set<String>> match : fewestMatches.entrySet()) {
+                Set<String> values = matches.get(match.getKey());
+                if (values == null) {
+                    matches.put(match.getKey(), match.getValue());
+                } else {
+                    values.addAll(match.getValue());
+                }
+            }
+            return true;
+        }
+
+        // 'not' conditions, and conditions of other types, can be satisfied without matching anything
+        return false;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
+
+    private static void set(BitSet bits, int[] indexes) {
+        for (int index : indexes) {
+            bits.set(index);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.OptimizelyUserAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Compiled form of an audience's {@link Condition} tree, built once when the {@link Audience} is created.
+ * <p>
+ * The tree is flattened into an array of instructions that's evaluated in a single loop, instead of through a
+ * recursive {@link Condition#evaluate(Map)} call per node. {@code and} and {@code or} conditions compile to jumps
+ * past their remaining operands, so evaluation short-circuits as the tree does. Attributes that several conditions
+ * match on are resolved to slots, so the user's value for each is only looked up the first time it's read.
+ * <p>
+ * A program {@link #bind(Map) bound} to a project config's attributes reads the values of
+ * {@link OptimizelyUserAttributes} built against that config by index, without looking them up at all.
+ * <p>
+ * Conditions other than the built-in {@link AndCondition}, {@link OrCondition}, {@link NotCondition} and
+ * {@link UserAttribute} are evaluated by calling them. That includes subclasses of the built-in conditions, which may
+ * override how they're evaluated.
+ */
+@Immutable
+public final class ConditionProgram {
+
+    // each instruction holds its opcode in the low bits and its operand in the remaining bits
+    private static final int OPCODE_BITS = 3;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+    /** result = whether the user's value for {@code attributeNames[operand]} equals {@code values[operand]}. */
+    private static final int MATCH = 0;
+    /** if result is false, jump to instruction {@code operand}. */
+    private static final int JUMP_IF_FALSE = 1;
+    /** if result is true, jump to instruction {@code operand}. */
+    private static final int JUMP_IF_TRUE = 2;
+    /** result = !result. */
+    private static final int NOT = 3;
+    /** result = {@code operand != 0}. */
+    private static final int CONSTANT = 4;
+    /** result = {@code conditions[operand].evaluate(attributes)}. */
+    private static final int CALL = 5;
+
+    /**
+     * Marks an attribute slot whose value hasn't been looked up yet, compared by identity.
+     */
+    private static final Object UNRESOLVED = new Object();
+
+    private final int[] instructions;
+    // the attribute name, matched value and attribute slot of each MATCH instruction, indexed by the instruction's
+    // operand. Attributes that are only matched once aren't given a slot, and have a slot of -1
+    private final String[] attributeNames;
+    private final String[] values;
+    private final int[] slots;
+    private final int slotCount;
+    private final Condition[] conditions;
+    // the project config attribute index of each MATCH instruction's attribute, or -1 if the config doesn't have it,
+    // along with the mapping the indexes were taken from. Both are null if the program isn't bound
+    @Nullable private final int[] attributeIndexes;
+    @Nullable private final Map<String, Integer> attributeIndexMapping;
+
+    private ConditionProgram(int[] instructions, String[] attributeNames, String[] values, int[] slots,
+                             int slotCount, Condition[] conditions, @Nullable int[] attributeIndexes,
+                             @Nullable Map<String, Integer> attributeIndexMapping) {
+        this.instructions = instructions;
+        this.attributeNames = attributeNames;
+        this.values = values;
+        this.slots = slots;
+        this.slotCount = slotCount;
+        this.conditions = conditions;
+        this.attributeIndexes = attributeIndexes;
+        this.attributeIndexMapping = attributeIndexMapping;
+    }
+
+    /**
+     * @param condition the root of the condition tree
+     * @return the compiled program
+     */
+    public static ConditionProgram compile(@Nonnull Condition condition) {
+        Compiler compiler = new Compiler();
+        compiler.compile(condition);
+        return compiler.build();
+    }
+
+    /**
+     * Binds the program to the attributes of a project config.
+     *
+     * @param attributeIndexMapping the config's {@code attributeKey -> index} mapping, as given by
+     *                              {@link com.optimizely.ab.config.ProjectConfig#getAttributeIndexMapping()}
+     * @return a copy of the program that reads {@link OptimizelyUserAttributes} built against the config by index
+     */
+    public ConditionProgram bind(@Nonnull Map<String, Integer> attributeIndexMapping) {
+        int[] attributeIndexes = new int[attributeNames.length];
+        for (int i = 0; i < attributeIndexes.length; i++) {
+            Integer index = attributeIndexMapping.get(attributeNames[i]);
+            attributeIndexes[i] = (index != null) ? index : -1;
+        }
+
+        return new ConditionProgram(instructions, attributeNames, values, slots, slotCount, conditions,
+                                    attributeIndexes, attributeIndexMapping);
+    }
+
+    /**
+     * Evaluates the program, giving the same result as {@link Condition#evaluate(Map)} on the compiled tree.
+     *
+     * @param attributes the attributes of the user
+     * @return whether the attributes satisfy the conditions
+     */
+    public boolean evaluate(Map<String, String> attributes) {
+        // attributes built against the config the program is bound to are read by index
+        OptimizelyUserAttributes userAttributes = null;
+        if (attributeIndexes != null && attributes instanceof OptimizelyUserAttributes) {
+            userAttributes = (OptimizelyUserAttributes)attributes;
+            if (userAttributes.getProjectConfig().getAttributeIndexMapping() != attributeIndexMapping) {
+                userAttributes = null;
+            }
+        }
+
+        // programs with a single slot, such as an 'or' of values of one attribute, keep its value in a local
+        Object singleSlotValue = UNRESOLVED;
+        Object[] slotValues = null;
+        if (slotCount > 1) {
+            slotValues = new Object[slotCount];
+            Arrays.fill(slotValues, UNRESOLVED);
+        }
+
+        boolean result = false;
+        int pc = 0;
+        while (pc < instructions.length) {
+            int instruction = instructions[pc++];
+            int operand = instruction >> OPCODE_BITS;
+            switch (instruction & OPCODE_MASK) {
+                case MATCH:
+                    int slot = slots[operand];
+                    Object attributeValue;
+                    if (userAttributes != null) {
+                        int index = attributeIndexes[operand];
+                        attributeValue = (index < 0) ? null : userAttributes.getValue(index);
+                    } else if (slot < 0) {
+                        attributeValue = attributes.get(attributeNames[operand]);
+                    } else if (slotValues == null) {
+                        if (singleSlotValue == UNRESOLVED) {
+                            singleSlotValue = attributes.get(attributeNames[operand]);
+                        }
+                        attributeValue = singleSlotValue;
+                    } else {
+                        if (slotValues[slot] == UNRESOLVED) {
+                            slotValues[slot] = attributes.get(attributeNames[operand]);
+                        }
+                        attributeValue = slotValues[slot];
+                    }
+                    result = values[operand].equals(attributeValue);
+                    break;
+                case JUMP_IF_FALSE:
+                    if (!result) {
+                        pc = operand;
+                    }
+                    break;
+                case JUMP_IF_TRUE:
+                    if (result) {
+                        pc = operand;
+                    }
+                    break;
+                case NOT:
+                    result = !result;
+                    break;
+                case CONSTANT:
+                    result = operand != 0;
+                    break;
+                case CALL:
+                    result = conditions[operand].evaluate(attributes);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown instruction " + instruction);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("ConditionProgram{");
+        for (int pc = 0; pc < instructions.length; pc++) {
+            int operand = instructions[pc] >> OPCODE_BITS;
+            s.append(pc == 0 ? "" : ", ").append(pc).append(": ");
+            switch (instructions[pc] & OPCODE_MASK) {
+                case MATCH:
+                    s.append("match ").append(attributeNames[operand]).append("='")
+                     .append(values[operand]).append("'");
+                    break;
+                case JUMP_IF_FALSE:
+                    s.append("jump if false ").append(operand);
+                    break;
+                case JUMP_IF_TRUE:
+                    s.append("jump if true ").append(operand);
+                    break;
+                case NOT:
+                    s.append("not");
+                    break;
+                case CONSTANT:
+                    s.append(operand != 0);
+                    break;
+                default:
+                    s.append("call ").append(conditions[operand]);
+            }
+        }
+
+        return s.append("}").toString();
+    }
+
+    //======== Helper classes ========//
+
+    private static final class Compiler {
+
+        private int[] instructions = new int[16];
+        private int size;
+
+        private final List<String> attributeNames = new ArrayList<String>();
+        private final List<String> values = new ArrayList<String>();
+        private final Map<String, Integer> attributeMatchCounts = new HashMap<String, Integer>();
+        private final List<Condition> conditions = new ArrayList<Condition>();
+
+        void compile(Condition condition) {
+            Class<?> conditionClass = (condition != null) ? condition.getClass() : null;
+            if (conditionClass == UserAttribute.class) {
+                UserAttribute userAttribute = (UserAttribute)condition;
+                Integer matchCount = attributeMatchCounts.get(userAttribute.getName());
+                attributeMatchCounts.put(userAttribute.getName(), (matchCount == null) ? 1 : matchCount + 1);
+                emit(MATCH, values.size());
+                attributeNames.add(userAttribute.getName());
+                values.add(userAttribute.getValue());
+            } else if (conditionClass == AndCondition.class) {
+                compileJunction(((AndCondition)condition).getConditions(), JUMP_IF_FALSE, true);
+            } else if (conditionClass == OrCondition.class) {
+                compileJunction(((OrCondition)condition).getConditions(), JUMP_IF_TRUE, false);
+            } else if (conditionClass == NotCondition.class) {
+                compile(((NotCondition)condition).getCondition());
+                emit(NOT, 0);
+            } else {
+                emit(CALL, conditions.size());
+                conditions.add(condition);
+            }
+        }
+
+        /**
+         * Compiles the operands of an {@code and} or {@code or} condition, each followed by a jump to the end that's
+         * taken when the operand decides the result.
+         */
+        private void compileJunction(List<Condition> operands, int jumpOpcode, boolean emptyResult) {
+            if (operands.isEmpty()) {
+                emit(CONSTANT, emptyResult ? 1 : 0);
+                return;
+            }
+
+            int[] jumps = new int[operands.size() - 1];
+            for (int i = 0; i < operands.size(); i++) {
+                compile(operands.get(i));
+                if (i < jumps.length) {
+                    jumps[i] = size;
+                    emit(jumpOpcode, 0);
+                }
+            }
+
+            // patch the jumps now that the end is known
+            for (int jump : jumps) {
+                instructions[jump] = jumpOpcode | (size << OPCODE_BITS);
+            }
+        }
+
+        private void emit(int opcode, int operand) {
+            if (size == instructions.length) {
+                instructions = Arrays.copyOf(instructions, size * 2);
+            }
+            instructions[size++] = opcode | (operand << OPCODE_BITS);
+        }
+
+        ConditionProgram build() {
+            // give a slot to each attribute that's matched more than once
+            Map<String, Integer> attributeSlots = new HashMap<String, Integer>();
+            int[] slots = new int[attributeNames.size()];
+            for (int i = 0; i < slots.length; i++) {
+                String attributeName = attributeNames.get(i);
+                if (attributeMatchCounts.get(attributeName) < 2) {
+                    slots[i] = -1;
+                    continue;
+                }
+
+                Integer slot = attributeSlots.get(attributeName);
+                if (slot == null) {
+                    slot = attributeSlots.size();
+                    attributeSlots.put(attributeName, slot);
+                }
+                slots[i] = slot;
+            }
+
+            return new ConditionProgram(Arrays.copyOf(instructions, size),
+                                        attributeNames.toArray(new String[attributeNames.size()]),
+                                        values.toArray(new String[values.size()]),
+                                        slots,
+                                        attributeSlots.size(),
+                                        conditions.toArray(new Condition[conditions.size()]),
+                                        null,
+                                        null);
+        }
+    }
+}
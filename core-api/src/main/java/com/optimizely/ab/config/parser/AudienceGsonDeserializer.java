@@ -43,21 +43,24 @@ public class AudienceGsonDeserializer implements JsonDeserializer<Audience> {
     @Override
     public Audience deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
             throws JsonParseException {
+        return parseAudience(json.getAsJsonObject(), new StringPool());
+    }
+
+    static Audience parseAudience(JsonObject jsonObject, StringPool pool) {
         Gson gson = new Gson();
         JsonParser parser = new JsonParser();
-        JsonObject jsonObject = json.getAsJsonObject();
 
-        String id = jsonObject.get("id").getAsString();
-        String name = jsonObject.get("name").getAsString();
+        String id = pool.intern(jsonObject.get("id").getAsString());
+        String name = pool.intern(jsonObject.get("name").getAsString());
 
         JsonElement conditionsElement = parser.parse(jsonObject.get("conditions").getAsString());
         List<Object> rawObjectList = gson.fromJson(conditionsElement, List.class);
-        Condition conditions = parseConditions(rawObjectList);
+        Condition conditions = parseConditions(rawObjectList, pool);
 
         return new Audience(id, name, conditions);
     }
 
-    private Condition parseConditions(List<Object> rawObjectList) {
+    private static Condition parseConditions(List<Object> rawObjectList, StringPool pool) {
         List<Condition> conditions = new ArrayList<Condition>();
         String operand = (String)rawObjectList.get(0);
 
@@ -65,11 +68,12 @@ public class AudienceGsonDeserializer implements JsonDeserializer<Audience> {
             Object obj = rawObjectList.get(i);
             if (obj instanceof List) {
                 List<Object> objectList = (List<Object>)rawObjectList.get(i);
-                conditions.add(parseConditions(objectList));
+                conditions.add(parseConditions(objectList, pool));
             } else {
                 LinkedTreeMap<String, String> conditionMap = (LinkedTreeMap<String, String>)rawObjectList.get(i);
-                conditions.add(new UserAttribute(conditionMap.get("name"), conditionMap.get("type"),
-                               conditionMap.get("value")));
+                conditions.add(new UserAttribute(pool.intern(conditionMap.get("name")),
+                                                 pool.intern(conditionMap.get("type")),
+                                                 pool.intern(conditionMap.get("value"))));
             }
         }
 
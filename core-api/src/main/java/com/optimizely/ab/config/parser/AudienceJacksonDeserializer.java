@@ -17,10 +17,10 @@
 package com.optimizely.ab.config.parser;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.AndCondition;
@@ -38,18 +38,27 @@ public class AudienceJacksonDeserializer extends JsonDeserializer<Audience> {
 
     @Override
     public Audience deserialize(JsonParser parser, DeserializationContext context) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode node = parser.getCodec().readTree(parser);
+        ObjectCodec codec = parser.getCodec();
+        JsonNode node = codec.readTree(parser);
+        StringPool pool = StringJacksonDeserializer.getPool(context);
 
-        String id = node.get("id").textValue();
-        String name = node.get("name").textValue();
-        List<Object> rawObjectList = (List<Object>)mapper.readValue(node.get("conditions").textValue(), List.class);
-        Condition conditions = parseConditions(rawObjectList);
+        String id = pool.intern(node.get("id").textValue());
+        String name = pool.intern(node.get("name").textValue());
+
+        // the conditions are json embedded in a string, which is read with the parser's own codec
+        JsonParser conditionsParser = codec.getFactory().createParser(node.get("conditions").textValue());
+        List<Object> rawObjectList;
+        try {
+            rawObjectList = (List<Object>)codec.readValue(conditionsParser, List.class);
+        } finally {
+            conditionsParser.close();
+        }
+        Condition conditions = parseConditions(rawObjectList, pool);
 
         return new Audience(id, name, conditions);
     }
 
-    private Condition parseConditions(List<Object> rawObjectList) {
+    private Condition parseConditions(List<Object> rawObjectList, StringPool pool) {
         List<Condition> conditions = new ArrayList<Condition>();
         String operand = (String)rawObjectList.get(0);
 
@@ -57,11 +66,12 @@ public class AudienceJacksonDeserializer extends JsonDeserializer<Audience> {
             Object obj = rawObjectList.get(i);
             if (obj instanceof List) {
                 List<Object> objectList = (List<Object>)rawObjectList.get(i);
-                conditions.add(parseConditions(objectList));
+                conditions.add(parseConditions(objectList, pool));
             } else {
                 HashMap<String, String> conditionMap = (HashMap<String, String>)rawObjectList.get(i);
-                conditions.add(new UserAttribute(conditionMap.get("name"), conditionMap.get("type"),
-                               conditionMap.get("value")));
+                conditions.add(new UserAttribute(pool.intern(conditionMap.get("name")),
+                                                 pool.intern(conditionMap.get("type")),
+                                                 pool.intern(conditionMap.get("value"))));
             }
         }
 
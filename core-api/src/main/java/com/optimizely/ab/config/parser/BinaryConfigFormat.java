@@ -0,0 +1,849 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.LazyEntityList;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.TrafficAllocation;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.config.audience.UserAttribute;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Compact binary serialization of a {@link ProjectConfig}, for starting clients without parsing json.
+ * <p>
+ * A datafile is compiled once, with {@link #write(ProjectConfig, File)} or from the command line:
+ * <pre>
+ *     java -cp &lt;classpath&gt; com.optimizely.ab.config.parser.BinaryConfigFormat datafile.json datafile.bin
+ * </pre>
+ * and each process then {@link #load(File) loads} it by memory-mapping the file, so that processes on the same host
+ * share its pages:
+ * <pre>
+ *     Optimizely optimizely = Optimizely.builder(BinaryConfigFormat.load(file), eventHandler).build();
+ * </pre>
+ * Every distinct string is stored once in a table at the start of the file, and decoded once on load, so the entities
+ * of the loaded config share their ids, keys and statuses. Traffic ranges are stored as integers and audience
+ * conditions as prefix-ordered trees, which are compiled as the config is built.
+ * <p>
+ * Files are written to a temporary file that's then renamed over the destination, so processes that have mapped an
+ * earlier version keep reading it unchanged.
+ * <p>
+ * Configs can also be {@link #loadLazily(File) loaded lazily}, in which case the file is only scanned for the ids and
+ * keys of its experiments, groups and audiences, and each of those is decoded from the mapped file the first time
+ * it's looked up.
+ */
+public final class BinaryConfigFormat {
+
+    // "OPTB"
+    private static final int MAGIC = 0x4F505442;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NULL_STRING = -1;
+
+    private static final byte AND_CONDITION = 1;
+    private static final byte OR_CONDITION = 2;
+    private static final byte NOT_CONDITION = 3;
+    private static final byte USER_ATTRIBUTE = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryConfigFormat() { }
+
+    //======== Writing ========//
+
+    /**
+     * Writes the config to the stream, which isn't closed.
+     *
+     * @throws IllegalArgumentException if an audience has a condition other than the datafile's and, or, not and
+     * user attribute conditions
+     */
+    public static void write(@Nonnull ProjectConfig projectConfig, @Nonnull OutputStream out) throws IOException {
+        // the body refers to strings by their index in the table that precedes it, so it's written first
+        Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        new Writer(new DataOutputStream(body), stringTable).writeProjectConfig(projectConfig);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        dataOut.writeInt(stringTable.size());
+        for (String string : stringTable.keySet()) {
+            byte[] bytes = string.getBytes(UTF_8);
+            dataOut.writeInt(bytes.length);
+            dataOut.write(bytes);
+        }
+        body.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Writes the config to the file, replacing it once the config has been written in full.
+     */
+    public static void write(@Nonnull ProjectConfig projectConfig, @Nonnull File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        // temporary file prefixes need at least three characters, which short names are padded to
+        File tempFile = File.createTempFile(file.getName() + "-tmp", ".tmp", directory);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+            try {
+                write(projectConfig, out);
+            } finally {
+                out.close();
+            }
+
+            // renaming over an existing file isn't atomic on all platforms, in which case it's deleted first
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                throw new IOException("unable to replace " + file);
+            }
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    //======== Reading ========//
+
+    /**
+     * Reads a config from the remaining bytes of the buffer. The buffer's position isn't changed.
+     *
+     * @throws ConfigParseException if the buffer doesn't hold a config written in this format
+     */
+    public static @Nonnull ProjectConfig read(@Nonnull ByteBuffer buffer) throws ConfigParseException {
+        return read(buffer, false);
+    }
+
+    /**
+     * Reads a {@link ProjectConfig#createLazy lazy} config from the remaining bytes of the buffer, which decodes its
+     * experiments, groups and audiences from the buffer as they're first looked up. The buffer's position isn't
+     * changed, and its contents must not be changed while the config is in use.
+     * <p>
+     * The whole buffer is scanned up front, so a malformed config is still reported here rather than on lookup.
+     *
+     * @throws ConfigParseException if the buffer doesn't hold a config written in this format
+     */
+    public static @Nonnull ProjectConfig readLazily(@Nonnull ByteBuffer buffer) throws ConfigParseException {
+        return read(buffer, true);
+    }
+
+    private static ProjectConfig read(ByteBuffer buffer, boolean lazily) {
+        try {
+            Reader reader = new Reader(buffer.duplicate());
+            return lazily ? reader.readLazyProjectConfig() : reader.readProjectConfig();
+        } catch (BufferUnderflowException e) {
+            throw new ConfigParseException("truncated binary project config", e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new ConfigParseException("corrupt binary project config", e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigParseException("corrupt binary project config", e);
+        }
+    }
+
+    /**
+     * Reads a config from the file, which is memory-mapped rather than read onto the heap.
+     *
+     * @throws IOException if the file can't be mapped
+     * @throws ConfigParseException if the file doesn't hold a config written in this format
+     */
+    public static @Nonnull ProjectConfig load(@Nonnull File file) throws IOException, ConfigParseException {
+        return read(map(file));
+    }
+
+    /**
+     * Reads a {@link #readLazily(ByteBuffer) lazy} config from the file, which is memory-mapped for as long as the
+     * config is in use. Files written by {@link #write(ProjectConfig, File)} replace the mapped file rather than
+     * rewriting it, so it's safe to update the file while a config loaded from it is in use.
+     *
+     * @throws IOException if the file can't be mapped
+     * @throws ConfigParseException if the file doesn't hold a config written in this format
+     */
+    public static @Nonnull ProjectConfig loadLazily(@Nonnull File file) throws IOException, ConfigParseException {
+        return readLazily(map(file));
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid once the channel is closed
+            FileChannel channel = randomAccessFile.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Compiles a json datafile into a binary config file.
+     *
+     * @param args the path of the json datafile, followed by the path to write the binary config to
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BinaryConfigFormat <datafile.json> <output file>");
+            System.exit(1);
+        }
+
+        ProjectConfig projectConfig;
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            projectConfig = DefaultConfigParser.getStreamingInstance().parseProjectConfig(in);
+        } finally {
+            in.close();
+        }
+        write(projectConfig, new File(args[1]));
+    }
+
+    //======== Helper classes ========//
+
+    private static final class Writer {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> stringTable;
+
+        Writer(DataOutputStream out, Map<String, Integer> stringTable) {
+            this.out = out;
+            this.stringTable = stringTable;
+        }
+
+        void writeProjectConfig(ProjectConfig projectConfig) throws IOException {
+            writeString(projectConfig.getAccountId());
+            writeString(projectConfig.getProjectId());
+            writeString(projectConfig.getVersion());
+            writeString(projectConfig.getRevision());
+
+            // the config's experiments include those of its groups, which are written with their groups
+            Set<String> groupExperimentIds = new HashSet<String>();
+            for (Group group : projectConfig.getGroups()) {
+                for (Experiment experiment : group.getExperiments()) {
+                    groupExperimentIds.add(experiment.getId());
+                }
+            }
+            List<Experiment> experiments = new ArrayList<Experiment>();
+            for (Experiment experiment : projectConfig.getExperiments()) {
+                if (!groupExperimentIds.contains(experiment.getId())) {
+                    experiments.add(experiment);
+                }
+            }
+            writeExperiments(experiments);
+
+            out.writeInt(projectConfig.getGroups().size());
+            for (Group group : projectConfig.getGroups()) {
+                writeString(group.getId());
+                writeString(group.getPolicy());
+                writeExperiments(group.getExperiments());
+                writeTrafficAllocation(group.getTrafficAllocation());
+            }
+
+            out.writeInt(projectConfig.getAttributes().size());
+            for (Attribute attribute : projectConfig.getAttributes()) {
+                writeString(attribute.getId());
+                writeString(attribute.getKey());
+                writeString(attribute.getSegmentId());
+            }
+
+            out.writeInt(projectConfig.getEventTypes().size());
+            for (EventType eventType : projectConfig.getEventTypes()) {
+                writeString(eventType.getId());
+                writeString(eventType.getKey());
+                writeStrings(eventType.getExperimentIds());
+            }
+
+            out.writeInt(projectConfig.getAudiences().size());
+            for (Audience audience : projectConfig.getAudiences()) {
+                writeString(audience.getId());
+                writeString(audience.getName());
+                writeCondition(audience.getConditions());
+            }
+        }
+
+        private void writeExperiments(List<Experiment> experiments) throws IOException {
+            out.writeInt(experiments.size());
+            for (Experiment experiment : experiments) {
+                writeString(experiment.getId());
+                writeString(experiment.getKey());
+                writeString(experiment.getStatus());
+                writeStrings(experiment.getAudienceIds());
+
+                out.writeInt(experiment.getVariations().size());
+                for (Variation variation : experiment.getVariations()) {
+                    writeString(variation.getId());
+                    writeString(variation.getKey());
+                }
+
+                Map<String, String> forcedVariations = experiment.getUserIdToVariationKeyMap();
+                if (forcedVariations == null) {
+                    forcedVariations = Collections.emptyMap();
+                }
+                out.writeInt(forcedVariations.size());
+                for (Map.Entry<String, String> forcedVariation : forcedVariations.entrySet()) {
+                    writeString(forcedVariation.getKey());
+                    writeString(forcedVariation.getValue());
+                }
+
+                writeTrafficAllocation(experiment.getTrafficAllocation());
+            }
+        }
+
+        private void writeTrafficAllocation(List<TrafficAllocation> trafficAllocation) throws IOException {
+            out.writeInt(trafficAllocation.size());
+            for (TrafficAllocation allocation : trafficAllocation) {
+                writeString(allocation.getEntityId());
+                out.writeInt(allocation.getEndOfRange());
+            }
+        }
+
+        private void writeCondition(Condition condition) throws IOException {
+            Class<?> conditionClass = (condition != null) ? condition.getClass() : null;
+            if (conditionClass == AndCondition.class) {
+                out.writeByte(AND_CONDITION);
+                writeConditions(((AndCondition)condition).getConditions());
+            } else if (conditionClass == OrCondition.class) {
+                out.writeByte(OR_CONDITION);
+                writeConditions(((OrCondition)condition).getConditions());
+            } else if (conditionClass == NotCondition.class) {
+                out.writeByte(NOT_CONDITION);
+                writeCondition(((NotCondition)condition).getCondition());
+            } else if (conditionClass == UserAttribute.class) {
+                UserAttribute userAttribute = (UserAttribute)condition;
+                out.writeByte(USER_ATTRIBUTE);
+                writeString(userAttribute.getName());
+                writeString(userAttribute.getType());
+                writeString(userAttribute.getValue());
+            } else {
+                throw new IllegalArgumentException("unsupported condition: " + condition);
+            }
+        }
+
+        private void writeConditions(List<Condition> conditions) throws IOException {
+            out.writeInt(conditions.size());
+            for (Condition condition : conditions) {
+                writeCondition(condition);
+            }
+        }
+
+        private void writeStrings(List<String> strings) throws IOException {
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(string);
+            }
+        }
+
+        private void writeString(@CheckForNull String string) throws IOException {
+            if (string == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+
+            Integer index = stringTable.get(string);
+            if (index == null) {
+                index = stringTable.size();
+                stringTable.put(string, index);
+            }
+            out.writeInt(index);
+        }
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Creates a reader of a single record of a lazy config, whose string table has already been read.
+         */
+        Reader(ByteBuffer buffer, String[] strings) {
+            this.buffer = buffer;
+            this.strings = strings;
+        }
+
+        ProjectConfig readProjectConfig() {
+            readHeader();
+
+            String accountId = readString();
+            String projectId = readString();
+            String version = readString();
+            String revision = readString();
+
+            List<Experiment> experiments = readExperiments("");
+
+            int groupCount = readCount();
+            List<Group> groups = new ArrayList<Group>(groupCount);
+            for (int i = 0; i < groupCount; i++) {
+                String id = readString();
+                String policy = readString();
+                List<Experiment> groupExperiments = readExperiments(id);
+                groups.add(new Group(id, policy, groupExperiments, readTrafficAllocation()));
+            }
+
+            int attributeCount = readCount();
+            List<Attribute> attributes = new ArrayList<Attribute>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(new Attribute(readString(), readString(), readString()));
+            }
+
+            int eventCount = readCount();
+            List<EventType> events = new ArrayList<EventType>(eventCount);
+            for (int i = 0; i < eventCount; i++) {
+                events.add(new EventType(readString(), readString(), readStrings()));
+            }
+
+            int audienceCount = readCount();
+            List<Audience> audiences = new ArrayList<Audience>(audienceCount);
+            for (int i = 0; i < audienceCount; i++) {
+                audiences.add(new Audience(readString(), readString(), readCondition()));
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new ConfigParseException("unexpected content after binary project config");
+            }
+
+            return new ProjectConfig(accountId, projectId, version, revision, groups, experiments, attributes, events,
+                                     audiences);
+        }
+
+        /**
+         * Scans the config for the ids and keys of its experiments, groups and audiences, and where each one starts,
+         * skipping over the rest of them. Attributes and events are small, and are read as they are.
+         */
+        ProjectConfig readLazyProjectConfig() {
+            readHeader();
+
+            String accountId = readString();
+            String projectId = readString();
+            String version = readString();
+            String revision = readString();
+
+            RecordIndex experimentIndex = new RecordIndex();
+            List<String> experimentGroupIds = new ArrayList<String>();
+            scanExperiments("", experimentIndex, experimentGroupIds);
+
+            int groupCount = readCount();
+            RecordIndex groupIndex = new RecordIndex();
+            // each group's experiments, as the range of their indexes in all of the experiments, and where its
+            // traffic allocation starts
+            int[] groupExperimentStarts = new int[groupCount];
+            int[] groupExperimentEnds = new int[groupCount];
+            int[] groupTrafficOffsets = new int[groupCount];
+            for (int i = 0; i < groupCount; i++) {
+                int offset = buffer.position();
+                String id = readString();
+                skipString();
+                groupIndex.add(offset, id, id);
+                groupExperimentStarts[i] = experimentIndex.size();
+                scanExperiments(id, experimentIndex, experimentGroupIds);
+                groupExperimentEnds[i] = experimentIndex.size();
+                groupTrafficOffsets[i] = buffer.position();
+                skipTrafficAllocation();
+            }
+
+            int attributeCount = readCount();
+            List<Attribute> attributes = new ArrayList<Attribute>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(new Attribute(readString(), readString(), readString()));
+            }
+
+            int eventCount = readCount();
+            List<EventType> events = new ArrayList<EventType>(eventCount);
+            for (int i = 0; i < eventCount; i++) {
+                events.add(new EventType(readString(), readString(), readStrings()));
+            }
+
+            int audienceCount = readCount();
+            RecordIndex audienceIndex = new RecordIndex();
+            for (int i = 0; i < audienceCount; i++) {
+                int offset = buffer.position();
+                audienceIndex.add(offset, readString(), readString());
+                skipCondition();
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new ConfigParseException("unexpected content after binary project config");
+            }
+
+            // records are decoded from their own views of the buffer, so that lookups on different threads don't
+            // share a position
+            LazyExperiments experiments = new LazyExperiments(buffer, strings, experimentIndex, experimentGroupIds);
+            LazyGroups groups = new LazyGroups(buffer, strings, groupIndex, experiments, groupExperimentStarts,
+                                               groupExperimentEnds, groupTrafficOffsets);
+            LazyAudiences audiences = new LazyAudiences(buffer, strings, audienceIndex);
+
+            return ProjectConfig.createLazy(accountId, projectId, version, revision, groups, experiments, attributes,
+                                            events, audiences);
+        }
+
+        private void readHeader() {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new ConfigParseException("not a binary project config");
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new ConfigParseException("unsupported binary project config version: " + formatVersion);
+            }
+            readStringTable();
+        }
+
+        private void readStringTable() {
+            int count = readCount();
+            strings = new String[count];
+            byte[] scratch = new byte[0];
+            for (int i = 0; i < count; i++) {
+                int length = readCount();
+                if (buffer.hasArray()) {
+                    strings[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+                    buffer.position(buffer.position() + length);
+                } else {
+                    if (scratch.length < length) {
+                        scratch = new byte[Math.max(length, scratch.length * 2)];
+                    }
+                    buffer.get(scratch, 0, length);
+                    strings[i] = new String(scratch, 0, length, UTF_8);
+                }
+            }
+        }
+
+        private List<Experiment> readExperiments(String groupId) {
+            int count = readCount();
+            List<Experiment> experiments = new ArrayList<Experiment>(count);
+            for (int i = 0; i < count; i++) {
+                experiments.add(readExperiment(groupId));
+            }
+
+            return experiments;
+        }
+
+        private Experiment readExperiment(String groupId) {
+            String id = readString();
+            String key = readString();
+            String status = readString();
+            List<String> audienceIds = readStrings();
+
+            int variationCount = readCount();
+            List<Variation> variations = new ArrayList<Variation>(variationCount);
+            for (int i = 0; i < variationCount; i++) {
+                variations.add(new Variation(readString(), readString()));
+            }
+
+            int forcedVariationCount = readCount();
+            Map<String, String> forcedVariations = new HashMap<String, String>();
+            for (int i = 0; i < forcedVariationCount; i++) {
+                forcedVariations.put(readString(), readString());
+            }
+
+            return new Experiment(id, key, status, audienceIds, variations, forcedVariations, readTrafficAllocation(),
+                                  groupId);
+        }
+
+        private List<TrafficAllocation> readTrafficAllocation() {
+            int count = readCount();
+            List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>(count);
+            for (int i = 0; i < count; i++) {
+                trafficAllocation.add(new TrafficAllocation(readString(), buffer.getInt()));
+            }
+
+            return trafficAllocation;
+        }
+
+        private Condition readCondition() {
+            byte type = buffer.get();
+            switch (type) {
+                case AND_CONDITION:
+                    return new AndCondition(readConditions());
+                case OR_CONDITION:
+                    return new OrCondition(readConditions());
+                case NOT_CONDITION:
+                    return new NotCondition(readCondition());
+                case USER_ATTRIBUTE:
+                    return new UserAttribute(readString(), readString(), readString());
+                default:
+                    throw new ConfigParseException("unknown condition type: " + type);
+            }
+        }
+
+        private List<Condition> readConditions() {
+            int count = readCount();
+            List<Condition> conditions = new ArrayList<Condition>(count);
+            for (int i = 0; i < count; i++) {
+                conditions.add(readCondition());
+            }
+
+            return conditions;
+        }
+
+        //======== Scanning ========//
+
+        private void scanExperiments(String groupId, RecordIndex experimentIndex, List<String> experimentGroupIds) {
+            int count = readCount();
+            for (int i = 0; i < count; i++) {
+                int offset = buffer.position();
+                String id = readString();
+                String key = readString();
+                experimentIndex.add(offset, id, key);
+                experimentGroupIds.add(groupId);
+
+                skipString();
+                skipStrings();
+                skipStrings(2);
+                skipStrings(2);
+                skipTrafficAllocation();
+            }
+        }
+
+        private void skipTrafficAllocation() {
+            int count = readCount();
+            for (int i = 0; i < count; i++) {
+                skipString();
+                buffer.getInt();
+            }
+        }
+
+        private void skipCondition() {
+            byte type = buffer.get();
+            switch (type) {
+                case AND_CONDITION:
+                case OR_CONDITION:
+                    int count = readCount();
+                    for (int i = 0; i < count; i++) {
+                        skipCondition();
+                    }
+                    break;
+                case NOT_CONDITION:
+                    skipCondition();
+                    break;
+                case USER_ATTRIBUTE:
+                    skipString();
+                    skipString();
+                    skipString();
+                    break;
+                default:
+                    throw new ConfigParseException("unknown condition type: " + type);
+            }
+        }
+
+        private void skipStrings() {
+            skipStrings(1);
+        }
+
+        /**
+         * Skips a count of tuples of strings, such as the id and key of each variation.
+         */
+        private void skipStrings(int tupleSize) {
+            int count = readCount();
+            for (int i = 0; i < count * tupleSize; i++) {
+                skipString();
+            }
+        }
+
+        /**
+         * Skips a string, checking that it's in the table so that it can't fail once it's read on lookup.
+         */
+        private void skipString() {
+            int index = buffer.getInt();
+            if (index != NULL_STRING && (index < 0 || index >= strings.length)) {
+                throw new ConfigParseException("corrupt binary project config");
+            }
+        }
+
+        private List<String> readStrings() {
+            int count = readCount();
+            List<String> strings = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(readString());
+            }
+
+            return strings;
+        }
+
+        private @CheckForNull String readString() {
+            int index = buffer.getInt();
+            return (index == NULL_STRING) ? null : strings[index];
+        }
+
+        /**
+         * Reads a count, which can't exceed the bytes left to read, so that a corrupt count fails fast instead of
+         * sizing a huge collection.
+         */
+        private int readCount() {
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new ConfigParseException("corrupt binary project config");
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * The offsets, ids and keys of the records of a lazy config, in the order they were scanned.
+     */
+    private static final class RecordIndex {
+
+        private final List<Integer> offsets = new ArrayList<Integer>();
+        private final List<String> ids = new ArrayList<String>();
+        private final List<String> keys = new ArrayList<String>();
+
+        void add(int offset, String id, String key) {
+            offsets.add(offset);
+            ids.add(id);
+            keys.add(key);
+        }
+
+        int size() {
+            return offsets.size();
+        }
+    }
+
+    private abstract static class LazyRecords<T> extends LazyEntityList<T> {
+
+        private final ByteBuffer buffer;
+        private final String[] strings;
+        private final int[] offsets;
+        private final String[] ids;
+        private final String[] keys;
+
+        LazyRecords(ByteBuffer buffer, String[] strings, RecordIndex index) {
+            super(index.size());
+            this.buffer = buffer;
+            this.strings = strings;
+            this.offsets = new int[index.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = index.offsets.get(i);
+            }
+            this.ids = index.ids.toArray(new String[index.size()]);
+            this.keys = index.keys.toArray(new String[index.size()]);
+        }
+
+        @Override
+        public @Nonnull String getId(int index) {
+            return ids[index];
+        }
+
+        @Override
+        public @Nonnull String getKey(int index) {
+            return keys[index];
+        }
+
+        @Override
+        protected final @Nonnull T decode(int index) {
+            return decode(readerAt(offsets[index]), index);
+        }
+
+        final Reader readerAt(int offset) {
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset);
+            return new Reader(record, strings);
+        }
+
+        abstract T decode(Reader reader, int index);
+    }
+
+    private static final class LazyExperiments extends LazyRecords<Experiment> {
+
+        private final String[] groupIds;
+
+        LazyExperiments(ByteBuffer buffer, String[] strings, RecordIndex index, List<String> groupIds) {
+            super(buffer, strings, index);
+            this.groupIds = groupIds.toArray(new String[groupIds.size()]);
+        }
+
+        @Override
+        Experiment decode(Reader reader, int index) {
+            return reader.readExperiment(groupIds[index]);
+        }
+    }
+
+    private static final class LazyGroups extends LazyRecords<Group> {
+
+        private final LazyExperiments experiments;
+        private final int[] experimentStarts;
+        private final int[] experimentEnds;
+        private final int[] trafficOffsets;
+
+        LazyGroups(ByteBuffer buffer, String[] strings, RecordIndex index, LazyExperiments experiments,
+                   int[] experimentStarts, int[] experimentEnds, int[] trafficOffsets) {
+            super(buffer, strings, index);
+            this.experiments = experiments;
+            this.experimentStarts = experimentStarts;
+            this.experimentEnds = experimentEnds;
+            this.trafficOffsets = trafficOffsets;
+        }
+
+        @Override
+        Group decode(Reader reader, int index) {
+            String id = reader.readString();
+            String policy = reader.readString();
+
+            // the group's experiments are the same instances as the config's
+            List<Experiment> groupExperiments =
+                new ArrayList<Experiment>(experiments.subList(experimentStarts[index], experimentEnds[index]));
+
+            return new Group(id, policy, groupExperiments, readerAt(trafficOffsets[index]).readTrafficAllocation());
+        }
+    }
+
+    private static final class LazyAudiences extends LazyRecords<Audience> {
+
+        LazyAudiences(ByteBuffer buffer, String[] strings, RecordIndex index) {
+            super(buffer, strings, index);
+        }
+
+        @Override
+        Audience decode(Reader reader, int index) {
+            return new Audience(reader.readString(), reader.readString(), reader.readCondition());
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
+import com.optimizely.ab.config.TrafficAllocation;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.audience.AndCondition;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.Condition;
+import com.optimizely.ab.config.audience.NotCondition;
+import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.config.audience.UserAttribute;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Config parser written against the datafile schema, which needs no json library.
+ * <p>
+ * The datafile is read in a single pass with a {@link DatafileJsonReader}, straight into the config model, without
+ * any reflection or intermediate tree. Fields that aren't part of the schema are skipped. It's used when none of the
+ * supported json libraries are on the classpath, and can be chosen over them with
+ * {@link DefaultConfigParser#getBuiltInInstance()} for faster startup.
+ */
+final class BuiltInConfigParser implements ReconcilingConfigParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig(new DatafileJsonReader(json, new StringPool()), previous);
+        } catch (IOException e) {
+            throw new ConfigParseException("unable to parse project config: " + json, e);
+        } catch (ConfigParseException e) {
+            throw new ConfigParseException("unable to parse project config: " + json, e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig(new DatafileJsonReader(new InputStreamReader(json, UTF_8), new StringPool()),
+                                      previous);
+        } catch (IOException e) {
+            throw new ConfigParseException("unable to read project config", e);
+        } catch (ConfigParseException e) {
+            throw new ConfigParseException("unable to parse project config", e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json) throws ConfigParseException {
+        return parseProjectConfig(new ByteBufferInputStream(json));
+    }
+
+    //======== Helper methods ========//
+
+    private ProjectConfig parseProjectConfig(DatafileJsonReader reader, @Nullable ProjectConfig previous)
+        throws IOException {
+        String accountId = null;
+        String projectId = null;
+        String revision = null;
+        String version = null;
+        List<Group> groups = null;
+        List<Experiment> experiments = null;
+        List<Attribute> attributes = null;
+        List<EventType> events = null;
+        List<Audience> audiences = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("accountId")) {
+                accountId = reader.nextString();
+            } else if (name.equals("projectId")) {
+                projectId = reader.nextString();
+            } else if (name.equals("revision")) {
+                revision = reader.nextString();
+            } else if (name.equals("version")) {
+                version = reader.nextString();
+            } else if (name.equals("groups")) {
+                groups = parseGroups(reader);
+            } else if (name.equals("experiments")) {
+                experiments = parseExperiments(reader, "");
+            } else if (name.equals("dimensions")) {
+                attributes = parseAttributes(reader);
+            } else if (name.equals("events")) {
+                events = parseEvents(reader);
+            } else if (name.equals("audiences")) {
+                audiences = parseAudiences(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        reader.endDocument();
+
+        return ProjectConfigDiff.build(previous, required(accountId, "accountId"), required(projectId, "projectId"),
+                                       required(version, "version"), required(revision, "revision"),
+                                       required(groups, "groups"), required(experiments, "experiments"),
+                                       required(attributes, "dimensions"), required(events, "events"),
+                                       required(audiences, "audiences"));
+    }
+
+    private List<Experiment> parseExperiments(DatafileJsonReader reader, String groupId) throws IOException {
+        List<Experiment> experiments = new ArrayList<Experiment>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            experiments.add(parseExperiment(reader, groupId));
+        }
+        reader.endArray();
+
+        return experiments;
+    }
+
+    private Experiment parseExperiment(DatafileJsonReader reader, String groupId) throws IOException {
+        String id = null;
+        String key = null;
+        String status = null;
+        List<String> audienceIds = null;
+        List<Variation> variations = null;
+        Map<String, String> userIdToVariationKeyMap = null;
+        List<TrafficAllocation> trafficAllocations = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("id")) {
+                id = reader.nextString();
+            } else if (name.equals("key")) {
+                key = reader.nextString();
+            } else if (name.equals("status")) {
+                status = reader.nextString();
+            } else if (name.equals("audienceIds")) {
+                audienceIds = parseStrings(reader);
+            } else if (name.equals("variations")) {
+                variations = parseVariations(reader);
+            } else if (name.equals("forcedVariations")) {
+                userIdToVariationKeyMap = parseForcedVariations(reader);
+            } else if (name.equals("trafficAllocation")) {
+                trafficAllocations = parseTrafficAllocation(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Experiment(required(id, "id"), required(key, "key"), required(status, "status"),
+                              required(audienceIds, "audienceIds"), required(variations, "variations"),
+                              required(userIdToVariationKeyMap, "forcedVariations"),
+                              required(trafficAllocations, "trafficAllocation"), groupId);
+    }
+
+    private List<Variation> parseVariations(DatafileJsonReader reader) throws IOException {
+        List<Variation> variations = new ArrayList<Variation>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            String key = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id")) {
+                    id = reader.nextString();
+                } else if (name.equals("key")) {
+                    key = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            variations.add(new Variation(required(id, "id"), required(key, "key")));
+        }
+        reader.endArray();
+
+        return variations;
+    }
+
+    private Map<String, String> parseForcedVariations(DatafileJsonReader reader) throws IOException {
+        Map<String, String> userIdToVariationKeyMap = new HashMap<String, String>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String userId = reader.nextName();
+            userIdToVariationKeyMap.put(userId, reader.nextString());
+        }
+        reader.endObject();
+
+        return userIdToVariationKeyMap;
+    }
+
+    private List<TrafficAllocation> parseTrafficAllocation(DatafileJsonReader reader) throws IOException {
+        List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String entityId = null;
+            Integer endOfRange = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("entityId")) {
+                    entityId = reader.nextString();
+                } else if (name.equals("endOfRange")) {
+                    endOfRange = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            trafficAllocation.add(new TrafficAllocation(required(entityId, "entityId"),
+                                                        required(endOfRange, "endOfRange")));
+        }
+        reader.endArray();
+
+        return trafficAllocation;
+    }
+
+    private List<Attribute> parseAttributes(DatafileJsonReader reader) throws IOException {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            String key = null;
+            String segmentId = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id")) {
+                    id = reader.nextString();
+                } else if (name.equals("key")) {
+                    key = reader.nextString();
+                } else if (name.equals("segmentId")) {
+                    segmentId = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            attributes.add(new Attribute(id, required(key, "key"), segmentId));
+        }
+        reader.endArray();
+
+        return attributes;
+    }
+
+    private List<EventType> parseEvents(DatafileJsonReader reader) throws IOException {
+        List<EventType> events = new ArrayList<EventType>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            String key = null;
+            List<String> experimentIds = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id")) {
+                    id = reader.nextString();
+                } else if (name.equals("key")) {
+                    key = reader.nextString();
+                } else if (name.equals("experimentIds")) {
+                    experimentIds = parseStrings(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            events.add(new EventType(required(id, "id"), required(key, "key"),
+                                     required(experimentIds, "experimentIds")));
+        }
+        reader.endArray();
+
+        return events;
+    }
+
+    private List<Audience> parseAudiences(DatafileJsonReader reader) throws IOException {
+        List<Audience> audiences = new ArrayList<Audience>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            String key = null;
+            Condition conditions = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id")) {
+                    id = reader.nextString();
+                } else if (name.equals("name")) {
+                    key = reader.nextString();
+                } else if (name.equals("conditions")) {
+                    // the conditions are json embedded in a string, whose values share the config's pool
+                    DatafileJsonReader conditionReader =
+                        new DatafileJsonReader(required(reader.nextString(), "conditions"), reader.getPool());
+                    conditions = parseConditions(conditionReader);
+                    conditionReader.endDocument();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            audiences.add(new Audience(required(id, "id"), key, required(conditions, "conditions")));
+        }
+        reader.endArray();
+
+        return audiences;
+    }
+
+    private Condition parseConditions(DatafileJsonReader reader) throws IOException {
+        List<Condition> conditions = new ArrayList<Condition>();
+
+        reader.beginArray();
+        if (!reader.hasNext()) {
+            throw new ConfigParseException("missing condition operator");
+        }
+        String operand = required(reader.nextString(), "operator");
+        while (reader.hasNext()) {
+            if (reader.peekArray()) {
+                conditions.add(parseConditions(reader));
+            } else {
+                conditions.add(parseUserAttribute(reader));
+            }
+        }
+        reader.endArray();
+
+        Condition condition;
+        if (operand.equals("and")) {
+            condition = new AndCondition(conditions);
+        } else if (operand.equals("or")) {
+            condition = new OrCondition(conditions);
+        } else {
+            if (conditions.isEmpty()) {
+                throw new ConfigParseException("missing operand of \"" + operand + "\" condition");
+            }
+            condition = new NotCondition(conditions.get(0));
+        }
+
+        return condition;
+    }
+
+    private UserAttribute parseUserAttribute(DatafileJsonReader reader) throws IOException {
+        String name = null;
+        String type = null;
+        String value = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("name")) {
+                name = reader.nextString();
+            } else if (field.equals("type")) {
+                type = reader.nextString();
+            } else if (field.equals("value")) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new UserAttribute(name, type, value);
+    }
+
+    private List<Group> parseGroups(DatafileJsonReader reader) throws IOException {
+        List<Group> groups = new ArrayList<Group>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            groups.add(parseGroup(reader));
+        }
+        reader.endArray();
+
+        return groups;
+    }
+
+    private Group parseGroup(DatafileJsonReader reader) throws IOException {
+        String id = null;
+        String policy = null;
+        List<Experiment> experiments = null;
+        List<TrafficAllocation> trafficAllocations = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("id")) {
+                id = reader.nextString();
+            } else if (name.equals("policy")) {
+                policy = reader.nextString();
+            } else if (name.equals("experiments")) {
+                experiments = parseExperiments(reader, (id != null) ? id : "");
+            } else if (name.equals("trafficAllocation")) {
+                trafficAllocations = parseTrafficAllocation(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        required(id, "id");
+        required(experiments, "experiments");
+        if (!experiments.isEmpty() && !experiments.get(0).getGroupId().equals(id)) {
+            // the group's id followed its experiments, so they're rebuilt with it
+            List<Experiment> groupExperiments = new ArrayList<Experiment>(experiments.size());
+            for (Experiment experiment : experiments) {
+                groupExperiments.add(new Experiment(experiment.getId(), experiment.getKey(), experiment.getStatus(),
+                                                    experiment.getAudienceIds(), experiment.getVariations(),
+                                                    experiment.getUserIdToVariationKeyMap(),
+                                                    experiment.getTrafficAllocation(), id));
+            }
+            experiments = groupExperiments;
+        }
+
+        return new Group(id, policy, experiments, required(trafficAllocations, "trafficAllocation"));
+    }
+
+    private List<String> parseStrings(DatafileJsonReader reader) throws IOException {
+        List<String> strings = new ArrayList<String>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            strings.add(reader.nextString());
+        }
+        reader.endArray();
+
+        return strings;
+    }
+
+    private static @Nonnull <T> T required(@CheckForNull T value, String field) {
+        if (value == null) {
+            throw new ConfigParseException("missing \"" + field + "\"");
+        }
+
+        return value;
+    }
+}
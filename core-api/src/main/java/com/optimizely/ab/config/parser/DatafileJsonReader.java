@@ -0,0 +1,353 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Minimal pull parser over json text, reading just the values the datafile schema is made of: objects, arrays,
+ * strings, integers and {@code null}. Other values are only ever {@link #skipValue() skipped}.
+ * <p>
+ * Objects and arrays are walked with {@link #beginObject()}, {@link #hasNext()}, {@link #nextName()} and
+ * {@link #endObject()} (or their array equivalents). Malformed json is reported as a {@link ConfigParseException}
+ * with the offset it was found at. String values are interned into the {@link StringPool} of the config being read.
+ */
+final class DatafileJsonReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // whether each open object or array has had a value read from it yet, so the next one must follow a comma
+    private static final byte EMPTY = 0;
+    private static final byte NONEMPTY = 1;
+
+    @CheckForNull private final Reader reader;
+    private final StringPool pool;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    // the offset of the start of the buffer in the json, for error messages
+    private long bufferOffset;
+
+    private byte[] stack = new byte[32];
+    private int stackSize;
+
+    private final StringBuilder scratch = new StringBuilder();
+
+    DatafileJsonReader(@Nonnull Reader reader, @Nonnull StringPool pool) {
+        this.reader = reader;
+        this.pool = pool;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    DatafileJsonReader(@Nonnull String json, @Nonnull StringPool pool) {
+        this.reader = null;
+        this.pool = pool;
+        this.buffer = json.toCharArray();
+        this.limit = buffer.length;
+    }
+
+    @Nonnull StringPool getPool() {
+        return pool;
+    }
+
+    //======== Structure ========//
+
+    void beginObject() throws IOException {
+        consume('{');
+        push();
+    }
+
+    void endObject() throws IOException {
+        consume('}');
+        stackSize--;
+    }
+
+    void beginArray() throws IOException {
+        consume('[');
+        push();
+    }
+
+    void endArray() throws IOException {
+        consume(']');
+        stackSize--;
+    }
+
+    /**
+     * @return whether the current object or array has another member, in which case the separating comma has been
+     * read
+     */
+    boolean hasNext() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '}' || c == ']') {
+            return false;
+        }
+        if (stack[stackSize - 1] == NONEMPTY) {
+            consume(',');
+        } else {
+            stack[stackSize - 1] = NONEMPTY;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return whether the next value is an array, rather than an object or primitive
+     */
+    boolean peekArray() throws IOException {
+        return peekNonWhitespace() == '[';
+    }
+
+    //======== Values ========//
+
+    @Nonnull String nextName() throws IOException {
+        String name = readString();
+        if (name == null) {
+            throw syntaxError("expected a name");
+        }
+        consume(':');
+        return name;
+    }
+
+    @CheckForNull String nextString() throws IOException {
+        return pool.intern(readString());
+    }
+
+    private @CheckForNull String readString() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == 'n') {
+            consumeLiteral("null");
+            return null;
+        }
+        if (c != '"') {
+            throw syntaxError("expected a string");
+        }
+        position++;
+
+        // strings without escapes that are within the buffer are copied from it directly
+        for (int i = position; i < limit; i++) {
+            char ch = buffer[i];
+            if (ch == '"') {
+                String value = new String(buffer, position, i - position);
+                position = i + 1;
+                return value;
+            } else if (ch == '\\') {
+                break;
+            }
+        }
+
+        scratch.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                throw syntaxError("unterminated string");
+            }
+            char ch = buffer[position++];
+            if (ch == '"') {
+                return scratch.toString();
+            } else if (ch == '\\') {
+                scratch.append(readEscape());
+            } else {
+                scratch.append(ch);
+            }
+        }
+    }
+
+    int nextInt() throws IOException {
+        int c = peekNonWhitespace();
+        boolean negative = (c == '-');
+        if (negative) {
+            position++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        while ((position < limit || fill()) && buffer[position] >= '0' && buffer[position] <= '9') {
+            value = value * 10 + (buffer[position++] - '0');
+            if (++digits > 10) {
+                break;
+            }
+        }
+        value = negative ? -value : value;
+        if (digits == 0 || digits > 10 || value != (int)value || isNumberChar(peekChar())) {
+            throw syntaxError("expected an integer");
+        }
+
+        return (int)value;
+    }
+
+    /**
+     * Skips the next value, along with any objects and arrays nested in it.
+     */
+    void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '{') {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else if (c == '[') {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else if (c == '"') {
+            nextString();
+        } else if (c == 't') {
+            consumeLiteral("true");
+        } else if (c == 'f') {
+            consumeLiteral("false");
+        } else if (c == 'n') {
+            consumeLiteral("null");
+        } else if (isNumberChar(c)) {
+            while (isNumberChar(peekChar())) {
+                position++;
+            }
+        } else {
+            throw syntaxError("expected a value");
+        }
+    }
+
+    /**
+     * Verifies that nothing but whitespace follows the json value that was read.
+     */
+    void endDocument() throws IOException {
+        if (peekNonWhitespace() != -1) {
+            throw syntaxError("expected the end of the json");
+        }
+    }
+
+    //======== Helper methods ========//
+
+    private void push() {
+        if (stackSize == stack.length) {
+            byte[] newStack = new byte[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = EMPTY;
+    }
+
+    private void consume(char expected) throws IOException {
+        if (peekNonWhitespace() != expected) {
+            throw syntaxError("expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    private void consumeLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (peekChar() != literal.charAt(i)) {
+                throw syntaxError("expected " + literal);
+            }
+            position++;
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if (position == limit && !fill()) {
+            throw syntaxError("unterminated escape sequence");
+        }
+        char ch = buffer[position++];
+        switch (ch) {
+            case '"':
+            case '\\':
+            case '/':
+                return ch;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(peekChar(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("invalid unicode escape sequence");
+                    }
+                    value = (value << 4) | digit;
+                    position++;
+                }
+                return (char)value;
+            default:
+                throw syntaxError("invalid escape sequence");
+        }
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (position < limit || fill()) {
+            char ch = buffer[position];
+            if (ch != ' ' && ch != '\n' && ch != '\r' && ch != '\t') {
+                return ch;
+            }
+            position++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the next character, without consuming it, or {@code -1} at the end of the json
+     */
+    private int peekChar() throws IOException {
+        return (position < limit || fill()) ? buffer[position] : -1;
+    }
+
+    /**
+     * Refills the buffer from the reader, once the buffered characters have all been consumed.
+     *
+     * @return whether more characters were read
+     */
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+
+        bufferOffset += limit;
+        position = 0;
+        limit = 0;
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read > 0) {
+            limit = read;
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isNumberChar(int c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private ConfigParseException syntaxError(String message) {
+        return new ConfigParseException(message + " at offset " + (bufferOffset + position));
+    }
+}
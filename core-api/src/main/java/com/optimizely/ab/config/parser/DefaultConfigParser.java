@@ -23,6 +23,8 @@ import javax.annotation.Nonnull;
 
 /**
  * Factory for generating {@link ConfigParser} instances, based on the json parser available on the classpath.
+ * <p>
+ * When none of the supported json parsers are available, the built-in parser is used, which needs no dependencies.
  */
 public final class DefaultConfigParser {
 
@@ -34,15 +36,30 @@ public final class DefaultConfigParser {
         return LazyHolder.INSTANCE;
     }
 
+    /**
+     * @return the parser {@link #getInstance()} returns, which also parses the encoded json of datafiles
+     */
+    public static StreamingConfigParser getStreamingInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    /**
+     * @return the built-in parser, which reads datafiles without a json library. It avoids the reflection and class
+     * loading of the library parsers, and so is the quickest to parse a first datafile with.
+     */
+    public static StreamingConfigParser getBuiltInInstance() {
+        return BuiltInHolder.INSTANCE;
+    }
+
     //======== Helper methods ========//
 
     /**
-     * Creates and returns a {@link ConfigParser} using a json parser available on the classpath.
+     * Creates and returns a {@link ReconcilingConfigParser} using a json parser available on the classpath, or the
+     * built-in parser if there are none.
      * @return the created config parser
-     * @throws MissingJsonParserException if there are no supported json parsers available on the classpath
      */
-    private static @Nonnull ConfigParser create() {
-        ConfigParser configParser;
+    private static @Nonnull ReconcilingConfigParser create() {
+        ReconcilingConfigParser configParser;
 
         if (isPresent("com.fasterxml.jackson.databind.ObjectMapper")) {
             configParser = new JacksonConfigParser();
@@ -53,8 +70,7 @@ public final class DefaultConfigParser {
         } else if (isPresent("org.json.JSONObject")) {
             configParser = new JsonConfigParser();
         } else {
-            throw new MissingJsonParserException("unable to locate a JSON parser. "
-                                                 + "Please see <link> for more information");
+            configParser = BuiltInHolder.INSTANCE;
         }
 
         logger.info("using json parser: {}", configParser.getClass().getSimpleName());
@@ -73,6 +89,10 @@ public final class DefaultConfigParser {
     //======== Lazy-init Holder ========//
 
     private static class LazyHolder {
-        private static final ConfigParser INSTANCE = create();
+        private static final ReconcilingConfigParser INSTANCE = create();
+    }
+
+    private static class BuiltInHolder {
+        private static final ReconcilingConfigParser INSTANCE = new BuiltInConfigParser();
     }
 }
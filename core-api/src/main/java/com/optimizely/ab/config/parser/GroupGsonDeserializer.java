@@ -37,20 +37,22 @@ public class GroupGsonDeserializer implements JsonDeserializer<Group> {
     public Group deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
         throws JsonParseException {
 
-        JsonObject jsonObject = json.getAsJsonObject();
+        return parseGroup(json.getAsJsonObject(), new StringPool());
+    }
 
-        String id = jsonObject.get("id").getAsString();
-        String policy = jsonObject.get("policy").getAsString();
+    static Group parseGroup(JsonObject jsonObject, StringPool pool) {
+        String id = pool.intern(jsonObject.get("id").getAsString());
+        String policy = pool.intern(jsonObject.get("policy").getAsString());
 
         List<Experiment> experiments = new ArrayList<Experiment>();
         JsonArray experimentsJson = jsonObject.getAsJsonArray("experiments");
         for (Object obj : experimentsJson) {
             JsonObject experimentObj = (JsonObject)obj;
-            experiments.add(GsonHelpers.parseExperiment(experimentObj, id));
+            experiments.add(GsonHelpers.parseExperiment(experimentObj, id, pool));
         }
 
         List<TrafficAllocation> trafficAllocations =
-                GsonHelpers.parseTrafficAllocation(jsonObject.getAsJsonArray("trafficAllocation"));
+                GsonHelpers.parseTrafficAllocation(jsonObject.getAsJsonArray("trafficAllocation"), pool);
 
         return new Group(id, policy, experiments, trafficAllocations);
     }
@@ -17,11 +17,11 @@
 package com.optimizely.ab.config.parser;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Group;
@@ -35,44 +35,65 @@ import java.util.Map;
 
 public class GroupJacksonDeserializer extends JsonDeserializer<Group> {
 
+    private static final TypeReference<List<String>> STRING_LIST_TYPE = new TypeReference<List<String>>(){};
+    private static final TypeReference<List<Variation>> VARIATION_LIST_TYPE = new TypeReference<List<Variation>>(){};
+    private static final TypeReference<List<TrafficAllocation>> TRAFFIC_ALLOCATION_LIST_TYPE =
+        new TypeReference<List<TrafficAllocation>>(){};
+    private static final TypeReference<Map<String, String>> STRING_MAP_TYPE =
+        new TypeReference<Map<String, String>>(){};
+
     @Override
     public Group deserialize(JsonParser parser, DeserializationContext context) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode node = parser.getCodec().readTree(parser);
+        ObjectCodec codec = parser.getCodec();
+        JsonNode node = codec.readTree(parser);
+        StringPool pool = StringJacksonDeserializer.getPool(context);
 
-        String id = node.get("id").textValue();
-        String policy = node.get("policy").textValue();
-        List<TrafficAllocation> trafficAllocations = mapper.readValue(node.get("trafficAllocation").toString(),
-                                                                      new TypeReference<List<TrafficAllocation>>(){});
+        String id = pool.intern(node.get("id").textValue());
+        String policy = pool.intern(node.get("policy").textValue());
+        List<TrafficAllocation> trafficAllocations = readValue(codec, context, node.get("trafficAllocation"),
+                                                               TRAFFIC_ALLOCATION_LIST_TYPE);
 
         JsonNode groupExperimentsJson = node.get("experiments");
         List<Experiment> groupExperiments = new ArrayList<Experiment>();
         if (groupExperimentsJson.isArray()) {
             for (JsonNode groupExperimentJson : groupExperimentsJson) {
-                groupExperiments.add(parseExperiment(groupExperimentJson, id));
+                groupExperiments.add(parseExperiment(codec, context, pool, groupExperimentJson, id));
             }
         }
 
         return new Group(id, policy, groupExperiments, trafficAllocations);
     }
 
-    private Experiment parseExperiment(JsonNode experimentJson, String groupId) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-
-        String id = experimentJson.get("id").textValue();
-        String key = experimentJson.get("key").textValue();
-        String status = experimentJson.get("status").textValue();
-        List<String> audienceIds = mapper.readValue(experimentJson.get("audienceIds").toString(),
-                                                    new TypeReference<List<String>>(){});
-        List<Variation> variations = mapper.readValue(experimentJson.get("variations").toString(),
-                                                      new TypeReference<List<Variation>>(){});
-        List<TrafficAllocation> trafficAllocations = mapper.readValue(experimentJson.get("trafficAllocation").toString(),
-                                                                      new TypeReference<List<TrafficAllocation>>(){});
-        Map<String, String>  userIdToVariationKeyMap = mapper.readValue(
-            experimentJson.get("forcedVariations").toString(), new TypeReference<Map<String, String>>(){});
+    private Experiment parseExperiment(ObjectCodec codec, DeserializationContext context, StringPool pool,
+                                       JsonNode experimentJson, String groupId) throws IOException {
+        String id = pool.intern(experimentJson.get("id").textValue());
+        String key = pool.intern(experimentJson.get("key").textValue());
+        String status = pool.intern(experimentJson.get("status").textValue());
+        List<String> audienceIds = readValue(codec, context, experimentJson.get("audienceIds"), STRING_LIST_TYPE);
+        List<Variation> variations = readValue(codec, context, experimentJson.get("variations"),
+                                               VARIATION_LIST_TYPE);
+        List<TrafficAllocation> trafficAllocations = readValue(codec, context, experimentJson.get("trafficAllocation"),
+                                                               TRAFFIC_ALLOCATION_LIST_TYPE);
+        Map<String, String>  userIdToVariationKeyMap = readValue(codec, context,
+                                                                 experimentJson.get("forcedVariations"),
+                                                                 STRING_MAP_TYPE);
 
         return new Experiment(id, key, status, audienceIds, variations, userIdToVariationKeyMap, trafficAllocations,
                               groupId);
     }
 
+    /**
+     * Binds the already read tree with the parser's own codec, rather than writing it back out to be read again, in
+     * the current context so that the strings it binds are pooled with the rest of the config's.
+     */
+    private static <T> T readValue(ObjectCodec codec, DeserializationContext context, JsonNode node,
+                                   TypeReference<T> type) throws IOException {
+        JsonParser nodeParser = codec.treeAsTokens(node);
+        try {
+            nodeParser.nextToken();
+            return context.readValue(nodeParser, context.getTypeFactory().constructType(type));
+        } finally {
+            nodeParser.close();
+        }
+    }
 }
@@ -18,6 +18,7 @@ package com.optimizely.ab.config.parser;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 
 import com.optimizely.ab.config.Experiment;
@@ -25,26 +26,73 @@ import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.ProjectConfig;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * {@link Gson}-based config parser implementation.
+ * <p>
+ * The configured {@code Gson} instance is built once and shared, as it's thread-safe.
  */
-final class GsonConfigParser implements ConfigParser {
+final class GsonConfigParser implements ReconcilingConfigParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapter(Audience.class, new AudienceGsonDeserializer())
+        .registerTypeAdapter(Group.class, new GroupGsonDeserializer())
+        .registerTypeAdapter(Experiment.class, new ExperimentGsonDeserializer())
+        .create();
 
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
-        Gson gson = new GsonBuilder()
-            .registerTypeAdapter(ProjectConfig.class, new ProjectConfigGsonDeserializer())
-            .registerTypeAdapter(Audience.class, new AudienceGsonDeserializer())
-            .registerTypeAdapter(Group.class, new GroupGsonDeserializer())
-            .registerTypeAdapter(Experiment.class, new ExperimentGsonDeserializer())
-            .create();
+        return parseProjectConfig(json, null);
+    }
 
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
         try {
-            return gson.fromJson(json, ProjectConfig.class);
+            return parseProjectConfig(gson.fromJson(json, JsonObject.class), previous);
         } catch (JsonParseException e) {
             throw new ConfigParseException("unable to parse project config: " + json, e);
         }
     }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            // the reader is buffered by gson, so it's read from directly
+            return parseProjectConfig(gson.fromJson(new InputStreamReader(json, UTF_8), JsonObject.class), previous);
+        } catch (JsonParseException e) {
+            throw new ConfigParseException("unable to parse project config", e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json) throws ConfigParseException {
+        return parseProjectConfig(new ByteBufferInputStream(json));
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * Builds the config from the datafile's tree, which gson parses custom types from anyway, so that the previous
+     * config can be passed along.
+     */
+    private static ProjectConfig parseProjectConfig(@Nullable JsonObject datafile, @Nullable ProjectConfig previous) {
+        // gson parses empty json as null
+        return (datafile == null) ? null : ProjectConfigGsonDeserializer.parseProjectConfig(datafile, previous);
+    }
 }
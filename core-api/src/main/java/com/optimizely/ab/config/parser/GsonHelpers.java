@@ -20,6 +20,8 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.TrafficAllocation;
 import com.optimizely.ab.config.Variation;
@@ -30,15 +32,19 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Parses config entities from gson trees, interning their strings into the {@link StringPool} of the config being
+ * parsed.
+ */
 final class GsonHelpers {
 
-    private static List<Variation> parseVariations(JsonArray variationJson) {
+    private static List<Variation> parseVariations(JsonArray variationJson, StringPool pool) {
         List<Variation> variations = new ArrayList<Variation>(variationJson.size());
 
         for (Object obj : variationJson) {
             JsonObject variationObject = (JsonObject)obj;
-            String id = variationObject.get("id").getAsString();
-            String key = variationObject.get("key").getAsString();
+            String id = pool.intern(variationObject.get("id").getAsString());
+            String key = pool.intern(variationObject.get("key").getAsString());
 
             variations.add(new Variation(id, key));
         }
@@ -46,22 +52,22 @@ final class GsonHelpers {
         return variations;
     }
 
-    private static Map<String, String> parseForcedVariations(JsonObject forcedVariationJson) {
+    private static Map<String, String> parseForcedVariations(JsonObject forcedVariationJson, StringPool pool) {
         Map<String, String> userIdToVariationKeyMap = new HashMap<String, String>();
         Set<Map.Entry<String, JsonElement>> entrySet = forcedVariationJson.entrySet();
         for (Map.Entry<String, JsonElement> entry : entrySet) {
-            userIdToVariationKeyMap.put(entry.getKey(), entry.getValue().getAsString());
+            userIdToVariationKeyMap.put(pool.intern(entry.getKey()), pool.intern(entry.getValue().getAsString()));
         }
 
         return userIdToVariationKeyMap;
     }
 
-    static List<TrafficAllocation> parseTrafficAllocation(JsonArray trafficAllocationJson) {
+    static List<TrafficAllocation> parseTrafficAllocation(JsonArray trafficAllocationJson, StringPool pool) {
         List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>(trafficAllocationJson.size());
 
         for (Object obj : trafficAllocationJson) {
             JsonObject allocationObject = (JsonObject)obj;
-            String entityId = allocationObject.get("entityId").getAsString();
+            String entityId = pool.intern(allocationObject.get("entityId").getAsString());
             int endOfRange = allocationObject.get("endOfRange").getAsInt();
 
             trafficAllocation.add(new TrafficAllocation(entityId, endOfRange));
@@ -70,29 +76,51 @@ final class GsonHelpers {
         return trafficAllocation;
     }
 
-    static Experiment parseExperiment(JsonObject experimentJson, String groupId) {
-        String id = experimentJson.get("id").getAsString();
-        String key = experimentJson.get("key").getAsString();
-        String status = experimentJson.get("status").getAsString();
-
-        JsonArray audienceIdsJson = experimentJson.getAsJsonArray("audienceIds");
-        List<String> audienceIds = new ArrayList<String>(audienceIdsJson.size());
-        for (JsonElement audienceIdObj : audienceIdsJson) {
-            audienceIds.add(audienceIdObj.getAsString());
-        }
+    static Experiment parseExperiment(JsonObject experimentJson, String groupId, StringPool pool) {
+        String id = pool.intern(experimentJson.get("id").getAsString());
+        String key = pool.intern(experimentJson.get("key").getAsString());
+        String status = pool.intern(experimentJson.get("status").getAsString());
+        List<String> audienceIds = parseStrings(experimentJson.getAsJsonArray("audienceIds"), pool);
 
         // parse the child objects
-        List<Variation> variations = parseVariations(experimentJson.getAsJsonArray("variations"));
+        List<Variation> variations = parseVariations(experimentJson.getAsJsonArray("variations"), pool);
         Map<String, String> userIdToVariationKeyMap =
-                parseForcedVariations(experimentJson.getAsJsonObject("forcedVariations"));
+                parseForcedVariations(experimentJson.getAsJsonObject("forcedVariations"), pool);
         List<TrafficAllocation> trafficAllocations =
-                parseTrafficAllocation(experimentJson.getAsJsonArray("trafficAllocation"));
+                parseTrafficAllocation(experimentJson.getAsJsonArray("trafficAllocation"), pool);
 
         return new Experiment(id, key, status, audienceIds, variations, userIdToVariationKeyMap, trafficAllocations,
                               groupId);
     }
 
-    static Experiment parseExperiment(JsonObject experimentJson) {
-        return parseExperiment(experimentJson, "");
+    static Experiment parseExperiment(JsonObject experimentJson, StringPool pool) {
+        return parseExperiment(experimentJson, "", pool);
+    }
+
+    static Attribute parseAttribute(JsonObject attributeJson, StringPool pool) {
+        return new Attribute(getString(attributeJson, "id", pool), getString(attributeJson, "key", pool),
+                             getString(attributeJson, "segmentId", pool));
+    }
+
+    static EventType parseEvent(JsonObject eventJson, StringPool pool) {
+        return new EventType(getString(eventJson, "id", pool), getString(eventJson, "key", pool),
+                             parseStrings(eventJson.getAsJsonArray("experimentIds"), pool));
+    }
+
+    private static List<String> parseStrings(JsonArray stringsJson, StringPool pool) {
+        List<String> strings = new ArrayList<String>(stringsJson.size());
+        for (JsonElement stringJson : stringsJson) {
+            strings.add(pool.intern(stringJson.getAsString()));
+        }
+
+        return strings;
+    }
+
+    /**
+     * @return the string member, or {@code null} if it's missing, as gson binds missing fields
+     */
+    private static String getString(JsonObject json, String memberName, StringPool pool) {
+        JsonElement member = json.get(memberName);
+        return (member == null || member.isJsonNull()) ? null : pool.intern(member.getAsString());
     }
 }
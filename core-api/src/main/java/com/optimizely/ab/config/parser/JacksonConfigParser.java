@@ -16,34 +16,145 @@
  */
 package com.optimizely.ab.config.parser;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * {@code Jackson}-based config parser implementation.
+ * <p>
+ * The configured reader is built once and shared, as it's thread-safe, and binds the entities of the config straight
+ * from the parsed tokens of each datafile. Each parse gets its own {@link StringPool}, as an attribute of the reader,
+ * which the strings of the config are interned into.
  */
-final class JacksonConfigParser implements ConfigParser {
+final class JacksonConfigParser implements ReconcilingConfigParser {
 
-    @Override
-    public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+    private final ObjectReader reader;
+
+    JacksonConfigParser() {
         ObjectMapper mapper = new ObjectMapper();
+        // streams are the caller's to close
+        mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
         SimpleModule module = new SimpleModule();
         module.addDeserializer(Audience.class, new AudienceJacksonDeserializer());
         module.addDeserializer(Group.class, new GroupJacksonDeserializer());
+        module.addDeserializer(String.class, new StringJacksonDeserializer());
         mapper.registerModule(module);
 
+        this.reader = mapper.readerFor(Datafile.class);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
         try {
-            return mapper.readValue(json, ProjectConfig.class);
+            return pooledReader().<Datafile>readValue(json).toProjectConfig(previous);
         } catch (IOException e) {
             throw new ConfigParseException("unable to parse project config: " + json, e);
         }
     }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            return pooledReader().<Datafile>readValue(json).toProjectConfig(previous);
+        } catch (IOException e) {
+            throw new ConfigParseException("unable to parse project config", e);
+        }
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json) throws ConfigParseException {
+        if (!json.hasArray()) {
+            return parseProjectConfig(new ByteBufferInputStream(json));
+        }
+
+        try {
+            Datafile datafile =
+                pooledReader().readValue(json.array(), json.arrayOffset() + json.position(), json.remaining());
+            return datafile.toProjectConfig(null);
+        } catch (IOException e) {
+            throw new ConfigParseException("unable to parse project config", e);
+        }
+    }
+
+    private ObjectReader pooledReader() {
+        return reader.withAttribute(StringPool.class, new StringPool());
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * The fields of a datafile, bound before the config is built so that it can be built against the previous one.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Datafile {
+
+        private final String accountId;
+        private final String projectId;
+        private final String version;
+        private final String revision;
+        private final List<Group> groups;
+        private final List<Experiment> experiments;
+        private final List<Attribute> attributes;
+        private final List<EventType> events;
+        private final List<Audience> audiences;
+
+        @JsonCreator
+        Datafile(@JsonProperty("accountId") String accountId,
+                 @JsonProperty("projectId") String projectId,
+                 @JsonProperty("version") String version,
+                 @JsonProperty("revision") String revision,
+                 @JsonProperty("groups") List<Group> groups,
+                 @JsonProperty("experiments") List<Experiment> experiments,
+                 @JsonProperty("dimensions") List<Attribute> attributes,
+                 @JsonProperty("events") List<EventType> events,
+                 @JsonProperty("audiences") List<Audience> audiences) {
+            this.accountId = accountId;
+            this.projectId = projectId;
+            this.version = version;
+            this.revision = revision;
+            this.groups = groups;
+            this.experiments = experiments;
+            this.attributes = attributes;
+            this.events = events;
+            this.audiences = audiences;
+        }
+
+        ProjectConfig toProjectConfig(@Nullable ProjectConfig previous) {
+            return ProjectConfigDiff.build(previous, accountId, projectId, version, revision, groups, experiments,
+                                           attributes, events, audiences);
+        }
+    }
 }
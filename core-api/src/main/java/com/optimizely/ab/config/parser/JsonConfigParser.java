@@ -28,13 +28,19 @@ import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
 import com.optimizely.ab.config.TrafficAllocation;
 import com.optimizely.ab.config.Variation;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -42,63 +48,95 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * {@code org.json}-based config parser implementation.
  */
-final class JsonConfigParser implements ConfigParser {
+final class JsonConfigParser implements ReconcilingConfigParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
-        try {
-            JSONObject rootObject = new JSONObject(json);
+        return parseProjectConfig(json, null);
+    }
 
-            String accountId = rootObject.getString("accountId");
-            String projectId = rootObject.getString("projectId");
-            String revision = rootObject.getString("revision");
-            String version = rootObject.getString("version");
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig(new JSONObject(json), previous);
+        } catch (JSONException e) {
+            throw new ConfigParseException("unable to parse project config: " + json, e);
+        }
+    }
 
-            List<Experiment> experiments = parseExperiments(rootObject.getJSONArray("experiments"));
-            List<Attribute> attributes = parseAttributes(rootObject.getJSONArray("dimensions"));
-            List<EventType> events = parseEvents(rootObject.getJSONArray("events"));
-            List<Audience> audiences = parseAudiences(rootObject.getJSONArray("audiences"));
-            List<Group> groups = parseGroups(rootObject.getJSONArray("groups"));
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
 
-            return new ProjectConfig(accountId, projectId, version, revision, groups, experiments, attributes, events,
-                                     audiences);
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            return parseProjectConfig(new JSONObject(new JSONTokener(new InputStreamReader(json, UTF_8))), previous);
         } catch (JSONException e) {
-            throw new ConfigParseException("unable to parse project config: " + json, e);
+            throw new ConfigParseException("unable to parse project config", e);
         }
     }
 
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json) throws ConfigParseException {
+        return parseProjectConfig(new ByteBufferInputStream(json));
+    }
+
     //======== Helper methods ========//
 
-    private List<Experiment> parseExperiments(JSONArray experimentJson) {
-        return parseExperiments(experimentJson, "");
+    private ProjectConfig parseProjectConfig(JSONObject rootObject, @Nullable ProjectConfig previous) {
+        StringPool pool = new StringPool();
+        String accountId = rootObject.getString("accountId");
+        String projectId = rootObject.getString("projectId");
+        String revision = rootObject.getString("revision");
+        String version = rootObject.getString("version");
+
+        List<Experiment> experiments = parseExperiments(rootObject.getJSONArray("experiments"), pool);
+        List<Attribute> attributes = parseAttributes(rootObject.getJSONArray("dimensions"), pool);
+        List<EventType> events = parseEvents(rootObject.getJSONArray("events"), pool);
+        List<Audience> audiences = parseAudiences(rootObject.getJSONArray("audiences"), pool);
+        List<Group> groups = parseGroups(rootObject.getJSONArray("groups"), pool);
+
+        return ProjectConfigDiff.build(previous, accountId, projectId, version, revision, groups, experiments,
+                                       attributes, events, audiences);
+    }
+
+    private List<Experiment> parseExperiments(JSONArray experimentJson, StringPool pool) {
+        return parseExperiments(experimentJson, "", pool);
     }
 
-    private List<Experiment> parseExperiments(JSONArray experimentJson, String groupId) {
+    private List<Experiment> parseExperiments(JSONArray experimentJson, String groupId, StringPool pool) {
         List<Experiment> experiments = new ArrayList<Experiment>(experimentJson.length());
 
         for (Object obj : experimentJson) {
             JSONObject experimentObject = (JSONObject)obj;
-            String id = experimentObject.getString("id");
-            String key = experimentObject.getString("key");
-            String status = experimentObject.getString("status");
+            String id = pool.intern(experimentObject.getString("id"));
+            String key = pool.intern(experimentObject.getString("key"));
+            String status = pool.intern(experimentObject.getString("status"));
 
             JSONArray audienceIdsJson = experimentObject.getJSONArray("audienceIds");
             List<String> audienceIds = new ArrayList<String>(audienceIdsJson.length());
 
             for (Object audienceIdObj : audienceIdsJson) {
-                audienceIds.add((String)audienceIdObj);
+                audienceIds.add(pool.intern((String)audienceIdObj));
             }
 
             // parse the child objects
-            List<Variation> variations = parseVariations(experimentObject.getJSONArray("variations"));
+            List<Variation> variations = parseVariations(experimentObject.getJSONArray("variations"), pool);
             Map<String, String> userIdToVariationKeyMap =
-                parseForcedVariations(experimentObject.getJSONObject("forcedVariations"));
+                parseForcedVariations(experimentObject.getJSONObject("forcedVariations"), pool);
             List<TrafficAllocation> trafficAllocations =
-                parseTrafficAllocation(experimentObject.getJSONArray("trafficAllocation"));
+                parseTrafficAllocation(experimentObject.getJSONArray("trafficAllocation"), pool);
 
             experiments.add(new Experiment(id, key, status, audienceIds, variations, userIdToVariationKeyMap,
                                            trafficAllocations, groupId));
@@ -107,13 +145,13 @@ final class JsonConfigParser implements ConfigParser {
         return experiments;
     }
 
-    private List<Variation> parseVariations(JSONArray variationJson) {
+    private List<Variation> parseVariations(JSONArray variationJson, StringPool pool) {
         List<Variation> variations = new ArrayList<Variation>(variationJson.length());
 
         for (Object obj : variationJson) {
             JSONObject variationObject = (JSONObject)obj;
-            String id = variationObject.getString("id");
-            String key = variationObject.getString("key");
+            String id = pool.intern(variationObject.getString("id"));
+            String key = pool.intern(variationObject.getString("key"));
 
             variations.add(new Variation(id, key));
         }
@@ -121,23 +159,23 @@ final class JsonConfigParser implements ConfigParser {
         return variations;
     }
 
-    private Map<String, String> parseForcedVariations(JSONObject forcedVariationJson) {
+    private Map<String, String> parseForcedVariations(JSONObject forcedVariationJson, StringPool pool) {
         Map<String, String> userIdToVariationKeyMap = new HashMap<String, String>();
         Set<String> userIdSet = forcedVariationJson.keySet();
 
         for (String userId : userIdSet) {
-            userIdToVariationKeyMap.put(userId, forcedVariationJson.get(userId).toString());
+            userIdToVariationKeyMap.put(pool.intern(userId), pool.intern(forcedVariationJson.get(userId).toString()));
         }
 
         return userIdToVariationKeyMap;
     }
 
-    private List<TrafficAllocation> parseTrafficAllocation(JSONArray trafficAllocationJson) {
+    private List<TrafficAllocation> parseTrafficAllocation(JSONArray trafficAllocationJson, StringPool pool) {
         List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>(trafficAllocationJson.length());
 
         for (Object obj : trafficAllocationJson) {
             JSONObject allocationObject = (JSONObject)obj;
-            String entityId = allocationObject.getString("entityId");
+            String entityId = pool.intern(allocationObject.getString("entityId"));
             int endOfRange = allocationObject.getInt("endOfRange");
 
             trafficAllocation.add(new TrafficAllocation(entityId, endOfRange));
@@ -146,14 +184,14 @@ final class JsonConfigParser implements ConfigParser {
         return trafficAllocation;
     }
 
-    private List<Attribute> parseAttributes(JSONArray attributeJson) {
+    private List<Attribute> parseAttributes(JSONArray attributeJson, StringPool pool) {
         List<Attribute> attributes = new ArrayList<Attribute>(attributeJson.length());
 
         for (Object obj : attributeJson) {
             JSONObject attributeObject = (JSONObject)obj;
-            String id = attributeObject.getString("id");
-            String key = attributeObject.getString("key");
-            String segmentId = attributeObject.getString("segmentId");
+            String id = pool.intern(attributeObject.getString("id"));
+            String key = pool.intern(attributeObject.getString("key"));
+            String segmentId = pool.intern(attributeObject.getString("segmentId"));
 
             attributes.add(new Attribute(id, key, segmentId));
         }
@@ -161,7 +199,7 @@ final class JsonConfigParser implements ConfigParser {
         return attributes;
     }
 
-    private List<EventType> parseEvents(JSONArray eventJson) {
+    private List<EventType> parseEvents(JSONArray eventJson, StringPool pool) {
         List<EventType> events = new ArrayList<EventType>(eventJson.length());
 
         for (Object obj : eventJson) {
@@ -170,11 +208,11 @@ final class JsonConfigParser implements ConfigParser {
             List<String> experimentIds = new ArrayList<String>(experimentIdsJson.length());
 
             for (Object experimentIdObj : experimentIdsJson) {
-                experimentIds.add((String)experimentIdObj);
+                experimentIds.add(pool.intern((String)experimentIdObj));
             }
 
-            String id = eventObject.getString("id");
-            String key = eventObject.getString("key");
+            String id = pool.intern(eventObject.getString("id"));
+            String key = pool.intern(eventObject.getString("key"));
 
             events.add(new EventType(id, key, experimentIds));
         }
@@ -182,35 +220,36 @@ final class JsonConfigParser implements ConfigParser {
         return events;
     }
 
-    private List<Audience> parseAudiences(JSONArray audienceJson) {
+    private List<Audience> parseAudiences(JSONArray audienceJson, StringPool pool) {
         List<Audience> audiences = new ArrayList<Audience>(audienceJson.length());
 
         for (Object obj : audienceJson) {
             JSONObject audienceObject = (JSONObject)obj;
-            String id = audienceObject.getString("id");
-            String key = audienceObject.getString("name");
+            String id = pool.intern(audienceObject.getString("id"));
+            String key = pool.intern(audienceObject.getString("name"));
             String conditionString = audienceObject.getString("conditions");
 
             JSONArray conditionJson = new JSONArray(conditionString);
-            Condition conditions = parseConditions(conditionJson);
+            Condition conditions = parseConditions(conditionJson, pool);
             audiences.add(new Audience(id, key, conditions));
         }
 
         return audiences;
     }
 
-    private Condition parseConditions(JSONArray conditionJson) {
+    private Condition parseConditions(JSONArray conditionJson, StringPool pool) {
         List<Condition> conditions = new ArrayList<Condition>();
         String operand = (String)conditionJson.get(0);
 
         for (int i = 1; i < conditionJson.length(); i++) {
             Object obj = conditionJson.get(i);
             if (obj instanceof JSONArray) {
-                conditions.add(parseConditions(conditionJson.getJSONArray(i)));
+                conditions.add(parseConditions(conditionJson.getJSONArray(i), pool));
             } else {
                 JSONObject conditionMap = (JSONObject)obj;
-                conditions.add(new UserAttribute((String)conditionMap.get("name"), (String)conditionMap.get("type"),
-                               (String)conditionMap.get("value")));
+                conditions.add(new UserAttribute(pool.intern((String)conditionMap.get("name")),
+                                                 pool.intern((String)conditionMap.get("type")),
+                                                 pool.intern((String)conditionMap.get("value"))));
             }
         }
 
@@ -226,16 +265,16 @@ final class JsonConfigParser implements ConfigParser {
         return condition;
     }
 
-    private List<Group> parseGroups(JSONArray groupJson) {
+    private List<Group> parseGroups(JSONArray groupJson, StringPool pool) {
         List<Group> groups = new ArrayList<Group>(groupJson.length());
 
         for (Object obj : groupJson) {
             JSONObject groupObject = (JSONObject)obj;
-            String id = groupObject.getString("id");
-            String policy = groupObject.getString("policy");
-            List<Experiment> experiments = parseExperiments(groupObject.getJSONArray("experiments"), id);
+            String id = pool.intern(groupObject.getString("id"));
+            String policy = pool.intern(groupObject.getString("policy"));
+            List<Experiment> experiments = parseExperiments(groupObject.getJSONArray("experiments"), id, pool);
             List<TrafficAllocation> trafficAllocations =
-                parseTrafficAllocation(groupObject.getJSONArray("trafficAllocation"));
+                parseTrafficAllocation(groupObject.getJSONArray("trafficAllocation"), pool);
 
             groups.add(new Group(id, policy, experiments, trafficAllocations));
         }
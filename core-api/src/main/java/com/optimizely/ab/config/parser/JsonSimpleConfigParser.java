@@ -28,6 +28,7 @@ import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
 import com.optimizely.ab.config.TrafficAllocation;
 import com.optimizely.ab.config.Variation;
 
@@ -36,6 +37,11 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -43,64 +49,102 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * {@code json-simple}-based config parser implementation.
  */
-final class JsonSimpleConfigParser implements ConfigParser {
+final class JsonSimpleConfigParser implements ReconcilingConfigParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     @Override
     public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
+
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
         try {
+            // json-simple parsers aren't thread-safe, so one is created for each config
             JSONParser parser = new JSONParser();
-            JSONObject rootObject = (JSONObject)parser.parse(json);
-
-            String accountId = (String)rootObject.get("accountId");
-            String projectId = (String)rootObject.get("projectId");
-            String revision = (String)rootObject.get("revision");
-            String version = (String)rootObject.get("version");
+            return parseProjectConfig(parser, (JSONObject)parser.parse(json), previous);
+        } catch (ParseException e) {
+            throw new ConfigParseException("unable to parse project config: " + json, e);
+        }
+    }
 
-            List<Experiment> experiments = parseExperiments((JSONArray)rootObject.get("experiments"));
-            List<Attribute> attributes = parseAttributes((JSONArray)rootObject.get("dimensions"));
-            List<EventType> events = parseEvents((JSONArray)rootObject.get("events"));
-            List<Audience> audiences = parseAudiences((JSONArray)parser.parse(rootObject.get("audiences").toString()));
-            List<Group> groups = parseGroups((JSONArray)rootObject.get("groups"));
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        return parseProjectConfig(json, null);
+    }
 
-            return new ProjectConfig(accountId, projectId, version, revision, groups, experiments, attributes, events,
-                                     audiences);
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previous)
+        throws ConfigParseException {
+        try {
+            JSONParser parser = new JSONParser();
+            return parseProjectConfig(parser, (JSONObject)parser.parse(new InputStreamReader(json, UTF_8)), previous);
         } catch (ParseException e) {
-            throw new ConfigParseException("unable to parse project config: " + json, e);
+            throw new ConfigParseException("unable to parse project config", e);
+        } catch (IOException e) {
+            throw new ConfigParseException("unable to read project config", e);
         }
     }
 
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json) throws ConfigParseException {
+        return parseProjectConfig(new ByteBufferInputStream(json));
+    }
+
     //======== Helper methods ========//
 
-    private List<Experiment> parseExperiments(JSONArray experimentJson) {
-        return parseExperiments(experimentJson, "");
+    private ProjectConfig parseProjectConfig(JSONParser parser, JSONObject rootObject,
+                                             @Nullable ProjectConfig previous) throws ParseException {
+        StringPool pool = new StringPool();
+        String accountId = (String)rootObject.get("accountId");
+        String projectId = (String)rootObject.get("projectId");
+        String revision = (String)rootObject.get("revision");
+        String version = (String)rootObject.get("version");
+
+        List<Experiment> experiments = parseExperiments((JSONArray)rootObject.get("experiments"), pool);
+        List<Attribute> attributes = parseAttributes((JSONArray)rootObject.get("dimensions"), pool);
+        List<EventType> events = parseEvents((JSONArray)rootObject.get("events"), pool);
+        List<Audience> audiences =
+            parseAudiences((JSONArray)parser.parse(rootObject.get("audiences").toString()), pool);
+        List<Group> groups = parseGroups((JSONArray)rootObject.get("groups"), pool);
+
+        return ProjectConfigDiff.build(previous, accountId, projectId, version, revision, groups, experiments,
+                                       attributes, events, audiences);
+    }
+
+    private List<Experiment> parseExperiments(JSONArray experimentJson, StringPool pool) {
+        return parseExperiments(experimentJson, "", pool);
     }
 
-    private List<Experiment> parseExperiments(JSONArray experimentJson, String groupId) {
+    private List<Experiment> parseExperiments(JSONArray experimentJson, String groupId, StringPool pool) {
         List<Experiment> experiments = new ArrayList<Experiment>(experimentJson.size());
 
         for (Object obj : experimentJson) {
             JSONObject experimentObject = (JSONObject)obj;
-            String id = (String)experimentObject.get("id");
-            String key = (String)experimentObject.get("key");
-            String status = (String)experimentObject.get("status");
+            String id = pool.intern((String)experimentObject.get("id"));
+            String key = pool.intern((String)experimentObject.get("key"));
+            String status = pool.intern((String)experimentObject.get("status"));
 
             JSONArray audienceIdsJson = (JSONArray)experimentObject.get("audienceIds");
             List<String> audienceIds = new ArrayList<String>(audienceIdsJson.size());
 
             for (Object audienceIdObj : audienceIdsJson) {
-                audienceIds.add((String)audienceIdObj);
+                audienceIds.add(pool.intern((String)audienceIdObj));
             }
 
             // parse the child objects
-            List<Variation> variations = parseVariations((JSONArray)experimentObject.get("variations"));
+            List<Variation> variations = parseVariations((JSONArray)experimentObject.get("variations"), pool);
             Map<String, String> userIdToVariationKeyMap =
-                parseForcedVariations((JSONObject)experimentObject.get("forcedVariations"));
+                parseForcedVariations((JSONObject)experimentObject.get("forcedVariations"), pool);
             List<TrafficAllocation> trafficAllocations =
-                parseTrafficAllocation((JSONArray)experimentObject.get("trafficAllocation"));
+                parseTrafficAllocation((JSONArray)experimentObject.get("trafficAllocation"), pool);
 
             experiments.add(new Experiment(id, key, status, audienceIds, variations, userIdToVariationKeyMap,
                                            trafficAllocations, groupId));
@@ -109,13 +153,13 @@ final class JsonSimpleConfigParser implements ConfigParser {
         return experiments;
     }
 
-    private List<Variation> parseVariations(JSONArray variationJson) {
+    private List<Variation> parseVariations(JSONArray variationJson, StringPool pool) {
         List<Variation> variations = new ArrayList<Variation>(variationJson.size());
 
         for (Object obj : variationJson) {
             JSONObject variationObject = (JSONObject)obj;
-            String id = (String)variationObject.get("id");
-            String key = (String)variationObject.get("key");
+            String id = pool.intern((String)variationObject.get("id"));
+            String key = pool.intern((String)variationObject.get("key"));
 
             variations.add(new Variation(id, key));
         }
@@ -123,22 +167,22 @@ final class JsonSimpleConfigParser implements ConfigParser {
         return variations;
     }
 
-    private Map<String, String> parseForcedVariations(JSONObject forcedVariationJson) {
+    private Map<String, String> parseForcedVariations(JSONObject forcedVariationJson, StringPool pool) {
         Map<String, String> userIdToVariationKeyMap = new HashMap<String, String>();
         for (Object obj : forcedVariationJson.entrySet()) {
             Map.Entry<String, String> entry = (Map.Entry<String, String>)obj;
-            userIdToVariationKeyMap.put(entry.getKey(), entry.getValue());
+            userIdToVariationKeyMap.put(pool.intern(entry.getKey()), pool.intern(entry.getValue()));
         }
 
         return userIdToVariationKeyMap;
     }
 
-    private List<TrafficAllocation> parseTrafficAllocation(JSONArray trafficAllocationJson) {
+    private List<TrafficAllocation> parseTrafficAllocation(JSONArray trafficAllocationJson, StringPool pool) {
         List<TrafficAllocation> trafficAllocation = new ArrayList<TrafficAllocation>(trafficAllocationJson.size());
 
         for (Object obj : trafficAllocationJson) {
             JSONObject allocationObject = (JSONObject)obj;
-            String entityId = (String)allocationObject.get("entityId");
+            String entityId = pool.intern((String)allocationObject.get("entityId"));
             long endOfRange = (Long)allocationObject.get("endOfRange");
 
             trafficAllocation.add(new TrafficAllocation(entityId, (int)endOfRange));
@@ -147,14 +191,14 @@ final class JsonSimpleConfigParser implements ConfigParser {
         return trafficAllocation;
     }
 
-    private List<Attribute> parseAttributes(JSONArray attributeJson) {
+    private List<Attribute> parseAttributes(JSONArray attributeJson, StringPool pool) {
         List<Attribute> attributes = new ArrayList<Attribute>(attributeJson.size());
 
         for (Object obj : attributeJson) {
             JSONObject attributeObject = (JSONObject)obj;
-            String id = (String)attributeObject.get("id");
-            String key = (String)attributeObject.get("key");
-            String segmentId = (String)attributeObject.get("segmentId");
+            String id = pool.intern((String)attributeObject.get("id"));
+            String key = pool.intern((String)attributeObject.get("key"));
+            String segmentId = pool.intern((String)attributeObject.get("segmentId"));
 
             attributes.add(new Attribute(id, key, segmentId));
         }
@@ -162,7 +206,7 @@ final class JsonSimpleConfigParser implements ConfigParser {
         return attributes;
     }
 
-    private List<EventType> parseEvents(JSONArray eventJson) {
+    private List<EventType> parseEvents(JSONArray eventJson, StringPool pool) {
         List<EventType> events = new ArrayList<EventType>(eventJson.size());
 
         for (Object obj : eventJson) {
@@ -171,11 +215,11 @@ final class JsonSimpleConfigParser implements ConfigParser {
             List<String> experimentIds = new ArrayList<String>(experimentIdsJson.size());
 
             for (Object experimentIdObj : experimentIdsJson) {
-                experimentIds.add((String)experimentIdObj);
+                experimentIds.add(pool.intern((String)experimentIdObj));
             }
 
-            String id = (String)eventObject.get("id");
-            String key = (String)eventObject.get("key");
+            String id = pool.intern((String)eventObject.get("id"));
+            String key = pool.intern((String)eventObject.get("key"));
 
             events.add(new EventType(id, key, experimentIds));
         }
@@ -183,36 +227,37 @@ final class JsonSimpleConfigParser implements ConfigParser {
         return events;
     }
 
-    private List<Audience> parseAudiences(JSONArray audienceJson) throws ParseException {
+    private List<Audience> parseAudiences(JSONArray audienceJson, StringPool pool) throws ParseException {
         JSONParser parser = new JSONParser();
         List<Audience> audiences = new ArrayList<Audience>(audienceJson.size());
 
         for (Object obj : audienceJson) {
             JSONObject audienceObject = (JSONObject)obj;
-            String id = (String)audienceObject.get("id");
-            String key = (String)audienceObject.get("name");
+            String id = pool.intern((String)audienceObject.get("id"));
+            String key = pool.intern((String)audienceObject.get("name"));
             String conditionString = (String)audienceObject.get("conditions");
 
             JSONArray conditionJson = (JSONArray)parser.parse(conditionString);
-            Condition conditions = parseConditions(conditionJson);
+            Condition conditions = parseConditions(conditionJson, pool);
             audiences.add(new Audience(id, key, conditions));
         }
 
         return audiences;
     }
 
-    private Condition parseConditions(JSONArray conditionJson) {
+    private Condition parseConditions(JSONArray conditionJson, StringPool pool) {
         List<Condition> conditions = new ArrayList<Condition>();
         String operand = (String)conditionJson.get(0);
 
         for (int i = 1; i < conditionJson.size(); i++) {
             Object obj = conditionJson.get(i);
             if (obj instanceof JSONArray) {
-                conditions.add(parseConditions((JSONArray)conditionJson.get(i)));
+                conditions.add(parseConditions((JSONArray)conditionJson.get(i), pool));
             } else {
                 JSONObject conditionMap = (JSONObject)obj;
-                conditions.add(new UserAttribute((String)conditionMap.get("name"), (String)conditionMap.get("type"),
-                               (String)conditionMap.get("value")));
+                conditions.add(new UserAttribute(pool.intern((String)conditionMap.get("name")),
+                                                 pool.intern((String)conditionMap.get("type")),
+                                                 pool.intern((String)conditionMap.get("value"))));
             }
         }
 
@@ -228,16 +273,16 @@ final class JsonSimpleConfigParser implements ConfigParser {
         return condition;
     }
 
-    private List<Group> parseGroups(JSONArray groupJson) {
+    private List<Group> parseGroups(JSONArray groupJson, StringPool pool) {
         List<Group> groups = new ArrayList<Group>(groupJson.size());
 
         for (Object obj : groupJson) {
             JSONObject groupObject = (JSONObject)obj;
-            String id = (String)groupObject.get("id");
-            String policy = (String)groupObject.get("policy");
-            List<Experiment> experiments = parseExperiments((JSONArray)groupObject.get("experiments"), id);
+            String id = pool.intern((String)groupObject.get("id"));
+            String policy = pool.intern((String)groupObject.get("policy"));
+            List<Experiment> experiments = parseExperiments((JSONArray)groupObject.get("experiments"), id, pool);
             List<TrafficAllocation> trafficAllocations =
-                    parseTrafficAllocation((JSONArray)groupObject.get("trafficAllocation"));
+                    parseTrafficAllocation((JSONArray)groupObject.get("trafficAllocation"), pool);
 
             groups.add(new Group(id, policy, experiments, trafficAllocations));
         }
@@ -20,7 +20,10 @@ import com.optimizely.ab.OptimizelyRuntimeException;
 
 /**
  * Exception thrown when no supported JSON parser is found.
+ *
+ * @deprecated no longer thrown, as {@link DefaultConfigParser} falls back to its built-in parser
  */
+@Deprecated
 public final class MissingJsonParserException extends OptimizelyRuntimeException {
     public MissingJsonParserException(String message) {
         super(message);
@@ -21,7 +21,6 @@ import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
 
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.Attribute;
@@ -29,10 +28,14 @@ import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 /**
  * GSON {@link ProjectConfig} deserializer to allow the constructor to be used.
  */
@@ -41,31 +44,40 @@ public class ProjectConfigGsonDeserializer implements JsonDeserializer<ProjectCo
     @Override
     public ProjectConfig deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
         throws JsonParseException {
-        JsonObject jsonObject = json.getAsJsonObject();
+        return parseProjectConfig(json.getAsJsonObject(), null);
+    }
+
+    static ProjectConfig parseProjectConfig(JsonObject jsonObject, @Nullable ProjectConfig previous) {
+        // the entities are parsed here rather than through the context, so that they share the config's strings
+        StringPool pool = new StringPool();
 
         String accountId = jsonObject.get("accountId").getAsString();
         String projectId = jsonObject.get("projectId").getAsString();
         String revision = jsonObject.get("revision").getAsString();
         String version = jsonObject.get("version").getAsString();
 
-        // generic list type tokens
-        Type groupsType = new TypeToken<List<Group>>() {}.getType();
-        Type experimentsType = new TypeToken<List<Experiment>>() {}.getType();
-        Type attributesType = new TypeToken<List<Attribute>>() {}.getType();
-        Type eventsType = new TypeToken<List<EventType>>() {}.getType();
-        Type audienceType = new TypeToken<List<Audience>>() {}.getType();
-
-        List<Group> groups = context.deserialize(jsonObject.get("groups").getAsJsonArray(), groupsType);
-        List<Experiment> experiments =
-            context.deserialize(jsonObject.get("experiments").getAsJsonArray(), experimentsType);
-        List<Attribute> attributes =
-            context.deserialize(jsonObject.get("dimensions").getAsJsonArray(), attributesType);
-        List<EventType> events =
-            context.deserialize(jsonObject.get("events").getAsJsonArray(), eventsType);
-        List<Audience> audiences =
-            context.deserialize(jsonObject.get("audiences").getAsJsonArray(), audienceType);
+        List<Group> groups = new ArrayList<Group>();
+        for (JsonElement groupJson : jsonObject.get("groups").getAsJsonArray()) {
+            groups.add(GroupGsonDeserializer.parseGroup(groupJson.getAsJsonObject(), pool));
+        }
+        List<Experiment> experiments = new ArrayList<Experiment>();
+        for (JsonElement experimentJson : jsonObject.get("experiments").getAsJsonArray()) {
+            experiments.add(GsonHelpers.parseExperiment(experimentJson.getAsJsonObject(), pool));
+        }
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (JsonElement attributeJson : jsonObject.get("dimensions").getAsJsonArray()) {
+            attributes.add(GsonHelpers.parseAttribute(attributeJson.getAsJsonObject(), pool));
+        }
+        List<EventType> events = new ArrayList<EventType>();
+        for (JsonElement eventJson : jsonObject.get("events").getAsJsonArray()) {
+            events.add(GsonHelpers.parseEvent(eventJson.getAsJsonObject(), pool));
+        }
+        List<Audience> audiences = new ArrayList<Audience>();
+        for (JsonElement audienceJson : jsonObject.get("audiences").getAsJsonArray()) {
+            audiences.add(AudienceGsonDeserializer.parseAudience(audienceJson.getAsJsonObject(), pool));
+        }
 
-        return new ProjectConfig(accountId, projectId, version, revision, groups, experiments, attributes, events,
-                                 audiences);
+        return ProjectConfigDiff.build(previous, accountId, projectId, version, revision, groups, experiments,
+                                       attributes, events, audiences);
     }
 }
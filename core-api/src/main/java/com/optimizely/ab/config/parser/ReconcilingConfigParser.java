@@ -0,0 +1,53 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigDiff;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link StreamingConfigParser} that can build the config of a datafile against the config it replaces, sharing the
+ * entities the datafile didn't change with it, as {@link ProjectConfigDiff} describes. The new config is built once,
+ * rather than built and then rebuilt.
+ * <p>
+ * All of the parsers returned by {@link DefaultConfigParser} implement it.
+ */
+public interface ReconcilingConfigParser extends StreamingConfigParser {
+
+    /**
+     * @param json the json to parse
+     * @param previous the config the parsed config replaces, if any
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull String json, @Nullable ProjectConfig previous)
+        throws ConfigParseException;
+
+    /**
+     * @param json the UTF-8 encoded json to parse. The stream is read to the end of the json, and isn't closed.
+     * @param previous the config the parsed config replaces, if any
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue reading or parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull InputStream json, @Nullable ProjectConfig previous)
+        throws ConfigParseException;
+}
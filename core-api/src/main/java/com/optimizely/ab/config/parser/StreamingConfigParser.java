@@ -0,0 +1,50 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.ProjectConfig;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link ConfigParser} that can also parse the encoded json of a datafile, without first decoding the whole of it
+ * into a {@code String}.
+ * <p>
+ * All of the parsers returned by {@link DefaultConfigParser} implement it.
+ */
+public interface StreamingConfigParser extends ConfigParser {
+
+    /**
+     * Parses the json as it's read from the stream, without first reading the whole of it into memory.
+     *
+     * @param json the UTF-8 encoded json to parse. The stream is read to the end of the json, and isn't closed.
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue reading or parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException;
+
+    /**
+     * @param json the UTF-8 encoded json to parse, between the buffer's position and limit. The buffer's position
+     *             isn't changed.
+     * @return generates a {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue parsing the provided project config
+     */
+    ProjectConfig parseProjectConfig(@Nonnull ByteBuffer json) throws ConfigParseException;
+}
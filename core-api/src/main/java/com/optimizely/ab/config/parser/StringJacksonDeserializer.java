@@ -0,0 +1,50 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Jackson {@code String} deserializer that interns strings into the {@link StringPool} of the config being parsed,
+ * which {@link JacksonConfigParser} passes as a per-call attribute of its reader.
+ */
+final class StringJacksonDeserializer extends JsonDeserializer<String> {
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        String value = StringDeserializer.instance.deserialize(parser, context);
+        StringPool pool = (StringPool)context.getAttribute(StringPool.class);
+
+        return (pool != null) ? pool.intern(value) : value;
+    }
+
+    /**
+     * @return the pool of the config being parsed, or a new pool if the context doesn't have one, in which case
+     * strings are only shared within the entity being deserialized
+     */
+    static @Nonnull StringPool getPool(DeserializationContext context) {
+        StringPool pool = (StringPool)context.getAttribute(StringPool.class);
+        return (pool != null) ? pool : new StringPool();
+    }
+}
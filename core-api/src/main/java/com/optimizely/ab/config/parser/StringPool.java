@@ -0,0 +1,54 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Deduplicates the strings of a single config as it's parsed, so that the ids and keys that a datafile repeats
+ * across entities, such as the experiment ids of events and the variation ids of traffic allocations, are shared by
+ * every entity that refers to them.
+ * <p>
+ * A pool is created for each parse and dropped with it, rather than interning into {@link String#intern()}, so that
+ * strings aren't kept alive past the configs that use them.
+ */
+@NotThreadSafe
+final class StringPool {
+
+    private final Map<String, String> strings = new HashMap<String, String>();
+
+    /**
+     * @return the pooled string equal to {@code string}, which is pooled if it's the first one
+     */
+    @CheckForNull String intern(@CheckForNull String string) {
+        if (string == null) {
+            return null;
+        }
+
+        String pooled = strings.get(string);
+        if (pooled == null) {
+            strings.put(string, string);
+            return string;
+        }
+
+        return pooled;
+    }
+}
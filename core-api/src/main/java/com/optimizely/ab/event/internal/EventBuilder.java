@@ -21,14 +21,20 @@ import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.Variation;
 import com.optimizely.ab.event.LogEvent;
+import com.optimizely.ab.internal.DecisionLogging;
+import com.optimizely.ab.internal.LogGuard;
+import com.optimizely.ab.internal.ProjectValidationUtils;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import java.util.Map;
 
 public abstract class EventBuilder {
 
+    private static final LogGuard defaultLogGuard = ProjectValidationUtils.getLogGuard(DecisionLogging.PER_CALL);
+
     public abstract LogEvent createImpressionEvent(@Nonnull ProjectConfig projectConfig,
                                                    @Nonnull Experiment activatedExperiment,
                                                    @Nonnull Variation variation,
@@ -41,7 +47,8 @@ public abstract class EventBuilder {
                                           @Nonnull String eventId,
                                           @Nonnull String eventName,
                                           @Nonnull Map<String, String> attributes) {
-        return createConversionEvent(projectConfig, bucketer, userId, eventId, eventName, attributes, null);
+        return createConversionEvent(projectConfig, bucketer, userId, eventId, eventName, attributes, null, null,
+                                     defaultLogGuard);
     }
 
     public LogEvent createConversionEvent(@Nonnull ProjectConfig projectConfig,
@@ -51,14 +58,24 @@ public abstract class EventBuilder {
                                           @Nonnull String eventName,
                                           @Nonnull Map<String, String> attributes,
                                           long eventValue) {
-        return createConversionEvent(projectConfig, bucketer, userId, eventId, eventName, attributes, (Long)eventValue);
+        return createConversionEvent(projectConfig, bucketer, userId, eventId, eventName, attributes, (Long)eventValue,
+                                     null, defaultLogGuard);
     }
 
-    abstract LogEvent createConversionEvent(@Nonnull ProjectConfig projectConfig,
-                                            @Nonnull Bucketer bucketer,
-                                            @Nonnull String userId,
-                                            @Nonnull String eventId,
-                                            @Nonnull String eventName,
-                                            @Nonnull Map<String, String> attributes,
-                                            @CheckForNull Long eventValue);
+    /**
+     * @param eventValue the value of the event, or {@code null} if it has no value
+     * @param audienceEvaluations the {@code audienceId -> result} evaluations made so far for the same attributes,
+     *                            which will be added to, or {@code null} to only share evaluations within this event
+     * @param logGuard the guard returned by {@link ProjectValidationUtils#getLogGuard(DecisionLogging)} for the
+     *                 decisions logged while validating the goal's experiments
+     */
+    public abstract LogEvent createConversionEvent(@Nonnull ProjectConfig projectConfig,
+                                                   @Nonnull Bucketer bucketer,
+                                                   @Nonnull String userId,
+                                                   @Nonnull String eventId,
+                                                   @Nonnull String eventName,
+                                                   @Nonnull Map<String, String> attributes,
+                                                   @CheckForNull Long eventValue,
+                                                   @Nullable Map<String, Boolean> audienceEvaluations,
+                                                   @Nonnull LogGuard logGuard);
 }
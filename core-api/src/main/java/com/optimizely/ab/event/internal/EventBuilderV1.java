@@ -17,11 +17,13 @@
 package com.optimizely.ab.event.internal;
 
 import com.optimizely.ab.event.LogEvent;
+import com.optimizely.ab.internal.LogGuard;
 import com.optimizely.ab.internal.ProjectValidationUtils;
 import com.optimizely.ab.bucketing.Bucketer;
 import com.optimizely.ab.config.Attribute;
 import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.OptimizelyUserAttributes;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.Variation;
 
@@ -35,6 +37,7 @@ import java.util.Map;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static com.optimizely.ab.event.LogEvent.RequestMethod;
 
@@ -79,17 +82,24 @@ public class EventBuilderV1 extends EventBuilder {
                             String.format(ENDPOINT_FORMAT, projectConfig.getProjectId()), requestParams, EMPTY_BODY);
     }
 
-    LogEvent createConversionEvent(@Nonnull ProjectConfig projectConfig,
-                                   @Nonnull Bucketer bucketer,
-                                   @Nonnull String userId,
-                                   @Nonnull String eventId,
-                                   @Nonnull String eventName,
-                                   @Nonnull Map<String, String> attributes,
-                                   @CheckForNull Long eventValue) {
+    public LogEvent createConversionEvent(@Nonnull ProjectConfig projectConfig,
+                                          @Nonnull Bucketer bucketer,
+                                          @Nonnull String userId,
+                                          @Nonnull String eventId,
+                                          @Nonnull String eventName,
+                                          @Nonnull Map<String, String> attributes,
+                                          @CheckForNull Long eventValue,
+                                          @Nullable Map<String, Boolean> audienceEvaluations,
+                                          @Nonnull LogGuard logGuard) {
+
+        if (audienceEvaluations == null) {
+            audienceEvaluations = new HashMap<String, Boolean>();
+        }
 
         Map<String, String> requestParams = new HashMap<String, String>();
-        List<Experiment> addedExperiments =
-                addExperimentBucketMap(requestParams, projectConfig, bucketer, userId, eventName, attributes);
+        List<Experiment> addedExperiments = addExperimentBucketMap(requestParams, projectConfig, bucketer, userId,
+                                                                   eventName, attributes, audienceEvaluations,
+                                                                   logGuard);
 
         if (addedExperiments.isEmpty()) {
             return null;
@@ -170,17 +180,20 @@ public class EventBuilderV1 extends EventBuilder {
      * @param userId the user's id for the impression event
      * @param goalKey the goal that the bucket map will be filtered by
      * @param attributes the user's attributes
+     * @param audienceEvaluations the memoized audience evaluations for the user's attributes
+     * @param logGuard the guard for the decisions logged while validating the goal's experiments
      */
     private List<Experiment> addExperimentBucketMap(Map<String, String> requestParams, ProjectConfig projectConfig,
                                                     Bucketer bucketer, String userId, String goalKey,
-                                                    Map<String, String> attributes) {
-        List<Experiment> allExperiments = projectConfig.getExperiments();
-        List<String> experimentIds = projectConfig.getExperimentIdsForGoal(goalKey);
+                                                    Map<String, String> attributes,
+                                                    Map<String, Boolean> audienceEvaluations,
+                                                    LogGuard logGuard) {
+        List<Experiment> goalExperiments = projectConfig.getRunningExperimentsForGoal(goalKey);
         List<Experiment> validExperiments = new ArrayList<Experiment>();
 
-        for (Experiment experiment : allExperiments) {
-            if (experimentIds.contains(experiment.getId()) &&
-                    ProjectValidationUtils.validatePreconditions(projectConfig, experiment, userId, attributes)) {
+        for (Experiment experiment : goalExperiments) {
+            if (ProjectValidationUtils.validatePreconditions(projectConfig, experiment, userId, attributes,
+                                                             audienceEvaluations, logGuard)) {
                 Variation bucketedVariation = bucketer.bucket(experiment, userId);
                 if (bucketedVariation != null) {
                     requestParams.put(EXPERIMENT_PARAM_PREFIX + experiment.getId(), bucketedVariation.getId());
@@ -207,6 +220,20 @@ public class EventBuilderV1 extends EventBuilder {
      * @param projectConfig the current project config
      */
     private void addSegments(Map<String, String> requestParams, Map<String, String> attributes, ProjectConfig projectConfig) {
+        if (attributes instanceof OptimizelyUserAttributes
+                && ((OptimizelyUserAttributes)attributes).getProjectConfig() == projectConfig) {
+            // the attributes are already resolved against the config, so read them by attribute index
+            OptimizelyUserAttributes userAttributes = (OptimizelyUserAttributes)attributes;
+            List<Attribute> projectAttributes = projectConfig.getAttributes();
+            for (int i = 0; i < projectAttributes.size(); i++) {
+                String value = userAttributes.getValue(i);
+                if (value != null) {
+                    requestParams.put(SEGMENT_PARAM_PREFIX + projectAttributes.get(i).getSegmentId(), value);
+                }
+            }
+            return;
+        }
+
         Map<String, Attribute> attributeKeyMapping = projectConfig.getAttributeKeyMapping();
 
         for (Map.Entry<String, String> attributeEntry : attributes.entrySet()) {
@@ -0,0 +1,302 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Immutable map with {@code String} keys, for the id and key indexes of lazily decoded configs, whose footprint
+ * matters more than the last few nanoseconds of a lookup.
+ * <p>
+ * Keys and values are held in two arrays in insertion order, which is also the iteration order, and looked up
+ * through an open-addressing table of their hash codes and indexes, so a map has no per-entry objects and a probe
+ * only reads a key once its hash code matches. The table is laid out when the map is built: small key sets get a
+ * multiplier under which each key hashes to its own slot, so a lookup is a single probe. Other key sets are linearly
+ * probed in a table at most half full.
+ * <p>
+ * Hits are a little slower than in a {@code HashMap}, as {@code CompactStringMapBenchmark} shows, so the mappings of
+ * eagerly built configs, which are looked up on the decision path, stay {@code HashMap}s.
+ *
+ * @param <V> the type of the values
+ */
+@Immutable
+public final class CompactStringMap<V> extends AbstractMap<String, V> {
+
+    // the most keys a perfect hash is searched for, as collisions become near certain for larger sets
+    private static final int PERFECT_HASH_MAX_KEYS = 16;
+    // the table sizes tried for a perfect hash, as multiples of the smallest table, and multipliers tried per size
+    private static final int PERFECT_HASH_MAX_GROWTH = 4;
+    private static final int PERFECT_HASH_ATTEMPTS = 8;
+
+    // the 32-bit golden ratio, which spreads consecutive hash codes across the table
+    private static final int DEFAULT_MULTIPLIER = 0x9E3779B9;
+
+    private static final int NO_INDEX = -1;
+
+    private static final CompactStringMap<Object> EMPTY = new Builder<Object>(0).build();
+
+    private final String[] keys;
+    private final V[] values;
+    // the hash code of the key in each slot in the high half, and its index + 1 in the low half, or 0 for an empty slot
+    private final long[] table;
+    private final int multiplier;
+    private final int shift;
+    // whether every key is in the slot it hashes to
+    private final boolean perfect;
+    private final int nullKeyIndex;
+
+    private CompactStringMap(String[] keys, V[] values, long[] table, int multiplier, boolean perfect,
+                             int nullKeyIndex) {
+        this.keys = keys;
+        this.values = values;
+        this.table = table;
+        this.multiplier = multiplier;
+        this.shift = Integer.numberOfLeadingZeros(table.length) + 1;
+        this.perfect = perfect;
+        this.nullKeyIndex = nullKeyIndex;
+    }
+
+    /**
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> CompactStringMap<V> empty() {
+        return (CompactStringMap<V>)EMPTY;
+    }
+
+    /**
+     * @param expectedSize the number of entries that will be added
+     * @return a builder of a map, whose entries are added in iteration order
+     */
+    public static <V> Builder<V> builder(int expectedSize) {
+        return new Builder<V>(expectedSize);
+    }
+
+    /**
+     * @return a copy of the map, iterated in the map's iteration order
+     */
+    public static <V> CompactStringMap<V> copyOf(@Nonnull Map<String, ? extends V> map) {
+        Builder<V> builder = new Builder<V>(map.size());
+        for (Map.Entry<String, ? extends V> entry : map.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public V get(Object key) {
+        int index = indexOf(key);
+        return (index != NO_INDEX) ? values[index] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != NO_INDEX;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return whether lookups take a single probe, for tests and benchmarks
+     */
+    public boolean isPerfect() {
+        return perfect;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return (key == null) ? nullKeyIndex : NO_INDEX;
+        }
+
+        String string = (String)key;
+        int hash = string.hashCode();
+        int mask = table.length - 1;
+        for (int slot = (hash * multiplier) >>> shift; ; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            if (entry == 0) {
+                return NO_INDEX;
+            }
+            if ((int)(entry >>> 32) == hash) {
+                int index = (int)entry - 1;
+                String candidate = keys[index];
+                if (candidate == string || candidate.equals(string)) {
+                    return index;
+                }
+            }
+            if (perfect) {
+                return NO_INDEX;
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<Entry<String, V>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (index >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, V> entry = new SimpleImmutableEntry<String, V>(keys[index], values[index]);
+                        index++;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    //======== Builder ========//
+
+    /**
+     * Builds a {@link CompactStringMap}. As with a {@code HashMap}, a key that's put again keeps its position and
+     * takes the later value.
+     */
+    @NotThreadSafe
+    public static final class Builder<V> {
+
+        private final List<String> keys;
+        private final List<V> values;
+        private final Map<String, Integer> indexes;
+
+        private Builder(int expectedSize) {
+            this.keys = new ArrayList<String>(expectedSize);
+            this.values = new ArrayList<V>(expectedSize);
+            this.indexes = new HashMap<String, Integer>();
+        }
+
+        public Builder<V> put(@CheckForNull String key, V value) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                values.set(index, value);
+            } else {
+                indexes.put(key, keys.size());
+                keys.add(key);
+                values.add(value);
+            }
+
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public CompactStringMap<V> build() {
+            String[] keyArray = keys.toArray(new String[keys.size()]);
+            V[] valueArray = values.toArray((V[])new Object[values.size()]);
+            Integer nullKeyIndex = indexes.get(null);
+            int tableKeyCount = keyArray.length - ((nullKeyIndex != null) ? 1 : 0);
+
+            // the smallest power of two table that's at most half full, and has a shift of less than 32
+            int minCapacity = Math.max(2, Integer.highestOneBit(Math.max(1, tableKeyCount * 2 - 1)) << 1);
+
+            if (tableKeyCount <= PERFECT_HASH_MAX_KEYS) {
+                int multiplier = DEFAULT_MULTIPLIER;
+                for (int capacity = minCapacity; capacity <= minCapacity * PERFECT_HASH_MAX_GROWTH; capacity <<= 1) {
+                    long[] table = new long[capacity];
+                    for (int attempt = 0; attempt < PERFECT_HASH_ATTEMPTS; attempt++) {
+                        if (layOutPerfect(keyArray, table, multiplier)) {
+                            return new CompactStringMap<V>(keyArray, valueArray, table, multiplier, true,
+                                                           (nullKeyIndex != null) ? nullKeyIndex : NO_INDEX);
+                        }
+                        Arrays.fill(table, 0);
+                        // the next odd multiplier from a fixed sequence, so that layouts are reproducible
+                        multiplier = multiplier * 0x2C9277B5 + 0xAC564B05 | 1;
+                    }
+                }
+            }
+
+            long[] table = new long[minCapacity];
+            int shift = Integer.numberOfLeadingZeros(minCapacity) + 1;
+            for (int i = 0; i < keyArray.length; i++) {
+                if (keyArray[i] == null) {
+                    continue;
+                }
+                int hash = keyArray[i].hashCode();
+                int slot = (hash * DEFAULT_MULTIPLIER) >>> shift;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (minCapacity - 1);
+                }
+                table[slot] = entry(hash, i);
+            }
+
+            return new CompactStringMap<V>(keyArray, valueArray, table, DEFAULT_MULTIPLIER, false,
+                                           (nullKeyIndex != null) ? nullKeyIndex : NO_INDEX);
+        }
+
+        /**
+         * @return whether every key hashes to a distinct slot of the table under the multiplier, in which case the
+         * table has been filled in
+         */
+        private static boolean layOutPerfect(String[] keys, long[] table, int multiplier) {
+            int shift = Integer.numberOfLeadingZeros(table.length) + 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == null) {
+                    continue;
+                }
+                int hash = keys[i].hashCode();
+                int slot = (hash * multiplier) >>> shift;
+                if (table[slot] != 0) {
+                    return false;
+                }
+                table[slot] = entry(hash, i);
+            }
+
+            return true;
+        }
+
+        private static long entry(int hash, int index) {
+            return ((long)hash << 32) | (index + 1);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.slf4j.Logger;
+
+/**
+ * How the debug and info logging of bucketing and activation decisions is guarded.
+ * <p>
+ * Decision logging happens on every {@code activate}, {@code track} and {@code getVariation} call. Every mode skips
+ * building the log arguments when the level is disabled; they differ in when the level is looked up. Warnings and
+ * errors are always logged.
+ */
+public enum DecisionLogging {
+
+    /**
+     * Looks up the logger's level on every call, so level changes take effect immediately.
+     */
+    PER_CALL {
+        @Override
+        public LogGuard guard(Logger logger) {
+            return new LogGuard(logger, false, false);
+        }
+    },
+
+    /**
+     * Looks up the logger's level once, when the guarded component is created for a project config. Level changes
+     * take effect for the next project config.
+     */
+    PER_CONFIG {
+        @Override
+        public LogGuard guard(Logger logger) {
+            return new LogGuard(null, logger.isDebugEnabled(), logger.isInfoEnabled());
+        }
+    },
+
+    /**
+     * Never logs decisions.
+     */
+    DISABLED {
+        @Override
+        public LogGuard guard(Logger logger) {
+            return new LogGuard(null, false, false);
+        }
+    };
+
+    /**
+     * @param logger the logger that decisions are logged to
+     * @return the guard to check before logging a decision to the logger
+     */
+    public abstract LogGuard guard(Logger logger);
+}
@@ -0,0 +1,53 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Checked before logging a decision at debug or info level, so that the log arguments are only boxed and collected
+ * into a varargs array when the message will be logged.
+ *
+ * @see DecisionLogging
+ */
+@Immutable
+public final class LogGuard {
+
+    @Nullable private final Logger logger;
+    private final boolean debugEnabled;
+    private final boolean infoEnabled;
+
+    /**
+     * @param logger the logger to look the level up from on every call, or {@code null} to use the given levels
+     */
+    LogGuard(@Nullable Logger logger, boolean debugEnabled, boolean infoEnabled) {
+        this.logger = logger;
+        this.debugEnabled = debugEnabled;
+        this.infoEnabled = infoEnabled;
+    }
+
+    public boolean isDebugEnabled() {
+        return (logger != null) ? logger.isDebugEnabled() : debugEnabled;
+    }
+
+    public boolean isInfoEnabled() {
+        return (logger != null) ? logger.isInfoEnabled() : infoEnabled;
+    }
+}
@@ -25,10 +25,14 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 public final class ProjectValidationUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(ProjectValidationUtils.class);
 
+    private static final LogGuard defaultLogGuard = DecisionLogging.PER_CALL.guard(logger);
+
     private ProjectValidationUtils() {}
 
     /**
@@ -42,29 +46,83 @@ public final class ProjectValidationUtils {
      */
     public static boolean validatePreconditions(ProjectConfig projectConfig, Experiment experiment, String userId,
                                                 Map<String, String> attributes) {
+        return validatePreconditions(projectConfig, experiment, userId, attributes, null);
+    }
+
+    /**
+     * Helper method to validate all pre-conditions before bucketing a user, memoizing audience evaluations so that
+     * an audience shared by several experiments is only evaluated once for the user.
+     *
+     * @param projectConfig the current projectConfig
+     * @param experiment the experiment we are validating pre-conditions for
+     * @param userId the ID of the user
+     * @param attributes the attributes of the user
+     * @param audienceEvaluations the {@code audienceId -> result} evaluations made so far for the same user and
+     *                            attributes, which will be added to, or {@code null} to not memoize evaluations
+     * @return whether the pre-conditions are satisfied
+     */
+    public static boolean validatePreconditions(ProjectConfig projectConfig, Experiment experiment, String userId,
+                                                Map<String, String> attributes,
+                                                @Nullable Map<String, Boolean> audienceEvaluations) {
+        return validatePreconditions(projectConfig, experiment, userId, attributes, audienceEvaluations,
+                                     defaultLogGuard);
+    }
+
+    /**
+     * Helper method to validate all pre-conditions before bucketing a user, logging decisions through the given
+     * guard.
+     *
+     * @param projectConfig the current projectConfig
+     * @param experiment the experiment we are validating pre-conditions for
+     * @param userId the ID of the user
+     * @param attributes the attributes of the user
+     * @param audienceEvaluations the memoized audience evaluations, or {@code null}
+     * @param logGuard the guard returned by {@link #getLogGuard(DecisionLogging)}
+     * @return whether the pre-conditions are satisfied
+     */
+    public static boolean validatePreconditions(ProjectConfig projectConfig, Experiment experiment, String userId,
+                                                Map<String, String> attributes,
+                                                @Nullable Map<String, Boolean> audienceEvaluations,
+                                                LogGuard logGuard) {
         if (!experiment.isRunning()) {
-            logger.info("Experiment \"{}\" is not running.", experiment.getKey(), userId);
+            if (logGuard.isInfoEnabled()) {
+                logger.info("Experiment \"{}\" is not running.", experiment.getKey());
+            }
             return false;
         }
 
-        if (!isUserInExperiment(projectConfig, experiment, attributes)) {
-            logger.info("User \"{}\" does not meet conditions to be in experiment \"{}\".", userId, experiment.getKey());
+        if (!isUserInExperiment(projectConfig, experiment, attributes, audienceEvaluations)) {
+            if (logGuard.isInfoEnabled()) {
+                logger.info("User \"{}\" does not meet conditions to be in experiment \"{}\".", userId,
+                            experiment.getKey());
+            }
             return false;
         }
 
         return true;
     }
 
+    /**
+     * @param decisionLogging how decisions made while validating pre-conditions are logged
+     * @return the guard to pass to
+     *         {@link #validatePreconditions(ProjectConfig, Experiment, String, Map, Map, LogGuard)}
+     */
+    public static LogGuard getLogGuard(DecisionLogging decisionLogging) {
+        return decisionLogging.guard(logger);
+    }
+
     /**
      * Determines whether a user satisfies audience conditions for the experiment.
      *
      * @param projectConfig the current projectConfig
      * @param experiment the experiment we are evaluating audiences for
      * @param attributes the attributes of the user
+     * @param audienceEvaluations the memoized audience evaluations, or {@code null}
      * @return whether the user meets the criteria for the experiment
      */
     private static boolean isUserInExperiment(ProjectConfig projectConfig, Experiment experiment,
-                                              Map<String, String> attributes) {
+                                              Map<String, String> attributes,
+                                              @Nullable Map<String, Boolean> audienceEvaluations) {
         List<String> experimentAudienceIds = experiment.getAudienceIds();
 
         // if there are no audiences, ALL users should be part of the experiment
@@ -78,12 +136,27 @@ public final class ProjectValidationUtils {
         }
 
         for (String audienceId : experimentAudienceIds) {
-            Condition conditions = projectConfig.getAudienceConditionsFromId(audienceId);
-            if (conditions.evaluate(attributes)) {
+            if (isUserInAudience(projectConfig, audienceId, attributes, audienceEvaluations)) {
                 return true;
             }
         }
 
         return false;
     }
+
+    private static boolean isUserInAudience(ProjectConfig projectConfig, String audienceId,
+                                            Map<String, String> attributes,
+                                            @Nullable Map<String, Boolean> audienceEvaluations) {
+        if (audienceEvaluations == null) {
+            return projectConfig.getAudienceConditionProgramFromId(audienceId).evaluate(attributes);
+        }
+
+        Boolean evaluation = audienceEvaluations.get(audienceId);
+        if (evaluation == null) {
+            evaluation = projectConfig.getAudienceConditionProgramFromId(audienceId).evaluate(attributes);
+            audienceEvaluations.put(audienceId, evaluation);
+        }
+
+        return evaluation;
+    }
 }
@@ -0,0 +1,423 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded {@link BlockingQueue} backed by a pre-sized ring buffer, which producers and consumers claim slots of
+ * without taking a lock.
+ * <p>
+ * Each slot has a sequence number that says whether it's free to be written for a position, or holds the element of
+ * one. A producer claims the next position with a single CAS on the tail sequence, writes its element and then
+ * publishes it by advancing the slot's sequence, so producers only contend with each other on that CAS, and never
+ * with consumers. Consumers claim positions from the head sequence the same way. The head and tail sequences are
+ * padded onto cache lines of their own.
+ * <p>
+ * {@link #offer(Object)} fails when the queue is full, as with an {@code ArrayBlockingQueue}. Threads that wait for
+ * an element, or for space, spin briefly and then block on a condition until they're signalled or time out, so an
+ * idle consumer doesn't wake until there's something to take. Offering or taking an element only takes the lock to
+ * signal when a thread is waiting on the other side.
+ * <p>
+ * The capacity is rounded up to a power of two, and null elements aren't permitted. Iterators are weakly consistent:
+ * they walk a snapshot of the elements queued when they're created, and can't remove elements, so neither can
+ * {@link #remove(Object)}.
+ *
+ * @param <E> the type of the elements
+ */
+@ThreadSafe
+public final class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private static final int SPINS_BEFORE_YIELDING = 64;
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    // for each slot, the position it's free to be written for, or one past the position whose element it holds
+    private final AtomicLongArray sequences;
+
+    // the next positions to be claimed by producers and consumers
+    private final Sequence tail = new Sequence();
+    private final Sequence head = new Sequence();
+
+    // waiting threads block on these once they're done spinning, and are counted so that they're only signalled when
+    // there are any
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition notEmpty = waitLock.newCondition();
+    private final Condition notFull = waitLock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /**
+     * @param capacity the fewest elements the queue holds, which is rounded up to a power of two, and to at least two
+     *                 so that a slot's sequence can't mean both that it holds an element and that it's free
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be > 0 and <= 2^30");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity || size == 1) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    //======== Non-blocking operations ========//
+
+    @Override
+    public boolean offer(@Nonnull E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long position = tail.get();
+        while (true) {
+            int slot = (int)position & mask;
+            long available = sequences.get(slot) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    // a volatile write, so that either a consumer that's about to wait sees the element, or the
+                    // consumer is seen to be waiting
+                    sequences.set(slot, position + 1);
+                    if (waitingConsumers.get() > 0) {
+                        signal(notEmpty);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // the slot still holds the element from a lap ago, so the queue is full
+                return false;
+            } else {
+                // another producer claimed the position
+                position = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public @CheckForNull E poll() {
+        long position = head.get();
+        while (true) {
+            int slot = (int)position & mask;
+            long available = sequences.get(slot) - (position + 1);
+            if (available == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(slot);
+                    elements.lazySet(slot, null);
+                    // free the slot for the position a lap ahead
+                    sequences.set(slot, position + mask + 1);
+                    if (waitingProducers.get() > 0) {
+                        signal(notFull);
+                    }
+                    return element;
+                }
+                position = head.get();
+            } else if (available < 0) {
+                // the slot's element isn't published yet, so the queue is empty
+                return null;
+            } else {
+                // another consumer claimed the position
+                position = head.get();
+            }
+        }
+    }
+
+    @Override
+    public @CheckForNull E peek() {
+        while (true) {
+            long position = head.get();
+            int slot = (int)position & mask;
+            if (sequences.get(slot) != position + 1) {
+                return null;
+            }
+            // only return the element if it wasn't taken while it was read
+            E element = elements.get(slot);
+            if (head.get() == position) {
+                return element;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        while (true) {
+            long headPosition = head.get();
+            long tailPosition = tail.get();
+            if (head.get() == headPosition) {
+                return (int)Math.max(0, Math.min(tailPosition - headPosition, mask + 1));
+            }
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return mask + 1 - size();
+    }
+
+    @Override
+    public int drainTo(@Nonnull Collection<? super E> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@Nonnull Collection<? super E> collection, int maxElements) {
+        if (collection == this) {
+            throw new IllegalArgumentException();
+        }
+
+        int drained = 0;
+        E element;
+        while (drained < maxElements && (element = poll()) != null) {
+            collection.add(element);
+            drained++;
+        }
+
+        return drained;
+    }
+
+    /**
+     * @return an iterator over a snapshot of the elements queued when it's created, which can't remove them
+     */
+    @Override
+    public @Nonnull Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<E>(size());
+        long tailPosition = tail.get();
+        for (long position = head.get(); position < tailPosition; position++) {
+            int slot = (int)position & mask;
+            if (sequences.get(slot) != position + 1) {
+                // not published yet, or already taken
+                continue;
+            }
+            // only keep the element if the slot wasn't taken and reused while it was read
+            E element = elements.get(slot);
+            if (element != null && sequences.get(slot) == position + 1) {
+                snapshot.add(element);
+            }
+        }
+
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    //======== Blocking operations ========//
+
+    @Override
+    public void put(@Nonnull E element) throws InterruptedException {
+        for (int attempt = 0; !offer(element); attempt++) {
+            if (!spin(attempt)) {
+                awaitSpace(element, 0, false);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(@Nonnull E element, long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        long timeoutNanos = unit.toNanos(timeout);
+        for (int attempt = 0; !offer(element); attempt++) {
+            long remainingNanos = timeoutNanos - (System.nanoTime() - start);
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            if (!spin(attempt)) {
+                return awaitSpace(element, remainingNanos, true);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public @Nonnull E take() throws InterruptedException {
+        E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            if (!spin(attempt)) {
+                return awaitElement(0, false);
+            }
+        }
+
+        return element;
+    }
+
+    @Override
+    public @CheckForNull E poll(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        long timeoutNanos = unit.toNanos(timeout);
+        E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            long remainingNanos = timeoutNanos - (System.nanoTime() - start);
+            if (remainingNanos <= 0) {
+                return null;
+            }
+            if (!spin(attempt)) {
+                return awaitElement(remainingNanos, true);
+            }
+        }
+
+        return element;
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * Spins, then yields, for the first attempts at a blocking operation.
+     *
+     * @return false once the thread should wait to be signalled instead
+     */
+    private static boolean spin(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        if (attempt < SPINS_BEFORE_YIELDING) {
+            return true;
+        }
+        if (attempt < SPINS_BEFORE_YIELDING * 2) {
+            Thread.yield();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Waits on {@link #notEmpty} until an element is taken, or the time runs out if {@code timed}.
+     * <p>
+     * The consumer is counted as waiting before it checks the queue again, so a producer that publishes an element
+     * after the check is bound to see it and signal.
+     */
+    private @CheckForNull E awaitElement(long nanos, boolean timed) throws InterruptedException {
+        waitLock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                E element;
+                while ((element = poll()) == null) {
+                    if (!timed) {
+                        notEmpty.await();
+                    } else if (nanos > 0) {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } else {
+                        return null;
+                    }
+                }
+                return element;
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Waits on {@link #notFull} until the element is offered, or the time runs out if {@code timed}, in the same way
+     * as {@link #awaitElement(long, boolean)}.
+     */
+    private boolean awaitSpace(@Nonnull E element, long nanos, boolean timed) throws InterruptedException {
+        waitLock.lockInterruptibly();
+        try {
+            waitingProducers.incrementAndGet();
+            try {
+                while (!offer(element)) {
+                    if (!timed) {
+                        notFull.await();
+                    } else if (nanos > 0) {
+                        nanos = notFull.awaitNanos(nanos);
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        waitLock.lock();
+        try {
+            condition.signal();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * Padding before a sequence, so that it's on a cache line of its own.
+     */
+    @SuppressWarnings("unused")
+    private static class LeftPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static class SequenceValue extends LeftPadding {
+        protected volatile long value;
+    }
+
+    /**
+     * A position in the ring buffer, padded on both sides, as fields of a subclass are laid out after those of its
+     * superclass.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends SequenceValue {
+
+        private static final AtomicLongFieldUpdater<SequenceValue> VALUE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+        protected long p9, p10, p11, p12, p13, p14, p15;
+
+        long get() {
+            return value;
+        }
+
+        boolean compareAndSet(long expected, long updated) {
+            return VALUE_UPDATER.compareAndSet(this, expected, updated);
+        }
+    }
+}
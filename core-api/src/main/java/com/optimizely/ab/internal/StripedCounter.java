@@ -0,0 +1,101 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counter that many threads update without contending on one cache line, for counts that are updated on every call
+ * and only summed rarely.
+ * <p>
+ * Each thread adds to the stripe its thread id maps to, and each stripe is padded onto a cache line of its own, so
+ * threads only contend when they share a stripe. Thread ids are handed out in sequence, so the threads of a pool map
+ * to different stripes until there are more threads than stripes. A thread always adds to the same stripe, so a
+ * thread's increment and its matching decrement cancel out within the stripe.
+ * <p>
+ * {@link #sum()} reads each stripe in turn, so it's only exact when no thread updates the counter while it's summed,
+ * or when every update it has to count happens-before it.
+ */
+@ThreadSafe
+public final class StripedCounter {
+
+    // 16 longs, so that each stripe is 128 bytes apart, as adjacent line prefetching pulls in pairs of 64 byte lines
+    private static final int STRIPE_STRIDE = 16;
+    private static final int MAX_STRIPES = 64;
+
+    private final int mask;
+    // the stripes, with a stride of padding before the first and after the last
+    private final AtomicLongArray stripes;
+
+    /**
+     * Creates a counter with twice as many stripes as there are processors, up to {@value #MAX_STRIPES}.
+     */
+    public StripedCounter() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripeCount the fewest stripes to spread updates across, which is rounded up to a power of two, and
+     *                    limited to {@value #MAX_STRIPES}
+     */
+    public StripedCounter(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripe count must be > 0");
+        }
+
+        stripeCount = Math.min(stripeCount, MAX_STRIPES);
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.stripes = new AtomicLongArray((size + 2) * STRIPE_STRIDE);
+    }
+
+    public void add(long delta) {
+        stripes.getAndAdd(index(), delta);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * @return the sum of the stripes
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += stripes.get((i + 1) * STRIPE_STRIDE);
+        }
+
+        return sum;
+    }
+
+    //======== Helper methods ========//
+
+    private int index() {
+        return (((int)Thread.currentThread().getId() & mask) + 1) * STRIPE_STRIDE;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package com.optimizely.ab;
 
+import com.optimizely.ab.bucketing.Bucketer;
 import com.optimizely.ab.bucketing.UserExperimentRecord;
 import com.optimizely.ab.config.ProjectConfigTestUtils;
 import com.optimizely.ab.error.ErrorHandler;
@@ -35,6 +36,7 @@ import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJson;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 
@@ -70,6 +72,17 @@ public class OptimizelyBuilderTest {
         ProjectConfigTestUtils.verifyProjectConfig(optimizelyClient.getProjectConfig(), validProjectConfig());
     }
 
+    /**
+     * Verify that a client built from a config, rather than a datafile, uses the config as given.
+     */
+    @Test
+    public void builtProjectConfig() throws Exception {
+        Optimizely optimizelyClient = Optimizely.builder(validProjectConfig(), mockEventHandler)
+            .build();
+
+        assertThat(optimizelyClient.getProjectConfig(), sameInstance(validProjectConfig()));
+    }
+
     @Test
     public void withErrorHandler() throws Exception {
         Optimizely optimizelyClient = Optimizely.builder(validConfigJson(), mockEventHandler)
@@ -94,6 +107,7 @@ public class OptimizelyBuilderTest {
                 .withUserExperimentRecord(userExperimentRecord)
                 .build();
 
-        assertThat(optimizelyClient.bucketer.getUserExperimentRecord(), is(userExperimentRecord));
+        Bucketer bucketer = optimizelyClient.configManager.getSnapshot().getBucketer();
+        assertThat(bucketer.getUserExperimentRecord(), is(userExperimentRecord));
     }
 }
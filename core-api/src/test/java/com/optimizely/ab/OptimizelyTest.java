@@ -23,9 +23,12 @@ import com.optimizely.ab.bucketing.Bucketer;
 import com.optimizely.ab.config.Attribute;
 import com.optimizely.ab.config.EventType;
 import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.config.TrafficAllocation;
 import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.error.ErrorHandler;
 import com.optimizely.ab.error.NoOpErrorHandler;
 import com.optimizely.ab.error.RaiseExceptionErrorHandler;
@@ -33,6 +36,7 @@ import com.optimizely.ab.event.EventHandler;
 import com.optimizely.ab.event.LogEvent;
 import com.optimizely.ab.event.internal.EventBuilder;
 import com.optimizely.ab.event.internal.EventBuilderV1;
+import com.optimizely.ab.internal.LogGuard;
 import com.optimizely.ab.internal.LogbackVerifier;
 import com.optimizely.ab.internal.ProjectValidationUtils;
 
@@ -66,10 +70,13 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -430,6 +437,26 @@ public class OptimizelyTest {
         verify(mockEventHandler).dispatchEvent(logEventToDispatch);
     }
 
+    /**
+     * Verify that {@link Optimizely#activate(String, String, Map)} warns about, and ignores, attributes that are in
+     * the config but have {@code null} values.
+     */
+    @Test
+    public void activateWithNullAttributeValue() throws Exception {
+        String datafile = validConfigJson();
+        ProjectConfig projectConfig = validProjectConfig();
+        Experiment experiment = projectConfig.getExperiments().get(0);
+
+        Optimizely optimizely = Optimizely.builder(datafile, mockEventHandler)
+            .withConfig(projectConfig)
+            .build();
+
+        logbackVerifier.expectMessage(Level.WARN, "Attribute(s) [browser_type] have null values and are ignored.");
+
+        Map<String, String> attributes = Collections.singletonMap("browser_type", null);
+        optimizely.activate(experiment.getKey(), "userId", attributes);
+    }
+
     /**
      * Verify that {@link Optimizely#activate(String, String)} returns null when the experiment id corresponds to a
      * non-running experiment.
@@ -725,7 +752,8 @@ public class OptimizelyTest {
         LogEvent logEventToDispatch = new LogEvent(RequestMethod.GET, "test_url", testParams, "");
         when(mockEventBuilder.createConversionEvent(eq(projectConfig), eq(mockBucketer), eq("userId"),
                                                     eq(eventType.getId()), eq(eventType.getKey()),
-                                                    anyMapOf(String.class, String.class)))
+                                                    anyMapOf(String.class, String.class), isNull(Long.class),
+                                                    anyMapOf(String.class, Boolean.class), any(LogGuard.class)))
             .thenReturn(logEventToDispatch);
 
         logbackVerifier.expectMessage(Level.INFO, "Tracking event \"clicked_cart\" for user \"userId\".");
@@ -741,7 +769,9 @@ public class OptimizelyTest {
         // verify that the event builder was called with the expected attributes
         verify(mockEventBuilder).createConversionEvent(eq(projectConfig), eq(mockBucketer), eq("userId"),
                                                         eq(eventType.getId()), eq(eventType.getKey()),
-                                                        attributeCaptor.capture());
+                                                        attributeCaptor.capture(), isNull(Long.class),
+                                                        anyMapOf(String.class, Boolean.class),
+                                                        any(LogGuard.class));
 
         Map<String, String> actualValue = attributeCaptor.getValue();
         assertThat(actualValue, hasEntry(attribute.getKey(), "attributeValue"));
@@ -777,7 +807,8 @@ public class OptimizelyTest {
         LogEvent logEventToDispatch = new LogEvent(RequestMethod.GET, "test_url", testParams, "");
         when(mockEventBuilder.createConversionEvent(eq(projectConfig), eq(mockBucketer), eq("userId"),
                                                     eq(eventType.getId()), eq(eventType.getKey()),
-                                                    anyMapOf(String.class, String.class)))
+                                                    anyMapOf(String.class, String.class), isNull(Long.class),
+                                                    anyMapOf(String.class, Boolean.class), any(LogGuard.class)))
             .thenReturn(logEventToDispatch);
 
         logbackVerifier.expectMessage(Level.INFO, "Tracking event \"clicked_cart\" for user \"userId\".");
@@ -794,7 +825,9 @@ public class OptimizelyTest {
         // verify that the event builder was called with the expected attributes
         verify(mockEventBuilder).createConversionEvent(eq(projectConfig), eq(mockBucketer), eq("userId"),
                                                        eq(eventType.getId()), eq(eventType.getKey()),
-                                                       attributeCaptor.capture());
+                                                       attributeCaptor.capture(), isNull(Long.class),
+                                                       anyMapOf(String.class, Boolean.class),
+                                                       any(LogGuard.class));
 
         Map<String, String> actualValue = attributeCaptor.getValue();
         assertThat(actualValue, not(hasKey("unknownAttribute")));
@@ -827,7 +860,8 @@ public class OptimizelyTest {
         LogEvent logEventToDispatch = new LogEvent(RequestMethod.GET, "test_url", testParams, "");
         when(mockEventBuilder.createConversionEvent(eq(projectConfig), eq(mockBucketer), eq("userId"),
                                                     eq(eventType.getId()), eq(eventType.getKey()),
-                                                    eq(Collections.<String, String>emptyMap()), eq(revenue)))
+                                                    eq(Collections.<String, String>emptyMap()), eq(revenue),
+                                                    anyMapOf(String.class, Boolean.class), any(LogGuard.class)))
             .thenReturn(logEventToDispatch);
 
         // call track
@@ -840,7 +874,8 @@ public class OptimizelyTest {
         verify(mockEventBuilder).createConversionEvent(eq(projectConfig), eq(mockBucketer), eq("userId"),
                                                        eq(eventType.getId()), eq(eventType.getKey()),
                                                         eq(Collections.<String, String>emptyMap()),
-                                                        revenueCaptor.capture());
+                                                        revenueCaptor.capture(), anyMapOf(String.class, Boolean.class),
+                                                        any(LogGuard.class));
 
         Long actualValue = revenueCaptor.getValue();
         assertThat(actualValue, is(revenue));
@@ -1117,6 +1152,121 @@ public class OptimizelyTest {
                                            Collections.singletonMap("browser_type", "firefox")));
     }
 
+    //======== getVariations tests ========//
+
+    /**
+     * Verify that {@link Optimizely#getVariations(String, Map)} returns the same variations as individual
+     * {@link Optimizely#getVariation(String, String, Map)} calls for every experiment in the project.
+     */
+    @Test
+    public void getVariationsMatchesGetVariation() throws Exception {
+        String datafile = validConfigJson();
+        ProjectConfig projectConfig = validProjectConfig();
+
+        Optimizely optimizely = Optimizely.builder(datafile, mockEventHandler)
+            .withConfig(projectConfig)
+            .build();
+
+        List<Map<String, String>> attributeMaps = asList(Collections.<String, String>emptyMap(),
+                                                         Collections.singletonMap("browser_type", "chrome"),
+                                                         Collections.singletonMap("browser_type", "firefox"));
+        for (Map<String, String> attributes : attributeMaps) {
+            for (int i = 0; i < 100; i++) {
+                String userId = "user" + i;
+                Map<String, Variation> variations = optimizely.getVariations(userId, attributes);
+
+                for (Experiment experiment : projectConfig.getExperiments()) {
+                    Variation expectedVariation = optimizely.getVariation(experiment.getKey(), userId, attributes);
+                    assertThat(variations.get(experiment.getKey()), is(expectedVariation));
+                }
+            }
+        }
+    }
+
+    /**
+     * Verify that {@link Optimizely#getVariations(String, Map)} only passes the experiments whose pre-conditions the
+     * user satisfies through to the bucketer.
+     */
+    @Test
+    public void getVariationsOnlyBucketsValidExperiments() throws Exception {
+        String datafile = validConfigJson();
+        ProjectConfig projectConfig = validProjectConfig();
+        Experiment runningExperiment = projectConfig.getExperiments().get(0);
+        Variation bucketedVariation = runningExperiment.getVariations().get(0);
+        Map<String, Variation> bucketedVariations =
+                Collections.singletonMap(runningExperiment.getKey(), bucketedVariation);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Experiment>> experimentsCaptor =
+                ArgumentCaptor.forClass((Class<List<Experiment>>)(Class<?>)List.class);
+        when(mockBucketer.bucket(experimentsCaptor.capture(), eq("userId"))).thenReturn(bucketedVariations);
+
+        Optimizely optimizely = Optimizely.builder(datafile, mockEventHandler)
+            .withConfig(projectConfig)
+            .withBucketing(mockBucketer)
+            .build();
+
+        Map<String, Variation> variations =
+                optimizely.getVariations("userId", Collections.singletonMap("browser_type", "chrome"));
+        assertThat(variations, is(bucketedVariations));
+
+        // the "Not started" experiment is filtered out before bucketing
+        List<Experiment> bucketedExperiments = experimentsCaptor.getValue();
+        assertThat(bucketedExperiments.contains(runningExperiment), is(true));
+        assertThat(bucketedExperiments.contains(projectConfig.getExperiments().get(1)), is(false));
+    }
+
+    /**
+     * Verify that {@link Optimizely#getVariations(String)} doesn't return any variations when provided an empty
+     * user id.
+     */
+    @Test
+    public void getVariationsWithEmptyUserId() throws Exception {
+        String datafile = noAudienceProjectConfigJson();
+        ProjectConfig projectConfig = noAudienceProjectConfig();
+
+        Optimizely optimizely = Optimizely.builder(datafile, mockEventHandler)
+            .withConfig(projectConfig)
+            .withBucketing(mockBucketer)
+            .build();
+
+        logbackVerifier.expectMessage(Level.ERROR, "Non-empty user ID required");
+        assertThat(optimizely.getVariations("").isEmpty(), is(true));
+        verify(mockBucketer, never()).bucket(anyListOf(Experiment.class), any(String.class));
+    }
+
+    //======== UserEvaluationContext tests ========//
+
+    /**
+     * Verify that an audience shared by several experiments is evaluated once across {@code activate},
+     * {@code getVariation} and {@code track} calls made with the same {@link UserEvaluationContext}, and again once
+     * the context is used with a different project config.
+     */
+    @Test
+    public void userEvaluationContextEvaluatesEachAudienceOnce() throws Exception {
+        Condition condition = mock(Condition.class);
+        when(condition.evaluate(anyMapOf(String.class, String.class))).thenReturn(true);
+        ProjectConfig projectConfig = createSharedAudienceProjectConfig(condition);
+        ProjectConfig updatedProjectConfig = createSharedAudienceProjectConfig(condition);
+
+        Optimizely optimizely = Optimizely.builder(validConfigJson(), mockEventHandler)
+            .withConfig(projectConfig)
+            .build();
+        Optimizely updatedOptimizely = Optimizely.builder(validConfigJson(), mockEventHandler)
+            .withConfig(updatedProjectConfig)
+            .build();
+
+        UserEvaluationContext context =
+            new UserEvaluationContext(Collections.singletonMap("browser_type", "chrome"));
+        assertNotNull(optimizely.activate("shared_audience_1", "userId", context));
+        assertNotNull(optimizely.getVariation("shared_audience_2", "userId", context));
+        optimizely.track("shared_audience_event", "userId", context);
+        verify(condition, times(1)).evaluate(anyMapOf(String.class, String.class));
+
+        assertNotNull(updatedOptimizely.activate("shared_audience_1", "userId", context));
+        verify(condition, times(2)).evaluate(anyMapOf(String.class, String.class));
+    }
+
     //======== Helper methods ========//
 
     private Experiment createUnknownExperiment() {
@@ -1127,6 +1277,27 @@ public class OptimizelyTest {
                               Collections.singletonList(new TrafficAllocation("8765", 4999)));
     }
 
+    private ProjectConfig createSharedAudienceProjectConfig(Condition condition) {
+        List<Experiment> experiments = asList(
+            new Experiment("1001", "shared_audience_1", "Running",
+                           Collections.singletonList("100"),
+                           Collections.singletonList(new Variation("2001", "variation_1")),
+                           Collections.<String, String>emptyMap(),
+                           Collections.singletonList(new TrafficAllocation("2001", 10000))),
+            new Experiment("1002", "shared_audience_2", "Running",
+                           Collections.singletonList("100"),
+                           Collections.singletonList(new Variation("2002", "variation_2")),
+                           Collections.<String, String>emptyMap(),
+                           Collections.singletonList(new TrafficAllocation("2002", 10000)))
+        );
+
+        return new ProjectConfig("789", "1234", "2", "42", Collections.<Group>emptyList(), experiments,
+                                 Collections.singletonList(new Attribute("134", "browser_type", "185")),
+                                 Collections.singletonList(new EventType("3001", "shared_audience_event",
+                                                                         asList("1001", "1002"))),
+                                 Collections.singletonList(new Audience("100", "shared_audience", condition)));
+    }
+
     private EventType createUnknownEventType() {
         List<String> experimentIds = asList(
             "223"
@@ -0,0 +1,202 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils.CloseTrackingInputStream;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.config.parser.ConfigParser;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+import com.optimizely.ab.config.parser.ReconcilingConfigParser;
+import com.optimizely.ab.event.EventHandler;
+import com.optimizely.ab.internal.DecisionLogging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.noAudienceProjectConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ProjectConfigManager}.
+ */
+public class ProjectConfigManagerTest {
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Mock private EventHandler mockEventHandler;
+
+    /**
+     * Verify that updating to a new revision publishes a new snapshot, with a bucketer for the new config, and leaves
+     * snapshots read before the update as they were.
+     */
+    @Test
+    public void updateSwapsSnapshot() throws Exception {
+        ProjectConfigManager configManager =
+            new ProjectConfigManager(validProjectConfig(), null, DecisionLogging.PER_CALL);
+        ProjectConfigManager.Snapshot oldSnapshot = configManager.getSnapshot();
+
+        assertThat(configManager.update(newRevision(noAudienceProjectConfigJson())), is(true));
+
+        ProjectConfigManager.Snapshot newSnapshot = configManager.getSnapshot();
+        assertThat(newSnapshot.getProjectConfig().getRevision(), is("43"));
+        assertThat(configManager.getProjectConfig(), sameInstance(newSnapshot.getProjectConfig()));
+        assertThat(newSnapshot.getBucketer(), not(sameInstance(oldSnapshot.getBucketer())));
+        assertThat(oldSnapshot.getProjectConfig(), sameInstance(validProjectConfig()));
+    }
+
+    /**
+     * Verify that {@link DecisionLogging#PER_CONFIG} guards are built for each snapshot, so that a level change is
+     * picked up by the next config.
+     */
+    @Test
+    public void updateLooksUpDecisionLogLevelForNewConfig() throws Exception {
+        Logger logger = (Logger)LoggerFactory.getLogger(Optimizely.class);
+        Level level = logger.getLevel();
+        try {
+            logger.setLevel(Level.WARN);
+            ProjectConfigManager configManager =
+                new ProjectConfigManager(validProjectConfig(), null, DecisionLogging.PER_CONFIG);
+            ProjectConfigManager.Snapshot oldSnapshot = configManager.getSnapshot();
+            assertFalse(oldSnapshot.getLogGuard().isInfoEnabled());
+
+            logger.setLevel(Level.DEBUG);
+            assertFalse(oldSnapshot.getLogGuard().isInfoEnabled());
+            assertThat(configManager.update(newRevision(noAudienceProjectConfigJson())), is(true));
+
+            assertTrue(configManager.getSnapshot().getLogGuard().isInfoEnabled());
+            assertTrue(configManager.getSnapshot().getLogGuard().isDebugEnabled());
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    /**
+     * Verify that a datafile with the current revision doesn't replace the current snapshot.
+     */
+    @Test
+    public void updateWithCurrentRevisionKeepsSnapshot() throws Exception {
+        ProjectConfigManager configManager =
+            new ProjectConfigManager(validProjectConfig(), null, DecisionLogging.PER_CALL);
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+
+        assertThat(configManager.update(validConfigJson()), is(false));
+        assertThat(configManager.getSnapshot(), sameInstance(snapshot));
+    }
+
+    /**
+     * Verify that a datafile that can't be parsed doesn't replace the current snapshot.
+     */
+    @Test
+    public void updateWithInvalidDatafileKeepsSnapshot() throws Exception {
+        ProjectConfigManager configManager =
+            new ProjectConfigManager(validProjectConfig(), null, DecisionLogging.PER_CALL);
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+
+        try {
+            configManager.update("{\"experiments\": [");
+            fail("expected a " + ConfigParseException.class.getSimpleName());
+        } catch (ConfigParseException e) {
+            assertThat(configManager.getSnapshot(), sameInstance(snapshot));
+        }
+    }
+
+    /**
+     * Verify that datafiles are parsed against the current config, and that the config the parser builds is the one
+     * swapped in, rather than rebuilt.
+     */
+    @Test
+    public void updateParsesAgainstCurrentConfig() throws Exception {
+        String datafile = newRevision(noAudienceProjectConfigJson());
+        ProjectConfig parsedConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+        ReconcilingConfigParser configParser = mock(ReconcilingConfigParser.class);
+        when(configParser.parseProjectConfig(datafile, validProjectConfig())).thenReturn(parsedConfig);
+        ProjectConfigManager configManager =
+            new ProjectConfigManager(validProjectConfig(), null, DecisionLogging.PER_CALL, configParser);
+
+        assertThat(configManager.update(datafile), is(true));
+        assertThat(configManager.getProjectConfig(), sameInstance(parsedConfig));
+    }
+
+    /**
+     * Verify that a parser that only parses strings is given the whole of a datafile read from a stream, and that the
+     * stream isn't closed.
+     */
+    @Test
+    public void updateFromStreamWithStringParser() throws Exception {
+        ConfigParser stringParser = new ConfigParser() {
+            @Override
+            public ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException {
+                return DefaultConfigParser.getInstance().parseProjectConfig(json);
+            }
+        };
+        ProjectConfigManager configManager =
+            new ProjectConfigManager(validProjectConfig(), null, DecisionLogging.PER_CALL, stringParser);
+        CloseTrackingInputStream datafile =
+            new CloseTrackingInputStream(newRevision(noAudienceProjectConfigJson()).getBytes("UTF-8"));
+
+        assertThat(configManager.update(datafile), is(true));
+        assertThat(configManager.getProjectConfig().getRevision(), is("43"));
+        assertFalse(datafile.isClosed());
+    }
+
+    /**
+     * Verify that {@link Optimizely} makes decisions with the config swapped in through its manager, without being
+     * rebuilt.
+     */
+    @Test
+    public void optimizelyUsesUpdatedConfig() throws Exception {
+        Optimizely optimizely = Optimizely.builder(validConfigJson(), mockEventHandler).build();
+
+        // etag1 has an audience in the initial datafile, but not in the new one
+        assertNull(optimizely.activate("etag1", "userId"));
+
+        optimizely.getProjectConfigManager().update(newRevision(noAudienceProjectConfigJson()));
+
+        ProjectConfig projectConfig = optimizely.getProjectConfig();
+        assertThat(projectConfig.getRevision(), is("43"));
+        assertNotNull(optimizely.activate("etag1", "userId"));
+    }
+
+    //======== Helper methods ========//
+
+    private static String newRevision(String datafile) {
+        return datafile.replace("\"revision\": \"42\"", "\"revision\": \"43\"");
+    }
+}
@@ -29,11 +29,14 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import ch.qos.logback.classic.Level;
@@ -101,6 +104,26 @@ public class BucketerTest {
         assertThat(Math.round(((double)lowerHalfCount/totalCount) * 100), is(50L));
     }
 
+    /**
+     * Verify that across the entire 32-bit hashCode space, {@link Bucketer#generateBucketValue(int)} matches the
+     * original floating point mapping of {@code floor(MAX_TRAFFIC_VALUE * (hashCode / 2^32))}.
+     */
+    @Test
+    @Category(ExhaustiveTest.class)
+    public void generateBucketValueMatchesFloatingPointMapping() throws Exception {
+        Bucketer algorithm = new Bucketer(validProjectConfig());
+        int hashCode = Integer.MIN_VALUE;
+        do {
+            double ratio = (double)(hashCode & 0xFFFFFFFFL) / Math.pow(2, 32);
+            int expected = (int)Math.floor(Bucketer.MAX_TRAFFIC_VALUE * ratio);
+            int actual = algorithm.generateBucketValue(hashCode);
+            if (actual != expected) {
+                fail("bucket value mismatch for hashCode " + hashCode + ": expected " + expected + " but was "
+                     + actual);
+            }
+        } while (hashCode++ != Integer.MAX_VALUE);
+    }
+
     /**
      * Verify that generated bucket values match expected output.
      */
@@ -623,6 +646,70 @@ public class BucketerTest {
         verify(userExperimentRecord).remove("blah", "exp1");
     }
 
+    /**
+     * Verify that {@link Bucketer#bucket(List, String)} returns the same variations as individual
+     * {@link Bucketer#bucket(Experiment, String)} calls, while only bucketing into a random group once.
+     */
+    @Test
+    public void bucketMultipleExperimentsBucketsGroupOnce() throws Exception {
+        final AtomicInteger bucketValue = new AtomicInteger(3000);
+        final AtomicInteger bucketValueCount = new AtomicInteger();
+        Bucketer algorithm = new Bucketer(validProjectConfig()) {
+            @Override
+            int generateBucketValue(int hashCode) {
+                bucketValueCount.incrementAndGet();
+                return bucketValue.get();
+            }
+        };
+
+        ProjectConfig projectConfig = validProjectConfig();
+        List<Experiment> groupExperiments = projectConfig.getGroups().get(0).getExperiments();
+        Experiment bucketedExperiment = groupExperiments.get(0);
+
+        Map<String, Variation> variations = algorithm.bucket(groupExperiments, "blah");
+
+        // the user is in the first group experiment only, and the group was only bucketed into once
+        assertThat(variations.size(), is(1));
+        assertThat(variations.get(bucketedExperiment.getKey()), is(bucketedExperiment.getVariations().get(0)));
+        assertThat(bucketValueCount.get(), is(2));
+
+        for (Experiment experiment : groupExperiments) {
+            assertThat(algorithm.bucket(experiment, "blah"), is(variations.get(experiment.getKey())));
+        }
+    }
+
+    /**
+     * Verify that {@link Bucketer#bucket(List, String)}, which mixes the user id into the hash once, hashes the same
+     * bucket ids as individual {@link Bucketer#bucket(Experiment, String)} calls.
+     */
+    @Test
+    public void bucketMultipleExperimentsHashesLikeIndividualCalls() throws Exception {
+        final List<Integer> hashCodes = new ArrayList<Integer>();
+        Bucketer algorithm = new Bucketer(validProjectConfig()) {
+            @Override
+            int generateBucketValue(int hashCode) {
+                hashCodes.add(hashCode);
+                return super.generateBucketValue(hashCode);
+            }
+        };
+
+        List<Experiment> experiments = validProjectConfig().getExperiments();
+        String[] userIds = { "", "a", "blah", "optimizely_user12345", "\u00e9l\u00e8ve\uD83D\uDE00", "user\uD83D" };
+        for (String userId : userIds) {
+            hashCodes.clear();
+            Map<String, Variation> variations = algorithm.bucket(experiments, userId);
+            Set<Integer> batchHashCodes = new HashSet<Integer>(hashCodes);
+
+            hashCodes.clear();
+            for (Experiment experiment : experiments) {
+                assertThat(algorithm.bucket(experiment, userId), is(variations.get(experiment.getKey())));
+            }
+            // the individual calls hash a group once per group experiment, rather than once
+            Set<Integer> individualHashCodes = new HashSet<Integer>(hashCodes);
+            assertThat(batchHashCodes, is(individualHashCodes));
+        }
+    }
+
     //======== Helper methods ========//
 
     /**
@@ -0,0 +1,128 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Variation;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BulkBucketer}.
+ */
+public class BulkBucketerTest {
+
+    private static final int USER_COUNT = 20000;
+
+    // comparing against the bucketer logs every decision, so only a sample of the users is compared
+    private static final int SAMPLE_STRIDE = 97;
+
+    /**
+     * Verify that {@link BulkBucketer#bucket(String[])} assigns every user the variation that
+     * {@link Bucketer#bucket(Experiment, String)} does, across grouped, overlapping and forced experiments.
+     */
+    @Test
+    public void bucketMatchesBucketer() throws Exception {
+        ProjectConfig projectConfig = validProjectConfig();
+        String[] userIds = generateUserIds();
+
+        int[][] results = new BulkBucketer(projectConfig).bucket(userIds);
+
+        assertMatchesBucketer(projectConfig, userIds, results);
+    }
+
+    /**
+     * Verify that splitting users across an executor gives the same assignments as bucketing on the calling thread.
+     */
+    @Test
+    public void bucketInParallelMatchesSequentialBucket() throws Exception {
+        ProjectConfig projectConfig = validProjectConfig();
+        String[] userIds = generateUserIds();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int[][] expected = new BulkBucketer(projectConfig).bucket(userIds);
+            int[][] actual = new BulkBucketer(projectConfig, executor, 4).bucket(userIds);
+
+            assertThat(actual.length, is(expected.length));
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], actual[i]);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify that {@link BulkBucketer#bucket(Experiment, String[])} returns a single column for the experiment.
+     */
+    @Test
+    public void bucketSingleExperiment() throws Exception {
+        ProjectConfig projectConfig = validProjectConfig();
+        Experiment experiment = projectConfig.getExperimentKeyMapping().get("group_etag1");
+        String[] userIds = generateUserIds();
+
+        int[] results = new BulkBucketer(projectConfig).bucket(experiment, userIds);
+
+        assertThat(results.length, is(USER_COUNT));
+        assertThat(results[0], is(0));
+        assertThat(results[1], is(1));
+    }
+
+    //======== Helper methods ========//
+
+    private static String[] generateUserIds() {
+        String[] userIds = new String[USER_COUNT];
+        for (int i = 0; i < USER_COUNT; i++) {
+            userIds[i] = "user" + i;
+        }
+        // include users with forced variations, one of which is also in the compared sample
+        userIds[0] = "testUser1";
+        userIds[1] = "testUser2";
+        userIds[SAMPLE_STRIDE] = "testUser2";
+        // include users whose ids aren't ASCII, or end in a surrogate
+        userIds[SAMPLE_STRIDE * 2] = "\u00e9l\u00e8ve\uD83D\uDE00";
+        userIds[SAMPLE_STRIDE * 3] = "user\uD83D";
+
+        return userIds;
+    }
+
+    private static void assertMatchesBucketer(ProjectConfig projectConfig, String[] userIds, int[][] results) {
+        Bucketer bucketer = new Bucketer(projectConfig);
+        List<Experiment> experiments = projectConfig.getExperiments();
+        assertThat(results.length, is(experiments.size()));
+        for (int i = 0; i < experiments.size(); i++) {
+            Experiment experiment = experiments.get(i);
+            for (int user = 0; user < userIds.length; user += SAMPLE_STRIDE) {
+                Variation variation = bucketer.bucket(experiment, userIds[user]);
+                int expected = (variation == null) ? BulkBucketer.NOT_BUCKETED
+                                                   : experiment.getVariations().indexOf(variation);
+                assertThat(experiment.getKey() + " for " + userIds[user], results[i][user], is(expected));
+            }
+        }
+    }
+}
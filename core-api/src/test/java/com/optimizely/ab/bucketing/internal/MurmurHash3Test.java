@@ -115,6 +115,102 @@ public class MurmurHash3Test {
         }
 
     }
+
+    private void doSegmentedString(String s) {
+        int expected = MurmurHash3.murmurhash3_x86_32(s, 0, s.length(), 123456789);
+        for (int split=0; split<=s.length(); split++) {
+            String data1 = s.substring(0, split);
+            String data2 = s.substring(split);
+            assertEquals(expected, MurmurHash3.murmurhash3_x86_32(data1, data2, 123456789));
+            assertEquals(expected, MurmurHash3.murmurhash3_x86_32(new StringBuilder(data1), data2, 123456789));
+        }
+    }
+
+    /**
+     * Verify that hashing two segments matches hashing their concatenation, for every split point.
+     */
+    @Test
+    @SuppressFBWarnings(
+        value={"SF_SWITCH_NO_DEFAULT"},
+        justification="deliberate")
+    public void testSegmentedStringHash() {
+        doSegmentedString("");
+        doSegmentedString("hello!");
+        doSegmentedString("ppid11886780721");
+        doSegmentedString("\u0123\u2345\u1234");
+        // surrogate pairs, which may be split across the segments, and unpaired surrogates
+        doSegmentedString("a\uD83D\uDE00b\uD83D\uDE00");
+        doSegmentedString("\uD83Dabc\uDE00");
+
+        Random r = new Random();
+        StringBuilder sb = new StringBuilder(40);
+        for (int i=0; i<10000; i++) {
+            sb.setLength(0);
+            int len = r.nextInt(24);
+            for (int j=0; j<len; j++) {
+                int max = 0;
+                switch (r.nextInt() & 0x3) {
+                    case 0: max=0x80; break;   // 1 UTF8 bytes
+                    case 1: max=0x800; break;  // up to 2 bytes
+                    case 2: max=0xffff+1; break; // up to 3 bytes, including unpaired surrogates
+                    case 3: max=Character.MAX_CODE_POINT+1; // up to 4 bytes
+                }
+                sb.appendCodePoint(r.nextInt(max));
+            }
+
+            doSegmentedString(sb.toString());
+        }
+    }
+
+    private void doPrefixMixedBytes(String s) {
+        int expected = MurmurHash3.murmurhash3_x86_32(s, 0, s.length(), 123456789);
+
+        byte[] bytes = new byte[s.length() * 3];
+        int len = MurmurHash3.encodeUtf8(s, bytes, 0);
+        assertEquals(expected, MurmurHash3.murmurhash3_x86_32(bytes, 0, len, 123456789));
+
+        for (int prefix=0; prefix<=len; prefix++) {
+            int h1 = MurmurHash3.mixBlocks(123456789, bytes, 0, prefix);
+            assertEquals(expected, MurmurHash3.murmurhash3_x86_32(h1, prefix & 0xfffffffc, bytes, 0, len));
+        }
+    }
+
+    /**
+     * Verify that encoding to UTF-8 and hashing the bytes, optionally resuming from a mixed prefix, matches hashing
+     * the characters.
+     */
+    @Test
+    @SuppressFBWarnings(
+        value={"SF_SWITCH_NO_DEFAULT"},
+        justification="deliberate")
+    public void testPrefixMixedBytesHash() {
+        doPrefixMixedBytes("");
+        doPrefixMixedBytes("hello!");
+        doPrefixMixedBytes("ppid11886780721");
+        doPrefixMixedBytes("\u0123\u2345\u1234");
+        // surrogate pairs and unpaired surrogates
+        doPrefixMixedBytes("a\uD83D\uDE00b\uD83D\uDE00");
+        doPrefixMixedBytes("\uD83Dabc\uDE00");
+
+        Random r = new Random();
+        StringBuilder sb = new StringBuilder(40);
+        for (int i=0; i<10000; i++) {
+            sb.setLength(0);
+            int len = r.nextInt(24);
+            for (int j=0; j<len; j++) {
+                int max = 0;
+                switch (r.nextInt() & 0x3) {
+                    case 0: max=0x80; break;   // 1 UTF8 bytes
+                    case 1: max=0x800; break;  // up to 2 bytes
+                    case 2: max=0xffff+1; break; // up to 3 bytes, including unpaired surrogates
+                    case 3: max=Character.MAX_CODE_POINT+1; // up to 4 bytes
+                }
+                sb.appendCodePoint(r.nextInt(max));
+            }
+
+            doPrefixMixedBytes(sb.toString());
+        }
+    }
 }
 
 
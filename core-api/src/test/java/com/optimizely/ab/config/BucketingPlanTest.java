@@ -0,0 +1,113 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link BucketingPlan}.
+ */
+public class BucketingPlanTest {
+
+    private static final Variation VARIATION_1 = new Variation("1", "var1");
+    private static final Variation VARIATION_2 = new Variation("2", "var2");
+    private static final Variation VARIATION_3 = new Variation("3", "var3");
+
+    private static final Map<String, Variation> VARIATION_ID_MAPPING =
+            ProjectConfigUtils.generateIdMapping(asList(VARIATION_1, VARIATION_2, VARIATION_3));
+
+    /**
+     * Verify that range boundaries are end-exclusive and that values past the last range aren't bucketed.
+     */
+    @Test
+    public void bucketUsesEndExclusiveRanges() throws Exception {
+        List<TrafficAllocation> trafficAllocations = asList(
+            new TrafficAllocation("1", 1000),
+            new TrafficAllocation("2", 5000),
+            new TrafficAllocation("3", 6000)
+        );
+        BucketingPlan<Variation> plan = BucketingPlan.compile(trafficAllocations, VARIATION_ID_MAPPING);
+
+        assertThat(plan.bucket(0), is(VARIATION_1));
+        assertThat(plan.bucket(999), is(VARIATION_1));
+        assertThat(plan.bucket(1000), is(VARIATION_2));
+        assertThat(plan.bucket(4999), is(VARIATION_2));
+        assertThat(plan.bucket(5000), is(VARIATION_3));
+        assertThat(plan.bucket(5999), is(VARIATION_3));
+        assertThat(plan.bucket(6000), is(nullValue()));
+        assertThat(plan.bucket(9999), is(nullValue()));
+    }
+
+    /**
+     * Verify that de-allocated space (an empty entity id) and unknown entity ids compile to {@code null}.
+     */
+    @Test
+    public void bucketToDeallocatedAndUnknownEntities() throws Exception {
+        List<TrafficAllocation> trafficAllocations = asList(
+            new TrafficAllocation("1", 1000),
+            new TrafficAllocation("", 2000),
+            new TrafficAllocation("unknown", 3000),
+            new TrafficAllocation("2", 4000)
+        );
+        BucketingPlan<Variation> plan = BucketingPlan.compile(trafficAllocations, VARIATION_ID_MAPPING);
+
+        assertThat(plan.bucket(500), is(VARIATION_1));
+        assertThat(plan.bucket(1500), is(nullValue()));
+        assertThat(plan.bucket(2500), is(nullValue()));
+        assertThat(plan.bucket(3500), is(VARIATION_2));
+    }
+
+    /**
+     * Verify that compiled plans match the first allocation in datafile order, even when the end of ranges aren't
+     * strictly increasing.
+     */
+    @Test
+    public void bucketMatchesFirstAllocationForUnorderedRanges() throws Exception {
+        List<TrafficAllocation> trafficAllocations = asList(
+            new TrafficAllocation("1", 5000),
+            new TrafficAllocation("2", 3000),
+            new TrafficAllocation("3", 5000),
+            new TrafficAllocation("2", 8000)
+        );
+        BucketingPlan<Variation> plan = BucketingPlan.compile(trafficAllocations, VARIATION_ID_MAPPING);
+
+        assertThat(plan.bucket(2000), is(VARIATION_1));
+        assertThat(plan.bucket(4999), is(VARIATION_1));
+        assertThat(plan.bucket(5000), is(VARIATION_2));
+        assertThat(plan.bucket(8000), is(nullValue()));
+    }
+
+    /**
+     * Verify that an empty traffic allocation never buckets.
+     */
+    @Test
+    public void bucketWithEmptyTrafficAllocation() throws Exception {
+        BucketingPlan<Variation> plan = BucketingPlan.compile(Collections.<TrafficAllocation>emptyList(),
+                                                              Collections.<String, Variation>emptyMap());
+
+        assertThat(plan.bucket(0), is(nullValue()));
+    }
+}
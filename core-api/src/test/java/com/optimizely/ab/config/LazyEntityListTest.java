@@ -0,0 +1,94 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link LazyEntityList} and {@link LazyEntityMap}.
+ */
+public class LazyEntityListTest {
+
+    /**
+     * Verify that entities are decoded once, on first access, and keep their identity.
+     */
+    @Test
+    public void getDecodesOnce() throws Exception {
+        CountingList list = new CountingList(3);
+
+        assertThat(list.getDecodedCount(), is(0));
+        String first = list.get(1);
+        assertThat(list.get(1), sameInstance(first));
+        assertThat(list.decodeCount.get(), is(1));
+        assertThat(list.getDecodedCount(), is(1));
+    }
+
+    /**
+     * Verify that looking entities up by id or key only decodes the entities that are looked up.
+     */
+    @Test
+    public void mapLookupsDecodeOnlyMatches() throws Exception {
+        CountingList list = new CountingList(100);
+        LazyEntityMap<String> idMapping = LazyEntityMap.byId(list);
+        LazyEntityMap<String> keyMapping = LazyEntityMap.byKey(list);
+
+        assertThat(idMapping.size(), is(100));
+        assertThat(idMapping.containsKey("id42"), is(true));
+        assertThat(list.getDecodedCount(), is(0));
+
+        assertThat(keyMapping.get("key42"), sameInstance(idMapping.get("id42")));
+        assertThat(keyMapping.get("id42"), nullValue());
+        assertThat(keyMapping.indexOf("key42"), is(42));
+        assertThat(list.decodeCount.get(), is(1));
+    }
+
+    //======== Helper classes ========//
+
+    private static final class CountingList extends LazyEntityList<String> {
+
+        final AtomicInteger decodeCount = new AtomicInteger();
+
+        CountingList(int size) {
+            super(size);
+        }
+
+        @Override
+        public @Nonnull String getId(int index) {
+            return "id" + index;
+        }
+
+        @Override
+        public @Nonnull String getKey(int index) {
+            return "key" + index;
+        }
+
+        @Override
+        protected @Nonnull String decode(int index) {
+            decodeCount.incrementAndGet();
+            return new String("entity" + index);
+        }
+    }
+}
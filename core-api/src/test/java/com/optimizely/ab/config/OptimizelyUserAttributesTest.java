@@ -0,0 +1,70 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link OptimizelyUserAttributes}.
+ */
+public class OptimizelyUserAttributesTest {
+
+    /**
+     * Verify that attributes that aren't in the datafile, or have {@code null} values, are dropped on construction,
+     * and that the remaining attributes are readable both by key and by attribute index.
+     */
+    @Test
+    public void constructionDropsUnknownAttributes() throws Exception {
+        ProjectConfig projectConfig = validProjectConfig();
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("browser_type", "chrome");
+        attributes.put("unknownAttribute", "dimension");
+
+        OptimizelyUserAttributes userAttributes = new OptimizelyUserAttributes(projectConfig, attributes);
+
+        assertThat(userAttributes.size(), is(1));
+        assertThat(userAttributes.get("browser_type"), is("chrome"));
+        assertThat(userAttributes.containsKey("unknownAttribute"), is(false));
+        int browserIndex = projectConfig.getAttributeIndexMapping().get("browser_type");
+        assertThat(userAttributes.getValue(browserIndex), is("chrome"));
+        assertThat(userAttributes, is(Collections.singletonMap("browser_type", "chrome")));
+
+        Map<String, String> nullAttributes = Collections.singletonMap("browser_type", null);
+        assertThat(new OptimizelyUserAttributes(projectConfig, nullAttributes).isEmpty(), is(true));
+        assertThat(new OptimizelyUserAttributes(projectConfig, nullAttributes).get("browser_type"), nullValue());
+    }
+
+    /**
+     * Verify that the attributes can't be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void attributesAreReadOnly() throws Exception {
+        ProjectConfig projectConfig = validProjectConfig();
+
+        Map<String, String> attributes = Collections.emptyMap();
+        new OptimizelyUserAttributes(projectConfig, attributes).put("browser_type", "chrome");
+    }
+}
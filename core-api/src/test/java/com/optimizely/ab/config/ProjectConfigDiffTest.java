@@ -0,0 +1,114 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+
+import org.junit.Test;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ProjectConfigDiff}.
+ */
+public class ProjectConfigDiffTest {
+
+    /**
+     * Verify that rebuilding a config from an unchanged datafile shares every entity and compiled artifact with the
+     * previous config.
+     */
+    @Test
+    public void rebuildUnchangedConfigSharesEverything() throws Exception {
+        ProjectConfig previous = parse(validConfigJson());
+        ProjectConfig next = parse(validConfigJson());
+
+        ProjectConfig rebuilt = ProjectConfigDiff.rebuild(previous, next);
+
+        verifyProjectConfig(rebuilt, next);
+        for (Experiment experiment : rebuilt.getExperiments()) {
+            assertThat(experiment, sameInstance(previous.getExperimentIdMapping().get(experiment.getId())));
+        }
+        for (Group group : rebuilt.getGroups()) {
+            assertThat(group, sameInstance(previous.getGroupIdMapping().get(group.getId())));
+        }
+        for (Audience audience : rebuilt.getAudiences()) {
+            assertThat(audience, sameInstance(previous.getAudienceIdMapping().get(audience.getId())));
+            assertThat(rebuilt.getAudienceConditionProgramFromId(audience.getId()),
+                       sameInstance(previous.getAudienceConditionProgramFromId(audience.getId())));
+        }
+        assertThat(rebuilt.getAttributeIndexMapping(), sameInstance(previous.getAttributeIndexMapping()));
+        assertThat(rebuilt.getAudienceIndex(), sameInstance(previous.getAudienceIndex()));
+    }
+
+    /**
+     * Verify that a changed experiment replaces the previous one, along with its group, while the rest of the config
+     * is shared.
+     */
+    @Test
+    public void rebuildReplacesChangedExperimentAndItsGroup() throws Exception {
+        ProjectConfig previous = parse(validConfigJson());
+        ProjectConfig next = parse(validConfigJson().replace("\"endOfRange\": 1500", "\"endOfRange\": 2000"));
+
+        ProjectConfig rebuilt = ProjectConfigDiff.rebuild(previous, next);
+
+        verifyProjectConfig(rebuilt, next);
+        Experiment changed = rebuilt.getExperimentKeyMapping().get("overlapping_etag1");
+        assertThat(changed, not(sameInstance(previous.getExperimentKeyMapping().get("overlapping_etag1"))));
+        assertThat(changed.getTrafficAllocation().get(0).getEndOfRange(), is(2000));
+        assertThat(rebuilt.getGroupIdMapping().get("43"), not(sameInstance(previous.getGroupIdMapping().get("43"))));
+        assertThat(rebuilt.getGroupIdMapping().get("43").getExperiments().get(0), sameInstance(changed));
+
+        assertThat(rebuilt.getGroupIdMapping().get("42"), sameInstance(previous.getGroupIdMapping().get("42")));
+        assertThat(rebuilt.getExperimentKeyMapping().get("etag1"),
+                   sameInstance(previous.getExperimentKeyMapping().get("etag1")));
+        assertThat(rebuilt.getAudienceConditionProgramFromId("100"),
+                   sameInstance(previous.getAudienceConditionProgramFromId("100")));
+    }
+
+    /**
+     * Verify that a changed audience is recompiled, while the experiments that reference it are shared.
+     */
+    @Test
+    public void rebuildRecompilesChangedAudience() throws Exception {
+        ProjectConfig previous = parse(validConfigJson());
+        ProjectConfig next = parse(validConfigJson().replace("\\\"value\\\":\\\"firefox\\\"",
+                                                             "\\\"value\\\":\\\"chrome\\\""));
+
+        ProjectConfig rebuilt = ProjectConfigDiff.rebuild(previous, next);
+
+        verifyProjectConfig(rebuilt, next);
+        assertThat(rebuilt.getAudienceIdMapping().get("100"),
+                   not(sameInstance(previous.getAudienceIdMapping().get("100"))));
+        assertThat(rebuilt.getAudienceConditionProgramFromId("100"),
+                   not(sameInstance(previous.getAudienceConditionProgramFromId("100"))));
+        assertThat(rebuilt.getExperimentKeyMapping().get("etag1"),
+                   sameInstance(previous.getExperimentKeyMapping().get("etag1")));
+        assertThat(rebuilt.getAttributeIndexMapping(), sameInstance(previous.getAttributeIndexMapping()));
+    }
+
+    //======== Helper methods ========//
+
+    private static ProjectConfig parse(String datafile) throws Exception {
+        return DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+    }
+}
@@ -82,6 +82,21 @@ public class ProjectConfigTest {
         assertThat(actualExperimentIds, is(expectedExperimentIds));
     }
 
+    /**
+     * Asserts that getRunningExperimentsForGoal returns the experiments using a goal that are running, and an empty
+     * List given an invalid goal parameter.
+     */
+    @Test
+    public void verifyGetRunningExperimentsForGoal() throws Exception {
+        Experiment runningExperiment = projectConfig.getExperimentKeyMapping().get("etag1");
+
+        assertThat(projectConfig.getRunningExperimentsForGoal("clicked_cart"), is(asList(runningExperiment)));
+        // etag2 also uses the goal, but isn't running
+        assertThat(projectConfig.getRunningExperimentsForGoal("clicked_purchase"), is(asList(runningExperiment)));
+        assertThat(projectConfig.getRunningExperimentsForGoal("a_fake_goal"),
+                   is(Collections.<Experiment>emptyList()));
+    }
+
     /**
      * Asserts that getAudienceConditionsFromId returns the respective conditions for an audience, provided the
      * audience ID parameter is valid.
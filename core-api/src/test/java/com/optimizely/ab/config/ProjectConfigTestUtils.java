@@ -26,6 +26,7 @@ import com.optimizely.ab.config.audience.NotCondition;
 import com.optimizely.ab.config.audience.OrCondition;
 import com.optimizely.ab.config.audience.UserAttribute;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -39,6 +40,7 @@ import javax.annotation.Nonnull;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
@@ -220,6 +222,54 @@ public final class ProjectConfigTestUtils {
         verifyAudiences(actual.getAudiences(), expected.getAudiences());
     }
 
+    /**
+     * Asserts that the ids and keys that the config repeats across its entities are the same string instances
+     * wherever they're repeated.
+     */
+    public static void verifyStringsShared(@Nonnull ProjectConfig config) {
+        for (Experiment experiment : config.getExperiments()) {
+            Map<String, Variation> variations = experiment.getVariationIdToVariationMap();
+            for (TrafficAllocation allocation : experiment.getTrafficAllocation()) {
+                assertThat(allocation.getEntityId(), sameInstance(variations.get(allocation.getEntityId()).getId()));
+            }
+            for (String variationKey : experiment.getUserIdToVariationKeyMap().values()) {
+                assertThat(variationKey, sameInstance(experiment.getVariationKeyToVariationMap().get(variationKey)
+                                                                .getKey()));
+            }
+            for (String audienceId : experiment.getAudienceIds()) {
+                assertThat(audienceId, sameInstance(config.getAudienceIdMapping().get(audienceId).getId()));
+            }
+        }
+
+        for (Group group : config.getGroups()) {
+            for (Experiment experiment : group.getExperiments()) {
+                assertThat(experiment.getGroupId(), sameInstance(group.getId()));
+            }
+        }
+
+        for (EventType event : config.getEventTypes()) {
+            for (String experimentId : event.getExperimentIds()) {
+                assertThat(experimentId, sameInstance(config.getExperimentIdMapping().get(experimentId).getId()));
+            }
+        }
+    }
+
+    /**
+     * Asserts that the experiments, groups and audiences of the config are the instances of {@code previous} with the
+     * same ids.
+     */
+    public static void verifyEntitiesShared(@Nonnull ProjectConfig config, @Nonnull ProjectConfig previous) {
+        for (Experiment experiment : config.getExperiments()) {
+            assertThat(experiment, sameInstance(previous.getExperimentIdMapping().get(experiment.getId())));
+        }
+        for (Group group : config.getGroups()) {
+            assertThat(group, sameInstance(previous.getGroupIdMapping().get(group.getId())));
+        }
+        for (Audience audience : config.getAudiences()) {
+            assertThat(audience, sameInstance(previous.getAudienceIdMapping().get(audience.getId())));
+        }
+    }
+
     /**
      * Asserts that the provided experiment configs are equivalent.
      */
@@ -340,4 +390,26 @@ public final class ProjectConfigTestUtils {
             verifyExperiments(actualGroup.getExperiments(), expectedGroup.getExperiments());
         }
     }
+
+    /**
+     * An in-memory stream that records whether it's been closed.
+     */
+    public static final class CloseTrackingInputStream extends ByteArrayInputStream {
+
+        private boolean closed;
+
+        public CloseTrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
 }
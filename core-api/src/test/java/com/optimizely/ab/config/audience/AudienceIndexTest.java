@@ -0,0 +1,192 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.TrafficAllocation;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.internal.ProjectValidationUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AudienceIndex}.
+ */
+public class AudienceIndexTest {
+
+    private static final String[] ATTRIBUTE_NAMES = { "browser_type", "device_type", "location" };
+    private static final String[] ATTRIBUTE_VALUES = { "chrome", "firefox", "Android", "" };
+
+    /**
+     * Verify that the candidates for a user include every experiment whose pre-conditions they satisfy, for randomly
+     * generated audiences, and that they're in project order.
+     */
+    @Test
+    public void candidatesIncludeEligibleExperiments() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 50; i++) {
+            ProjectConfig projectConfig = randomProjectConfig(random);
+            AudienceIndex audienceIndex = projectConfig.getAudienceIndex();
+            for (int j = 0; j < 50; j++) {
+                Map<String, String> attributes = randomAttributes(random);
+                List<Experiment> candidates = audienceIndex.getCandidateExperiments(attributes);
+
+                List<Experiment> eligible = new ArrayList<Experiment>();
+                for (Experiment experiment : projectConfig.getExperiments()) {
+                    if (ProjectValidationUtils.validatePreconditions(projectConfig, experiment, "userId", attributes)) {
+                        eligible.add(experiment);
+                    }
+                }
+
+                assertTrue(candidates + " for " + attributes + " should include " + eligible,
+                           candidates.containsAll(eligible));
+                List<Experiment> ordered = new ArrayList<Experiment>(projectConfig.getExperiments());
+                ordered.retainAll(candidates);
+                assertThat(candidates, is(ordered));
+            }
+        }
+    }
+
+    /**
+     * Verify that only the experiments targeting a user's attribute values are candidates, that experiments without
+     * audiences are candidates for everyone and that experiments that aren't running are never candidates.
+     */
+    @Test
+    public void candidatesAreNarrowedByAttributeValue() throws Exception {
+        UserAttribute chrome = new UserAttribute("browser_type", "custom_dimension", "chrome");
+        UserAttribute safari = new UserAttribute("browser_type", "custom_dimension", "safari");
+        UserAttribute firefox = new UserAttribute("browser_type", "custom_dimension", "firefox");
+        UserAttribute android = new UserAttribute("device_type", "custom_dimension", "Android");
+        List<Audience> audiences = Arrays.asList(
+            new Audience("1", "chrome or safari", new OrCondition(Arrays.<Condition>asList(chrome, safari))),
+            new Audience("2", "chrome on android", new AndCondition(Arrays.<Condition>asList(android, chrome))),
+            new Audience("3", "not firefox", new NotCondition(firefox)));
+        List<Experiment> experiments = Arrays.asList(
+            experiment("chrome_or_safari", "Running", "1"),
+            experiment("chrome_on_android", "Running", "2"),
+            experiment("not_firefox", "Running", "3"),
+            experiment("everyone", "Running"),
+            experiment("paused", "Paused"));
+        ProjectConfig projectConfig = new ProjectConfig("789", "1234", "2", "42", Collections.<Group>emptyList(),
+                                                        experiments, Collections.<Attribute>emptyList(),
+                                                        Collections.<EventType>emptyList(), audiences);
+        AudienceIndex audienceIndex = projectConfig.getAudienceIndex();
+
+        Map<String, String> chromeOnAndroid = new HashMap<String, String>();
+        chromeOnAndroid.put("browser_type", "chrome");
+        chromeOnAndroid.put("device_type", "Android");
+
+        assertThat(candidateKeys(audienceIndex, Collections.<String, String>emptyMap()),
+                   is(Arrays.asList("everyone")));
+        assertThat(candidateKeys(audienceIndex, Collections.singletonMap("browser_type", "firefox")),
+                   is(Arrays.asList("not_firefox", "everyone")));
+        assertThat(candidateKeys(audienceIndex, Collections.singletonMap("browser_type", "chrome")),
+                   is(Arrays.asList("chrome_or_safari", "not_firefox", "everyone")));
+        assertThat(candidateKeys(audienceIndex, chromeOnAndroid),
+                   is(Arrays.asList("chrome_or_safari", "chrome_on_android", "not_firefox", "everyone")));
+    }
+
+    //======== Helper methods ========//
+
+    private static ProjectConfig randomProjectConfig(Random random) {
+        List<Audience> audiences = new ArrayList<Audience>();
+        for (int i = 0; i < 8; i++) {
+            audiences.add(new Audience(String.valueOf(i), "audience" + i, randomCondition(random, 3)));
+        }
+
+        List<Experiment> experiments = new ArrayList<Experiment>();
+        for (int i = 0; i < 20; i++) {
+            List<String> audienceIds = new ArrayList<String>();
+            int audienceCount = random.nextInt(3);
+            for (int j = 0; j < audienceCount; j++) {
+                audienceIds.add(String.valueOf(random.nextInt(audiences.size())));
+            }
+            String status = (random.nextInt(4) == 0) ? "Paused" : "Running";
+            experiments.add(new Experiment(String.valueOf(100 + i), "experiment" + i, status, audienceIds,
+                                           Collections.<Variation>emptyList(), Collections.<String, String>emptyMap(),
+                                           Collections.<TrafficAllocation>emptyList()));
+        }
+
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (int i = 0; i < ATTRIBUTE_NAMES.length; i++) {
+            attributes.add(new Attribute(String.valueOf(i), ATTRIBUTE_NAMES[i], "10" + i));
+        }
+
+        return new ProjectConfig("789", "1234", "2", "42", Collections.<Group>emptyList(), experiments, attributes,
+                                 Collections.<EventType>emptyList(), audiences);
+    }
+
+    private static Condition randomCondition(Random random, int depth) {
+        int type = (depth == 0) ? 0 : random.nextInt(4);
+        switch (type) {
+            case 1:
+            case 2:
+                List<Condition> conditions = new ArrayList<Condition>();
+                int size = random.nextInt(4);
+                for (int i = 0; i < size; i++) {
+                    conditions.add(randomCondition(random, depth - 1));
+                }
+                return (type == 1) ? new AndCondition(conditions) : new OrCondition(conditions);
+            case 3:
+                return new NotCondition(randomCondition(random, depth - 1));
+            default:
+                return new UserAttribute(ATTRIBUTE_NAMES[random.nextInt(ATTRIBUTE_NAMES.length)], "custom_dimension",
+                                         ATTRIBUTE_VALUES[random.nextInt(ATTRIBUTE_VALUES.length)]);
+        }
+    }
+
+    private static Map<String, String> randomAttributes(Random random) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (String name : ATTRIBUTE_NAMES) {
+            if (random.nextBoolean()) {
+                attributes.put(name, ATTRIBUTE_VALUES[random.nextInt(ATTRIBUTE_VALUES.length)]);
+            }
+        }
+
+        return attributes;
+    }
+
+    private static Experiment experiment(String key, String status, String... audienceIds) {
+        return new Experiment(key, key, status, Arrays.asList(audienceIds), Collections.<Variation>emptyList(),
+                              Collections.<String, String>emptyMap(), Collections.<TrafficAllocation>emptyList());
+    }
+
+    private static List<String> candidateKeys(AudienceIndex audienceIndex, Map<String, String> attributes) {
+        List<String> keys = new ArrayList<String>();
+        for (Experiment experiment : audienceIndex.getCandidateExperiments(attributes)) {
+            keys.add(experiment.getKey());
+        }
+
+        return keys;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.audience;
+
+import com.optimizely.ab.config.Attribute;
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.OptimizelyUserAttributes;
+import com.optimizely.ab.config.ProjectConfig;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ConditionProgram}.
+ */
+@SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
+    justification = "mockito verify calls do have a side-effect")
+public class ConditionProgramTest {
+
+    private static final String[] ATTRIBUTE_NAMES = { "browser_type", "device_type", "location" };
+    private static final String[] ATTRIBUTE_VALUES = { "chrome", "firefox", "Android", "" };
+
+    /**
+     * Verify that compiled programs evaluate randomly generated condition trees the same way the trees do.
+     */
+    @Test
+    public void evaluateMatchesConditionTree() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            Condition condition = randomCondition(random, 4);
+            ConditionProgram program = ConditionProgram.compile(condition);
+            for (int j = 0; j < 20; j++) {
+                Map<String, String> attributes = randomAttributes(random);
+                assertEquals(condition + " with " + attributes + " compiled to " + program,
+                             condition.evaluate(attributes), program.evaluate(attributes));
+            }
+        }
+    }
+
+    /**
+     * Verify that programs bound to a project config evaluate {@link OptimizelyUserAttributes} built against it the
+     * same way the trees do, including for attributes that aren't in the config.
+     */
+    @Test
+    public void evaluateBoundProgramMatchesConditionTree() throws Exception {
+        // leave the last attribute out of the config
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (int i = 0; i < ATTRIBUTE_NAMES.length - 1; i++) {
+            attributes.add(new Attribute(String.valueOf(i), ATTRIBUTE_NAMES[i], "10" + i));
+        }
+        ProjectConfig projectConfig = new ProjectConfig("789", "1234", "2", "42", Collections.<Group>emptyList(),
+                                                        Collections.<Experiment>emptyList(), attributes,
+                                                        Collections.<EventType>emptyList(),
+                                                        Collections.<Audience>emptyList());
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            Condition condition = randomCondition(random, 4);
+            ConditionProgram program =
+                ConditionProgram.compile(condition).bind(projectConfig.getAttributeIndexMapping());
+            for (int j = 0; j < 20; j++) {
+                Map<String, String> userAttributes =
+                    new OptimizelyUserAttributes(projectConfig, randomAttributes(random));
+                assertEquals(condition + " with " + userAttributes + " compiled to " + program,
+                             condition.evaluate(userAttributes), program.evaluate(userAttributes));
+            }
+        }
+    }
+
+    /**
+     * Verify that empty 'and' and 'or' conditions evaluate to true and false respectively, as in the tree.
+     */
+    @Test
+    public void evaluateEmptyConditions() throws Exception {
+        Map<String, String> attributes = Collections.emptyMap();
+
+        assertTrue(ConditionProgram.compile(new AndCondition(Collections.<Condition>emptyList())).evaluate(attributes));
+        assertFalse(ConditionProgram.compile(new OrCondition(Collections.<Condition>emptyList())).evaluate(attributes));
+    }
+
+    /**
+     * Verify that evaluation short-circuits, and that conditions of unknown types are called.
+     */
+    @Test
+    public void evaluateShortCircuits() throws Exception {
+        Condition called = mock(Condition.class);
+        when(called.evaluate(anyMapOf(String.class, String.class))).thenReturn(true);
+        Condition skipped = mock(Condition.class);
+        Condition browser = new UserAttribute("browser_type", "custom_dimension", "chrome");
+
+        Map<String, String> attributes = Collections.singletonMap("browser_type", "chrome");
+
+        ConditionProgram orProgram = ConditionProgram.compile(new OrCondition(Arrays.asList(browser, skipped)));
+        assertTrue(orProgram.evaluate(attributes));
+
+        ConditionProgram andProgram = ConditionProgram.compile(
+            new AndCondition(Arrays.asList(called, new NotCondition(browser), skipped)));
+        assertFalse(andProgram.evaluate(attributes));
+
+        verify(called).evaluate(attributes);
+        verify(skipped, never()).evaluate(anyMapOf(String.class, String.class));
+    }
+
+    /**
+     * Verify that subclasses of the built-in conditions are called, rather than compiled as their superclass.
+     */
+    @Test
+    public void evaluateCallsSubclassesOfBuiltInConditions() throws Exception {
+        Condition browser = new UserAttribute("browser_type", "custom_dimension", "chrome");
+        Condition inverted = new AndCondition(Collections.singletonList(browser)) {
+            @Override
+            public boolean evaluate(Map<String, String> attributes) {
+                return !super.evaluate(attributes);
+            }
+        };
+
+        Map<String, String> attributes = Collections.singletonMap("browser_type", "chrome");
+        assertEquals(inverted.evaluate(attributes), ConditionProgram.compile(inverted).evaluate(attributes));
+        assertFalse(ConditionProgram.compile(new OrCondition(Arrays.asList(inverted))).evaluate(attributes));
+    }
+
+    //======== Helper methods ========//
+
+    private static Condition randomCondition(Random random, int depth) {
+        int type = (depth == 0) ? 0 : random.nextInt(4);
+        switch (type) {
+            case 1:
+            case 2:
+                List<Condition> conditions = new ArrayList<Condition>();
+                int size = random.nextInt(4);
+                for (int i = 0; i < size; i++) {
+                    conditions.add(randomCondition(random, depth - 1));
+                }
+                return (type == 1) ? new AndCondition(conditions) : new OrCondition(conditions);
+            case 3:
+                return new NotCondition(randomCondition(random, depth - 1));
+            default:
+                return new UserAttribute(ATTRIBUTE_NAMES[random.nextInt(ATTRIBUTE_NAMES.length)], "custom_dimension",
+                                         ATTRIBUTE_VALUES[random.nextInt(ATTRIBUTE_VALUES.length)]);
+        }
+    }
+
+    private static Map<String, String> randomAttributes(Random random) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (String name : ATTRIBUTE_NAMES) {
+            if (random.nextBoolean()) {
+                attributes.put(name, ATTRIBUTE_VALUES[random.nextInt(ATTRIBUTE_VALUES.length)]);
+            }
+        }
+
+        return attributes;
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.EventType;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Group;
+import com.optimizely.ab.config.ProjectConfig;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.noAudienceProjectConfig;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.noAudienceProjectConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+/**
+ * Tests for {@link BinaryConfigFormat}.
+ */
+public class BinaryConfigFormatTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Verify that the configs parsed from the json fixtures are read back as they were written.
+     */
+    @Test
+    public void roundTripParsedConfigs() throws Exception {
+        ProjectConfig validConfig = DefaultConfigParser.getInstance().parseProjectConfig(validConfigJson());
+        verifyProjectConfig(BinaryConfigFormat.read(ByteBuffer.wrap(toBytes(validConfig))), validProjectConfig());
+
+        ProjectConfig noAudienceConfig =
+            DefaultConfigParser.getInstance().parseProjectConfig(noAudienceProjectConfigJson());
+        verifyProjectConfig(BinaryConfigFormat.read(ByteBuffer.wrap(toBytes(noAudienceConfig))),
+                            noAudienceProjectConfig());
+    }
+
+    /**
+     * Verify that a config written to a file is read back from its memory mapping, with its group experiments in
+     * their groups and the strings it repeats shared.
+     */
+    @Test
+    public void loadMappedFile() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "datafile.bin");
+        BinaryConfigFormat.write(validProjectConfig(), file);
+
+        ProjectConfig actual = BinaryConfigFormat.load(file);
+
+        verifyProjectConfig(actual, validProjectConfig());
+        Experiment groupExperiment = actual.getExperimentKeyMapping().get("group_etag1");
+        assertThat(groupExperiment.getGroupId(), is("42"));
+        assertThat(actual.getGroupIdMapping().get("42").getExperiments().contains(groupExperiment), is(true));
+        assertThat(groupExperiment.getStatus(),
+                   sameInstance(actual.getExperimentKeyMapping().get("etag1").getStatus()));
+        assertThat(temporaryFolder.getRoot().list(), is(new String[] { "datafile.bin" }));
+    }
+
+    /**
+     * Verify that a lazily loaded config matches the eagerly loaded one, with its group experiments decoded as the
+     * same instances whether they're looked up through the config or through their group.
+     */
+    @Test
+    public void loadLazilyMappedFile() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "datafile.bin");
+        BinaryConfigFormat.write(validProjectConfig(), file);
+
+        ProjectConfig actual = BinaryConfigFormat.loadLazily(file);
+
+        Experiment groupExperiment = actual.getExperimentKeyMapping().get("group_etag1");
+        assertThat(actual.getGroupIdMapping().get("42").getExperiments().get(1), sameInstance(groupExperiment));
+        assertThat(actual.getExperimentIdMapping().get(groupExperiment.getId()), sameInstance(groupExperiment));
+        verifyProjectConfig(actual, validProjectConfig());
+    }
+
+    /**
+     * Verify that the running experiments of each goal, which lazy configs resolve on first use, match those of an
+     * eagerly read config, as do the audiences' condition programs.
+     */
+    @Test
+    public void readLazilyResolvesGoalExperiments() throws Exception {
+        ProjectConfig expected = validProjectConfig();
+        ProjectConfig actual = BinaryConfigFormat.readLazily(ByteBuffer.wrap(toBytes(expected)));
+
+        for (EventType eventType : expected.getEventTypes()) {
+            assertThat(actual.getRunningExperimentsForGoal(eventType.getKey()).toString(),
+                       is(expected.getRunningExperimentsForGoal(eventType.getKey()).toString()));
+        }
+        assertThat(actual.getRunningExperimentsForGoal("unknown_event").isEmpty(), is(true));
+        Map<String, String> firefoxUser = Collections.singletonMap("browser_type", "firefox");
+        assertThat(actual.getAudienceConditionProgramFromId("100").evaluate(firefoxUser), is(false));
+    }
+
+    /**
+     * Verify that writing over a file replaces its config.
+     */
+    @Test
+    public void writeReplacesFile() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "datafile.bin");
+        BinaryConfigFormat.write(validProjectConfig(), file);
+        BinaryConfigFormat.write(noAudienceProjectConfig(), file);
+
+        verifyProjectConfig(BinaryConfigFormat.load(file), noAudienceProjectConfig());
+    }
+
+    /**
+     * Verify that a file whose name is shorter than the minimum temporary file prefix can be written.
+     */
+    @Test
+    public void writeFileWithShortName() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "a");
+        BinaryConfigFormat.write(validProjectConfig(), file);
+
+        verifyProjectConfig(BinaryConfigFormat.load(file), validProjectConfig());
+        assertThat(temporaryFolder.getRoot().list(), is(new String[] { "a" }));
+    }
+
+    /**
+     * Verify that the experiments outside of groups are told apart from those of groups by membership, rather than by
+     * where they're listed in the config.
+     */
+    @Test
+    public void writeExperimentsListedAfterGroupExperiments() throws Exception {
+        ProjectConfig projectConfig = spy(validProjectConfig());
+        List<Experiment> experiments = new ArrayList<Experiment>();
+        for (Group group : validProjectConfig().getGroups()) {
+            experiments.addAll(group.getExperiments());
+        }
+        for (Experiment experiment : validProjectConfig().getExperiments()) {
+            if (!experiments.contains(experiment)) {
+                experiments.add(experiment);
+            }
+        }
+        doReturn(experiments).when(projectConfig).getExperiments();
+
+        verifyProjectConfig(BinaryConfigFormat.read(ByteBuffer.wrap(toBytes(projectConfig))), validProjectConfig());
+    }
+
+    /**
+     * Verify that reading a buffer doesn't change its position.
+     */
+    @Test
+    public void readLeavesBufferPosition() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(toBytes(validProjectConfig()));
+
+        BinaryConfigFormat.read(buffer);
+
+        assertThat(buffer.position(), is(0));
+    }
+
+    /**
+     * Verify that content that isn't a binary config is rejected.
+     */
+    @Test
+    public void readRejectsJson() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BinaryConfigFormat.read(ByteBuffer.wrap(validConfigJson().getBytes("UTF-8")));
+    }
+
+    /**
+     * Verify that a truncated binary config is rejected.
+     */
+    @Test
+    public void readRejectsTruncatedConfig() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        byte[] bytes = toBytes(validProjectConfig());
+        BinaryConfigFormat.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 10)));
+    }
+
+    /**
+     * Verify that a truncated binary config is rejected when it's read lazily, rather than on lookup.
+     */
+    @Test
+    public void readLazilyRejectsTruncatedConfig() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        byte[] bytes = toBytes(validProjectConfig());
+        BinaryConfigFormat.readLazily(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 10)));
+    }
+
+    //======== Helper methods ========//
+
+    private static byte[] toBytes(ProjectConfig projectConfig) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryConfigFormat.write(projectConfig, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils.CloseTrackingInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJson;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyEntitiesShared;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyStringsShared;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BuiltInConfigParser}.
+ */
+public class BuiltInConfigParserTest {
+
+    private static final String GROUP_ID_AFTER_EXPERIMENTS_JSON =
+        "{\"accountId\": \"789\", \"projectId\": \"1234\", \"version\": \"2\", \"revision\": \"1\", " +
+        "\"experiments\": [], \"dimensions\": [], \"events\": [], \"audiences\": [], " +
+        "\"groups\": [{\"policy\": \"random\", \"trafficAllocation\": [], \"experiments\": [" +
+        "{\"id\": \"300\", \"key\": \"group_etag\", \"status\": \"Running\", \"audienceIds\": [], " +
+        "\"variations\": [{\"id\": \"280\", \"key\": \"vtag\"}], \"forcedVariations\": {}, " +
+        "\"trafficAllocation\": [{\"entityId\": \"280\", \"endOfRange\": 10000}]}], \"id\": \"42\"}]}";
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void parseProjectConfig() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJson());
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that the ids and keys the datafile repeats are parsed as shared strings.
+     */
+    @Test
+    public void parseProjectConfigSharesRepeatedStrings() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJson());
+
+        verifyStringsShared(actual);
+    }
+
+    /**
+     * Verify that a datafile parsed against the config it replaces shares the config's unchanged entities.
+     */
+    @Test
+    public void parseProjectConfigAgainstPreviousConfig() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig previous = parser.parseProjectConfig(validConfigJson());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJson(), previous);
+
+        verifyProjectConfig(actual, validProjectConfig());
+        verifyEntitiesShared(actual, previous);
+    }
+
+    /**
+     * Verify that parsing the json as it's read from a stream gives the same config as parsing it from a string.
+     */
+    @Test
+    public void parseProjectConfigFromInputStream() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJson().getBytes("UTF-8")));
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that the stream a config is parsed from is left open, for the caller to close.
+     */
+    @Test
+    public void parseProjectConfigLeavesInputStreamOpen() throws Exception {
+        CloseTrackingInputStream json = new CloseTrackingInputStream(validConfigJson().getBytes("UTF-8"));
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig(json);
+
+        assertFalse(json.isClosed());
+    }
+
+    /**
+     * Verify that only the remaining bytes of a buffer are parsed, and that its position is left as it was.
+     */
+    @Test
+    public void parseProjectConfigFromByteBuffer() throws Exception {
+        byte[] json = validConfigJson().getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(json.length + 2);
+        buffer.put((byte)'[').put(json).put((byte)']');
+        buffer.position(1).limit(json.length + 1);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(buffer);
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+        assertThat(buffer.position(), is(1));
+    }
+
+    /**
+     * Verify that values split across the reads of a stream are parsed whole.
+     */
+    @Test
+    public void parseProjectConfigFromInputStreamAcrossReads() throws Exception {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            padding.append("ab\\\\\\u00e9");
+        }
+        String json = validConfigJson().replace("\"accountId\": \"789\",",
+                                                "\"padding\": \"" + padding + "\", \"accountId\": \"789\",");
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that fields outside of the datafile schema are skipped, whatever their values.
+     */
+    @Test
+    public void parseProjectConfigSkipsUnknownFields() throws Exception {
+        String json = validConfigJson().replace(
+            "\"accountId\": \"789\",",
+            "\"unknown\": {\"values\": [1, -2.5e3, true, false, null, {\"escaped\": \"\\\"\\u00e9\\\"\"}]}, " +
+            "\"accountId\": \"789\",");
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(json);
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that escape sequences in strings are decoded.
+     */
+    @Test
+    public void parseProjectConfigDecodesEscapes() throws Exception {
+        String json = validConfigJson().replace("\"revision\": \"42\"", "\"revision\": \"4\\u00e9\\t\\\\\\/2\"");
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(json);
+
+        assertThat(actual.getRevision(), is("4\u00e9\t\\/2"));
+    }
+
+    /**
+     * Verify that the experiments of a group are given its id, even when the id follows them.
+     */
+    @Test
+    public void parseGroupWithIdAfterExperiments() throws Exception {
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(GROUP_ID_AFTER_EXPERIMENTS_JSON);
+
+        Experiment experiment = actual.getExperimentKeyMapping().get("group_etag");
+        assertThat(experiment.getGroupId(), is("42"));
+        assertThat(actual.getGroupIdMapping().get("42").getExperiments().get(0), is(experiment));
+    }
+
+    /**
+     * Verify that content following the datafile is rejected.
+     */
+    @Test
+    public void exceptionOnTrailingContent() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig(validConfigJson() + "}");
+    }
+
+    /**
+     * Verify that a datafile missing a required field is rejected, rather than producing an incomplete config.
+     */
+    @Test
+    public void exceptionOnMissingField() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig(validConfigJson().replace("\"revision\": \"42\",", ""));
+    }
+
+    /**
+     * Verify that internal parser exceptions are wrapped and rethrown as a {@link ConfigParseException}.
+     */
+    @Test
+    public void exceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        BuiltInConfigParser parser = new BuiltInConfigParser();
+        parser.parseProjectConfig("invalid config");
+    }
+}
@@ -17,14 +17,23 @@
 package com.optimizely.ab.config.parser;
 
 import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.ProjectConfigTestUtils.CloseTrackingInputStream;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validConfigJson;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.validProjectConfig;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyEntitiesShared;
 import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyProjectConfig;
+import static com.optimizely.ab.config.ProjectConfigTestUtils.verifyStringsShared;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 
 /**
  * Tests for {@link JacksonConfigParser}.
@@ -43,6 +52,90 @@ public class JacksonConfigParserTest {
         verifyProjectConfig(actual, expected);
     }
 
+    /**
+     * Verify that the ids and keys the datafile repeats are parsed as shared strings.
+     */
+    @Test
+    public void parseProjectConfigSharesRepeatedStrings() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJson());
+
+        verifyStringsShared(actual);
+    }
+
+    /**
+     * Verify that a datafile parsed against the config it replaces shares the config's unchanged entities.
+     */
+    @Test
+    public void parseProjectConfigAgainstPreviousConfig() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig previous = parser.parseProjectConfig(validConfigJson());
+        ProjectConfig actual = parser.parseProjectConfig(validConfigJson(), previous);
+
+        verifyProjectConfig(actual, validProjectConfig());
+        verifyEntitiesShared(actual, previous);
+    }
+
+    /**
+     * Verify that parsing the json as it's read from a stream gives the same config as parsing it from a string.
+     */
+    @Test
+    public void parseProjectConfigFromInputStream() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJson().getBytes("UTF-8")));
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that the stream a config is parsed from is left open, for the caller to close.
+     */
+    @Test
+    public void parseProjectConfigLeavesInputStreamOpen() throws Exception {
+        CloseTrackingInputStream json = new CloseTrackingInputStream(validConfigJson().getBytes("UTF-8"));
+
+        JacksonConfigParser parser = new JacksonConfigParser();
+        parser.parseProjectConfig(json);
+
+        assertFalse(json.isClosed());
+    }
+
+    /**
+     * Verify that only the remaining bytes of a buffer are parsed, and that its position is left as it was.
+     */
+    @Test
+    public void parseProjectConfigFromByteBuffer() throws Exception {
+        byte[] json = validConfigJson().getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(json.length + 2);
+        buffer.put((byte)'[').put(json).put((byte)']');
+        buffer.position(1).limit(json.length + 1);
+
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(buffer);
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+        assertThat(buffer.position(), is(1));
+    }
+
+    /**
+     * Verify that the bytes of a heap buffer are parsed in place, from the buffer's position.
+     */
+    @Test
+    public void parseProjectConfigFromHeapByteBuffer() throws Exception {
+        byte[] json = validConfigJson().getBytes("UTF-8");
+        byte[] padded = new byte[json.length + 2];
+        System.arraycopy(json, 0, padded, 1, json.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 1, json.length).slice();
+
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(buffer);
+        ProjectConfig expected = validProjectConfig();
+
+        verifyProjectConfig(actual, expected);
+    }
+
     /**
      * Verify that internal parser exceptions are wrapped and rethrown as a {@link ConfigParseException}.
      */
@@ -0,0 +1,176 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CompactStringMap}.
+ */
+public class CompactStringMapTest {
+
+    /**
+     * Verify that a small key set is laid out with a perfect hash, and that lookups of missing keys, including ones
+     * that hash to an occupied slot, return {@code null}.
+     */
+    @Test
+    public void smallMapIsPerfect() throws Exception {
+        CompactStringMap<Integer> map = CompactStringMap.<Integer>builder(3)
+            .put("control", 0)
+            .put("variation", 1)
+            .put("variation_b", 2)
+            .build();
+
+        assertTrue(map.isPerfect());
+        assertThat(map.get("control"), is(0));
+        assertThat(map.get(new String("variation")), is(1));
+        assertThat(map.get("variation_b"), is(2));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(map.get("missing" + i), nullValue());
+        }
+        assertThat(map.get(42), nullValue());
+    }
+
+    /**
+     * Verify that a large map agrees with a {@code HashMap} of the same entries, and iterates in insertion order.
+     */
+    @Test
+    public void largeMapMatchesHashMap() throws Exception {
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        List<String> keys = new ArrayList<String>();
+        CompactStringMap.Builder<Integer> builder = CompactStringMap.builder(5000);
+        for (int i = 0; i < 5000; i++) {
+            String key = String.valueOf(100000 + i * 7);
+            expected.put(key, i);
+            keys.add(key);
+            builder.put(key, i);
+        }
+        CompactStringMap<Integer> map = builder.build();
+
+        assertFalse(map.isPerfect());
+        assertThat(map.size(), is(expected.size()));
+        assertThat(map.equals(expected), is(true));
+        assertThat(expected.equals(map), is(true));
+        assertThat(map.hashCode(), is(expected.hashCode()));
+        assertThat(new ArrayList<String>(map.keySet()), is(keys));
+        for (int i = 0; i < 5000; i++) {
+            assertThat(map.get(String.valueOf(100001 + i * 7)), nullValue());
+        }
+    }
+
+    /**
+     * Verify that a key with the hash code of a key in a perfectly hashed map, and so probing that key's slot, isn't
+     * found.
+     */
+    @Test
+    public void perfectMapMissesKeyWithSameHashCode() throws Exception {
+        assertThat("Aa".hashCode(), is("BB".hashCode()));
+        CompactStringMap<Integer> map = CompactStringMap.<Integer>builder(2)
+            .put("Aa", 0)
+            .put("control", 1)
+            .build();
+
+        assertTrue(map.isPerfect());
+        assertThat(map.get("Aa"), is(0));
+        assertThat(map.get("BB"), nullValue());
+        assertFalse(map.containsKey("BB"));
+    }
+
+    /**
+     * Verify that keys with the same hash code, which no multiplier can hash to different slots, are both found in
+     * small and large maps, through open addressing, and that a third key with that hash code isn't.
+     */
+    @Test
+    public void keysWithSameHashCode() throws Exception {
+        assertThat("Aa".hashCode(), is("C#".hashCode()));
+        CompactStringMap<Integer> smallMap = CompactStringMap.<Integer>builder(3)
+            .put("Aa", 0)
+            .put("BB", 1)
+            .put("control", 2)
+            .build();
+
+        assertFalse(smallMap.isPerfect());
+        assertThat(smallMap.get("Aa"), is(0));
+        assertThat(smallMap.get("BB"), is(1));
+        assertThat(smallMap.get("C#"), nullValue());
+
+        CompactStringMap.Builder<Integer> builder = CompactStringMap.builder(1002);
+        for (int i = 0; i < 1000; i++) {
+            builder.put(String.valueOf(i), i);
+        }
+        CompactStringMap<Integer> largeMap = builder.put("Aa", -1).put("BB", -2).build();
+
+        assertFalse(largeMap.isPerfect());
+        assertThat(largeMap.get("Aa"), is(-1));
+        assertThat(largeMap.get("BB"), is(-2));
+        assertThat(largeMap.get("C#"), nullValue());
+        assertThat(largeMap.get("500"), is(500));
+    }
+
+    /**
+     * Verify that keys put again keep their position and take the later value, and that a {@code null} key is
+     * supported, as in a {@code HashMap}.
+     */
+    @Test
+    public void duplicateAndNullKeys() throws Exception {
+        CompactStringMap<String> map = CompactStringMap.<String>builder(4)
+            .put("a", "first")
+            .put(null, "null")
+            .put("b", "b")
+            .put("a", "second")
+            .build();
+
+        assertThat(map.size(), is(3));
+        assertThat(map.get("a"), is("second"));
+        assertThat(map.get(null), is("null"));
+        assertTrue(map.containsKey(null));
+        assertThat(new ArrayList<String>(map.keySet()), is(asList("a", null, "b")));
+    }
+
+    /**
+     * Verify that the empty map has no entries.
+     */
+    @Test
+    public void emptyMap() throws Exception {
+        CompactStringMap<String> map = CompactStringMap.empty();
+
+        assertThat(map.size(), is(0));
+        assertThat(map.get("a"), nullValue());
+        assertFalse(map.containsKey(null));
+        assertTrue(map.isEmpty());
+    }
+
+    /**
+     * Verify that the map can't be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void putIsUnsupported() throws Exception {
+        CompactStringMap.copyOf(new HashMap<String, String>()).put("a", "b");
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DecisionLogging} and the {@link LogGuard}s it creates.
+ */
+public class DecisionLoggingTest {
+
+    /**
+     * Verify that a {@link DecisionLogging#PER_CALL} guard looks the level up on every call.
+     */
+    @Test
+    public void perCallGuardChecksLoggerOnEveryCall() throws Exception {
+        Logger logger = mock(Logger.class);
+        when(logger.isInfoEnabled()).thenReturn(true, false);
+
+        LogGuard logGuard = DecisionLogging.PER_CALL.guard(logger);
+
+        assertTrue(logGuard.isInfoEnabled());
+        assertFalse(logGuard.isInfoEnabled());
+        verify(logger, times(2)).isInfoEnabled();
+    }
+
+    /**
+     * Verify that a {@link DecisionLogging#PER_CONFIG} guard looks the level up once, when it's created.
+     */
+    @Test
+    public void perConfigGuardChecksLoggerOnce() throws Exception {
+        Logger logger = mock(Logger.class);
+        when(logger.isDebugEnabled()).thenReturn(false);
+        when(logger.isInfoEnabled()).thenReturn(true, false);
+
+        LogGuard logGuard = DecisionLogging.PER_CONFIG.guard(logger);
+
+        assertFalse(logGuard.isDebugEnabled());
+        assertTrue(logGuard.isInfoEnabled());
+        assertTrue(logGuard.isInfoEnabled());
+        verify(logger).isDebugEnabled();
+        verify(logger).isInfoEnabled();
+    }
+
+    /**
+     * Verify that a {@link DecisionLogging#DISABLED} guard never logs and never looks the level up.
+     */
+    @Test
+    public void disabledGuardNeverLogs() throws Exception {
+        Logger logger = mock(Logger.class);
+
+        LogGuard logGuard = DecisionLogging.DISABLED.guard(logger);
+
+        assertFalse(logGuard.isDebugEnabled());
+        assertFalse(logGuard.isInfoEnabled());
+        verifyZeroInteractions(logger);
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RingBufferQueue}.
+ */
+public class RingBufferQueueTest {
+
+    /**
+     * Verify that the capacity is rounded up to a power of two, and that offers fail once it's reached.
+     */
+    @Test
+    public void offerFailsWhenFull() throws Exception {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(3);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+
+        assertFalse(queue.offer(4));
+        assertThat(queue.size(), is(4));
+        assertThat(queue.remainingCapacity(), is(0));
+        assertFalse(queue.offer(4, 10, TimeUnit.MILLISECONDS));
+
+        assertThat(queue.poll(), is(0));
+        assertTrue(queue.offer(4));
+    }
+
+    /**
+     * Verify that elements are taken in the order they were offered over several laps of the buffer.
+     */
+    @Test
+    public void pollIsFifoAcrossLaps() throws Exception {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(4);
+        for (int lap = 0; lap < 5; lap++) {
+            for (int i = 0; i < 3; i++) {
+                queue.offer(lap * 3 + i);
+            }
+            assertThat(queue.peek(), is(lap * 3));
+            List<Integer> drained = new ArrayList<Integer>();
+            assertThat(queue.drainTo(drained, 2), is(2));
+            assertThat(drained, is(asList(lap * 3, lap * 3 + 1)));
+            assertThat(queue.poll(), is(lap * 3 + 2));
+        }
+
+        assertThat(queue.poll(), nullValue());
+        assertThat(queue.peek(), nullValue());
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), nullValue());
+        assertThat(queue.size(), is(0));
+    }
+
+    /**
+     * Verify that concurrent producers and consumers pass every element through exactly once.
+     */
+    @Test
+    public void concurrentProducersAndConsumers() throws Exception {
+        final int producerCount = 4;
+        final int elementsPerProducer = 20000;
+        final RingBufferQueue<int[]> queue = new RingBufferQueue<int[]>(64);
+
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < producerCount; p++) {
+            final int producer = p;
+            producers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < elementsPerProducer; i++) {
+                            queue.put(new int[] { producer, i });
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        final int[] received = new int[producerCount];
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final CountDownLatch consumed = new CountDownLatch(producerCount * elementsPerProducer);
+        List<Thread> consumers = new ArrayList<Thread>();
+        for (int c = 0; c < 2; c++) {
+            consumers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            int[] element = queue.take();
+                            synchronized (received) {
+                                received[element[0]]++;
+                                if (received[element[0]] > elementsPerProducer) {
+                                    failure.set("producer " + element[0] + " overflowed");
+                                }
+                            }
+                            consumed.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        // done
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : consumers) {
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join(30000);
+        }
+
+        assertTrue("timed out consuming elements", consumed.await(30, TimeUnit.SECONDS));
+        for (Thread thread : consumers) {
+            thread.interrupt();
+            thread.join(5000);
+        }
+        assertThat(failure.get(), nullValue());
+        for (int p = 0; p < producerCount; p++) {
+            assertThat(received[p], is(elementsPerProducer));
+        }
+        assertThat(queue.size(), is(0));
+    }
+
+    /**
+     * Verify that a waiting consumer takes an element offered later, and that it can be interrupted.
+     */
+    @Test
+    public void takeWaitsForElements() throws Exception {
+        final RingBufferQueue<String> queue = new RingBufferQueue<String>(8);
+        final AtomicReference<Object> taken = new AtomicReference<Object>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                    taken.set(queue.take());
+                } catch (InterruptedException e) {
+                    taken.set(e);
+                }
+            }
+        };
+        consumer.start();
+
+        Thread.sleep(20);
+        queue.offer("event");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"event".equals(taken.get())) {
+            assertTrue("timed out waiting for the element to be taken", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        consumer.interrupt();
+        consumer.join(5000);
+        assertTrue(taken.get() instanceof InterruptedException);
+    }
+
+    /**
+     * Verify that an idle consumer blocks on a condition for the whole of a timed poll, rather than waking to check the
+     * queue, and that offering an element wakes it.
+     */
+    @Test
+    public void pollBlocksUntilSignalled() throws Exception {
+        final RingBufferQueue<String> queue = new RingBufferQueue<String>(8);
+        final AtomicReference<Object> polled = new AtomicReference<Object>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    polled.set(queue.poll(30, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    polled.set(e);
+                }
+            }
+        };
+        consumer.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (LockSupport.getBlocker(consumer) == null) {
+            assertTrue("timed out waiting for the consumer to block", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        Object blocker = LockSupport.getBlocker(consumer);
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(5);
+            assertThat(LockSupport.getBlocker(consumer), is(blocker));
+        }
+
+        long offered = System.nanoTime();
+        queue.offer("event");
+        consumer.join(5000);
+        assertThat(polled.get(), is((Object)"event"));
+        assertTrue(System.nanoTime() - offered < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    /**
+     * Verify that a capacity of one is rounded up to two, and that a waiting producer is woken when an element is
+     * taken.
+     */
+    @Test
+    public void putWaitsForSpace() throws Exception {
+        final RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(1);
+        assertThat(queue.remainingCapacity(), is(2));
+        queue.put(-1);
+        queue.put(0);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        producer.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (LockSupport.getBlocker(producer) == null) {
+            assertTrue("timed out waiting for the producer to block", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        assertThat(queue.take(), is(-1));
+        producer.join(5000);
+        assertThat(queue.poll(), is(0));
+        assertThat(queue.poll(), is(1));
+    }
+
+    /**
+     * Verify that the queue can be iterated, printed and searched, over a snapshot of its elements in order.
+     */
+    @Test
+    public void iterateSnapshot() throws Exception {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(4);
+        assertThat(queue.toString(), is("[]"));
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+            if (i % 2 == 0) {
+                queue.poll();
+            }
+        }
+
+        Iterator<Integer> iterator = queue.iterator();
+        queue.offer(6);
+        List<Integer> iterated = new ArrayList<Integer>();
+        while (iterator.hasNext()) {
+            iterated.add(iterator.next());
+        }
+        assertThat(iterated, is(asList(3, 4, 5)));
+
+        assertThat(queue.toString(), is("[3, 4, 5, 6]"));
+        assertTrue(queue.contains(6));
+        assertFalse(queue.contains(2));
+        assertThat(asList(queue.toArray(new Integer[0])), is(asList(3, 4, 5, 6)));
+        assertThat(queue.iterator().next(), notNullValue());
+    }
+}
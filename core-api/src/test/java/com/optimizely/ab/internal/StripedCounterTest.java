@@ -0,0 +1,82 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link StripedCounter}.
+ */
+public class StripedCounterTest {
+
+    /**
+     * Verify that the updates of every thread are summed, including threads that share a stripe, and that a
+     * thread's decrements cancel out its increments.
+     */
+    @Test
+    public void sumCountsUpdatesOfAllThreads() throws Exception {
+        final StripedCounter counter = new StripedCounter(2);
+        counter.add(5);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 5; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        counter.increment();
+                    }
+                    for (int i = 0; i < 5000; i++) {
+                        counter.decrement();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counter.sum(), is(5L + 5 * 5000));
+    }
+
+    /**
+     * Verify that a count added on one thread and taken away on another sums to zero.
+     */
+    @Test
+    public void sumCountsUpdatesAcrossStripes() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        counter.add(3);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                counter.add(-3);
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertThat(counter.sum(), is(0L));
+    }
+}
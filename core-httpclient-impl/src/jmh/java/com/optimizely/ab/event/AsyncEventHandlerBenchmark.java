@@ -0,0 +1,133 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.event.LogEvent.RequestMethod;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of producer threads dispatching events to an {@link AsyncEventHandler}, which batches them to a
+ * local stand-in for the event endpoint.
+ * <p>
+ * Each benchmark dispatches from a different number of threads, as with request threads calling {@code activate}
+ * and {@code track}, so that what producers contend on in the handler, rather than in the queue alone, is measured.
+ * The producers outpace the workers, so most events are dropped once the queue is full, as they are in production
+ * when the endpoint can't keep up.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class AsyncEventHandlerBenchmark {
+
+    private HttpServer server;
+    private AsyncEventHandler eventHandler;
+    private LogEvent event;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream body = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) != -1) {
+                    // discard the events
+                }
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        eventHandler = AsyncEventHandler.builder()
+            .withQueueCapacity(8192)
+            .withNumWorkers(2)
+            .withMaxBatchSize(100)
+            .build();
+
+        // an impression event with the params of a project with a few attributes
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("a", "1234");
+        params.put("n", "visitor-event");
+        params.put("u", "user-12345678");
+        params.put("x4", "5678");
+        params.put("d", "789");
+        params.put("time", "1466025000000");
+        params.put("g", "4567");
+        params.put("s1234", "firefox");
+        params.put("s5678", "mobile");
+        event = new LogEvent(RequestMethod.GET, "http://127.0.0.1:" + server.getAddress().getPort() + "/event",
+                             params, "");
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        eventHandler.close(1, TimeUnit.SECONDS);
+        server.stop(0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void dispatch1Producer() {
+        eventHandler.dispatchEvent(event);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void dispatch8Producers() {
+        eventHandler.dispatchEvent(event);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void dispatch32Producers() {
+        eventHandler.dispatchEvent(event);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void dispatch64Producers() {
+        eventHandler.dispatchEvent(event);
+    }
+}
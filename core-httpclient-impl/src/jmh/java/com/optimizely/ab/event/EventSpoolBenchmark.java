@@ -0,0 +1,137 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.event.LogEvent.RequestMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of appending events to an {@link EventSpool}, as the event handler does for every dispatched event
+ * when spooling.
+ * <p>
+ * With {@code group-commit}, a background thread flushes the spool every 100ms, as the event handler does by
+ * default. With {@code force-per-event}, every append is followed by a flush, which is what making each event durable
+ * on its own would cost. Each event is acknowledged as soon as it's appended, so that filled segments are deleted.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class EventSpoolBenchmark {
+
+    @Param({"group-commit", "force-per-event"})
+    private String flushMode;
+
+    private File directory;
+    private EventSpool spool;
+    private ScheduledExecutorService flushExecutor;
+    private boolean forcePerEvent;
+    private LogEvent event;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = File.createTempFile("event-spool-benchmark", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("unable to create " + directory);
+        }
+        spool = EventSpool.open(directory, EventSpool.DEFAULT_SEGMENT_SIZE);
+
+        forcePerEvent = flushMode.equals("force-per-event");
+        if (!forcePerEvent) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor();
+            flushExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        spool.flush();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, 100, 100, TimeUnit.MILLISECONDS);
+        }
+
+        // an impression event with the params of a project with a few attributes
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("a", "1234");
+        params.put("n", "visitor-event");
+        params.put("u", "user-12345678");
+        params.put("x4", "5678");
+        params.put("d", "789");
+        params.put("time", "1466025000000");
+        params.put("g", "4567");
+        params.put("s1234", "firefox");
+        params.put("s5678", "mobile");
+        event = new LogEvent(RequestMethod.GET, "https://1234.log.optimizely.com/event", params, "");
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        spool.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1Thread() throws IOException {
+        append();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void append8Threads() throws IOException {
+        append();
+    }
+
+    private void append() throws IOException {
+        EventSpool.SpooledLogEvent spooledEvent = spool.append(event);
+        if (forcePerEvent) {
+            spool.flush();
+        }
+        spooledEvent.acknowledge();
+    }
+}
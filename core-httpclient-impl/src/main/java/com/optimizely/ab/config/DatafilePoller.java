@@ -0,0 +1,251 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.HttpClientUtils;
+import com.optimizely.ab.NamedThreadFactory;
+import com.optimizely.ab.ProjectConfigManager;
+import com.optimizely.ab.annotations.VisibleForTesting;
+import com.optimizely.ab.config.parser.ConfigParseException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps a {@link ProjectConfigManager} up to date by polling a datafile url in the background.
+ * <p>
+ * Polls are conditional GETs that send the {@code ETag} and {@code Last-Modified} validators of the last datafile
+ * received, so an unchanged datafile costs a {@code 304} response and isn't parsed. Datafiles that are parsed only
+ * replace the current config if their revision differs from it.
+ * <p>
+ * Failed polls are retried with exponential backoff, from the polling interval up to
+ * {@value #MAX_BACKOFF_MULTIPLIER} times it. Each delay is jittered, so that clients that fail together don't all
+ * retry together.
+ */
+@ThreadSafe
+public class DatafilePoller implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatafilePoller.class);
+
+    /**
+     * The multiple of the polling interval that the delay after failed polls is capped at.
+     */
+    static final int MAX_BACKOFF_MULTIPLIER = 16;
+
+    private final String datafileUrl;
+    private final ProjectConfigManager configManager;
+    private final long pollingIntervalMillis;
+    private final Random random;
+
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService pollExecutor;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // the validators of the last datafile received
+    @GuardedBy("this") private String etag;
+    @GuardedBy("this") private String lastModified;
+
+    /**
+     * @param datafileUrl the url the datafile is served from
+     * @param configManager the manager to update, as given by
+     *                      {@link com.optimizely.ab.Optimizely#getProjectConfigManager()}
+     * @param pollingInterval the interval between successful polls
+     * @param timeUnit the unit of the polling interval
+     */
+    public DatafilePoller(@Nonnull String datafileUrl,
+                          @Nonnull ProjectConfigManager configManager,
+                          long pollingInterval,
+                          @Nonnull TimeUnit timeUnit) {
+        this(datafileUrl, configManager, timeUnit.toMillis(pollingInterval), new Random());
+    }
+
+    DatafilePoller(@Nonnull String datafileUrl,
+                   @Nonnull ProjectConfigManager configManager,
+                   long pollingIntervalMillis,
+                   @Nonnull Random random) {
+        if (pollingIntervalMillis <= 0) {
+            throw new IllegalArgumentException("polling interval must be > 0");
+        }
+
+        this.datafileUrl = datafileUrl;
+        this.configManager = configManager;
+        this.pollingIntervalMillis = pollingIntervalMillis;
+        this.random = random;
+
+        this.httpClient = HttpClients.custom()
+            .setDefaultRequestConfig(HttpClientUtils.DEFAULT_REQUEST_CONFIG)
+            .disableCookieManagement()
+            .build();
+
+        this.pollExecutor = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("optimizely-datafile-poller-thread-%s", true));
+    }
+
+    /**
+     * Starts polling in the background, beginning with an immediate poll.
+     *
+     * @throws IllegalStateException if the poller was already started
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("datafile poller is already started");
+        }
+
+        pollExecutor.execute(new PollTask());
+    }
+
+    /**
+     * Polls the datafile url once, on the calling thread.
+     *
+     * @return whether the config was replaced
+     * @throws IOException when the datafile can't be fetched
+     * @throws ConfigParseException when the datafile can't be read or parsed
+     */
+    public synchronized boolean poll() throws IOException, ConfigParseException {
+        HttpGet request = new HttpGet(datafileUrl);
+        if (etag != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        CloseableHttpResponse response = httpClient.execute(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                logger.debug("Datafile at {} is not modified.", datafileUrl);
+                return false;
+            }
+
+            HttpEntity entity = response.getEntity();
+            if (status < 200 || status >= 300 || entity == null) {
+                throw new ClientProtocolException("unexpected response from datafile endpoint, status: " + status);
+            }
+
+            // parse the datafile as it's received, rather than buffering the whole of it first
+            boolean updated;
+            InputStream content = entity.getContent();
+            try {
+                updated = configManager.update(content);
+            } finally {
+                content.close();
+            }
+
+            // only keep the validators of datafiles that parsed, so that a bad datafile is fetched again
+            etag = getHeader(response, HttpHeaders.ETAG);
+            lastModified = getHeader(response, HttpHeaders.LAST_MODIFIED);
+            return updated;
+        } finally {
+            response.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        logger.info("closing datafile poller");
+
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.error("unable to close the datafile poller httpclient cleanly", e);
+        } finally {
+            pollExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param consecutiveFailures the number of polls that have failed in a row
+     * @return the delay before the next poll
+     */
+    @VisibleForTesting
+    long getDelayMillis(int consecutiveFailures) {
+        if (consecutiveFailures == 0) {
+            return pollingIntervalMillis;
+        }
+
+        long backoff = pollingIntervalMillis * MAX_BACKOFF_MULTIPLIER;
+        if (consecutiveFailures <= Integer.numberOfTrailingZeros(MAX_BACKOFF_MULTIPLIER)) {
+            backoff = pollingIntervalMillis << consecutiveFailures;
+        }
+
+        // wait at least half the backoff, and a random part of the rest
+        long halfBackoff = backoff / 2;
+        return halfBackoff + (long)(random.nextDouble() * (backoff - halfBackoff));
+    }
+
+    //======== Helper methods ========//
+
+    private static @CheckForNull String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+
+        return header != null ? header.getValue() : null;
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * Polls once, then schedules the next poll. Only runs on the poll executor's single thread.
+     */
+    private final class PollTask implements Runnable {
+
+        private int consecutiveFailures;
+
+        @Override
+        public void run() {
+            try {
+                poll();
+                consecutiveFailures = 0;
+            } catch (Exception e) {
+                consecutiveFailures++;
+                logger.warn("Unable to poll the datafile at {} ({} failures in a row).", datafileUrl,
+                            consecutiveFailures, e);
+            }
+
+            try {
+                pollExecutor.schedule(this, getDelayMillis(consecutiveFailures), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.info("terminating datafile poller");
+            }
+        }
+    }
+}
@@ -18,106 +18,924 @@ package com.optimizely.ab.event;
 
 import com.optimizely.ab.HttpClientUtils;
 import com.optimizely.ab.NamedThreadFactory;
+import com.optimizely.ab.annotations.VisibleForTesting;
+import com.optimizely.ab.event.EventSpool.SpooledLogEvent;
+import com.optimizely.ab.internal.RingBufferQueue;
+import com.optimizely.ab.internal.StripedCounter;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 
 /**
  * {@link EventHandler} implementation that queues events and has a separate pool of threads responsible
  * for the dispatch.
+ * <p>
+ * Events are queued in a {@link RingBufferQueue}, and the threads dispatching them are counted, so that closing can
+ * account for their events, in a {@link StripedCounter}, so they don't contend on a lock or a counter with each
+ * other or with the workers. What happens to events dispatched while the queue is full is set by the
+ * {@link OverflowPolicy}, which by default drops them. Dropped events are counted, and logged at most every
+ * {@value #DROP_LOG_INTERVAL_SECONDS} seconds.
+ * <p>
+ * By default each event is sent as its own GET request. When batching is enabled through {@link #builder()}, each
+ * worker instead drains up to a batch of events from the queue, waiting up to the linger time for a batch to fill,
+ * and sends the GET events of a batch as one POST to their endpoint. The POST body is a json array holding the
+ * request params of each event as an object of strings, in the order the events were dispatched.
+ * <p>
+ * When a spool directory is set, every dispatched event is also appended to an {@link EventSpool} of memory-mapped
+ * segment files, which is forced to disk every flush interval, and each event is acknowledged in the spool once it's
+ * been sent. Spooled events that fail to send are queued again, for up to {@value #MAX_SPOOLED_SEND_ATTEMPTS}
+ * attempts. Segments are deleted once all their events have been acknowledged, and the events that weren't, because
+ * they were dropped, failed to send or were still queued, are replayed by the next handler spooling to the directory,
+ * so they're sent at least once, unless they've been replayed by {@value EventSpool#MAX_RECOVERIES} handlers already,
+ * or the spool reaches its maximum size and evicts their segment first, which counts them as dropped.
+ * <p>
+ * {@link #close()} stops taking events and stops the workers without waiting for them, dropping the events that are
+ * queued. {@link #close(long, TimeUnit)} instead gives the workers until a deadline to send the events already
+ * queued, without waiting for batches to fill, and reports how many were sent, how many were dropped, and how many
+ * were left in the spool to be replayed.
  */
 public class AsyncEventHandler implements EventHandler, Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(AsyncEventHandler.class);
     private static final ProjectConfigResponseHandler EVENT_RESPONSE_HANDLER = new ProjectConfigResponseHandler();
 
+    static final long DROP_LOG_INTERVAL_SECONDS = 10;
+    private static final long DROP_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(DROP_LOG_INTERVAL_SECONDS);
+
+    // the most times a spooled event is sent before it's left in the spool for the next handler to replay
+    static final int MAX_SPOOLED_SEND_ATTEMPTS = 3;
+
+    // how long an idle worker waits on the queue before checking the spill file, and whether the handler is closed
+    private static final long IDLE_CHECK_INTERVAL_MILLIS = 100;
+    // how long workers that are stopped at the close deadline have to record the events they didn't send
+    private static final long WORKER_STOP_TIMEOUT_MILLIS = 1000;
+
     private final CloseableHttpClient httpClient;
     private final ExecutorService workerExecutor;
     private final BlockingQueue<LogEvent> logEventQueue;
 
+    private final int maxBatchSize;
+    private final long lingerNanos;
+
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    @Nullable private final EventSpillFile spillFile;
+
+    @Nullable private final EventSpool spool;
+    @Nullable private final ScheduledExecutorService spoolExecutor;
+    private final AtomicLong nextSpoolErrorLogNanos = new AtomicLong(System.nanoTime());
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // whether the close deadline has passed, and the workers should stop taking events
+    private volatile boolean stopped;
+    // the workers that haven't exited, and the threads queueing events, which the events left once the handler is
+    // closed are counted after. Striped, as every dispatching thread updates it, and it's only summed once closed
+    private final StripedCounter activeCount = new StripedCounter();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final CountDownLatch releasedLatch = new CountDownLatch(1);
+
+    private final AtomicLong sentEventCount = new AtomicLong();
+    // the events taken from the queue that weren't spooled, and failed to send or were left unsent when the workers
+    // were stopped
+    private final AtomicLong failedEventCount = new AtomicLong();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    // the spooled events that failed to send or were left unsent, which the next handler replays
+    private final AtomicLong spooledEventCount = new AtomicLong();
+    // the time after which the next drop is logged, and the drop count when the last one was
+    private final AtomicLong nextDropLogNanos = new AtomicLong(System.nanoTime());
+    private volatile long loggedDroppedEventCount;
+
     public AsyncEventHandler(int queueCapacity, int numWorkers) {
+        this(queueCapacity, numWorkers, 1, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param queueCapacity the number of events that can be queued for dispatch, rounded up to a power of two
+     * @param numWorkers the number of threads dispatching events, and so the number of concurrent requests
+     * @param maxBatchSize the most events sent in one request, or {@code 1} to send each event on its own
+     * @param lingerTime how long a worker waits for a partial batch to fill before sending it
+     * @param lingerTimeUnit the unit of the linger time
+     */
+    public AsyncEventHandler(int queueCapacity, int numWorkers, int maxBatchSize, long lingerTime,
+                             @Nonnull TimeUnit lingerTimeUnit) {
+        this(new Builder()
+                 .withQueueCapacity(queueCapacity)
+                 .withNumWorkers(numWorkers)
+                 .withMaxBatchSize(maxBatchSize)
+                 .withLinger(lingerTime, lingerTimeUnit));
+    }
+
+    private AsyncEventHandler(Builder builder) {
+        int queueCapacity = builder.queueCapacity;
+        int numWorkers = builder.numWorkers;
         if (queueCapacity <= 0) {
             throw new IllegalArgumentException("queue capacity must be > 0");
         }
+        if (numWorkers <= 0) {
+            throw new IllegalArgumentException("number of workers must be > 0");
+        }
+        int maxBatchSize = builder.maxBatchSize;
+        long lingerTime = builder.lingerTime;
+        TimeUnit lingerTimeUnit = builder.lingerTimeUnit;
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("max batch size must be > 0");
+        }
+        if (lingerTime < 0) {
+            throw new IllegalArgumentException("linger time must be >= 0");
+        }
+        if (builder.overflowPolicy == OverflowPolicy.SPILL_TO_DISK && builder.spillDirectory == null) {
+            throw new IllegalArgumentException("spill directory must be set to spill events to disk");
+        }
+        if (builder.overflowPolicy == OverflowPolicy.SPILL_TO_DISK && builder.spoolDirectory != null) {
+            throw new IllegalArgumentException("events can't be spilled to disk when they're spooled");
+        }
+        if (builder.spillFileMaxSize <= 0) {
+            throw new IllegalArgumentException("spill file max size must be > 0");
+        }
+        if (builder.spoolFlushInterval <= 0) {
+            throw new IllegalArgumentException("spool flush interval must be > 0");
+        }
+
+        this.logEventQueue = new RingBufferQueue<LogEvent>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = lingerTimeUnit.toNanos(lingerTime);
+        this.overflowPolicy = builder.overflowPolicy;
+        this.blockTimeoutNanos = builder.blockTimeoutUnit.toNanos(builder.blockTimeout);
+        this.spillFile = (overflowPolicy == OverflowPolicy.SPILL_TO_DISK)
+                         ? new EventSpillFile(builder.spillDirectory, builder.spillFileMaxSize) : null;
+
+        if (builder.spoolDirectory != null) {
+            try {
+                this.spool = EventSpool.open(builder.spoolDirectory, builder.spoolSegmentSize, builder.spoolMaxSize);
+            } catch (IOException e) {
+                throw new IllegalStateException("unable to open the event spool in " + builder.spoolDirectory, e);
+            }
+        } else {
+            this.spool = null;
+        }
 
-        this.logEventQueue = new ArrayBlockingQueue<LogEvent>(queueCapacity);
+        // allow a connection per worker, as the default of 2 per route would serialize workers sending to one host
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Math.max(numWorkers, connectionManager.getMaxTotal()));
+        connectionManager.setDefaultMaxPerRoute(numWorkers);
         this.httpClient = HttpClients.custom()
             .setDefaultRequestConfig(HttpClientUtils.DEFAULT_REQUEST_CONFIG)
+            .setConnectionManager(connectionManager)
             .disableCookieManagement()
             .build();
 
         this.workerExecutor = Executors.newFixedThreadPool(
             numWorkers, new NamedThreadFactory("optimizely-event-dispatcher-thread-%s", true));
 
-        // create dispatch workers
+        // create dispatch workers, which are counted as active until they exit
+        activeCount.add(numWorkers);
         for (int i = 0; i < numWorkers; i++) {
             EventDispatchWorker worker = new EventDispatchWorker();
             workerExecutor.submit(worker);
         }
+
+        if (spool != null) {
+            // one thread replays the spooled events, which may block on a full queue, and one flushes the spool
+            this.spoolExecutor = Executors.newScheduledThreadPool(
+                2, new NamedThreadFactory("optimizely-event-spool-thread-%s", true));
+            spoolExecutor.execute(new SpoolReplayTask());
+            long flushIntervalNanos = builder.spoolFlushIntervalUnit.toNanos(builder.spoolFlushInterval);
+            spoolExecutor.scheduleWithFixedDelay(new SpoolFlushTask(), flushIntervalNanos, flushIntervalNanos,
+                                                 TimeUnit.NANOSECONDS);
+        } else {
+            this.spoolExecutor = null;
+        }
+    }
+
+    /**
+     * @return a builder of an event handler, which by default sends each event on its own
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Override
     public void dispatchEvent(LogEvent logEvent) {
-        // attempt to enqueue the log event for processing
-        boolean submitted = logEventQueue.offer(logEvent);
-        if (!submitted) {
-            logger.error("unable to enqueue event because queue is full");
+        if (!enter()) {
+            recordDroppedEvent(logEvent);
+            return;
+        }
+
+        try {
+            queueEvent(logEvent);
+        } finally {
+            leave();
         }
     }
 
+    private void queueEvent(LogEvent logEvent) {
+        if (spool != null) {
+            try {
+                logEvent = spool.append(logEvent);
+            } catch (IOException e) {
+                if (isLogDue(nextSpoolErrorLogNanos)) {
+                    logger.error("unable to write event to the spool, so it won't be replayed if it isn't sent", e);
+                }
+            }
+        }
+
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                if (!logEventQueue.offer(logEvent)) {
+                    recordDroppedEvent(logEvent);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!logEventQueue.offer(logEvent)) {
+                    LogEvent oldestEvent = logEventQueue.poll();
+                    if (oldestEvent != null) {
+                        recordDroppedEvent(oldestEvent);
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!logEventQueue.offer(logEvent, blockTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                        recordDroppedEvent(logEvent);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    recordDroppedEvent(logEvent);
+                }
+                break;
+            case SPILL_TO_DISK:
+                // keep spilling while there are spilled events, so that events are dispatched in order
+                if (spillFile.size() > 0 || !logEventQueue.offer(logEvent)) {
+                    try {
+                        // once the spill file is full, fall back to dropping the event unless the queue has room
+                        if (!spillFile.append(logEvent) && !logEventQueue.offer(logEvent)) {
+                            recordDroppedEvent(logEvent);
+                        }
+                    } catch (IOException e) {
+                        logger.debug("unable to spill event to disk", e);
+                        recordDroppedEvent(logEvent);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the number of events that were dropped because the queue was full, or the handler was closed, or that
+     * were spilled to disk and couldn't be read back, or with a spool, that were evicted from it or had been replayed
+     * by too many handlers
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get() + (spool != null ? spool.getDroppedEventCount() : 0);
+    }
+
+    /**
+     * Stops taking events, and stops the workers without waiting for them, which aborts the requests in flight. The
+     * events that are queued are dropped, or with a spool, kept to be replayed by the next handler spooling to its
+     * directory. Closing a handler again does nothing.
+     *
+     * @see #close(long, TimeUnit)
+     */
     @Override
     public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        logger.info("closing event dispatcher");
+
+        stop();
+        workerExecutor.shutdownNow();
+    }
+
+    /**
+     * Stops taking events, and sends the queued and spilled events until they're all sent or the timeout has passed.
+     * The workers are then stopped, and the events they haven't sent are dropped, or with a spool, kept to be replayed
+     * by the next handler spooling to its directory.
+     * <p>
+     * Events dispatched once the handler is closing are dropped. Closing a handler again does nothing.
+     *
+     * @param timeout the longest to wait for the queued events to be sent
+     * @param timeUnit the unit of the timeout
+     * @return the number of events that were sent while the handler was closing, the number that were dropped or
+     * failed to send, and the number that were left in the spool
+     */
+    public CloseResult close(long timeout, @Nonnull TimeUnit timeUnit) {
+        if (!closed.compareAndSet(false, true)) {
+            return new CloseResult(0, 0, 0);
+        }
         logger.info("closing event dispatcher");
 
-        // "close" all workers and the http client
+        long sentCount = sentEventCount.get();
+        long unsentCount = failedEventCount.get() + getDroppedEventCount();
+        long spooledCount = spooledEventCount.get();
+        if (spoolExecutor != null) {
+            // stop replaying, leaving the events that weren't replayed in the spool
+            spoolExecutor.shutdownNow();
+        }
+
+        // the workers send the events left, without lingering, and then stop
+        workerExecutor.shutdown();
+        try {
+            if (!workerExecutor.awaitTermination(timeout, timeUnit)) {
+                logger.warn("unable to send the queued events within {}ms", timeUnit.toMillis(timeout));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        stop();
+        workerExecutor.shutdownNow();
+        try {
+            // the events left are counted once the workers have exited, and the threads queueing events are done
+            if (!releasedLatch.await(WORKER_STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("event dispatch workers didn't stop within {}ms", WORKER_STOP_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        CloseResult result = new CloseResult(sentEventCount.get() - sentCount,
+                                             failedEventCount.get() + getDroppedEventCount() - unsentCount,
+                                             spooledEventCount.get() - spooledCount);
+        logger.info("closed event dispatcher, sent {}, dropped {} and left {} in the spool while closing",
+                    result.getSentEventCount(), result.getDroppedEventCount(), result.getSpooledEventCount());
+        return result;
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * @param nextLogNanos the time after which the next message may be logged, which is advanced by the log
+     *                     interval if it's passed
+     * @return whether a message may be logged, which is at most once per log interval
+     */
+    private static boolean isLogDue(AtomicLong nextLogNanos) {
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        return now - next >= 0 && nextLogNanos.compareAndSet(next, now + DROP_LOG_INTERVAL_NANOS);
+    }
+
+    /**
+     * Stops the workers taking events, stops replaying spooled events, and closes the http client, which aborts the
+     * requests in flight.
+     */
+    private void stop() {
+        stopped = true;
+        if (spoolExecutor != null) {
+            spoolExecutor.shutdownNow();
+        }
         try {
             httpClient.close();
         } catch (IOException e) {
             logger.error("unable to close the event handler httpclient cleanly", e);
-        } finally {
-            workerExecutor.shutdownNow();
         }
     }
 
+    /**
+     * Counts the calling thread in as queueing events, unless the handler is closed.
+     *
+     * @return whether the handler is open, and the thread was counted in, in which case it has to {@link #leave()}
+     */
+    private boolean enter() {
+        activeCount.increment();
+        if (closed.get()) {
+            leave();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Counts a worker, or a thread that was queueing events, out, and if that was the last of them once the handler
+     * is closed, releases what's left.
+     * <p>
+     * The workers only exit once the handler is closed, so the thread whose leaving brings the count to zero sees
+     * that it's closed, and sums every other thread's leaving. Other threads may also see the count at zero, which
+     * {@link #release()} allows for.
+     */
+    private void leave() {
+        activeCount.decrement();
+        if (closed.get() && activeCount.sum() == 0) {
+            release();
+        }
+    }
+
+    /**
+     * Counts the events left in the queue and the spill file, which are dropped, or with a spool, left in it, and
+     * closes the spill file and the spool.
+     */
+    private void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+
+        long droppedCount = 0;
+        long spooledCount = 0;
+        LogEvent event;
+        while ((event = logEventQueue.poll()) != null) {
+            if (event instanceof SpooledLogEvent) {
+                spooledCount++;
+            } else {
+                droppedCount++;
+            }
+        }
+        if (spillFile != null) {
+            droppedCount += spillFile.size();
+            closeQuietly(spillFile);
+        }
+        if (spool != null) {
+            closeQuietly(spool);
+        }
+        droppedEventCount.addAndGet(droppedCount);
+        spooledEventCount.addAndGet(spooledCount);
+        releasedLatch.countDown();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.error("unable to close {} cleanly", closeable, e);
+        }
+    }
+
+    /**
+     * Acknowledges a spooled event that's been sent, so that it isn't replayed and its segment can be deleted.
+     */
+    private static void acknowledge(LogEvent event) {
+        if (event instanceof SpooledLogEvent) {
+            ((SpooledLogEvent)event).acknowledge();
+        }
+    }
+
+    /**
+     * Counts a dropped event, and logs the events dropped since the last time this did, if that was long enough ago.
+     */
+    private void recordDroppedEvent(LogEvent event) {
+        // a dropped spooled event is left unacknowledged, so that the next handler replays it
+        recordDroppedEvents(1);
+    }
+
+    private void recordDroppedEvents(int count) {
+        long droppedCount = droppedEventCount.addAndGet(count);
+        if (isLogDue(nextDropLogNanos)) {
+            long loggedCount = loggedDroppedEventCount;
+            loggedDroppedEventCount = droppedCount;
+            logger.error("dropped {} events because the event queue is full or closed, or the spill file is full or "
+                         + "unreadable ({} in total)", droppedCount - loggedCount, droppedCount);
+        }
+    }
+
+    /**
+     * Writes the request params of the given events as a json array of objects.
+     */
+    @VisibleForTesting
+    static String generateBatchPayload(List<LogEvent> events) {
+        StringBuilder payload = new StringBuilder(events.size() * 256);
+        payload.append('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                payload.append(',');
+            }
+            payload.append('{');
+            Iterator<Map.Entry<String, String>> params = events.get(i).getRequestParams().entrySet().iterator();
+            while (params.hasNext()) {
+                Map.Entry<String, String> param = params.next();
+                appendJsonString(payload, param.getKey());
+                payload.append(':');
+                appendJsonString(payload, param.getValue());
+                if (params.hasNext()) {
+                    payload.append(',');
+                }
+            }
+            payload.append('}');
+        }
+
+        return payload.append(']').toString();
+    }
+
+    private static void appendJsonString(StringBuilder json, @CheckForNull String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
     //======== Helper classes ========//
 
+    /**
+     * Builds an {@link AsyncEventHandler}.
+     */
+    public static class Builder {
+
+        private int queueCapacity = 10000;
+        private int numWorkers = 2;
+        private int maxBatchSize = 1;
+        private long lingerTime;
+        private TimeUnit lingerTimeUnit = TimeUnit.MILLISECONDS;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        private long blockTimeout = 100;
+        private TimeUnit blockTimeoutUnit = TimeUnit.MILLISECONDS;
+        private File spillDirectory;
+        private long spillFileMaxSize = EventSpillFile.DEFAULT_MAX_SIZE;
+        private File spoolDirectory;
+        private int spoolSegmentSize = EventSpool.DEFAULT_SEGMENT_SIZE;
+        private long spoolMaxSize = EventSpool.DEFAULT_MAX_SIZE;
+        private long spoolFlushInterval = 100;
+        private TimeUnit spoolFlushIntervalUnit = TimeUnit.MILLISECONDS;
+
+        public Builder() { }
+
+        /**
+         * Sets the number of events that can be queued for dispatch, which is rounded up to a power of two. Defaults
+         * to 10000.
+         */
+        public Builder withQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads dispatching events, which is the most requests that are sent concurrently.
+         * Defaults to 2.
+         */
+        public Builder withNumWorkers(int numWorkers) {
+            this.numWorkers = numWorkers;
+            return this;
+        }
+
+        /**
+         * Sends up to the given number of events in one POST request. Defaults to 1, which sends each event as its
+         * own GET request.
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets how long a worker waits for more events to fill a partial batch, counted from the first event of the
+         * batch. Defaults to 0, which sends whatever events are queued right away.
+         */
+        public Builder withLinger(long lingerTime, @Nonnull TimeUnit lingerTimeUnit) {
+            this.lingerTime = lingerTime;
+            this.lingerTimeUnit = lingerTimeUnit;
+            return this;
+        }
+
+        /**
+         * Sets what happens to events dispatched while the queue is full. Defaults to
+         * {@link OverflowPolicy#DROP_NEWEST}.
+         */
+        public Builder withOverflowPolicy(@Nonnull OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the longest {@link OverflowPolicy#BLOCK} blocks a thread dispatching an event for. Defaults to 100ms.
+         */
+        public Builder withBlockTimeout(long blockTimeout, @Nonnull TimeUnit blockTimeoutUnit) {
+            this.blockTimeout = blockTimeout;
+            this.blockTimeoutUnit = blockTimeoutUnit;
+            return this;
+        }
+
+        /**
+         * Sets the directory {@link OverflowPolicy#SPILL_TO_DISK} spills events to, which it requires.
+         */
+        public Builder withSpillDirectory(@Nonnull File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the largest the {@link OverflowPolicy#SPILL_TO_DISK} spill file grows to, in bytes. Defaults to 64MB.
+         */
+        public Builder withSpillFileMaxSize(long spillFileMaxSize) {
+            this.spillFileMaxSize = spillFileMaxSize;
+            return this;
+        }
+
+        /**
+         * Spools events to segment files in the given directory, replaying the events of segments left in it by an
+         * earlier handler. Only one handler at a time can spool to a directory, so building a handler fails while
+         * another, in this process or another one, has the directory open. Can't be combined with
+         * {@link OverflowPolicy#SPILL_TO_DISK}.
+         */
+        public Builder withSpool(@Nonnull File spoolDirectory) {
+            this.spoolDirectory = spoolDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the size of each spool segment file, which is the largest a spooled event can be. Defaults to 16MB.
+         */
+        public Builder withSpoolSegmentSize(int spoolSegmentSize) {
+            this.spoolSegmentSize = spoolSegmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the largest the spool segment files grow to in total, in bytes, which is at least one segment. Once
+         * it's reached, the oldest segments are evicted, dropping the events in them that weren't sent. Defaults to
+         * 64MB.
+         */
+        public Builder withSpoolMaxSize(long spoolMaxSize) {
+            this.spoolMaxSize = spoolMaxSize;
+            return this;
+        }
+
+        /**
+         * Sets how often spooled events are forced to disk, which bounds the events lost if the machine, rather than
+         * the process, fails. Defaults to 100ms.
+         */
+        public Builder withSpoolFlushInterval(long spoolFlushInterval, @Nonnull TimeUnit spoolFlushIntervalUnit) {
+            this.spoolFlushInterval = spoolFlushInterval;
+            this.spoolFlushIntervalUnit = spoolFlushIntervalUnit;
+            return this;
+        }
+
+        public AsyncEventHandler build() {
+            return new AsyncEventHandler(this);
+        }
+    }
+
+    /**
+     * What happens to an event that's dispatched while the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Drops the event.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drops the longest queued event to make room for the event.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Blocks the dispatching thread until there's room for the event, and drops it if there's still no room
+         * after the block timeout.
+         */
+        BLOCK,
+
+        /**
+         * Appends the event to a file in the spill directory, which workers read events back from once they've
+         * emptied the queue. Later events are spilled too until the file is empty, so that events are dispatched in
+         * order. Once the file reaches its maximum size, events are queued if there's room and dropped if not, as with
+         * {@link #DROP_NEWEST}. Events are also dropped if they can't be written, or read back.
+         */
+        SPILL_TO_DISK
+    }
+
     private class EventDispatchWorker implements Runnable {
 
+        // the events taken, and those of them sent, since the worker last took an event
+        private final List<LogEvent> batch = new ArrayList<LogEvent>(maxBatchSize);
+        private final Set<LogEvent> sentEvents = Collections.newSetFromMap(new IdentityHashMap<LogEvent, Boolean>());
+
         @Override
         public void run() {
-            boolean terminate = false;
-
             logger.info("starting event dispatch worker");
-            // event loop that'll block waiting for events to appear in the queue
-            //noinspection InfiniteLoopStatement
+            try {
+                runEventLoop();
+            } finally {
+                leave();
+            }
+        }
+
+        /**
+         * Event loop that'll block waiting for events to appear in the queue, until the handler is closed and they've
+         * all been taken.
+         */
+        private void runEventLoop() {
+            boolean terminate = false;
             while (!terminate) {
                 try {
-                    LogEvent event = logEventQueue.take();
-                    HttpGet request = generateRequest(event);
-                    httpClient.execute(request, EVENT_RESPONSE_HANDLER);
+                    LogEvent event = takeEvent();
+                    if (event == null) {
+                        logger.info("event dispatcher event loop is done");
+                        terminate = true;
+                    } else if (maxBatchSize == 1) {
+                        batch.add(event);
+                        httpClient.execute(generateRequest(event), EVENT_RESPONSE_HANDLER);
+                        recordSentEvent(event);
+                    } else {
+                        batch.add(event);
+                        fillBatch();
+                        dispatchBatch();
+                    }
                 } catch (InterruptedException e) {
                     logger.info("terminating event dispatcher event loop");
                     terminate = true;
                 } catch (Throwable t) {
-                    logger.error("event dispatcher threw exception but will continue", t);
+                    if (stopped) {
+                        // the http client was closed under the request, and the events left unsent are counted below
+                        logger.debug("event dispatcher was stopped while sending events: {}", t.toString());
+                        terminate = true;
+                    } else {
+                        logger.error("event dispatcher threw exception but will continue", t);
+                    }
+                } finally {
+                    recordUnsentEvents();
+                    batch.clear();
+                    sentEvents.clear();
+                }
+            }
+        }
+
+        /**
+         * Takes the next queued event, or if the queue is empty, the next spilled event.
+         *
+         * @return the event, or {@code null} once the handler is closed and there are no more events, or the close
+         * deadline has passed
+         */
+        private @CheckForNull LogEvent takeEvent() throws InterruptedException {
+            while (!stopped) {
+                LogEvent event = logEventQueue.poll();
+                if (event == null && spillFile != null) {
+                    event = pollSpillFile();
+                }
+                if (event == null) {
+                    if (closed.get()) {
+                        return null;
+                    }
+                    event = logEventQueue.poll(IDLE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (event != null) {
+                    return event;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @return the next spilled event, or {@code null} if there are none, or they can't be read and are dropped
+         */
+        private @CheckForNull LogEvent pollSpillFile() {
+            try {
+                return spillFile.poll();
+            } catch (EventSpillFile.UnreadableEventsException e) {
+                logger.error("unable to read spilled events", e);
+                recordDroppedEvents(e.getDiscardedEventCount());
+                return null;
+            }
+        }
+
+        private void recordSentEvent(LogEvent event) {
+            acknowledge(event);
+            sentEventCount.incrementAndGet();
+            sentEvents.add(event);
+        }
+
+        /**
+         * Queues the spooled events of the batch that weren't sent again, unless they've run out of attempts or the
+         * workers are stopped, and counts the rest as failed, or left in the spool if their segment wasn't evicted.
+         */
+        private void recordUnsentEvents() {
+            for (LogEvent event : batch) {
+                if (sentEvents.contains(event)) {
+                    continue;
+                }
+                if (!(event instanceof SpooledLogEvent)) {
+                    failedEventCount.incrementAndGet();
+                } else if (stopped || ((SpooledLogEvent)event).recordFailedAttempt() >= MAX_SPOOLED_SEND_ATTEMPTS
+                           || !logEventQueue.offer(event)) {
+                    if (((SpooledLogEvent)event).giveUp()) {
+                        spooledEventCount.incrementAndGet();
+                    } else {
+                        failedEventCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds queued events, and then spilled events, to the batch until it's full, or the linger time since its
+         * first event has passed.
+         */
+        private void fillBatch() throws InterruptedException {
+            long deadline = System.nanoTime() + lingerNanos;
+            while (batch.size() < maxBatchSize) {
+                logEventQueue.drainTo(batch, maxBatchSize - batch.size());
+                if (spillFile != null) {
+                    LogEvent event;
+                    while (batch.size() < maxBatchSize && (event = pollSpillFile()) != null) {
+                        batch.add(event);
+                    }
+                }
+                long remainingNanos = deadline - System.nanoTime();
+                // don't wait for a closing handler's batches to fill
+                if (batch.size() == maxBatchSize || remainingNanos <= 0 || closed.get()) {
+                    return;
+                }
+
+                LogEvent event = logEventQueue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                if (event == null) {
+                    return;
+                }
+                batch.add(event);
+            }
+        }
+
+        /**
+         * Sends the GET events of the batch as one POST per endpoint, and any other events on their own.
+         */
+        private void dispatchBatch() throws IOException, URISyntaxException {
+            Map<String, List<LogEvent>> eventsByEndpoint = new LinkedHashMap<String, List<LogEvent>>();
+            for (LogEvent event : batch) {
+                if (event.getRequestMethod() != LogEvent.RequestMethod.GET) {
+                    httpClient.execute(generateRequest(event), EVENT_RESPONSE_HANDLER);
+                    recordSentEvent(event);
+                    continue;
+                }
+
+                List<LogEvent> endpointEvents = eventsByEndpoint.get(event.getEndpointUrl());
+                if (endpointEvents == null) {
+                    endpointEvents = new ArrayList<LogEvent>(batch.size());
+                    eventsByEndpoint.put(event.getEndpointUrl(), endpointEvents);
+                }
+                endpointEvents.add(event);
+            }
+
+            for (Map.Entry<String, List<LogEvent>> endpointEvents : eventsByEndpoint.entrySet()) {
+                HttpPost request = new HttpPost(endpointEvents.getKey());
+                request.setEntity(new StringEntity(generateBatchPayload(endpointEvents.getValue()),
+                                                   ContentType.APPLICATION_JSON));
+                httpClient.execute(request, EVENT_RESPONSE_HANDLER);
+                for (LogEvent event : endpointEvents.getValue()) {
+                    recordSentEvent(event);
                 }
             }
         }
@@ -136,6 +954,103 @@ public class AsyncEventHandler implements EventHandler, Closeable {
         }
     }
 
+    /**
+     * Queues the events of the segments left in the spool by an earlier handler, waiting for room in the queue.
+     */
+    private final class SpoolReplayTask implements Runnable {
+
+        @Override
+        public void run() {
+            for (EventSpool.Segment segment : spool.recover()) {
+                try {
+                    List<SpooledLogEvent> events = segment.readEvents();
+                    logger.info("replaying {} spooled events", events.size());
+                    for (SpooledLogEvent event : events) {
+                        if (!enter()) {
+                            return;
+                        }
+                        try {
+                            logEventQueue.put(event);
+                        } finally {
+                            leave();
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.error("unable to replay spooled events", e);
+                } catch (InterruptedException e) {
+                    logger.info("terminating spooled event replay");
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the events spooled since the last flush to disk.
+     */
+    private final class SpoolFlushTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                spool.flush();
+            } catch (Throwable t) {
+                if (isLogDue(nextSpoolErrorLogNanos)) {
+                    logger.error("unable to flush the event spool", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * The events sent, dropped and left in the spool while an {@link AsyncEventHandler} was closing.
+     */
+    @Immutable
+    public static final class CloseResult {
+
+        private final long sentEventCount;
+        private final long droppedEventCount;
+        private final long spooledEventCount;
+
+        CloseResult(long sentEventCount, long droppedEventCount, long spooledEventCount) {
+            this.sentEventCount = sentEventCount;
+            this.droppedEventCount = droppedEventCount;
+            this.spooledEventCount = spooledEventCount;
+        }
+
+        /**
+         * @return the number of events sent while the handler was closing
+         */
+        public long getSentEventCount() {
+            return sentEventCount;
+        }
+
+        /**
+         * @return the number of events that were left unsent when the handler was closed, failed to send, or were
+         * dispatched while it was closing, and that weren't left in the spool
+         */
+        public long getDroppedEventCount() {
+            return droppedEventCount;
+        }
+
+        /**
+         * @return the number of spooled events that were left unsent when the handler was closed, or failed to send,
+         * which the next handler spooling to the directory replays
+         */
+        public long getSpooledEventCount() {
+            return spooledEventCount;
+        }
+
+        @Override
+        public String toString() {
+            return "CloseResult{" +
+                   "sentEventCount=" + sentEventCount +
+                   ", droppedEventCount=" + droppedEventCount +
+                   ", spooledEventCount=" + spooledEventCount +
+                   '}';
+        }
+    }
+
     /**
      * Handler for the event request that returns nothing (i.e., Void)
      */
@@ -153,4 +1068,4 @@ public class AsyncEventHandler implements EventHandler, Closeable {
             }
         }
     }
-}
\ No newline at end of file
+}
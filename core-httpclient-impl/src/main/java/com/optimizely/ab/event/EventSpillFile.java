@@ -0,0 +1,192 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A temporary file that {@link LogEvent}s that don't fit in the event queue are appended to, and read back from in
+ * the order they were appended once the queue has room.
+ * <p>
+ * The file is created on the first append, emptied whenever every event in it has been read, and deleted on close.
+ * Events that would grow it past its maximum size aren't appended, so that a spill file can't fill the disk while
+ * events can't be sent.
+ */
+@ThreadSafe
+final class EventSpillFile implements Closeable {
+
+    static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSize;
+
+    @GuardedBy("this") private File file;
+    @GuardedBy("this") private FileChannel channel;
+    @GuardedBy("this") private long readPosition;
+    @GuardedBy("this") private long writePosition;
+    @GuardedBy("this") private boolean closed;
+
+    // read without the lock by producers deciding whether to spill
+    private volatile int size;
+
+    /**
+     * @param directory the directory to create the spill file in
+     * @param maxSize the largest the file may grow to, in bytes
+     */
+    EventSpillFile(@Nonnull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the number of events in the file
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return whether the event was appended, which it isn't if it would grow the file past its maximum size
+     */
+    synchronized boolean append(@Nonnull LogEvent event) throws IOException {
+        if (closed) {
+            throw new IOException("spill file is closed");
+        }
+
+        byte[] record = LogEventCodec.encode(event);
+        if (writePosition + 4 + record.length > maxSize) {
+            return false;
+        }
+        if (channel == null) {
+            file = File.createTempFile("optimizely-events-", ".spill", directory);
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the event appended the earliest of those not yet read, or {@code null} if there are none
+     * @throws UnreadableEventsException if the event can't be read, in which case it and the rest of the file's
+     * events are discarded
+     */
+    synchronized @CheckForNull LogEvent poll() throws UnreadableEventsException {
+        if (size == 0 || closed) {
+            return null;
+        }
+
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, readPosition);
+            ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+            readFully(record, readPosition + 4);
+            LogEvent event = LogEventCodec.decode(record.array());
+            readPosition += 4 + record.capacity();
+            size--;
+
+            if (size == 0) {
+                reset();
+            }
+            return event;
+        } catch (IOException e) {
+            // the rest of the file can't be trusted either, so give up on its events rather than failing again
+            int discarded = size;
+            reset();
+            throw new UnreadableEventsException(
+                "unable to read spill file " + file + ", discarded " + discarded + " events", discarded, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        size = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * Empties the file, so that it only grows while events are spilling.
+     */
+    @GuardedBy("this")
+    private void reset() {
+        size = 0;
+        readPosition = 0;
+        writePosition = 0;
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            // the file keeps its length, but the next append overwrites it from the start
+        }
+    }
+
+    @GuardedBy("this")
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("spill file " + file + " is truncated");
+            }
+        }
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * Thrown when the spill file can't be read, with the number of events in it that were discarded.
+     */
+    static final class UnreadableEventsException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int discardedEventCount;
+
+        UnreadableEventsException(String message, int discardedEventCount, Throwable cause) {
+            super(message, cause);
+            this.discardedEventCount = discardedEventCount;
+        }
+
+        int getDiscardedEventCount() {
+            return discardedEventCount;
+        }
+    }
+}
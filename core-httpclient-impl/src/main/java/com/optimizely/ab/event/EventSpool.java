@@ -0,0 +1,733 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Append-only spool of {@link LogEvent}s in memory-mapped segment files, so that events that haven't been sent
+ * survive a crash or restart.
+ * <p>
+ * Appending an event reserves space for its record in the mapped current segment with a CAS on the segment's
+ * position, and copies the record in without taking a lock or making a system call; only rolling over to a new
+ * segment is locked. Writes reach the page cache as they're made, so they survive the process crashing;
+ * {@link #flush()} forces them to disk, and is called periodically, so that one {@code fsync} commits every event
+ * appended since the last.
+ * <p>
+ * Each appended event is returned bound to its record, and is acknowledged once it's been sent, which marks the record
+ * as acknowledged in the segment. A segment is deleted once it's been filled and all its events are acknowledged.
+ * Segments left by an earlier spool are {@link #recover() recovered} when the spool is opened, and the events in them
+ * that weren't acknowledged are replayed, so events are sent at least once, and events that were sent aren't sent
+ * again unless their acknowledgement was lost with the machine.
+ * <p>
+ * The segments of a spool are limited to a maximum size in total, counting those recovered from an earlier spool. When
+ * a new segment wouldn't fit, the oldest segments are evicted, and the events in them that nothing else will send, as
+ * the handler gave up on them or they weren't replayed yet, are counted as dropped. A segment is also only recovered
+ * by up to {@value #MAX_RECOVERIES} spools, after which its events are counted as dropped rather than replayed again,
+ * so that events the endpoint always rejects don't keep their segment forever.
+ * <p>
+ * Each segment starts with a header of {@link #MAGIC}, {@link #VERSION} and the number of spools that have recovered
+ * it, followed by records of the event's
+ * length, the CRC-32 of the event, whether the event was acknowledged, and the event as written by
+ * {@link LogEventCodec}. A record with a length of 0, which the zero-filled rest of a segment reads as, or that fails
+ * its check, ends the segment. The length is written last, so a record whose write a crash interrupts ends its
+ * segment, along with any records that were appended concurrently and reserved after it.
+ * <p>
+ * A spool holds an exclusive lock on a {@value #LOCK_FILE_NAME} file in its directory until it's closed, so that two
+ * spools, in one process or in processes that overlap during a deploy, can't replay each other's events or write to
+ * the same segment files.
+ */
+@ThreadSafe
+final class EventSpool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventSpool.class);
+
+    static final int MAGIC = 0x4F455653; // "OEVS"
+    static final int VERSION = 3;
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+    static final int MAX_RECOVERIES = 3;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int ACKNOWLEDGED = 1;
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".segment";
+    static final String LOCK_FILE_NAME = "spool.lock";
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final FileLock lock;
+
+    // read without the lock by appenders, and only replaced while holding it
+    @GuardedBy("this") private volatile Segment current;
+    @GuardedBy("this") private long nextSequence;
+    // the segments recovered from an earlier spool, until they're handed out for replay
+    @GuardedBy("this") private List<Segment> recoveredSegments;
+    // the segments that haven't been deleted, oldest first, which count towards the maximum size
+    @GuardedBy("this") private final LinkedList<Segment> segments;
+    // the segments rolled over from since the last flush
+    @GuardedBy("this") private final List<Segment> unflushedSegments = new ArrayList<Segment>();
+    @GuardedBy("this") private boolean closed;
+
+    // the events given up on when the spool was opened, or evicted since
+    private final AtomicLong droppedEventCount;
+
+    private EventSpool(File directory, int segmentSize, long maxSize, FileLock lock, List<Segment> recoveredSegments,
+                       long nextSequence, long droppedEventCount) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.lock = lock;
+        this.recoveredSegments = recoveredSegments;
+        this.segments = new LinkedList<Segment>(recoveredSegments);
+        this.nextSequence = nextSequence;
+        this.droppedEventCount = new AtomicLong(droppedEventCount);
+    }
+
+    /**
+     * Opens the spool in the given directory, with segments of up to {@link #DEFAULT_MAX_SIZE} in total.
+     *
+     * @see #open(File, int, long)
+     */
+    static EventSpool open(@Nonnull File directory, int segmentSize) throws IOException {
+        return open(directory, segmentSize, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Opens the spool in the given directory, reading the segments left in it by an earlier spool.
+     *
+     * @param directory the directory to keep segments in, which is created if it doesn't exist
+     * @param segmentSize the size of each segment file
+     * @param maxSize the largest the segments may be in total, which is at least one segment
+     * @throws IOException if the directory can't be read, or another spool has it open
+     */
+    static EventSpool open(@Nonnull File directory, int segmentSize, long maxSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("segment size must be > " + (HEADER_SIZE + RECORD_HEADER_SIZE));
+        }
+        if (maxSize < segmentSize) {
+            throw new IllegalArgumentException("spool max size must be >= the segment size");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("unable to create spool directory " + directory);
+        }
+
+        FileLock lock = lock(directory);
+        boolean opened = false;
+        try {
+            EventSpool spool = open(directory, segmentSize, maxSize, lock);
+            opened = true;
+            return spool;
+        } finally {
+            if (!opened) {
+                release(lock);
+            }
+        }
+    }
+
+    private static EventSpool open(File directory, int segmentSize, long maxSize, FileLock lock) throws IOException {
+        String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (names == null) {
+            throw new IOException("unable to list spool directory " + directory);
+        }
+        // the sequence numbers are zero-padded, so names sort in the order segments were created
+        Arrays.sort(names);
+
+        List<Segment> recoveredSegments = new ArrayList<Segment>(names.length);
+        long nextSequence = 0;
+        long droppedEventCount = 0;
+        for (String name : names) {
+            File file = new File(directory, name);
+            try {
+                long sequence = Long.parseLong(
+                    name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unexpected file {} in the event spool.", file);
+                continue;
+            }
+
+            Segment segment = Segment.recover(file);
+            if (segment == null) {
+                logger.warn("Ignoring event spool segment {} with an unknown header.", file);
+            } else if (segment.getRecordCount() == 0) {
+                segment.delete();
+            } else if (segment.getRecoveryCount() > MAX_RECOVERIES) {
+                logger.warn("Dropping {} events from event spool segment {}, which {} spools failed to send.",
+                            segment.getRecordCount(), file, MAX_RECOVERIES);
+                droppedEventCount += segment.evict();
+            } else {
+                recoveredSegments.add(segment);
+            }
+        }
+
+        return new EventSpool(directory, segmentSize, maxSize, lock, recoveredSegments, nextSequence,
+                              droppedEventCount);
+    }
+
+    /**
+     * Hands out the segments left by an earlier spool for their events to be replayed, which it only does once.
+     *
+     * @return the segments that hold events, in the order they were written
+     */
+    synchronized List<Segment> recover() {
+        List<Segment> segments = recoveredSegments;
+        recoveredSegments = Collections.emptyList();
+        return segments;
+    }
+
+    /**
+     * @return the number of events that were given up on when the spool was opened, as spools had already recovered
+     * them {@value #MAX_RECOVERIES} times, or that were in segments evicted to keep the spool to its maximum size,
+     * and weren't going to be sent otherwise
+     */
+    long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * Appends the event to the current segment, starting a new segment if it's full.
+     *
+     * @return the event, bound to the record it was appended as
+     * @throws IOException if the event can't fit in a segment, a new segment can't be created, or the spool is closed
+     */
+    SpooledLogEvent append(@Nonnull LogEvent event) throws IOException {
+        byte[] payload = LogEventCodec.encode(event);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (HEADER_SIZE + recordSize > segmentSize) {
+            throw new IOException("event of " + payload.length + " bytes doesn't fit in a spool segment");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int checksum = (int)crc.getValue();
+
+        while (true) {
+            Segment segment = current;
+            if (segment != null) {
+                int position = segment.reserve(recordSize);
+                if (position >= 0) {
+                    segment.write(position, payload, checksum);
+                    return new SpooledLogEvent(event, segment, position);
+                }
+            }
+            roll(segment);
+        }
+    }
+
+    /**
+     * Forces the events appended since the last flush to disk.
+     */
+    void flush() throws IOException {
+        List<Segment> segments;
+        synchronized (this) {
+            pruneDeletedSegments();
+            segments = new ArrayList<Segment>(unflushedSegments);
+            unflushedSegments.clear();
+            if (current != null) {
+                segments.add(current);
+            }
+        }
+
+        for (Segment segment : segments) {
+            if (!segment.force() && segment != current) {
+                // an appender that reserved a record before the segment was rolled over from is still writing it
+                synchronized (this) {
+                    unflushedSegments.add(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops appends, flushes the spool and releases the directory. Segments with unacknowledged events are kept, to be
+     * recovered by the next spool opened in the directory.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (current != null) {
+                current.seal();
+                unflushedSegments.add(current);
+                current = null;
+            }
+        }
+        try {
+            flush();
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * @return the number of segment files in the directory
+     */
+    int getSegmentCount() {
+        String[] names = directory.list();
+        int count = 0;
+        for (String name : (names != null) ? names : new String[0]) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * Takes the lock on the directory, which is held until the spool is closed.
+     *
+     * @throws IOException if the lock can't be taken, or another spool holds it
+     */
+    private static FileLock lock(File directory) throws IOException {
+        File lockFile = new File(directory, LOCK_FILE_NAME);
+        FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // a spool in this process holds it
+        } finally {
+            if (lock == null) {
+                channel.close();
+            }
+        }
+
+        if (lock == null) {
+            throw new IOException("event spool directory " + directory + " is in use by another spool");
+        }
+        return lock;
+    }
+
+    /**
+     * Releases the lock on the directory, by closing the channel it was taken through.
+     */
+    private static void release(FileLock lock) throws IOException {
+        lock.channel().close();
+    }
+
+    /**
+     * Starts a new segment, unless another appender already has since the given one was current.
+     *
+     * @param full the segment that was current when the record didn't fit in it, or {@code null} if there was none
+     */
+    private synchronized void roll(@CheckForNull Segment full) throws IOException {
+        if (closed) {
+            throw new IOException("spool is closed");
+        }
+        if (current != full) {
+            return;
+        }
+
+        if (current != null) {
+            current.seal();
+            unflushedSegments.add(current);
+        }
+        evictSegments();
+
+        File file = new File(directory, String.format("%s%019d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        Segment segment = Segment.create(file, segmentSize);
+        segments.add(segment);
+        current = segment;
+    }
+
+    /**
+     * Evicts the oldest segments until there's room for a new segment within the maximum size.
+     */
+    @GuardedBy("this")
+    private void evictSegments() {
+        pruneDeletedSegments();
+        long size = segmentSize;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        while (size > maxSize && !segments.isEmpty()) {
+            Segment segment = segments.removeFirst();
+            size -= segment.size();
+            int dropped = segment.evict();
+            droppedEventCount.addAndGet(dropped);
+            logger.warn("Evicted event spool segment {}, dropping {} events, as the spool reached its maximum size "
+                        + "of {} bytes.", segment, dropped, maxSize);
+        }
+    }
+
+    /**
+     * Lets go of the segments that have been deleted as all their events were acknowledged, so that they can be
+     * unmapped.
+     */
+    @GuardedBy("this")
+    private void pruneDeletedSegments() {
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDeleted()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * A segment file, and the acknowledgements of its events.
+     */
+    @ThreadSafe
+    static final class Segment {
+
+        // the state packs whether the segment is sealed, the number of records reserved in it, and the position after
+        // them, so that a record is never reserved in a sealed segment
+        private static final long SEALED = Long.MIN_VALUE;
+        private static final long RECORD = 1L << 32;
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+
+        private final AtomicLong state;
+        // the records written in full, and the number that were when the segment was last forced to disk
+        private final AtomicInteger written = new AtomicInteger();
+        private volatile int forced;
+
+        private final AtomicInteger acknowledged = new AtomicInteger();
+        private final AtomicBoolean deleted = new AtomicBoolean();
+
+        // whether the events of a recovered segment have been read for replay, which those of created segments are
+        // as they're appended
+        private final AtomicBoolean read;
+        // the events whose sending the handler gave up on, leaving them for the next handler to replay
+        @GuardedBy("this") private int givenUp;
+
+        private Segment(File file, MappedByteBuffer buffer, long state, boolean read) {
+            this.file = file;
+            this.buffer = buffer;
+            this.state = new AtomicLong(state);
+            this.read = new AtomicBoolean(read);
+        }
+
+        static Segment create(File file, int size) throws IOException {
+            MappedByteBuffer buffer = map(file, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, 0);
+
+            return new Segment(file, buffer, HEADER_SIZE, true);
+        }
+
+        /**
+         * Reads the records of a segment written by an earlier spool, up to the first that's missing or corrupt, and
+         * counts the recovery in the segment's header.
+         *
+         * @return the segment, sealed and holding the records that weren't acknowledged, or {@code null} if the file
+         * doesn't have a segment header of this version
+         */
+        static @CheckForNull Segment recover(File file) throws IOException {
+            MappedByteBuffer buffer = map(file, -1);
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            buffer.putInt(8, buffer.getInt(8) + 1);
+
+            int position = HEADER_SIZE;
+            int records = 0;
+            while (readRecord(buffer, position) != null) {
+                if (buffer.getInt(position + 8) != ACKNOWLEDGED) {
+                    records++;
+                }
+                position += RECORD_HEADER_SIZE + buffer.getInt(position);
+            }
+
+            return new Segment(file, buffer, SEALED | (records * RECORD) | position, false);
+        }
+
+        /**
+         * @return the number of spools that have recovered the segment, including this one
+         */
+        int getRecoveryCount() {
+            return buffer.getInt(8);
+        }
+
+        /**
+         * @return the size of the segment file
+         */
+        int size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * @return the number of records in the segment that weren't acknowledged when it was recovered, or that have
+         * been reserved since it was created
+         */
+        int getRecordCount() {
+            return records(state.get());
+        }
+
+        /**
+         * @return the events of a segment written by an earlier spool that weren't acknowledged, bound to their
+         * records, or none if they've already been read, or the segment was evicted first
+         */
+        List<SpooledLogEvent> readEvents() throws IOException {
+            if (!read.compareAndSet(false, true)) {
+                return Collections.emptyList();
+            }
+
+            long state = this.state.get();
+            List<SpooledLogEvent> events = new ArrayList<SpooledLogEvent>(records(state));
+            for (int position = HEADER_SIZE; position < position(state); ) {
+                byte[] payload = readRecord(buffer, position);
+                if (payload == null) {
+                    throw new IOException("event spool segment " + file + " changed while it was read");
+                }
+                if (buffer.getInt(position + 8) != ACKNOWLEDGED) {
+                    events.add(new SpooledLogEvent(LogEventCodec.decode(payload), this, position));
+                }
+                position += RECORD_HEADER_SIZE + payload.length;
+            }
+
+            return events;
+        }
+
+        /**
+         * Reserves space for a record at the end of the segment.
+         *
+         * @return the position of the record, or -1 if it doesn't fit or the segment is sealed
+         */
+        int reserve(int recordSize) {
+            while (true) {
+                long state = this.state.get();
+                int position = position(state);
+                if ((state & SEALED) != 0 || (long)position + recordSize > buffer.capacity()) {
+                    return -1;
+                }
+                if (this.state.compareAndSet(state, state + RECORD + recordSize)) {
+                    return position;
+                }
+            }
+        }
+
+        void write(int position, byte[] payload, int checksum) {
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + RECORD_HEADER_SIZE);
+            record.put(payload);
+            buffer.putInt(position + 4, checksum);
+            // the length is written last, as it's what marks the record as present
+            buffer.putInt(position, payload.length);
+            written.incrementAndGet();
+        }
+
+        /**
+         * Forces the records written since the segment was last forced to disk.
+         *
+         * @return whether every record reserved in the segment had been written in full
+         */
+        boolean force() {
+            int writtenCount = written.get();
+            if (writtenCount != forced && !deleted.get()) {
+                buffer.force();
+                forced = writtenCount;
+            }
+            return writtenCount == records(state.get());
+        }
+
+        /**
+         * Marks the record at the given position as acknowledged, deleting the segment if it's sealed and that was
+         * the last of its records to be.
+         */
+        void acknowledge(int position) {
+            buffer.putInt(position + 8, ACKNOWLEDGED);
+            int acknowledgedCount = acknowledged.incrementAndGet();
+            long state = this.state.get();
+            if ((state & SEALED) != 0 && acknowledgedCount == records(state)) {
+                delete();
+            }
+        }
+
+        /**
+         * Marks the segment as taking no more records, deleting it if they're all acknowledged.
+         */
+        void seal() {
+            long state;
+            do {
+                state = this.state.get();
+            } while ((state & SEALED) == 0 && !this.state.compareAndSet(state, state | SEALED));
+
+            if (acknowledged.get() == records(state)) {
+                delete();
+            }
+        }
+
+        /**
+         * Deletes the segment, whether or not its events are acknowledged.
+         *
+         * @return the number of events that were only kept by the segment, which are those of a recovered segment
+         * that weren't read for replay, and those the handler gave up on
+         */
+        synchronized int evict() {
+            int dropped = givenUp;
+            if (read.compareAndSet(false, true)) {
+                dropped += records(state.get()) - acknowledged.get();
+            }
+            delete();
+
+            return dropped;
+        }
+
+        synchronized boolean giveUp() {
+            if (deleted.get()) {
+                return false;
+            }
+            givenUp++;
+            return true;
+        }
+
+        void delete() {
+            if (deleted.compareAndSet(false, true) && !file.delete()) {
+                logger.warn("Unable to delete event spool segment {}.", file);
+            }
+        }
+
+        boolean isDeleted() {
+            return deleted.get();
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+
+        private static int position(long state) {
+            return (int)state;
+        }
+
+        private static int records(long state) {
+            return (int)((state & ~SEALED) >>> 32);
+        }
+
+        private static @CheckForNull byte[] readRecord(ByteBuffer buffer, int position) {
+            if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+                return null;
+            }
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                return null;
+            }
+
+            byte[] payload = new byte[length];
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + RECORD_HEADER_SIZE);
+            record.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            return ((int)crc.getValue() == buffer.getInt(position + 4)) ? payload : null;
+        }
+
+        /**
+         * Maps a file for reading and writing, which stays mapped after its channel is closed.
+         *
+         * @param size the size to create the file with, or -1 to map an existing file
+         */
+        private static MappedByteBuffer map(File file, long size) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                if (size >= 0) {
+                    randomAccessFile.setLength(size);
+                }
+                FileChannel channel = randomAccessFile.getChannel();
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    /**
+     * An event appended to the spool, which is acknowledged once it's been sent.
+     */
+    static final class SpooledLogEvent extends LogEvent {
+
+        private final Segment segment;
+        private final int position;
+        // only changed by the worker holding the event
+        private int failedAttempts;
+
+        SpooledLogEvent(@Nonnull LogEvent event, @Nonnull Segment segment, int position) {
+            super(event.getRequestMethod(), event.getEndpointUrl(), event.getRequestParams(), event.getBody());
+            this.segment = segment;
+            this.position = position;
+        }
+
+        void acknowledge() {
+            segment.acknowledge(position);
+        }
+
+        /**
+         * @return the number of times sending the event has failed, including this one
+         */
+        int recordFailedAttempt() {
+            return ++failedAttempts;
+        }
+
+        /**
+         * Records that the event won't be sent again by this handler, and is left for the next handler to replay, so
+         * that it's counted as dropped if its segment is evicted.
+         *
+         * @return whether the event is left in the spool, which it isn't if its segment was already evicted
+         */
+        boolean giveUp() {
+            return segment.giveUp();
+        }
+    }
+}
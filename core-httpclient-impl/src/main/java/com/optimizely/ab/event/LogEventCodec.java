@@ -0,0 +1,99 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.event.LogEvent.RequestMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Serializes {@link LogEvent}s for the files events are written to.
+ */
+final class LogEventCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private LogEventCodec() { }
+
+    static byte[] encode(@Nonnull LogEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(event.getRequestMethod().ordinal());
+        writeString(out, event.getEndpointUrl());
+        out.writeInt(event.getRequestParams().size());
+        for (Map.Entry<String, String> param : event.getRequestParams().entrySet()) {
+            writeString(out, param.getKey());
+            writeString(out, param.getValue());
+        }
+        writeString(out, event.getBody());
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    static LogEvent decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int requestMethod = in.readUnsignedByte();
+        if (requestMethod >= RequestMethod.values().length) {
+            throw new IOException("unknown request method: " + requestMethod);
+        }
+        String endpointUrl = readString(in);
+        int paramCount = in.readInt();
+        Map<String, String> requestParams = new LinkedHashMap<String, String>(paramCount * 2);
+        for (int i = 0; i < paramCount; i++) {
+            requestParams.put(readString(in), readString(in));
+        }
+        String body = readString(in);
+
+        return new LogEvent(RequestMethod.values()[requestMethod], endpointUrl, requestParams, body);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string, as {@link DataOutputStream#writeUTF(String)} is limited to 64KB.
+     */
+    private static void writeString(DataOutputStream out, @CheckForNull String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @CheckForNull String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.ProjectConfigManager;
+import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.internal.DecisionLogging;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link DatafilePoller}, against a datafile server on the loopback interface.
+ */
+public class DatafilePollerTest {
+
+    private static final String ETAG = "\"datafile-v43\"";
+
+    private HttpServer server;
+    private DatafileHandler datafileHandler;
+    private String datafileUrl;
+
+    private ProjectConfigManager configManager;
+
+    @Before
+    public void initialize() throws Exception {
+        datafileHandler = new DatafileHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/datafile.json", datafileHandler);
+        server.start();
+        datafileUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/datafile.json";
+
+        ProjectConfig projectConfig = new ProjectConfig("789", "1234", "2", "42", Collections.<Group>emptyList(),
+                                                        Collections.<Experiment>emptyList(),
+                                                        Collections.<Attribute>emptyList(),
+                                                        Collections.<EventType>emptyList(),
+                                                        Collections.<Audience>emptyList());
+        configManager = new ProjectConfigManager(projectConfig, null, DecisionLogging.PER_CALL);
+    }
+
+    @After
+    public void teardown() {
+        server.stop(0);
+    }
+
+    /**
+     * Verify that a datafile with a new revision replaces the config, and that the next poll is a conditional GET
+     * that's answered with a {@code 304} without changing the config.
+     */
+    @Test
+    public void pollSendsConditionalRequests() throws Exception {
+        datafileHandler.revision = "43";
+        DatafilePoller poller = new DatafilePoller(datafileUrl, configManager, 60, TimeUnit.SECONDS);
+        try {
+            assertThat(poller.poll(), is(true));
+            assertThat(configManager.getProjectConfig().getRevision(), is("43"));
+            ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+
+            assertThat(poller.poll(), is(false));
+            assertThat(configManager.getSnapshot(), sameInstance(snapshot));
+        } finally {
+            poller.close();
+        }
+
+        assertThat(datafileHandler.ifNoneMatchHeaders.size(), is(2));
+        assertThat(datafileHandler.ifNoneMatchHeaders.get(0), nullValue());
+        assertThat(datafileHandler.ifNoneMatchHeaders.get(1), is(ETAG));
+        assertThat(datafileHandler.notModifiedCount.get(), is(1));
+    }
+
+    /**
+     * Verify that a datafile served in full with the current revision doesn't replace the config.
+     */
+    @Test
+    public void pollWithCurrentRevisionKeepsConfig() throws Exception {
+        datafileHandler.revision = "42";
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        DatafilePoller poller = new DatafilePoller(datafileUrl, configManager, 60, TimeUnit.SECONDS);
+        try {
+            assertThat(poller.poll(), is(false));
+            assertThat(configManager.getSnapshot(), sameInstance(snapshot));
+        } finally {
+            poller.close();
+        }
+    }
+
+    /**
+     * Verify that error responses are reported, and leave the config as it was.
+     */
+    @Test
+    public void pollWithErrorResponseKeepsConfig() throws Exception {
+        datafileHandler.errorStatus = 503;
+        ProjectConfigManager.Snapshot snapshot = configManager.getSnapshot();
+        DatafilePoller poller = new DatafilePoller(datafileUrl, configManager, 60, TimeUnit.SECONDS);
+        try {
+            poller.poll();
+            fail("expected an " + IOException.class.getSimpleName());
+        } catch (IOException e) {
+            assertThat(configManager.getSnapshot(), sameInstance(snapshot));
+        } finally {
+            poller.close();
+        }
+    }
+
+    /**
+     * Verify that the delay after failed polls doubles from the polling interval up to its cap, and is jittered
+     * within the upper half of the backoff.
+     */
+    @Test
+    public void delayBacksOffWithJitter() throws Exception {
+        DatafilePoller poller = new DatafilePoller(datafileUrl, configManager, 1000, new Random(42));
+        try {
+            assertThat(poller.getDelayMillis(0), is(1000L));
+            for (int failures = 1; failures < 10; failures++) {
+                long backoff = 1000L * Math.min(1 << failures, DatafilePoller.MAX_BACKOFF_MULTIPLIER);
+                long delay = poller.getDelayMillis(failures);
+                assertTrue(failures + " failures gave " + delay, delay >= backoff / 2 && delay <= backoff);
+            }
+        } finally {
+            poller.close();
+        }
+    }
+
+    /**
+     * Verify that a started poller picks up a new revision in the background.
+     */
+    @Test
+    public void startPollsInBackground() throws Exception {
+        datafileHandler.revision = "42";
+        DatafilePoller poller = new DatafilePoller(datafileUrl, configManager, 20, TimeUnit.MILLISECONDS);
+        try {
+            poller.start();
+            datafileHandler.revision = "44";
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!"44".equals(configManager.getProjectConfig().getRevision())) {
+                assertTrue("timed out waiting for revision 44", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            poller.close();
+        }
+    }
+
+    /**
+     * Verify that a poller can only be started once, so that it never runs two polling loops.
+     */
+    @Test
+    public void startTwiceThrows() throws Exception {
+        DatafilePoller poller = new DatafilePoller(datafileUrl, configManager, 60, TimeUnit.SECONDS);
+        try {
+            poller.start();
+            try {
+                poller.start();
+                fail("expected an " + IllegalStateException.class.getSimpleName());
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            poller.close();
+        }
+    }
+
+    //======== Helper classes ========//
+
+    /**
+     * Serves an empty datafile of the current revision, honouring {@code If-None-Match}.
+     */
+    private static final class DatafileHandler implements HttpHandler {
+
+        volatile String revision = "42";
+        volatile int errorStatus;
+
+        final List<String> ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger notModifiedCount = new AtomicInteger();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            ifNoneMatchHeaders.add(ifNoneMatch);
+
+            String etag = "\"datafile-v" + revision + "\"";
+            if (errorStatus != 0) {
+                exchange.sendResponseHeaders(errorStatus, -1);
+            } else if (etag.equals(ifNoneMatch)) {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] datafile = ("{\"accountId\": \"789\", \"projectId\": \"1234\", \"version\": \"2\", "
+                                   + "\"revision\": \"" + revision + "\", \"groups\": [], \"experiments\": [], "
+                                   + "\"dimensions\": [], \"events\": [], \"audiences\": []}").getBytes("UTF-8");
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(200, datafile.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(datafile);
+                body.close();
+            }
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,732 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.optimizely.ab.event.AsyncEventHandler.CloseResult;
+import com.optimizely.ab.event.AsyncEventHandler.OverflowPolicy;
+import com.optimizely.ab.event.LogEvent.RequestMethod;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AsyncEventHandler}, against a local stand-in for the event endpoint.
+ */
+public class AsyncEventHandlerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private EventEndpointHandler endpointHandler;
+    private String endpointUrl;
+
+    @Before
+    public void initialize() throws Exception {
+        endpointHandler = new EventEndpointHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", endpointHandler);
+        server.start();
+        endpointUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/event";
+    }
+
+    @After
+    public void teardown() {
+        server.stop(0);
+    }
+
+    /**
+     * Verify that without batching, each event is sent as its own GET request.
+     */
+    @Test
+    public void dispatchEventSendsGetRequests() throws Exception {
+        AsyncEventHandler eventHandler = new AsyncEventHandler(10, 1);
+        try {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "1"));
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "2"));
+
+            List<ReceivedRequest> requests = endpointHandler.awaitRequests(2);
+            assertThat(requests.get(0).method, is("GET"));
+            assertThat(requests.get(0).uri, is("/event?id=1&key=event+1"));
+            assertThat(requests.get(1).uri, is("/event?id=2&key=event+2"));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that events queued faster than the linger time are sent in full batches, in the order they were
+     * dispatched.
+     */
+    @Test
+    public void dispatchEventSendsFullBatches() throws Exception {
+        AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withMaxBatchSize(3)
+            .withLinger(30, TimeUnit.SECONDS)
+            .build();
+        try {
+            for (int i = 0; i < 6; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+
+            List<ReceivedRequest> requests = endpointHandler.awaitRequests(2);
+            assertThat(requests.get(0).method, is("POST"));
+            assertThat(requests.get(0).uri, is("/event"));
+            assertThat(requests.get(0).contentType, is("application/json; charset=UTF-8"));
+            assertThat(requests.get(0).getEventIds(), is(Arrays.asList("0", "1", "2")));
+            assertThat(requests.get(1).getEventIds(), is(Arrays.asList("3", "4", "5")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that a partial batch is sent once the linger time has passed.
+     */
+    @Test
+    public void dispatchEventSendsPartialBatchAfterLinger() throws Exception {
+        AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withMaxBatchSize(100)
+            .withLinger(50, TimeUnit.MILLISECONDS)
+            .build();
+        try {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "1"));
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "2"));
+
+            List<ReceivedRequest> requests = endpointHandler.awaitRequests(1);
+            assertThat(requests.get(0).getEventIds(), is(Arrays.asList("1", "2")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that the events of a batch are sent as one request per endpoint.
+     */
+    @Test
+    public void dispatchEventBatchesPerEndpoint() throws Exception {
+        String otherEndpointUrl = endpointUrl.replace("/event", "/other");
+        AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withMaxBatchSize(3)
+            .withLinger(30, TimeUnit.SECONDS)
+            .build();
+        try {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "1"));
+            eventHandler.dispatchEvent(createEvent(otherEndpointUrl, "2"));
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "3"));
+
+            List<ReceivedRequest> requests = endpointHandler.awaitRequests(2);
+            assertThat(requests.get(0).uri, is("/event"));
+            assertThat(requests.get(0).getEventIds(), is(Arrays.asList("1", "3")));
+            assertThat(requests.get(1).uri, is("/other"));
+            assertThat(requests.get(1).getEventIds(), is(Collections.singletonList("2")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that with {@link OverflowPolicy#DROP_NEWEST}, events dispatched while the queue is full are dropped and
+     * counted.
+     */
+    @Test
+    public void dropNewestDropsEventsWhenFull() throws Exception {
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withOverflowPolicy(OverflowPolicy.DROP_NEWEST));
+        try {
+            for (int i = 1; i <= 4; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+            assertThat(eventHandler.getDroppedEventCount(), is(2L));
+
+            assertThat(releaseAndAwaitEventIds(3), is(Arrays.asList("0", "1", "2")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that with {@link OverflowPolicy#DROP_OLDEST}, the longest queued events make room for new ones.
+     */
+    @Test
+    public void dropOldestDropsQueuedEventsWhenFull() throws Exception {
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withOverflowPolicy(OverflowPolicy.DROP_OLDEST));
+        try {
+            for (int i = 1; i <= 4; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+            assertThat(eventHandler.getDroppedEventCount(), is(2L));
+
+            assertThat(releaseAndAwaitEventIds(3), is(Arrays.asList("0", "3", "4")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that with {@link OverflowPolicy#BLOCK}, a dispatching thread waits for the block timeout before dropping
+     * its event.
+     */
+    @Test
+    public void blockDropsEventsAfterTimeout() throws Exception {
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withOverflowPolicy(OverflowPolicy.BLOCK)
+            .withBlockTimeout(50, TimeUnit.MILLISECONDS));
+        try {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "1"));
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "2"));
+            long start = System.nanoTime();
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "3"));
+            long blockedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue("blocked for " + blockedMillis + "ms", blockedMillis >= 40);
+            assertThat(eventHandler.getDroppedEventCount(), is(1L));
+            assertThat(releaseAndAwaitEventIds(3), is(Arrays.asList("0", "1", "2")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that with {@link OverflowPolicy#SPILL_TO_DISK}, events that don't fit in the queue are written to the
+     * spill directory and dispatched in order once the queue has room, and that the spill file is deleted on close.
+     */
+    @Test
+    public void spillToDiskDispatchesSpilledEventsInOrder() throws Exception {
+        File spillDirectory = temporaryFolder.newFolder();
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withOverflowPolicy(OverflowPolicy.SPILL_TO_DISK)
+            .withSpillDirectory(spillDirectory));
+        try {
+            for (int i = 1; i <= 5; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+            assertThat(eventHandler.getDroppedEventCount(), is(0L));
+            assertThat(spillDirectory.list().length, is(1));
+
+            assertThat(releaseAndAwaitEventIds(6), is(Arrays.asList("0", "1", "2", "3", "4", "5")));
+        } finally {
+            eventHandler.close(5, TimeUnit.SECONDS);
+        }
+        assertThat(spillDirectory.list().length, is(0));
+    }
+
+    /**
+     * Verify that once the spill file reaches its maximum size, events are dropped while the queue is full.
+     */
+    @Test
+    public void spillToDiskDropsEventsOverMaxSize() throws Exception {
+        File spillDirectory = temporaryFolder.newFolder();
+        int recordSize = 4 + LogEventCodec.encode(createEvent(endpointUrl, "3")).length;
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withOverflowPolicy(OverflowPolicy.SPILL_TO_DISK)
+            .withSpillDirectory(spillDirectory)
+            .withSpillFileMaxSize(2 * recordSize));
+        try {
+            for (int i = 1; i <= 6; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+            assertThat(eventHandler.getDroppedEventCount(), is(2L));
+
+            assertThat(releaseAndAwaitEventIds(5), is(Arrays.asList("0", "1", "2", "3", "4")));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that spilled events that can't be read back are counted as dropped, and that spilling carries on.
+     */
+    @Test
+    public void spillToDiskDropsUnreadableEvents() throws Exception {
+        File spillDirectory = temporaryFolder.newFolder();
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withOverflowPolicy(OverflowPolicy.SPILL_TO_DISK)
+            .withSpillDirectory(spillDirectory));
+        try {
+            for (int i = 1; i <= 5; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+            RandomAccessFile spillFile = new RandomAccessFile(spillDirectory.listFiles()[0], "rw");
+            try {
+                spillFile.setLength(10);
+            } finally {
+                spillFile.close();
+            }
+
+            assertThat(releaseAndAwaitEventIds(3), is(Arrays.asList("0", "1", "2")));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (eventHandler.getDroppedEventCount() < 3) {
+                assertTrue("timed out waiting for the spilled events to be dropped",
+                           System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "6"));
+            assertThat(endpointHandler.awaitRequests(4).get(3).getQueryParam("id"), is("6"));
+            assertThat(eventHandler.getDroppedEventCount(), is(3L));
+        } finally {
+            eventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that spooled events that failed to send are retried, and then replayed by the next handler spooling to
+     * the directory, and that their segments are deleted once they're sent.
+     */
+    @Test
+    public void spoolReplaysUnsentEvents() throws Exception {
+        File spoolDirectory = temporaryFolder.newFolder();
+        endpointHandler.errorStatus = 503;
+        AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withSpool(spoolDirectory)
+            .build();
+        int attemptCount = 2 * AsyncEventHandler.MAX_SPOOLED_SEND_ATTEMPTS;
+        try {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "1"));
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "2"));
+            endpointHandler.awaitRequests(attemptCount);
+        } finally {
+            eventHandler.close(5, TimeUnit.SECONDS);
+        }
+        assertThat(countSegments(spoolDirectory), is(1));
+
+        endpointHandler.errorStatus = 0;
+        AsyncEventHandler restartedEventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withSpool(spoolDirectory)
+            .build();
+        try {
+            List<ReceivedRequest> requests = endpointHandler.awaitRequests(attemptCount + 2);
+            assertThat(requests.get(attemptCount).getQueryParam("id"), is("1"));
+            assertThat(requests.get(attemptCount + 1).getQueryParam("id"), is("2"));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (countSegments(spoolDirectory) > 0) {
+                assertTrue("timed out waiting for the replayed segment to be deleted",
+                           System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            restartedEventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that spooled events dropped from a full queue are replayed by the next handler, and that the events sent
+     * from the same segment aren't.
+     */
+    @Test
+    public void spoolReplaysDroppedEventsOnly() throws Exception {
+        File spoolDirectory = temporaryFolder.newFolder();
+        AsyncEventHandler eventHandler = createBlockedEventHandler(AsyncEventHandler.builder()
+            .withSpool(spoolDirectory));
+        try {
+            for (int i = 1; i <= 4; i++) {
+                eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+            }
+            assertThat(eventHandler.getDroppedEventCount(), is(2L));
+            assertThat(releaseAndAwaitEventIds(3), is(Arrays.asList("0", "1", "2")));
+        } finally {
+            eventHandler.close(5, TimeUnit.SECONDS);
+        }
+        assertThat(countSegments(spoolDirectory), is(1));
+
+        AsyncEventHandler restartedEventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withSpool(spoolDirectory)
+            .build();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (countSegments(spoolDirectory) > 0) {
+                assertTrue("timed out waiting for the replayed segment to be deleted",
+                           System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            List<String> ids = new ArrayList<String>();
+            for (ReceivedRequest request : endpointHandler.awaitRequests(5)) {
+                ids.add(request.getQueryParam("id"));
+            }
+            assertThat(ids, is(Arrays.asList("0", "1", "2", "3", "4")));
+        } finally {
+            restartedEventHandler.close();
+        }
+    }
+
+    /**
+     * Verify that closing sends the queued events to a slow endpoint, in batches that are sent without waiting for
+     * them to fill, and that events dispatched once the handler is closed are dropped.
+     */
+    @Test
+    public void closeSendsQueuedEvents() throws Exception {
+        endpointHandler.responseDelayMillis = 50;
+        AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withMaxBatchSize(10)
+            .withLinger(30, TimeUnit.SECONDS)
+            .build();
+        for (int i = 0; i < 25; i++) {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+        }
+
+        CloseResult result = eventHandler.close(5, TimeUnit.SECONDS);
+
+        assertThat(result.getSentEventCount(), is(25L));
+        assertThat(result.getDroppedEventCount(), is(0L));
+        List<String> ids = new ArrayList<String>();
+        for (ReceivedRequest request : endpointHandler.awaitRequests(3)) {
+            ids.addAll(request.getEventIds());
+        }
+        assertThat(ids.size(), is(25));
+        assertThat(ids.get(24), is("24"));
+
+        eventHandler.dispatchEvent(createEvent(endpointUrl, "25"));
+        assertThat(eventHandler.getDroppedEventCount(), is(1L));
+        assertThat(eventHandler.close(5, TimeUnit.SECONDS).getSentEventCount(), is(0L));
+    }
+
+    /**
+     * Verify that the events a slow endpoint can't be sent before the close deadline are reported as dropped.
+     */
+    @Test
+    public void closeDropsEventsLeftAtDeadline() throws Exception {
+        endpointHandler.responseDelayMillis = 200;
+        AsyncEventHandler eventHandler = new AsyncEventHandler(16, 1);
+        for (int i = 0; i < 10; i++) {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+        }
+
+        long start = System.nanoTime();
+        CloseResult result = eventHandler.close(300, TimeUnit.MILLISECONDS);
+        long closeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("closing took " + closeMillis + "ms", closeMillis < 3000);
+        assertTrue(result.toString(), result.getSentEventCount() < 10);
+        assertThat(result.toString(), result.getSentEventCount() + result.getDroppedEventCount(), is(10L));
+    }
+
+    /**
+     * Verify that the requests aborted by closing the http client at the close deadline aren't logged as errors.
+     */
+    @Test
+    public void closeDoesNotLogRequestsAbortedAtDeadline() throws Exception {
+        endpointHandler.responseDelayMillis = 2000;
+        Logger logger = (Logger)LoggerFactory.getLogger(AsyncEventHandler.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            AsyncEventHandler eventHandler = new AsyncEventHandler(16, 1);
+            eventHandler.dispatchEvent(createEvent(endpointUrl, "1"));
+            endpointHandler.awaitRequests(1);
+
+            CloseResult result = eventHandler.close(100, TimeUnit.MILLISECONDS);
+
+            assertThat(result.toString(), result.getDroppedEventCount(), is(1L));
+            for (ILoggingEvent event : appender.list) {
+                assertTrue(event.getFormattedMessage(), event.getLevel().levelInt < Level.WARN_INT
+                                                        || event.getMessage().startsWith("unable to send"));
+            }
+        } finally {
+            logger.detachAppender(appender);
+        }
+    }
+
+    /**
+     * Verify that with a spool, the events left unsent at the close deadline are reported as left in the spool rather
+     * than dropped.
+     */
+    @Test
+    public void closeReportsEventsLeftInSpool() throws Exception {
+        endpointHandler.responseDelayMillis = 200;
+        AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(1)
+            .withSpool(temporaryFolder.newFolder())
+            .build();
+        for (int i = 0; i < 10; i++) {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+        }
+
+        CloseResult result = eventHandler.close(300, TimeUnit.MILLISECONDS);
+
+        assertTrue(result.toString(), result.getSentEventCount() < 10);
+        assertThat(result.toString(), result.getDroppedEventCount(), is(0L));
+        assertThat(result.toString(), result.getSentEventCount() + result.getSpooledEventCount(), is(10L));
+    }
+
+    /**
+     * Verify that closing without a timeout doesn't wait for the queued events, which are dropped once the workers
+     * have stopped, and that events dispatched afterwards are dropped too.
+     */
+    @Test
+    public void closeWithoutTimeoutDropsQueuedEvents() throws Exception {
+        endpointHandler.responseDelayMillis = 2000;
+        AsyncEventHandler eventHandler = new AsyncEventHandler(16, 1);
+        for (int i = 0; i < 3; i++) {
+            eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+        }
+        endpointHandler.awaitRequests(1);
+
+        long start = System.nanoTime();
+        eventHandler.close();
+        long closeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        eventHandler.dispatchEvent(createEvent(endpointUrl, "3"));
+
+        assertTrue("closing took " + closeMillis + "ms", closeMillis < 1000);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (eventHandler.getDroppedEventCount() < 3) {
+            assertTrue("timed out waiting for the queued events to be dropped", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertThat(eventHandler.getDroppedEventCount(), is(3L));
+    }
+
+    /**
+     * Verify that every event dispatched while the handler is closing is either sent or counted as dropped.
+     */
+    @Test
+    public void closeCountsEventsDispatchedConcurrently() throws Exception {
+        final AsyncEventHandler eventHandler = AsyncEventHandler.builder()
+            .withNumWorkers(2)
+            .withMaxBatchSize(10)
+            .build();
+        final int threadCount = 4;
+        final int eventsPerThread = 200;
+        final CountDownLatch started = new CountDownLatch(threadCount);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        eventHandler.dispatchEvent(createEvent(endpointUrl, String.valueOf(i)));
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        started.await();
+        eventHandler.close(5, TimeUnit.SECONDS);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        int sentCount = 0;
+        for (ReceivedRequest request : endpointHandler.awaitRequests(0)) {
+            sentCount += request.getEventIds().size();
+        }
+        assertThat(sentCount + eventHandler.getDroppedEventCount(), is((long)threadCount * eventsPerThread));
+    }
+
+    /**
+     * Verify that the batch payload holds each event's params, escaped as json strings.
+     */
+    @Test
+    public void generateBatchPayloadEscapesParams() throws Exception {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("quote\"d", "back\\slash");
+        params.put("control", "line\nbreak\u0001\ttab");
+        params.put("unicode", "élève😀");
+        List<LogEvent> events = Arrays.asList(new LogEvent(RequestMethod.GET, endpointUrl, params, ""),
+                                              createEvent(endpointUrl, "2"));
+
+        String payload = AsyncEventHandler.generateBatchPayload(events);
+
+        List<Map<String, String>> parsed = parsePayload(payload);
+        assertThat(parsed.size(), is(2));
+        assertThat(parsed.get(0), is(params));
+        assertThat(parsed.get(1), is(events.get(1).getRequestParams()));
+    }
+
+    //======== Helper methods ========//
+
+    /**
+     * Builds an event handler with a queue of two events and a single worker, which is left blocked sending an
+     * event with id {@code 0} until {@link #releaseAndAwaitEventIds(int)}.
+     */
+    private AsyncEventHandler createBlockedEventHandler(AsyncEventHandler.Builder builder) throws Exception {
+        endpointHandler.release = new CountDownLatch(1);
+        AsyncEventHandler eventHandler = builder
+            .withQueueCapacity(2)
+            .withNumWorkers(1)
+            .build();
+        eventHandler.dispatchEvent(createEvent(endpointUrl, "0"));
+        endpointHandler.awaitRequests(1);
+
+        return eventHandler;
+    }
+
+    private List<String> releaseAndAwaitEventIds(int count) throws Exception {
+        endpointHandler.release.countDown();
+        List<String> ids = new ArrayList<String>();
+        for (ReceivedRequest request : endpointHandler.awaitRequests(count)) {
+            ids.add(request.getQueryParam("id"));
+        }
+
+        return ids;
+    }
+
+    private static LogEvent createEvent(String endpointUrl, String id) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("id", id);
+        params.put("key", "event " + id);
+
+        return new LogEvent(RequestMethod.GET, endpointUrl, params, "");
+    }
+
+    /**
+     * @return the number of segment files in the spool directory, leaving out its lock file
+     */
+    private static int countSegments(File spoolDirectory) {
+        int count = 0;
+        for (String name : spoolDirectory.list()) {
+            if (!name.equals(EventSpool.LOCK_FILE_NAME)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<Map<String, String>> parsePayload(String payload) {
+        return new Gson().fromJson(payload, new TypeToken<List<Map<String, String>>>() {}.getType());
+    }
+
+    //======== Helper classes ========//
+
+    private static final class ReceivedRequest {
+
+        final String method;
+        final String uri;
+        final String contentType;
+        final String body;
+
+        ReceivedRequest(String method, String uri, String contentType, String body) {
+            this.method = method;
+            this.uri = uri;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        String getQueryParam(String name) {
+            String query = uri.substring(uri.indexOf('?') + 1);
+            for (String param : query.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    return param.substring(name.length() + 1);
+                }
+            }
+            return null;
+        }
+
+        List<String> getEventIds() {
+            List<String> ids = new ArrayList<String>();
+            for (Map<String, String> params : parsePayload(body)) {
+                ids.add(params.get("id"));
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Records the requests it receives, and responds to each with a {@code 204}, once released if it's been given a
+     * latch to wait for.
+     */
+    private static final class EventEndpointHandler implements HttpHandler {
+
+        private final List<ReceivedRequest> requests = new ArrayList<ReceivedRequest>();
+        volatile CountDownLatch release;
+        volatile int errorStatus;
+        volatile long responseDelayMillis;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            InputStream requestBody = exchange.getRequestBody();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = requestBody.read(buffer)) != -1; ) {
+                body.write(buffer, 0, read);
+            }
+
+            synchronized (this) {
+                requests.add(new ReceivedRequest(exchange.getRequestMethod(),
+                                                 exchange.getRequestURI().toString(),
+                                                 exchange.getRequestHeaders().getFirst("Content-Type"),
+                                                 body.toString("UTF-8")));
+                notifyAll();
+            }
+            try {
+                if (release != null) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders((errorStatus != 0) ? errorStatus : 204, -1);
+            exchange.close();
+        }
+
+        synchronized List<ReceivedRequest> awaitRequests(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (requests.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("timed out waiting for " + count + " requests", remaining > 0);
+                wait(remaining);
+            }
+            return new ArrayList<ReceivedRequest>(requests);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ *
+ *    Copyright 2016, Optimizely
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+import com.optimizely.ab.event.EventSpool.Segment;
+import com.optimizely.ab.event.EventSpool.SpooledLogEvent;
+import com.optimizely.ab.event.LogEvent.RequestMethod;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link EventSpool}.
+ */
+public class EventSpoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Verify that only the events that weren't acknowledged are recovered, in order and intact, by the next spool.
+     */
+    @Test
+    public void openRecoversUnacknowledgedEvents() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        EventSpool spool = EventSpool.open(directory, 256);
+        List<LogEvent> unacknowledgedEvents = new ArrayList<LogEvent>();
+        for (int i = 0; i < 10; i++) {
+            LogEvent event = createEvent(String.valueOf(i));
+            SpooledLogEvent spooledEvent = spool.append(event);
+            // acknowledge every other event, which keeps their segments
+            if (i % 2 == 0) {
+                spooledEvent.acknowledge();
+            } else {
+                unacknowledgedEvents.add(event);
+            }
+        }
+        spool.close();
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 256);
+        try {
+            List<SpooledLogEvent> recoveredEvents = readEvents(recoveredSpool);
+            assertThat(getIds(recoveredEvents), is(getIds(unacknowledgedEvents)));
+            assertThat(recoveredEvents.get(3).getRequestParams(), is(unacknowledgedEvents.get(3).getRequestParams()));
+            assertThat(recoveredEvents.get(3).getEndpointUrl(), is(unacknowledgedEvents.get(3).getEndpointUrl()));
+
+            // acknowledging a recovered event keeps it from being recovered again
+            recoveredEvents.get(0).acknowledge();
+        } finally {
+            recoveredSpool.close();
+        }
+
+        EventSpool reopenedSpool = EventSpool.open(directory, 256);
+        try {
+            assertThat(getIds(readEvents(reopenedSpool)),
+                       is(getIds(unacknowledgedEvents.subList(1, unacknowledgedEvents.size()))));
+        } finally {
+            reopenedSpool.close();
+        }
+    }
+
+    /**
+     * Verify that events appended concurrently, across several segments, are all recovered once, and in the order
+     * each thread appended them.
+     */
+    @Test
+    public void concurrentAppendsAreRecovered() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        final EventSpool spool = EventSpool.open(directory, 1024);
+        final int threadCount = 4;
+        final int eventsPerThread = 500;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < eventsPerThread; i++) {
+                            spool.append(createEvent(thread + "-" + i));
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+        spool.close();
+        assertThat(failure.get(), nullValue());
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 1024);
+        try {
+            int[] nextIndexes = new int[threadCount];
+            for (String id : getIds(readEvents(recoveredSpool))) {
+                String[] parts = id.split("-");
+                int thread = Integer.parseInt(parts[0]);
+                assertThat(id, Integer.parseInt(parts[1]), is(nextIndexes[thread]++));
+            }
+            for (int nextIndex : nextIndexes) {
+                assertThat(nextIndex, is(eventsPerThread));
+            }
+        } finally {
+            recoveredSpool.close();
+        }
+    }
+
+    /**
+     * Verify that filled segments are deleted once all their events are acknowledged, including recovered ones.
+     */
+    @Test
+    public void acknowledgedSegmentsAreDeleted() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        EventSpool spool = EventSpool.open(directory, 256);
+        List<SpooledLogEvent> spooledEvents = new ArrayList<SpooledLogEvent>();
+        for (int i = 0; i < 10; i++) {
+            spooledEvents.add(spool.append(createEvent(String.valueOf(i))));
+        }
+        spool.flush();
+        int segmentCount = spool.getSegmentCount();
+        assertThat(segmentCount > 2, is(true));
+
+        for (SpooledLogEvent spooledEvent : spooledEvents.subList(0, 9)) {
+            spooledEvent.acknowledge();
+        }
+        // only the current segment is left, which isn't deleted until it's filled or the spool is closed
+        assertThat(spool.getSegmentCount(), is(1));
+        spool.close();
+        assertThat(spool.getSegmentCount(), is(1));
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 256);
+        try {
+            List<SpooledLogEvent> recoveredEvents = readEvents(recoveredSpool);
+            assertThat(getIds(recoveredEvents), is(Collections.singletonList("9")));
+            recoveredEvents.get(0).acknowledge();
+            assertThat(recoveredSpool.getSegmentCount(), is(0));
+        } finally {
+            recoveredSpool.close();
+        }
+    }
+
+    /**
+     * Verify that recovery stops at a corrupt record, and that events too large for a segment are rejected.
+     */
+    @Test
+    public void openStopsAtCorruptRecord() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        EventSpool spool = EventSpool.open(directory, 1024);
+        spool.append(createEvent("0"));
+        spool.append(createEvent("1"));
+        spool.append(createEvent("2"));
+        try {
+            spool.append(createEvent(new String(new char[1024])));
+            fail("expected an " + IOException.class.getSimpleName());
+        } catch (IOException e) {
+            // expected
+        }
+        spool.close();
+
+        // flip a byte in the second record's event
+        File segmentFile = new File(directory, "events-0000000000000000000.segment");
+        int secondRecord = 12 + 12 + LogEventCodec.encode(createEvent("0")).length;
+        RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+        try {
+            file.seek(secondRecord + 12 + 4);
+            int value = file.read();
+            file.seek(secondRecord + 12 + 4);
+            file.write(value ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 1024);
+        try {
+            assertThat(getIds(readEvents(recoveredSpool)), is(Collections.singletonList("0")));
+        } finally {
+            recoveredSpool.close();
+        }
+    }
+
+    /**
+     * Verify that a directory can't be opened by a second spool until the first is closed, and that the second spool
+     * then recovers the first's events.
+     */
+    @Test
+    public void openFailsWhileDirectoryIsInUse() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        EventSpool spool = EventSpool.open(directory, 256);
+        spool.append(createEvent("0"));
+        try {
+            EventSpool.open(directory, 256);
+            fail("expected an " + IOException.class.getSimpleName());
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("in use by another spool"));
+        }
+        spool.append(createEvent("1"));
+        spool.close();
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 256);
+        try {
+            assertThat(getIds(readEvents(recoveredSpool)), is(Arrays.asList("0", "1")));
+        } finally {
+            recoveredSpool.close();
+        }
+    }
+
+    /**
+     * Verify that the oldest segments are evicted to keep the spool to its maximum size, and that the events in them
+     * that won't be sent otherwise are counted as dropped.
+     */
+    @Test
+    public void appendEvictsOldestSegmentsOverMaxSize() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        EventSpool spool = EventSpool.open(directory, 256, 512);
+        for (int i = 0; i < 10; i++) {
+            // leave each event for the next spool to replay, rather than acknowledging it
+            assertThat(spool.append(createEvent(String.valueOf(i))).giveUp(), is(true));
+            assertThat(spool.getSegmentCount() <= 2, is(true));
+        }
+        spool.close();
+        long droppedCount = spool.getDroppedEventCount();
+        assertThat(droppedCount > 0, is(true));
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 256, 512);
+        try {
+            List<SpooledLogEvent> recoveredEvents = readEvents(recoveredSpool);
+            assertThat(droppedCount + recoveredEvents.size(), is(10L));
+            assertThat(getIds(recoveredEvents).get(recoveredEvents.size() - 1), is("9"));
+
+            // evicting a recovered segment that wasn't read drops its events too
+            recoveredSpool.close();
+            recoveredSpool = EventSpool.open(directory, 256, 512);
+            for (int i = 0; i < 10; i++) {
+                recoveredSpool.append(createEvent(String.valueOf(i)));
+            }
+            assertThat(recoveredSpool.getDroppedEventCount() >= recoveredEvents.size(), is(true));
+            assertThat(readEvents(recoveredSpool).size(), is(0));
+        } finally {
+            recoveredSpool.close();
+        }
+    }
+
+    /**
+     * Verify that events are only recovered by up to {@link EventSpool#MAX_RECOVERIES} spools, after which they're
+     * dropped and their segment is deleted.
+     */
+    @Test
+    public void openDropsEventsAfterMaxRecoveries() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        EventSpool spool = EventSpool.open(directory, 256);
+        spool.append(createEvent("0"));
+        spool.close();
+
+        for (int i = 0; i < EventSpool.MAX_RECOVERIES; i++) {
+            EventSpool recoveredSpool = EventSpool.open(directory, 256);
+            try {
+                assertThat(getIds(readEvents(recoveredSpool)), is(Collections.singletonList("0")));
+                assertThat(recoveredSpool.getDroppedEventCount(), is(0L));
+            } finally {
+                recoveredSpool.close();
+            }
+        }
+
+        EventSpool recoveredSpool = EventSpool.open(directory, 256);
+        try {
+            assertThat(readEvents(recoveredSpool).size(), is(0));
+            assertThat(recoveredSpool.getDroppedEventCount(), is(1L));
+            assertThat(recoveredSpool.getSegmentCount(), is(0));
+        } finally {
+            recoveredSpool.close();
+        }
+    }
+
+    //======== Helper methods ========//
+
+    private static LogEvent createEvent(String id) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("id", id);
+        params.put("key", "event é " + id);
+
+        return new LogEvent(RequestMethod.GET, "https://localhost/event", params, "");
+    }
+
+    private static List<SpooledLogEvent> readEvents(EventSpool spool) throws IOException {
+        List<SpooledLogEvent> events = new ArrayList<SpooledLogEvent>();
+        for (Segment segment : spool.recover()) {
+            events.addAll(segment.readEvents());
+        }
+        return events;
+    }
+
+    private static List<String> getIds(List<? extends LogEvent> events) {
+        List<String> ids = new ArrayList<String>();
+        for (LogEvent event : events) {
+            ids.add(event.getRequestParams().get("id"));
+        }
+        return ids;
+    }
+}